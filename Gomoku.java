@@ -1,5 +1,8 @@
 import javafx.application.Application;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.Parent;
 import javafx.stage.Stage;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
@@ -14,7 +17,9 @@ import javafx.scene.layout.CornerRadii;
 import javafx.geometry.Insets;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
+import javafx.application.Platform;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A class to represent the game Gomoku
@@ -24,9 +29,25 @@ import java.util.List;
  */
 public class Gomoku extends Application {
   
-  /** Stores the button references as a 2D array */
+  /** The green square behind every button, shared by all of them because a Background cannot be changed */
+  private static final Background SQUARE_BACKGROUND =
+      new Background(new BackgroundFill(Color.GREEN, new CornerRadii(5), new Insets(1)));
+  
+  /** The most squares a board can have before it is drawn on a canvas instead of with buttons by default */
+  public static final int MAX_BUTTON_SQUARES = 10000;
+  
+  /** The milliseconds to wait for a stopped search before telling it to stop again */
+  private static final long STOP_WAIT = 10;
+  
+  /** Stores the button references as a 2D array, or null if the board is drawn on a canvas */
   private Button[][] gameButtons;
   
+  /** Stores the canvas the board is drawn on, or null if the board is drawn with buttons */
+  private GomokuCanvasView canvasView;
+  
+  /** Stores the pieces on the board without JavaFX components so that the rules can be checked headless */
+  private GomokuBoard board = new GomokuBoard(5, 19, 19);
+  
   /** Keeps track of which players goes next: true = black, false = white */
   private boolean blackTurn = true;
   
@@ -57,6 +78,24 @@ public class Gomoku extends Application {
   /** Stores the label that displays either a welcome message or who won */
   private static Label message;
   
+  /** Stores the computer player, or null if two people are playing */
+  private GomokuAI computer;
+  
+  /** Stores whether the computer plays black */
+  private boolean computerBlack;
+  
+  /** Stores whether the computer is looking for a move */
+  private boolean computerThinking;
+  
+  /** Stores a copy of the game for the computer to search, kept in sync with the board and cleared on a reset */
+  private GomokuSample computerGame;
+  
+  /** Stores the number of times the game has been reset, so a search of an earlier game knows to throw its move away */
+  private volatile int gameNumber;
+  
+  /** Stores the thread of the last search, which the next search waits for so that two never share the computer */
+  private Thread computerThread;
+  
   /**
    * Getter method for gameButtons
    * @return gameButtons the button references as a 2D-array
@@ -65,6 +104,22 @@ public class Gomoku extends Application {
     return gameButtons;
   }
   
+  /**
+   * Getter method for canvasView
+   * @return the canvas the board is drawn on, or null if the board is drawn with buttons
+   */
+  public GomokuCanvasView getCanvasView() {
+    return canvasView;
+  }
+  
+  /**
+   * Getter method for board
+   * @return the board of pieces that the rules are checked against
+   */
+  public GomokuBoard getBoard() {
+    return board;
+  }
+  
   /**
    * Getter method for blackTurn
    * @return the current player
@@ -208,7 +263,8 @@ public class Gomoku extends Application {
   public void start(Stage primaryStage) {
     
     // Passes the command line arguments into the start() method
-    List<String> args = getParameters().getRaw();
+    List<String> args = getParameters().getUnnamed();
+    Map<String, String> named = getParameters().getNamed();
     
     try {
       if (args.size() == 1) {
@@ -257,6 +313,16 @@ public class Gomoku extends Application {
           return;
         }
       }
+      
+      /* A computer player is chosen with --computer=black or --computer=white, --time=milliseconds for each move,
+       * and --threads=number of search threads */
+      if (named.containsKey("computer")) {
+        computerBlack = named.get("computer").equalsIgnoreCase("black");
+        long time = named.containsKey("time") ? Long.parseLong(named.get("time")) : 1000;
+        computer = new GomokuAI(time);
+        if (named.containsKey("threads"))
+          computer.setThreads(Integer.parseInt(named.get("threads")));
+      }
     }
     
     // If the user inputs something other than integers
@@ -264,6 +330,40 @@ public class Gomoku extends Application {
       System.out.println("Invalid input type used. Please enter valid integers or use the default board size and length to win.");
     }
     
+    // The rules are checked against a board of ints that is kept in sync with the buttons
+    board = new GomokuBoard(lengthToWin, rows, cols);
+    if (computer != null)
+      computerGame = new GomokuSample(lengthToWin, rows, cols);
+    
+    /* The board is drawn with a button for each square, or on one canvas with --renderer=canvas
+     * Big boards are drawn on a canvas unless --renderer=buttons is given */
+    String renderer = named.get("renderer");
+    if (renderer == null)
+      renderer = (long) rows * cols > MAX_BUTTON_SQUARES ? "canvas" : "buttons";
+    Parent root;
+    if (renderer.equalsIgnoreCase("canvas"))
+      root = createCanvasBoard();
+    else
+      root = createButtonBoard();
+    
+    // Adds the board to the scene
+    Scene scene = new Scene(root);
+    
+    // Set the title of the primary stage to show the grid size as well as the amount needed to win
+    primaryStage.setTitle("Gomoku " + getRows() + "x" + getCols() + " | " + getLengthToWin() + " needed to win.");
+    
+    // Adds the scene to the window
+    primaryStage.setScene(scene);
+    primaryStage.show();
+    computerMove();
+  }
+  
+  /**
+   * Creates the board as a grid of buttons, one for each square
+   * @return the grid pane holding the buttons, the Play Again button, and the message
+   */
+  private GridPane createButtonBoard() {
+    
     // Sets the layout of the board using a grid pane
     GridPane grid = new GridPane();
     
@@ -285,7 +385,7 @@ public class Gomoku extends Application {
         fillSquare(b);
         grid.add(b, col, row);
         b.setOnAction(e -> {
-          if (gameOver)
+          if (gameOver || computerThinking)
             return;
           
           // Gets which button was clicked by the user
@@ -296,35 +396,11 @@ public class Gomoku extends Application {
           
           // Stores the vertical position of the piece being placed
           int colIndex = GridPane.getColumnIndex(b1);
-          
-          // Checks to make sure the box is empty
-          if (isEmpty(b1)) {
-            if (blackTurn) {
-              placeCircle(b1, Color.BLACK);
-              fillSquare(b1);
-              if (violatesThreeThree(rowIndex, colIndex)) {
-                return;
-              }
-              if (violatesFourFour(rowIndex, colIndex)) {
-                return;
-              }
-            }
-          else {
-            placeCircle(b1, Color.WHITE);
-            fillSquare(b1);
-            if (violatesThreeThree(rowIndex, colIndex)) {
-              return;
-            }
-            if (violatesFourFour(rowIndex, colIndex)) {
-              return;
-            }
-          }
-          whoWon(rowIndex, colIndex);
-          switchTurn(!blackTurn);
-        }
-      });
+          if (playMove(rowIndex, colIndex))
+            computerMove();
+        });
+      }
     }
-  }
     Button playAgain = new Button("Play Again!");
     grid.add(playAgain, 0, getRows(), getCols(), 1);
     playAgain.setOnAction(e -> resetGomoku());
@@ -335,15 +411,135 @@ public class Gomoku extends Application {
     grid.add(getMessage(), getCols() / 2, getRows(), getCols(), getCols());
     grid.setAlignment(Pos.BOTTOM_CENTER);
     
-    // Adds the grid pane to the scene
-    Scene scene = new Scene(grid);
+    return grid;
+  }
+  
+  /**
+   * Creates the board as one canvas that can be scrolled and zoomed, for boards too big for a button on each square
+   * @return the pane holding the canvas, the Play Again button, and the message
+   */
+  private BorderPane createCanvasBoard() {
+    canvasView = new GomokuCanvasView(board, (row, col) -> {
+      if (gameOver || computerThinking)
+        return;
+      if (playMove(row, col))
+        computerMove();
+    });
+    Button playAgain = new Button("Play Again!");
+    playAgain.setOnAction(e -> resetGomoku());
+    setMessage(new Label("Welcome! Let's play."));
+    getMessage().setFont(new Font(24));
+    HBox bottom = new HBox(20, playAgain, getMessage());
+    bottom.setAlignment(Pos.CENTER);
+    bottom.setPadding(new Insets(5));
+    BorderPane pane = new BorderPane(canvasView);
+    pane.setBottom(bottom);
+    return pane;
+  }
+  
+  /**
+   * Places a piece for the player whose turn it is and checks it against the rules
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the piece was placed, otherwise false if the square is full or a rule was violated
+   */
+  public boolean playMove(int row, int col) {
     
-    // Set the title of the primary stage to show the grid size as well as the amount needed to win
-    primaryStage.setTitle("Gomoku " + getRows() + "x" + getCols() + " | " + getLengthToWin() + " needed to win.");
+    // Checks to make sure the box is empty
+    if (gameOver || !board.isEmpty(row, col))
+      return false;
+    if (blackTurn) {
+      board.setPiece(row, col, 1);
+      showPiece(row, col, Color.BLACK);
+    }
+    else {
+      board.setPiece(row, col, 2);
+      showPiece(row, col, Color.WHITE);
+    }
+    if (violatesThreeThree(row, col)) {
+      return false;
+    }
+    if (violatesFourFour(row, col)) {
+      return false;
+    }
     
-    // Adds the scene to the window
-    primaryStage.setScene(scene);
-    primaryStage.show();
+    // Keeps the computer's copy of the game in sync
+    if (computerGame != null) {
+      if (computerGame.isBlackTurn() != blackTurn)
+        computerGame.switchTurn();
+      computerGame.setPiece(row, col);
+    }
+    whoWon(row, col);
+    switchTurn(!blackTurn);
+    return true;
+  }
+  
+  /**
+   * Lets the computer move if it is the computer's turn
+   * The search runs on its own thread so the window keeps responding, and the move is played on the JavaFX thread
+   */
+  public void computerMove() {
+    if (computer == null || gameOver || blackTurn != computerBlack)
+      return;
+    computerThinking = true;
+    final GomokuSample game = computerGame;
+    final int searchedGame = gameNumber;
+    if (game.isBlackTurn() != blackTurn)
+      game.switchTurn();
+    final Thread previous = computerThread;
+    Thread thread = new Thread(() -> {
+      
+      // A search of a game that was reset was told to stop, and finishes before this one starts
+      if (previous != null) {
+        try {
+          previous.join();
+        }
+        catch (InterruptedException e) {
+          return;
+        }
+      }
+      if (searchedGame != gameNumber)
+        return;
+      int[] move = computer.findMove(game);
+      Platform.runLater(() -> {
+        
+        // The game was reset while the computer was thinking
+        if (searchedGame != gameNumber)
+          return;
+        computerThinking = false;
+        if (move == null) {
+          getMessage().setText("The computer has no legal move.");
+          return;
+        }
+        
+        /* The window counts rule violations across moves, so a move it rejects resets the count
+         * and the computer can try again */
+        if (!playMove(move[0], move[1]))
+          computerMove();
+      });
+    });
+    thread.setDaemon(true);
+    computerThread = thread;
+    thread.start();
+  }
+  
+  /**
+   * Stops the computer's last search and waits for its thread to end, so that its copy of the game can be changed
+   * The search is told to stop again each time the wait runs out, in case it had not started when it was first told
+   */
+  private void stopComputer() {
+    Thread thread = computerThread;
+    if (thread == null)
+      return;
+    try {
+      while (thread.isAlive()) {
+        computer.stop();
+        thread.join(STOP_WAIT);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
   
   /**
@@ -364,12 +560,31 @@ public class Gomoku extends Application {
     }
   }
   
+  /**
+   * Shows a piece placed on or removed from the board on the buttons or the canvas
+   * Nothing is shown if the window has not been opened
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param color the color of the piece (black or white), or null if the piece was removed
+   */
+  private void showPiece(int row, int col, Color color) {
+    if (canvasView != null)
+      canvasView.markDirty(row, col);
+    else if (gameButtons != null) {
+      if (color != null)
+        placeCircle(gameButtons[row][col], color);
+      else
+        gameButtons[row][col].setGraphic(null);
+      fillSquare(gameButtons[row][col]);
+    }
+  }
+  
   /**
    * Creates the style of the button to represent a green square
    *@param button the button to fill with green
    */
   public void fillSquare(Button button) {
-    button.setBackground(new Background(new BackgroundFill(Color.GREEN, new CornerRadii(5), new Insets(1))));
+    button.setBackground(SQUARE_BACKGROUND);
     button.setPrefSize(50, 50);
   }
   
@@ -386,28 +601,6 @@ public class Gomoku extends Application {
     button.setGraphic(circle);
   }
   
-  /**
-   * Determines whether the button clicked has already been occupied
-   * @param button the button clicked by the player
-   * @return true if the button is empty, false if occupied
-   */
-  public boolean isEmpty(Button button) {
-    return button.getGraphic() == null;
-  }
-  
-  /**
-   * Returns the color of the piece placed
-   * @param button the button the piece is placed on
-   * @return the color of the piece placed
-   */
-  public Color getPieceColor(Button button) {
-    if (button.getGraphic() instanceof Circle) {
-      Circle c = (Circle) button.getGraphic();
-      return (Color) c.getFill();
-    }
-    return null;
-  }
-  
   /**
    * Checks if a move creates five pieces in a row
    * Includes the placement of this piece
@@ -418,16 +611,7 @@ public class Gomoku extends Application {
    * @return true if exactly 5 pieces placed in a row, otherwise false
    */
   public boolean hasFiveInLine(int row, int col) {
-    
-    // The color of the piece to be placed
-    Color color = getPieceColor(gameButtons[row][col]);
-    
-    // Checks how many pieces of the same color appear in horizontal, vertical, or diagonal rows
-    int horizontal = numberInLine(gameButtons, row, col, 1, 0, color) + numberInLine(gameButtons, row, col, -1, 0, color) + 1;
-    int vertical = numberInLine(gameButtons, row, col, 0, 1, color) + numberInLine(gameButtons, row, col, 0, -1, color) + 1;
-    int diagonalUp = numberInLine(gameButtons, row, col, 1, 1, color) + numberInLine(gameButtons, row, col, -1, -1, color) + 1;
-    int diagonalDown = numberInLine(gameButtons, row, col, 1, -1, color) + numberInLine(gameButtons, row, col, -1, 1, color) + 1;
-    return horizontal == getLengthToWin() || vertical == getLengthToWin() || diagonalUp == getLengthToWin() || diagonalDown == getLengthToWin();
+    return board.hasFiveInLine(row, col);
   }
   
   /**
@@ -439,31 +623,19 @@ public class Gomoku extends Application {
    */
   public boolean violatesFourFour(int row, int col) {
     
-    // Keeps track of the number of pieces of the same color in a row
-    int count = 0;
-    Color color = getPieceColor(gameButtons[row][col]);
-    int horizontal = numberInLine(gameButtons, row, col, 1, 0, color) + numberInLine(gameButtons, row, col, -1, 0, color) + 1;
-    int vertical = numberInLine(gameButtons, row, col, 0, 1, color) + numberInLine(gameButtons, row, col, 0, -1, color) + 1;
-    int diagonalUp = numberInLine(gameButtons, row, col, 1, 1, color) + numberInLine(gameButtons, row, col, -1, -1, color) + 1;
-    int diagonalDown = numberInLine(gameButtons, row, col, 1, -1, color) + numberInLine(gameButtons, row, col, -1, 1, color) + 1;
-    if (horizontal == getLengthToWin() - 1)
-      count ++;
-    if (vertical == getLengthToWin() - 1)
-      count ++;
-    if (diagonalUp == getLengthToWin() - 1)
-      count ++;
-    if (diagonalDown == getLengthToWin() - 1)
-      count ++;
-    if (color.equals(Color.BLACK) && count > 0) {
+    // Keeps track of the number of rows of four through this piece
+    int count = board.countFours(row, col);
+    int color = board.getPiece(row, col);
+    if (color == 1 && count > 0) {
       setBlackCountFourFour(getBlackCountFourFour() + 1);
     }
-    if (color.equals(Color.WHITE) && count > 0) {
+    if (color == 2 && count > 0) {
       setWhiteCountFourFour(getWhiteCountFourFour() +1);
     }
     if (getBlackCountFourFour() >= 2 || getWhiteCountFourFour() >= 2) {
       System.out.println("Violates the Four-Four rule; invalid move.");
-      gameButtons[row][col].setGraphic(null);
-      fillSquare(gameButtons[row][col]);
+      board.removePiece(row, col);
+      showPiece(row, col, null);
       setBlackCountFourFour(0);
       setWhiteCountFourFour(0);
       return true;
@@ -480,27 +652,19 @@ public class Gomoku extends Application {
    */
   public boolean violatesThreeThree(int row, int col) {
     
-    // Keeps track of the number of pieces of the same color in a row
-    int count = 0;
-    Color color = getPieceColor(gameButtons[row][col]);
-    if (isOpenThree(row, col, 1, 0, color))
-      count ++;
-    if (isOpenThree(row, col, 0, 1, color))
-      count ++;
-    if (isOpenThree(row, col, 1, 1, color))
-      count ++;
-    if (isOpenThree(row, col, 1, -1, color))
-      count ++;
-    if (color.equals(Color.BLACK) && count > 0) {
+    // Keeps track of the number of open threes through this piece
+    int count = board.countOpenThrees(row, col);
+    int color = board.getPiece(row, col);
+    if (color == 1 && count > 0) {
       setBlackCountThreeThree(getBlackCountThreeThree() +1);
     }
-    if (color.equals(Color.WHITE) && count > 0) {
+    if (color == 2 && count > 0) {
       setWhiteCountThreeThree(getWhiteCountThreeThree() + 1);
     }
     if (getBlackCountThreeThree() >= 2 || getWhiteCountThreeThree() >= 2) {
       System.out.println("Violates the Three-Three rule; invalid move.");
-      gameButtons[row][col].setGraphic(null);
-      fillSquare(gameButtons[row][col]);
+      board.removePiece(row, col);
+      showPiece(row, col, null);
       setBlackCountThreeThree(0);
       setWhiteCountThreeThree(0);
       return true;
@@ -509,61 +673,16 @@ public class Gomoku extends Application {
   }
   
   /**
-   * Helper method to determine if the group of three contains an empty space on either end
+   * Helper method to determine if the line through a piece is an open three (including broken threes like X_XX)
    * @param row the row coordinate of the player's position
    * @param col the column coordinate of the player's position
    * @param dx the change in the horizontal position of the player
    * @param dy the change in the vertical position of the player
-   * @param color the color of the placed piece
-   * @return true if there is an open end, otherwise false
-   */
-  public boolean isOpenThree(int row, int col, int dx, int dy, Color color) {
-    
-    // Checks for open pieces at the end of a chunk of cotiguous pieces in the forward direction
-    int forward = numberInLine(gameButtons, row, col, dx, dy, color);
-    
-    // Checks for open pieces at the end of a chunk of cotiguous pieces in the backwards direction
-    int backward = numberInLine(gameButtons, row, col, -1 * dx, -1 * dy, color);
-    
-    // The total is the sum of forward, backward, and this piece to be placed
-    int total = 1 + forward + backward;
-    if (total != getLengthToWin() - 2) {
-      return false;
-    }
-    
-    // Checks the end of the row in the forward direction
-    int endRowForward = row + (forward + 1) * dx;
-    
-    // Checks the end of the column in the forward direction
-    int endColForward = col + (forward + 1) * dy;
-    
-    // Checks the end of the row in the backward direction
-    int endRowBackward = row + (backward + 1) * -1 * dx;
-    
-    // Checks the end of the row in the backward direction
-    int endColBackward = col + (backward + 1) * -1 * dy;
-    
-    // Checks if one end is open
-    boolean forwardOpen = (isValid(endRowForward, endColForward) && isEmpty(gameButtons[endRowForward][endColForward]));
-    
-    // Checks if the other end is open
-    boolean backwardOpen = (isValid(endRowBackward, endColBackward) && isEmpty(gameButtons[endRowBackward][endColBackward]));
-    return forwardOpen || backwardOpen;
-  }
-  
-  /**
-   * Determines whether the button has a black or white circle on it
-   * Ensures that it matches the current player's color
-   * @param button the button that was clicked
-   * @param color the color to be placed after the click
-   * @return true if the colors are equal, otherwise false
+   * @param color the color of the placed piece (1 for black or 2 for white)
+   * @return true if one more move makes an open four, otherwise false
    */
-  public boolean hasColor(Button button, Color color) {
-    if (button.getGraphic() instanceof Circle) {
-      Circle c = (Circle) button.getGraphic();
-      return c.getFill().equals(color); 
-    }
-    return false;
+  public boolean isOpenThree(int row, int col, int dx, int dy, int color) {
+    return board.isOpenThree(row, col, dx, dy, color);
   }
   
   /**
@@ -579,38 +698,21 @@ public class Gomoku extends Application {
   /**
    * Handles the directionality of the game
    * Can have horizontal, vertical, or diagonal directions
-   * @param board the game board
    * @param row represents the initial horizontal position
    * @param col represents the initial vertical position
    * @param dx the move of the player in the horizontal direction
    * @param dy the move of the player in the vertical direction
-   * @param color the color of the pieces to count
+   * @param color the color of the pieces to count (1 for black or 2 for white)
    * @return the number of pieces in a row
    */
-  public int numberInLine(Button[][] board, int row, int col, int dx, int dy, Color color) {
-    
-    // stores the number of contiguous pieces in a given direction
-    int count = 0;
-    
-    // The new horizontal position after this piece is placed
-    int x = row + dx;
-    
-    // The new vertical position after this piece is placed
-    int y = col + dy;
-    
-    /* Loops through each button placed
-     * If the move is valid and the color matches, increment count and move to the next piece until the end is reached */
-    while (isValid(x, y) && hasColor(gameButtons[x][y], color)) {
-      count ++;
-      x += dx;
-      y += dy;
-    }
-    return count;
+  public int numberInLine(int row, int col, int dx, int dy, int color) {
+    return board.numberInLine(row, col, dx, dy, color);
   }
   
 /**
  * Resets the Gomoku game to its initial state.
  * Clears the board, resets all rule counters, flags, and sets the starting turn to Black.
+ * Only the squares that have pieces are cleared, so a reset takes time for the pieces and not for the whole board.
  */
 public void resetGomoku() {
   setGameOver(false);
@@ -619,13 +721,18 @@ public void resetGomoku() {
   setWhiteCountThreeThree(0);
   setBlackCountFourFour(0);
   setWhiteCountFourFour(0);
-  for (int row = 0; row < rows; row++) {
-      for (int col = 0; col < cols; col++) {
-        gameButtons[row][col].setGraphic(null);
-        fillSquare(gameButtons[row][col]);
-    }
+  for (int i = 0; i < board.getStoneCount(); i++) {
+    showPiece(board.getStoneRow(i), board.getStoneCol(i), null);
+  }
+  board.clear();
+  computerThinking = false;
+  if (computer != null) {
+    gameNumber++;
+    stopComputer();
+    computerGame.clear();
   }
   Gomoku.message.setText("Welcome! Let's play again.");
+  computerMove();
 }
   
   /**
@@ -636,4 +743,4 @@ public void resetGomoku() {
     Application.launch(args);
   }
   
-}
\ No newline at end of file
+}
@@ -0,0 +1,562 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A class to represent a computer player for the game Gomoku
+ * Searches the moves of a GomokuSample board with negamax alpha-beta search and iterative deepening,
+ * going one move deeper at a time until the time for the move runs out
+ * With more than one thread the search is a "lazy" parallel search: every thread searches its own copy of the board
+ * and they share only the transposition table, so each thread finds the results of the others there
+ * Plays whichever color's turn it is and follows the same Four-Four and Three-Three rules as GomokuSample
+ * @author Noah Leibowitz
+ */
+public class GomokuAI implements GomokuPlayer {
+
+  /** The name of the system property that sets the number of search threads */
+  public static final String THREADS_PROPERTY = "gomoku.threads";
+
+  /** The score of a position that has been won */
+  public static final int WIN = 1000000;
+
+  /** A score lower than any real score */
+  private static final int INFINITY = WIN + 1;
+
+  /** The move that stands for no move, which is off every board since no row can be Integer.MIN_VALUE */
+  private static final long NO_MOVE = Long.MIN_VALUE;
+
+  /** Stores the longest time to think about one move, in milliseconds */
+  private long timeLimit;
+
+  /** Stores the deepest search to try */
+  private int maxDepth = 32;
+
+  /** Stores the most moves that are searched after the first move of the search (the best moves by shape) */
+  private int branchLimit = 15;
+
+  /** Stores the results of positions that have already been searched */
+  private GomokuTranspositionTable table;
+
+  /** Stores the number of threads that search each move */
+  private int threads;
+
+  /** Stores the opening book that is used before searching, or null to always search */
+  private GomokuOpeningBook book;
+
+  /** Stores the board being searched */
+  private GomokuSample game;
+
+  /** Stores the static score of the board being searched, kept up to date by the board */
+  private GomokuEvaluator evaluator;
+
+  /** Stores whether any thread searching the current move has finished, shared by all of the threads */
+  private volatile AtomicBoolean finished;
+
+  /** Stores the time when the search has to stop, from System.nanoTime() */
+  private long deadline;
+
+  /** Stores whether the search ran out of time */
+  private boolean stopped;
+
+  /** Stores the number of positions searched for the last move */
+  private long nodes;
+
+  /**
+   * Stores the best move of the last search that finished for the last move, with its row in the high 32 bits and
+   * its column in the low 32 bits, so that a move on any board fits
+   */
+  private long bestMove;
+
+  /** Stores the depth of the last search that finished for the last move */
+  private int depth;
+
+  /** Stores the score of the last move from the computer's point of view */
+  private int score;
+
+  /** Stores how long the last move took, in nanoseconds */
+  private long elapsed;
+
+  /**
+   * Constructor that initializes the fields
+   * @param timeLimit the longest time to think about one move, in milliseconds
+   */
+  public GomokuAI(long timeLimit) {
+    this.timeLimit = timeLimit;
+    table = GomokuTranspositionTable.fromConfig();
+    threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, 1));
+  }
+
+  /**
+   * Constructor that initializes the fields
+   * @param timeLimit the longest time to think about one move, in milliseconds
+   * @param maxDepth the deepest search to try
+   */
+  public GomokuAI(long timeLimit, int maxDepth) {
+    this.timeLimit = timeLimit;
+    this.maxDepth = maxDepth;
+    table = GomokuTranspositionTable.fromConfig();
+    threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, 1));
+  }
+
+  /**
+   * Constructor for a helper that searches the same move as another player on a thread of its own
+   * @param leader the player whose settings, table, and deadline are shared
+   */
+  private GomokuAI(GomokuAI leader) {
+    timeLimit = leader.timeLimit;
+    maxDepth = leader.maxDepth;
+    branchLimit = leader.branchLimit;
+    table = leader.table;
+    deadline = leader.deadline;
+    finished = leader.finished;
+    threads = 1;
+  }
+
+  /**
+   * Getter method for threads
+   * @return the number of threads that search each move
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Setter method for threads
+   * @param threads the number of threads that search each move, at least 1
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+  /**
+   * Getter method for table
+   * @return the transposition table of the search
+   */
+  public GomokuTranspositionTable getTable() {
+    return table;
+  }
+
+  /**
+   * Setter method for table
+   * @param table the transposition table of the search
+   */
+  public void setTable(GomokuTranspositionTable table) {
+    this.table = table;
+  }
+
+  /**
+   * Getter method for book
+   * @return the opening book, or null if there is none
+   */
+  public GomokuOpeningBook getBook() {
+    return book;
+  }
+
+  /**
+   * Setter method for book
+   * @param book the opening book to play from while it has a move, or null to always search
+   */
+  public void setBook(GomokuOpeningBook book) {
+    this.book = book;
+  }
+
+  /** Forgets the positions searched in an earlier game by clearing the transposition table */
+  public void newGame() {
+    table.clear();
+  }
+
+  /** Does nothing, since the search threads of each move end with the move */
+  public void close() {
+  }
+
+  /**
+   * Setter method for branchLimit
+   * @param branchLimit the most moves that are searched after the first move of the search
+   */
+  public void setBranchLimit(int branchLimit) {
+    this.branchLimit = branchLimit;
+  }
+
+  /**
+   * Getter method for nodes
+   * @return the number of positions searched for the last move by all of the threads
+   */
+  public long getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Getter method for depth
+   * @return the depth of the last search that finished for the last move
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Getter method for score
+   * @return the score of the last move from the computer's point of view
+   */
+  public int getScore() {
+    return score;
+  }
+
+  /**
+   * Getter method for the time of the last move
+   * @return how long the last move took, in milliseconds
+   */
+  public long getElapsedMillis() {
+    return elapsed / 1000000;
+  }
+
+  /**
+   * Gets the speed of the last search
+   * @return the number of positions searched per second
+   */
+  public long getNodesPerSecond() {
+    return elapsed == 0 ? 0 : nodes * 1000000000L / elapsed;
+  }
+
+  /**
+   * Finds the best move for the player whose turn it is
+   * The board is changed during the search but is always put back the way it was
+   * The board keeps its evaluator (see GomokuSample.trackEvaluation) after the search, so that the next search on it
+   * does not have to score it again
+   * A move from the opening book is played without a search
+   * @param game the board to play on
+   * @return the row and column of the move, or null if there is no legal move
+   */
+  public int[] findMove(GomokuSample game) {
+    long start = System.nanoTime();
+    if (book != null) {
+      int[] move = book.findMove(game);
+      if (move != null) {
+        nodes = 0;
+        depth = 0;
+        elapsed = System.nanoTime() - start;
+        return move;
+      }
+    }
+    deadline = start + timeLimit * 1000000;
+    finished = new AtomicBoolean();
+    table.newSearch();
+    long hits = table.getHits();
+    long probes = hits + table.getMisses();
+
+    /* Every other helper starts one move deeper, so that the threads are not all searching the same depth
+     * and the shallower threads find the results of the deeper ones in the table */
+    GomokuAI[] helpers = new GomokuAI[threads - 1];
+    Thread[] workers = new Thread[threads - 1];
+    for (int i = 0; i < helpers.length; i++) {
+      final GomokuAI helper = new GomokuAI(this);
+      final GomokuSample copy = new GomokuSample(game);
+      final int firstDepth = 1 + (i + 1) % 2;
+      helpers[i] = helper;
+      workers[i] = new Thread(new Runnable() {
+        public void run() {
+          helper.iterate(copy, firstDepth);
+        }
+      });
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+    long best = iterate(game, 1);
+    finished.set(true);
+
+    // Uses the move of whichever thread finished the deepest search
+    long total = nodes;
+    for (int i = 0; i < helpers.length; i++) {
+      join(workers[i]);
+      total += helpers[i].nodes;
+      if (helpers[i].depth > depth && helpers[i].bestMove != NO_MOVE) {
+        best = helpers[i].bestMove;
+        depth = helpers[i].depth;
+        score = helpers[i].score;
+      }
+    }
+    nodes = total;
+    elapsed = System.nanoTime() - start;
+    if (GomokuMetrics.ENABLED) {
+      hits = table.getHits() - hits;
+      probes = table.getHits() + table.getMisses() - probes;
+      GomokuMetrics.engine("GomokuAI").record(nodes, elapsed, depth, hits, probes);
+    }
+    if (best == NO_MOVE)
+      return null;
+    return new int[] {(int) (best >> 32), (int) best};
+  }
+
+  /**
+   * Stops the search running on another thread as soon as it can, so that findMove returns the best move it has
+   * found so far
+   */
+  public void stop() {
+    AtomicBoolean search = finished;
+    if (search != null)
+      search.set(true);
+  }
+
+  /**
+   * Waits for a search thread to finish
+   * @param worker the thread
+   */
+  private static void join(Thread worker) {
+    try {
+      worker.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Searches one move deeper at a time until the time runs out, the game is decided, or another thread finishes
+   * @param game the board to play on
+   * @param firstDepth the depth of the first search
+   * @return the best move as its row in the high 32 bits and its column in the low 32 bits, or NO_MOVE if there is
+   *         no legal move
+   */
+  private long iterate(GomokuSample game, int firstDepth) {
+    this.game = game;
+    evaluator = game.trackEvaluation();
+    stopped = false;
+    nodes = 0;
+    depth = 0;
+    score = 0;
+    bestMove = NO_MOVE;
+
+    // The moves at the root are searched in the order of the last finished search
+    long[] moves = rootMoves();
+    if (moves.length == 0)
+      return NO_MOVE;
+    bestMove = moves[0];
+    for (int d = firstDepth; d <= maxDepth; d++) {
+      int alpha = -INFINITY;
+      int bestIndex = 0;
+      for (int i = 0; i < moves.length; i++) {
+        int value = searchMove(moves[i], d, alpha, INFINITY, 0);
+        if (stopped)
+          break;
+        if (value > alpha) {
+          alpha = value;
+          bestIndex = i;
+        }
+      }
+      if (stopped)
+        return bestMove;
+
+      // Moves the best move to the front so that it is searched first next time
+      bestMove = moves[bestIndex];
+      System.arraycopy(moves, 0, moves, 1, bestIndex);
+      moves[0] = bestMove;
+      score = alpha;
+      depth = d;
+
+      // There is no need to search deeper once the game is decided
+      if (alpha >= WIN - maxDepth || alpha <= -WIN + maxDepth)
+        break;
+    }
+
+    // Lets the other threads stop, since this thread's answer is as deep as the search goes
+    finished.set(true);
+    return bestMove;
+  }
+
+  /**
+   * Plays a move, searches the position after it, and takes the move back
+   * @param move the move as its row in the high 32 bits and its column in the low 32 bits
+   * @param depth the number of moves left to search, including this one
+   * @param alpha the score the player to move is already sure of
+   * @param beta the score the other player is already sure of
+   * @param ply the number of moves played since the start of the search
+   * @return the score of the move for the player making it, or -INFINITY if the move breaks a rule
+   */
+  private int searchMove(long move, int depth, int alpha, int beta, int ply) {
+    int row = (int) (move >> 32);
+    int col = (int) move;
+    game.makeMove(row, col);
+    int value;
+    if (game.hasWon(row, col))
+      value = WIN - ply;
+    else if (game.violatesFourFour(row, col) || game.violatesThreeThree(row, col))
+      value = -INFINITY;
+    else
+      value = -search(depth - 1, -beta, -alpha, ply + 1);
+    game.undo();
+    return value;
+  }
+
+  /**
+   * Searches a position with negamax alpha-beta search
+   * @param depth the number of moves left to search
+   * @param alpha the score the player to move is already sure of
+   * @param beta the score the other player is already sure of
+   * @param ply the number of moves played since the start of the search
+   * @return the score of the position for the player to move
+   */
+  private int search(int depth, int alpha, int beta, int ply) {
+    nodes++;
+    if ((nodes & 1023) == 0 && (System.nanoTime() > deadline || finished.get()))
+      stopped = true;
+    if (stopped)
+      return 0;
+    if (depth == 0)
+      return evaluate(ply);
+
+    // A position already searched deep enough can be answered from the table, otherwise its best move is tried first
+    long hash = game.getHash();
+    long entry = table.probe(hash);
+    int tableMove = -1;
+    if (entry != 0) {
+      tableMove = GomokuTranspositionTable.moveOf(entry);
+      if (GomokuTranspositionTable.depthOf(entry) >= depth) {
+        int value = fromTable(GomokuTranspositionTable.scoreOf(entry), ply);
+        int flag = GomokuTranspositionTable.flagOf(entry);
+        if (flag == GomokuTranspositionTable.EXACT || (flag == GomokuTranspositionTable.LOWER && value >= beta)
+              || (flag == GomokuTranspositionTable.UPPER && value <= alpha))
+          return value;
+      }
+    }
+    int originalAlpha = alpha;
+    long[] moves = orderedMoves(branchLimit, tableMove);
+    int best = -INFINITY;
+    long bestMove = NO_MOVE;
+    for (int i = 0; i < moves.length; i++) {
+      int value = searchMove(moves[i], depth, alpha, beta, ply);
+      if (stopped)
+        return 0;
+      if (value > best) {
+        best = value;
+        bestMove = moves[i];
+      }
+      if (best > alpha)
+        alpha = best;
+      if (alpha >= beta)
+        break;
+    }
+
+    // A position with no legal moves is a draw
+    if (best == -INFINITY)
+      return 0;
+    int flag = GomokuTranspositionTable.EXACT;
+    if (best <= originalAlpha)
+      flag = GomokuTranspositionTable.UPPER;
+    else if (best >= beta)
+      flag = GomokuTranspositionTable.LOWER;
+    table.store(hash, tag(bestMove), toTable(best, ply), depth, flag);
+    return best;
+  }
+
+  /**
+   * Changes a winning or losing score to count from the stored position instead of the start of the search
+   * @param value the score
+   * @param ply the number of moves played since the start of the search
+   * @return the score to store
+   */
+  private static int toTable(int value, int ply) {
+    if (value > WIN - 1000)
+      return value + ply;
+    if (value < -WIN + 1000)
+      return value - ply;
+    return value;
+  }
+
+  /**
+   * Changes a stored winning or losing score back to count from the start of the search
+   * @param value the stored score
+   * @param ply the number of moves played since the start of the search
+   * @return the score
+   */
+  private static int fromTable(int value, int ply) {
+    if (value > WIN - 1000)
+      return value - ply;
+    if (value < -WIN + 1000)
+      return value + ply;
+    return value;
+  }
+
+  /**
+   * Scores a position from the windows of both players, which the board keeps up to date as moves are made
+   * A player to move with a four wins, and a player facing two fours without a four of their own loses
+   * @param ply the number of moves played since the start of the search
+   * @return the score of the position for the player to move
+   */
+  private int evaluate(int ply) {
+    int own = game.isBlackTurn() ? 1 : 2;
+    if (evaluator.getFours(own) > 0)
+      return WIN - ply - 1;
+    if (evaluator.getFours(3 - own) >= 2)
+      return -(WIN - ply - 2);
+    return evaluator.evaluate(own);
+  }
+
+  /**
+   * Gets the number the transposition table keeps for a move, which fits in its 25 bits on a board of any size
+   * Two moves can have the same tag, which only changes which move is searched first
+   * @param move the move, or NO_MOVE
+   * @return the tag, or -1 for NO_MOVE
+   */
+  private static int tag(long move) {
+    if (move == NO_MOVE)
+      return -1;
+    long mixed = move * 0x9E3779B97F4A7C15L;
+    return (int) (mixed >>> 39);
+  }
+
+  /**
+   * Finds the legal moves at the start of the search, best moves first
+   * @return the moves as their rows in the high 32 bits and their columns in the low 32 bits
+   */
+  private long[] rootMoves() {
+    long[] moves = orderedMoves(Integer.MAX_VALUE, -1);
+    int count = 0;
+    for (int i = 0; i < moves.length; i++) {
+      if (!game.isForbidden((int) (moves[i] >> 32), (int) moves[i]))
+        moves[count++] = moves[i];
+    }
+    long[] legal = new long[count];
+    System.arraycopy(moves, 0, legal, 0, count);
+    return legal;
+  }
+
+  /**
+   * Finds the empty squares within two squares of a piece, sorted by how much a piece there would change the score
+   * A square that makes a strong threat for the player to move, or blocks one of the other player, comes first
+   * @param limit the most moves to return
+   * @param first the tag of a move to put first, such as the best move from the transposition table, or -1 for none
+   * @return the moves as their rows in the high 32 bits and their columns in the low 32 bits
+   */
+  private long[] orderedMoves(int limit, int first) {
+    long[] moves = game.getCandidates(false);
+    int[] scores = new int[moves.length];
+    int own = game.isBlackTurn() ? 1 : 2;
+    for (int i = 0; i < moves.length; i++) {
+      scores[i] = evaluator.gain((int) (moves[i] >> 32), (int) moves[i], own);
+    }
+
+    // Insertion sort, since the lists are short
+    for (int i = 1; i < moves.length; i++) {
+      long move = moves[i];
+      int value = scores[i];
+      int j = i - 1;
+      while (j >= 0 && scores[j] < value) {
+        moves[j + 1] = moves[j];
+        scores[j + 1] = scores[j];
+        j--;
+      }
+      moves[j + 1] = move;
+      scores[j + 1] = value;
+    }
+    for (int i = 1; i < moves.length && first >= 0; i++) {
+      if (tag(moves[i]) == first) {
+        long move = moves[i];
+        System.arraycopy(moves, 0, moves, 1, i);
+        moves[0] = move;
+        break;
+      }
+    }
+    if (moves.length <= limit)
+      return moves;
+    long[] best = new long[limit];
+    System.arraycopy(moves, 0, best, 0, limit);
+    return best;
+  }
+
+}
@@ -0,0 +1,408 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class to check a file of Gomoku positions against the rules, without the JavaFX window
+ * Each line of the input is one position: the size of the board, the length to win, and the moves, such as
+ *   15x15 5 7,7 7,8 8,8 6,6
+ * with black moving first. The last move is checked, and one line is written for each position, in the same order:
+ *   WIN color, FOUR_FOUR color, THREE_THREE color, NONE, or ERROR and a reason
+ * Empty lines and lines starting with # are copied to the output as they are
+ * The input is read in batches of lines that worker threads check at the same time, and only a fixed number of
+ * batches are read ahead of the one being written, so a file of any size is checked in the same memory
+ * The speed is printed every few seconds to the error stream, so that the results can go to the standard output
+ * Run with: java GomokuAnalyzer input|- [output|-] [threads=cores] [batch=4096] [ahead=4] [progress=5]
+ * @author Noah Leibowitz
+ */
+public class GomokuAnalyzer {
+
+  /** The most squares a board checked with an array can have, bigger boards only store their pieces */
+  public static final int MAX_DENSE_SQUARES = 1 << 20;
+
+  /** The most boards of each size kept by each worker to use again */
+  private static final int MAX_IDLE_BOARDS = 4;
+
+  /** A class for some lines of the input and their results */
+  private static class Batch {
+
+    /** Stores the lines, or null for the batch that marks the end of the input */
+    private String[] lines;
+
+    /** Stores the number of lines */
+    private int size;
+
+    /** Stores the result of each line */
+    private String[] results;
+
+    /** Stores whether the results are ready */
+    private boolean done;
+
+    /**
+     * Constructor that makes an empty batch
+     * @param capacity the most lines in the batch, or 0 for the batch that marks the end
+     */
+    private Batch(int capacity) {
+      if (capacity > 0) {
+        lines = new String[capacity];
+        results = new String[capacity];
+      }
+    }
+
+    /** Marks the results as ready and wakes the thread writing them */
+    private synchronized void finish() {
+      done = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits until the results are ready
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private synchronized void await() throws InterruptedException {
+      while (!done) {
+        wait();
+      }
+    }
+  }
+
+  /** Stores the number of worker threads */
+  private int threads;
+
+  /** Stores the most lines in a batch */
+  private int batchSize;
+
+  /** Stores the most batches read ahead of the one being written */
+  private int ahead;
+
+  /** Stores how often the speed is printed, in seconds, or 0 to not print it */
+  private double progress;
+
+  /** Stores the number of positions checked */
+  private long positions;
+
+  /** Stores the number of positions with each result: WIN, FOUR_FOUR, THREE_THREE, NONE, ERROR */
+  private long[] counts = new long[5];
+
+  /** The first word of each result, in the order of counts */
+  private static final String[] RESULTS = {"WIN", "FOUR_FOUR", "THREE_THREE", "NONE", "ERROR"};
+
+  /**
+   * Constructor that initializes the fields
+   * @param threads the number of worker threads
+   * @param batchSize the most lines in a batch
+   * @param ahead the most batches read ahead of the one being written
+   * @param progress how often the speed is printed, in seconds, or 0 to not print it
+   */
+  public GomokuAnalyzer(int threads, int batchSize, int ahead, double progress) {
+    this.threads = Math.max(1, threads);
+    this.batchSize = Math.max(1, batchSize);
+    this.ahead = Math.max(1, ahead);
+    this.progress = progress;
+  }
+
+  /**
+   * Checks every position of the input and writes the results in the same order
+   * The input is read on this thread, the results are written on another thread, and the positions are checked on
+   * the worker threads
+   * @param in the input
+   * @param out the output
+   * @throws IOException if the input cannot be read or the output cannot be written
+   */
+  public void run(Reader in, Writer out) throws IOException {
+    final BlockingQueue<Batch> work = new ArrayBlockingQueue<Batch>(ahead + threads);
+    final BlockingQueue<Batch> order = new ArrayBlockingQueue<Batch>(ahead + threads);
+    final Batch end = new Batch(0);
+    final IOException[] failure = new IOException[1];
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread(() -> {
+        GomokuSamplePool pool = new GomokuSamplePool(MAX_IDLE_BOARDS);
+        try {
+          for (Batch batch = work.take(); batch != end; batch = work.take()) {
+
+            // A line that fails in an unexpected way gets an error, and the batch is always finished so that the
+            // writer does not wait for it forever
+            try {
+              for (int j = 0; j < batch.size; j++) {
+                try {
+                  batch.results[j] = analyze(batch.lines[j], pool);
+                }
+                catch (Throwable e) {
+                  batch.results[j] = "ERROR " + e;
+                }
+                batch.lines[j] = null;
+              }
+            }
+            finally {
+              batch.finish();
+            }
+          }
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, "gomoku-analyzer-" + i);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+    Thread writer = new Thread(() -> {
+      try {
+        write(order, end, out);
+      }
+      catch (IOException e) {
+        failure[0] = e;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "gomoku-analyzer-writer");
+    writer.start();
+
+    // Reads the input in batches, each of which goes to the workers and, in order, to the writer
+    BufferedReader lines = new BufferedReader(in, 1 << 16);
+    try {
+      boolean more = true;
+      while (more) {
+        Batch batch = new Batch(batchSize);
+        while (batch.size < batchSize) {
+          String line = lines.readLine();
+          if (line == null) {
+            more = false;
+            break;
+          }
+          batch.lines[batch.size++] = line;
+        }
+        if (batch.size > 0) {
+          if (!put(order, batch, writer))
+            break;
+          work.put(batch);
+        }
+      }
+      put(order, end, writer);
+      for (int i = 0; i < workers.length; i++) {
+        work.put(end);
+      }
+      writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      writer.interrupt();
+    }
+    catch (IOException e) {
+      writer.interrupt();
+      throw e;
+    }
+    finally {
+      for (Thread worker : workers) {
+        worker.interrupt();
+      }
+    }
+    if (failure[0] != null)
+      throw failure[0];
+  }
+
+  /**
+   * Adds a batch to the queue of the writer, giving up if the writer has stopped because the output failed
+   * @param order the batches in the order of the input
+   * @param batch the batch
+   * @param writer the thread writing the results
+   * @return true if the batch was added, otherwise false
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  private static boolean put(BlockingQueue<Batch> order, Batch batch, Thread writer) throws InterruptedException {
+    while (!order.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+      if (!writer.isAlive())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes the results of each batch as soon as it and every batch before it are ready
+   * @param order the batches in the order of the input
+   * @param end the batch that marks the end of the input
+   * @param out the output
+   * @throws IOException if the output cannot be written
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  private void write(BlockingQueue<Batch> order, Batch end, Writer out) throws IOException, InterruptedException {
+    BufferedWriter results = new BufferedWriter(out, 1 << 16);
+    long start = System.nanoTime();
+    long nextReport = start + (long) (progress * 1e9);
+    for (Batch batch = order.take(); batch != end; batch = order.take()) {
+      batch.await();
+      for (int i = 0; i < batch.size; i++) {
+        String result = batch.results[i];
+        results.write(result);
+        results.newLine();
+        for (int k = 0; k < RESULTS.length; k++) {
+          if (result.startsWith(RESULTS[k])) {
+            counts[k]++;
+            positions++;
+            break;
+          }
+        }
+      }
+      if (progress > 0 && System.nanoTime() >= nextReport) {
+        nextReport += (long) (progress * 1e9);
+        System.err.println(String.format("%d positions, %.0f positions/second", positions,
+                                         positions / ((System.nanoTime() - start) / 1e9)));
+      }
+    }
+    results.flush();
+  }
+
+  /**
+   * Checks one position
+   * @param line the line of the position
+   * @param pool the boards to use, so that a board is not made for every position
+   * @return the result: WIN, FOUR_FOUR, or THREE_THREE and the color of the last move (black or white), NONE,
+   *         ERROR and a reason, or the line itself if it is empty or a comment
+   */
+  public static String analyze(String line, GomokuSamplePool pool) {
+    String[] words = line.trim().split("\\s+");
+    if (words[0].isEmpty() || words[0].startsWith("#"))
+      return line;
+    if (words.length < 2)
+      return "ERROR missing length to win";
+    int rows;
+    int cols;
+    int lengthToWin;
+    try {
+      int x = words[0].indexOf('x');
+      if (x < 0)
+        return "ERROR size must be written as rowsxcols";
+      rows = Integer.parseInt(words[0].substring(0, x));
+      cols = Integer.parseInt(words[0].substring(x + 1));
+      lengthToWin = Integer.parseInt(words[1]);
+    }
+    catch (NumberFormatException e) {
+      return "ERROR bad number";
+    }
+    if (rows < 1 || cols < 1 || lengthToWin < 1)
+      return "ERROR bad board size";
+    boolean dense = (long) rows * cols <= MAX_DENSE_SQUARES;
+    GomokuSample game = dense ? pool.acquire(lengthToWin, rows, cols)
+        : new GomokuSample(lengthToWin, new GomokuSparseStorage(rows, cols));
+    try {
+      int row = -1;
+      int col = -1;
+      for (int i = 2; i < words.length; i++) {
+        int comma = words[i].indexOf(',');
+        try {
+          row = Integer.parseInt(words[i].substring(0, Math.max(0, comma)));
+          col = Integer.parseInt(words[i].substring(comma + 1));
+        }
+        catch (NumberFormatException e) {
+          return "ERROR move " + (i - 1) + " is not row,col";
+        }
+        if (row < 0 || row >= rows || col < 0 || col >= cols)
+          return "ERROR move " + (i - 1) + " is not on the board";
+        if (!game.makeMove(row, col))
+          return "ERROR move " + (i - 1) + " is on a piece";
+      }
+      if (row < 0)
+        return "NONE";
+      String color = game.getPiece(row, col) == 1 ? "black" : "white";
+      if (game.hasWon(row, col))
+        return "WIN " + color;
+      if (game.violatesFourFour(row, col))
+        return "FOUR_FOUR " + color;
+      if (game.violatesThreeThree(row, col))
+        return "THREE_THREE " + color;
+      return "NONE";
+    }
+    finally {
+      if (dense)
+        pool.release(game);
+    }
+  }
+
+  /**
+   * Gets the number of positions checked with a result
+   * @param result WIN, FOUR_FOUR, THREE_THREE, NONE, or ERROR
+   * @return the number of positions
+   */
+  public long getCount(String result) {
+    for (int k = 0; k < RESULTS.length; k++) {
+      if (RESULTS[k].equals(result))
+        return counts[k];
+    }
+    return 0;
+  }
+
+  /**
+   * Gets the number of positions checked
+   * @return the number of positions, not counting empty lines and comments
+   */
+  public long getPositions() {
+    return positions;
+  }
+
+  /**
+   * Checks a file of positions and prints how many had each result
+   * @param args the input, the output, and options written as name=value; - is the standard input or output
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.out.println("Usage: java GomokuAnalyzer input|- [output|-] [threads=cores] [batch=4096] [ahead=4]"
+                         + " [progress=5]");
+      return;
+    }
+    String output = "-";
+    int threads = Runtime.getRuntime().availableProcessors();
+    int batchSize = 4096;
+    int ahead = 4;
+    double progress = 5;
+    for (int i = 1; i < args.length; i++) {
+      String[] pair = args[i].split("=", 2);
+      String value = pair.length > 1 ? pair[1] : "";
+      if (pair.length == 1 && i == 1)
+        output = args[i];
+      else if (pair[0].equals("threads"))
+        threads = Integer.parseInt(value);
+      else if (pair[0].equals("batch"))
+        batchSize = Integer.parseInt(value);
+      else if (pair[0].equals("ahead"))
+        ahead = Integer.parseInt(value);
+      else if (pair[0].equals("progress"))
+        progress = Double.parseDouble(value);
+      else {
+        System.out.println("Unknown option " + args[i]);
+        return;
+      }
+    }
+    GomokuAnalyzer analyzer = new GomokuAnalyzer(threads, batchSize, ahead, progress);
+    try (Reader in = args[0].equals("-") ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                     : Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+         Writer out = output.equals("-") ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                      : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+      long start = System.nanoTime();
+      analyzer.run(in, out);
+      out.flush();
+      double seconds = (System.nanoTime() - start) / 1e9;
+      StringBuilder summary = new StringBuilder();
+      for (String result : RESULTS) {
+        summary.append(result).append(' ').append(analyzer.getCount(result)).append("  ");
+      }
+      System.err.println(summary.toString().trim());
+      System.err.println(String.format("%d positions in %.2f seconds, %.0f positions/second",
+                                       analyzer.getPositions(), seconds, analyzer.getPositions() / seconds));
+    }
+    catch (IOException e) {
+      System.err.println("Could not check the positions: " + e.getMessage());
+    }
+  }
+
+}
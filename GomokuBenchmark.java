@@ -0,0 +1,360 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A class to measure the speed and the memory allocation of the rule checks of GomokuSample and GomokuBoard
+ * Run with: java GomokuBenchmark [sizes=15,19,100,1000] [lengths=5,6,8,12] [positions=empty,middle,dense]
+ *           [storage=array] [warmup=3] [iterations=5] [time=200] [filter=name]
+ * Every operation is measured on every board size, length to win, and position: an "empty" board has one piece,
+ * a "middle" game has a tenth of the squares filled, and a "dense" board has more than half of them filled
+ * The storage is "array" for GomokuDenseStorage, "sparse" for GomokuSparseStorage, or "tiles" for GomokuTileStorage
+ * Each iteration runs the operation over and over for a set time, after warmup iterations that let the JIT compile it;
+ * the clock is read after batches that start at one operation and double while they are short, so a fast operation
+ * is not slowed by the clock and a slow one does not run long past the time
+ * Every operation is called through the same interface, so the numbers include the cost of that call
+ * The operations that visit every square of the board (the evaluator from scratch, copy, and new+10 moves) are
+ * only measured on sizes up to MAX_WHOLE_BOARD_SIZE, since on bigger boards they take too long to tell anything
+ * @author Noah Leibowitz
+ */
+public class GomokuBenchmark {
+
+  /** The number of squares each operation cycles through */
+  private static final int QUERIES = 4096;
+
+  /** The largest board size on which the operations that visit every square of the board are measured */
+  private static final int MAX_WHOLE_BOARD_SIZE = 100;
+
+  /** Stores a value computed from every result, so that the JIT cannot skip an operation */
+  private static long sink;
+
+  /** An interface for one operation to be measured */
+  private interface Operation {
+
+    /**
+     * Runs the operation once
+     * @param i which of the squares to use
+     * @return a value from the result of the operation
+     */
+    long run(int i);
+  }
+
+  /**
+   * Runs the benchmarks and prints one line for each of them
+   * @param args options written as name=value
+   */
+  public static void main(String[] args) {
+    int[] sizes = {15, 19, 100, 1000};
+    int[] lengths = {5, 6, 8, 12};
+    String[] positions = {"empty", "middle", "dense"};
+    String storage = "array";
+    int warmup = 3;
+    int iterations = 5;
+    long time = 200;
+    String filter = "";
+    for (String arg : args) {
+      String[] pair = arg.split("=", 2);
+      String value = pair.length > 1 ? pair[1] : "";
+      if (pair[0].equals("sizes"))
+        sizes = parseList(value);
+      else if (pair[0].equals("lengths"))
+        lengths = parseList(value);
+      else if (pair[0].equals("positions"))
+        positions = value.split(",");
+      else if (pair[0].equals("storage"))
+        storage = value;
+      else if (pair[0].equals("warmup"))
+        warmup = Integer.parseInt(value);
+      else if (pair[0].equals("iterations"))
+        iterations = Integer.parseInt(value);
+      else if (pair[0].equals("time"))
+        time = Long.parseLong(value);
+      else if (pair[0].equals("filter"))
+        filter = value;
+      else {
+        System.out.println("Unknown option " + arg);
+        return;
+      }
+    }
+    System.out.println(String.format("%-22s %6s %4s %-7s %14s %10s %12s", "operation", "size", "L", "board",
+                                     "ops/ms", "+/-", "bytes/op"));
+    for (int size : sizes) {
+      for (int length : lengths) {
+        for (String position : positions) {
+          runAll(size, length, position, storage, warmup, iterations, time, filter);
+        }
+      }
+    }
+    System.out.println("(checksum " + sink + ")");
+  }
+
+  /**
+   * Measures every operation on one board
+   * @param size the number of rows and columns
+   * @param length the exact length needed in a row to win
+   * @param position "empty", "middle", or "dense"
+   * @param storage "array", "sparse", or "tiles"
+   * @param warmup the number of iterations that are not counted
+   * @param iterations the number of iterations that are counted
+   * @param time the length of each iteration in milliseconds
+   * @param filter only operations whose names contain this are measured
+   */
+  private static void runAll(int size, int length, String position, String storage, int warmup, int iterations,
+                             long time, String filter) {
+    if (!position.equals("empty") && !position.equals("middle") && !position.equals("dense")) {
+      System.out.println("Unknown position " + position);
+      return;
+    }
+    GomokuStorage squares;
+    if (storage.equals("array"))
+      squares = new GomokuDenseStorage(size, size);
+    else if (storage.equals("sparse"))
+      squares = new GomokuSparseStorage(size, size);
+    else if (storage.equals("tiles"))
+      squares = new GomokuTileStorage();
+    else {
+      System.out.println("Unknown storage " + storage);
+      return;
+    }
+    final GomokuSample game = new GomokuSample(length, squares);
+    final GomokuBoard board = new GomokuBoard(length, size, size);
+    Random random = new Random(size * 31 + length);
+    double density = position.equals("dense") ? 0.6 : position.equals("middle") ? 0.1 : 0;
+
+    // Fills the board at random, plus one piece in the middle so that there is always a piece to check
+    fill(game, board, size / 2, size / 2, 1);
+    for (int row = 0; row < size; row++) {
+      for (int col = 0; col < size; col++) {
+        if (random.nextDouble() < density && game.isEmpty(row, col))
+          fill(game, board, row, col, 1 + random.nextInt(2));
+      }
+    }
+    if (!game.isBlackTurn())
+      game.switchTurn();
+
+    // Picks the pieces that the checks are made on, and the empty squares that pieces are placed on
+    final int[] pieceRows = new int[QUERIES];
+    final int[] pieceCols = new int[QUERIES];
+    final int[] emptyRows = new int[QUERIES];
+    final int[] emptyCols = new int[QUERIES];
+    final int[] dx = new int[QUERIES];
+    final int[] dy = new int[QUERIES];
+    int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+    pieceRows[0] = size / 2;
+    pieceCols[0] = size / 2;
+    dy[0] = 1;
+    int pieces = 1;
+    int empties = 0;
+    for (int tries = 0; (pieces < QUERIES || empties < QUERIES) && tries < 100 * QUERIES; tries++) {
+      int row = random.nextInt(size);
+      int col = random.nextInt(size);
+      if (!game.isEmpty(row, col) && pieces < QUERIES) {
+        pieceRows[pieces] = row;
+        pieceCols[pieces] = col;
+        int[] direction = directions[random.nextInt(4)];
+        dx[pieces] = direction[0];
+        dy[pieces] = direction[1];
+        pieces++;
+      }
+      else if (game.isEmpty(row, col) && empties < QUERIES) {
+        emptyRows[empties] = row;
+        emptyCols[empties] = col;
+        empties++;
+      }
+    }
+
+    // Repeats the squares that were found if the board has fewer than QUERIES of them
+    for (int i = pieces; i < QUERIES; i++) {
+      pieceRows[i] = pieceRows[i % Math.max(1, pieces)];
+      pieceCols[i] = pieceCols[i % Math.max(1, pieces)];
+      dx[i] = 0;
+      dy[i] = 1;
+    }
+    for (int i = empties; i < QUERIES; i++) {
+      emptyRows[i] = emptyRows[i % Math.max(1, empties)];
+      emptyCols[i] = emptyCols[i % Math.max(1, empties)];
+    }
+
+    List<String> names = new ArrayList<String>();
+    List<Operation> operations = new ArrayList<Operation>();
+    names.add("numberInLine");
+    operations.add(i -> game.numberInLine(pieceRows[i], pieceCols[i], dx[i], dy[i],
+                                          game.getPiece(pieceRows[i], pieceCols[i])));
+    names.add("hasWon");
+    operations.add(i -> game.hasWon(pieceRows[i], pieceCols[i]) ? 1 : 0);
+    names.add("violatesFourFour");
+    operations.add(i -> game.violatesFourFour(pieceRows[i], pieceCols[i]) ? 1 : 0);
+    names.add("violatesThreeThree");
+    operations.add(i -> game.violatesThreeThree(pieceRows[i], pieceCols[i]) ? 1 : 0);
+    names.add("setPiece+removePiece");
+    operations.add(i -> {
+      game.setPiece(emptyRows[i], emptyCols[i]);
+      game.removePiece(emptyRows[i], emptyCols[i]);
+      return game.getHash();
+    });
+    names.add("makeMove+undo");
+    operations.add(i -> {
+      game.makeMove(emptyRows[i], emptyCols[i]);
+      game.undo();
+      return game.getHash();
+    });
+    final GomokuSample evaluated = new GomokuSample(game);
+    evaluated.trackEvaluation();
+    names.add("makeMove+undo scored");
+    operations.add(i -> {
+      evaluated.makeMove(emptyRows[i], emptyCols[i]);
+      evaluated.undo();
+      return evaluated.getEvaluator().evaluate(1);
+    });
+    final GomokuSample reused = new GomokuSample(game);
+    reused.clear();
+    if (size <= MAX_WHOLE_BOARD_SIZE) {
+      names.add("evaluator from scratch");
+      operations.add(i -> new GomokuEvaluator(game).evaluate(1));
+      names.add("copy");
+      operations.add(i -> new GomokuSample(game).getHash());
+
+      // A short game on a new board against the same game on one board cleared each time
+      names.add("new+10 moves");
+      operations.add(i -> playShortGame(new GomokuSample(length, reused.getStorage().copy()), i, emptyRows,
+                                        emptyCols));
+    }
+    names.add("clear+10 moves");
+    operations.add(i -> {
+      reused.clear();
+      return playShortGame(reused, i, emptyRows, emptyCols);
+    });
+    names.add("board.hasFiveInLine");
+    operations.add(i -> board.hasFiveInLine(pieceRows[i], pieceCols[i]) ? 1 : 0);
+    names.add("board.isOpenThree");
+    operations.add(i -> board.isOpenThree(pieceRows[i], pieceCols[i], dx[i], dy[i],
+                                          board.getPiece(pieceRows[i], pieceCols[i])) ? 1 : 0);
+    for (int k = 0; k < operations.size(); k++) {
+      if (names.get(k).contains(filter))
+        measure(names.get(k), size, length, position, operations.get(k), warmup, iterations, time);
+    }
+  }
+
+  /**
+   * Plays 10 moves on the empty squares of the board, starting with one of them
+   * @param game the board
+   * @param i the number of the first empty square
+   * @param emptyRows the rows of the empty squares
+   * @param emptyCols the columns of the empty squares
+   * @return the hash of the board, so that the moves cannot be skipped
+   */
+  private static long playShortGame(GomokuSample game, int i, int[] emptyRows, int[] emptyCols) {
+    for (int j = 0; j < 10; j++) {
+      int k = (i + j) % emptyRows.length;
+      game.makeMove(emptyRows[k], emptyCols[k]);
+    }
+    return game.getHash();
+  }
+
+  /**
+   * Places a piece on both boards
+   * @param game the GomokuSample board
+   * @param board the GomokuBoard board
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param color the color of the piece (1 for black or 2 for white)
+   */
+  private static void fill(GomokuSample game, GomokuBoard board, int row, int col, int color) {
+    if (game.isBlackTurn() != (color == 1))
+      game.switchTurn();
+    game.setPiece(row, col);
+    board.setPiece(row, col, color);
+  }
+
+  /**
+   * Measures one operation and prints its speed and allocation
+   * @param name the name of the operation
+   * @param size the number of rows and columns
+   * @param length the exact length needed in a row to win
+   * @param position the name of the position
+   * @param operation the operation
+   * @param warmup the number of iterations that are not counted
+   * @param iterations the number of iterations that are counted
+   * @param time the length of each iteration in milliseconds
+   */
+  private static void measure(String name, int size, int length, String position, Operation operation,
+                              int warmup, int iterations, long time) {
+    double[] rates = new double[iterations];
+    long operations = 0;
+    long bytes = 0;
+    boolean counted = true;
+    int batch = 1;
+    int next = 0;
+    for (int iteration = -warmup; iteration < iterations; iteration++) {
+      long allocated = allocatedBytes();
+      long count = 0;
+      long start = System.nanoTime();
+      long end = start + time * 1000000;
+      long now = start;
+      do {
+        long batchStart = now;
+        long result = 0;
+        for (int j = 0; j < batch; j++) {
+          result += operation.run(next);
+          next = (next + 1) % QUERIES;
+        }
+        sink += result;
+        count += batch;
+        now = System.nanoTime();
+
+        // Grows the batch while it takes less than a hundredth of the time of an iteration
+        if (batch < QUERIES && (now - batchStart) * 100 < time * 1000000)
+          batch *= 2;
+      } while (now < end);
+      if (iteration >= 0) {
+        long after = allocatedBytes();
+        rates[iteration] = count * 1e6 / (now - start);
+        operations += count;
+        if (allocated < 0 || after < 0)
+          counted = false;
+        else
+          bytes += after - allocated;
+      }
+    }
+
+    // The mean and the standard deviation of the iterations
+    double mean = 0;
+    for (double rate : rates) {
+      mean += rate / iterations;
+    }
+    double variance = 0;
+    for (double rate : rates) {
+      variance += (rate - mean) * (rate - mean) / Math.max(1, iterations - 1);
+    }
+    String allocation = !counted ? "n/a" : String.format("%.2f", (double) bytes / Math.max(1, operations));
+    System.out.println(String.format("%-22s %6d %4d %-7s %14.1f %10.1f %12s", name, size, length, position, mean,
+                                     Math.sqrt(variance), allocation));
+  }
+
+  /**
+   * Gets the number of bytes allocated by this thread so far, if the JVM can count them
+   * @return the number of bytes, or -1 if the JVM cannot count them
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean)
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    return -1;
+  }
+
+  /**
+   * Reads a list of numbers separated by commas
+   * @param text the list
+   * @return the numbers
+   */
+  private static int[] parseList(String text) {
+    String[] parts = text.split(",");
+    int[] numbers = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      numbers[i] = Integer.parseInt(parts[i].trim());
+    }
+    return numbers;
+  }
+
+}
@@ -0,0 +1,425 @@
+/**
+ * A class to represent the logic of the game Gomoku using bitboards
+ * Has the same rules as GomokuSample, but each color is stored as one packed array of longs
+ * Every line of the board (rows, columns, and both diagonals) is stored as a run of bits followed by an empty bit,
+ * so the length of a line of pieces is found by shifting and masking whole words instead of visiting each square
+ * @author Noah Leibowitz
+ */
+public class GomokuBitBoard {
+
+  /** The orientation of the lines that go across a row (the column changes) */
+  public static final int ROW = 0;
+
+  /** The orientation of the lines that go down a column (the row changes) */
+  public static final int COLUMN = 1;
+
+  /** The orientation of the diagonal lines where the row and the column both increase */
+  public static final int DIAGONAL = 2;
+
+  /** The orientation of the diagonal lines where the row increases and the column decreases */
+  public static final int ANTI_DIAGONAL = 3;
+
+  /** Stores the change in the row of one step along each orientation */
+  private static final int[] DX = {0, 1, 1, 1};
+
+  /** Stores the change in the column of one step along each orientation */
+  private static final int[] DY = {1, 0, 1, -1};
+
+  /** Stores the bits of the black pieces ("1") in all four orientations */
+  private long[] black;
+
+  /** Stores the bits of the white pieces ("2") in all four orientations */
+  private long[] white;
+
+  /** Stores the bit where each orientation starts */
+  private int[] base = new int[4];
+
+  /** Stores the number of bits used by one line of each orientation, including its empty separator bit */
+  private int[] stride = new int[4];
+
+  /** Stores the number of rows of the board */
+  private int rows;
+
+  /** Stores the number of columns of the board */
+  private int cols;
+
+  /** Stores whether it is the black or white turn */
+  private boolean blackTurn = true;
+
+  /** Stores the exact length needed in a row to win */
+  private int lengthToWin;
+
+  /**
+   * Constructor that initializes the fields
+   * @param lengthToWin the exact length needed in a row to win
+   * @param rows the row locations of the board
+   * @param cols the column locations of the board
+   */
+  public GomokuBitBoard(int lengthToWin, int rows, int cols) {
+    this.lengthToWin = lengthToWin;
+    this.rows = rows;
+    this.cols = cols;
+
+    // Each line is one bit longer than the longest line of its orientation so that lines never touch
+    stride[ROW] = cols + 1;
+    stride[COLUMN] = rows + 1;
+    stride[DIAGONAL] = Math.min(rows, cols) + 1;
+    stride[ANTI_DIAGONAL] = Math.min(rows, cols) + 1;
+    base[ROW] = 0;
+    base[COLUMN] = base[ROW] + rows * stride[ROW];
+    base[DIAGONAL] = base[COLUMN] + cols * stride[COLUMN];
+    base[ANTI_DIAGONAL] = base[DIAGONAL] + (rows + cols - 1) * stride[DIAGONAL];
+    int bits = base[ANTI_DIAGONAL] + (rows + cols - 1) * stride[ANTI_DIAGONAL];
+    black = new long[(bits + 63) / 64];
+    white = new long[(bits + 63) / 64];
+  }
+
+  /**
+   * Constructor that initializes the fields
+   * The length to win is default set to 5
+   * @param rows the row locations of the board
+   * @param cols the column locations of the board
+   */
+  public GomokuBitBoard(int rows, int cols) {
+    this(5, rows, cols);
+  }
+
+  /**
+   * Constructor that initializes the fields
+   * The board size is set to the default 19x19 (indices 0-18)
+   * @param lengthToWin the exact length needed in a row to win
+   */
+  public GomokuBitBoard(int lengthToWin) {
+    this(lengthToWin, 19, 19);
+  }
+
+  /**
+   * Default constructor that takes no inputs
+   * The board size is set to the default 19x19
+   * The length to win is set to 5
+   */
+  public GomokuBitBoard() {
+    this(5, 19, 19);
+  }
+
+  /**
+   * Set the "color" of the piece
+   * "Black" is assigned to "1" and "white" is assigned to "2"
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the color (black or white) is placed, otherwise false if empty
+   */
+  public boolean setPiece(int row, int col) {
+    if (!isValid(row, col))
+      throw new ArrayIndexOutOfBoundsException("Square " + row + "," + col + " is not on the board");
+    if (getPiece(row, col) != 0)
+      return false;
+    long[] bits = blackTurn ? black : white;
+    for (int orientation = ROW; orientation <= ANTI_DIAGONAL; orientation++) {
+      int index = bitIndex(orientation, row, col);
+      bits[index >>> 6] |= 1L << index;
+    }
+    return true;
+  }
+
+  /**
+   * Gets the "color" of the piece at a location
+   * @param row the row position of the location
+   * @param col the column position of the location
+   * @return 1 for black, 2 for white, or 0 if empty
+   */
+  public int getPiece(int row, int col) {
+    int index = bitIndex(ROW, row, col);
+    if ((black[index >>> 6] & (1L << index)) != 0)
+      return 1;
+    if ((white[index >>> 6] & (1L << index)) != 0)
+      return 2;
+    return 0;
+  }
+
+  /**
+   * Counts the number of pieces of the same color (1 or 2) in a row
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param dx the change in horizontal position
+   * @param dy the change in the vertical position
+   * @param color the color of this piece to be placed
+   * @return the number of the same colored pieces that appear in a row (horizontally, vertically, or diagonally)
+   */
+  public int numberInLine(int row, int col, int dx, int dy, int color) {
+
+    // Stores the first square that is counted
+    int x = row + dx;
+    int y = col + dy;
+    if (!isValid(x, y))
+      return 0;
+
+    // Stores the orientation of the line being counted, or -1 if the step is not one square
+    int orientation = orientation(dx, dy);
+    if (orientation < 0 || (color != 1 && color != 2))
+      return scanInLine(x, y, dx, dy, color);
+    long[] bits = color == 1 ? black : white;
+
+    // The row and diagonals are stored with the row increasing, except for the row orientation
+    boolean forward = orientation == ROW ? dy > 0 : dx > 0;
+    if (forward)
+      return runForward(bits, bitIndex(orientation, x, y));
+    return runBackward(bits, bitIndex(orientation, x, y));
+  }
+
+  /**
+   * Determines if the amount in a row (horizontal, vertical, or diagonal) is exactly equal to the length needed to win
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the player has won, otherwise false
+   */
+  public boolean hasWon(int row, int col) {
+
+    /* Stores the color on the board
+     * Correctly assumes that the color has to be the same to win */
+    int color = getPiece(row, col);
+    for (int orientation = ROW; orientation <= ANTI_DIAGONAL; orientation++) {
+      if (countInLine(row, col, orientation, 0, color) == lengthToWin)
+        return true;
+    }
+    return false;
+  }
+
+  /** Switches the color of the piece to be placed */
+  public void switchTurn() {
+    blackTurn = !blackTurn;
+  }
+
+  /**
+   * Checks if this piece to be placed is the color black
+   * @return true if it is black's turn or false if it is white's turn
+   */
+  public boolean isBlackTurn() {
+    return blackTurn;
+  }
+
+  /**
+   * Getter method for rows
+   * @return the amount of rows on the board
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Getter method for cols
+   * @return the amount of cols on the board
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Getter method for lengthToWin
+   * @return the exact length needed in a row to win
+   */
+  public int getLengthToWin() {
+    return lengthToWin;
+  }
+
+  /**
+   * Checks if the board is "empty"
+   * "Empty" is assigned the int 0
+   * @param row the row position of the location
+   * @param col the column position of the location
+   * @return true if empty, otherwise false
+   */
+  public boolean isEmpty(int row, int col) {
+    return getPiece(row, col) == 0;
+  }
+
+  /**
+   * Checks whether a location is on the board
+   * @param row the row position of the location
+   * @param col the column position of the location
+   * @return true if the location is on the board, otherwise false
+   */
+  public boolean isValid(int row, int col) {
+    return row >= 0 && row < rows && col >= 0 && col < cols;
+  }
+
+  /**
+   * Checks if the Four-Four rule is violated
+   * Uses the same counting as GomokuSample so that both boards agree on every move
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if violated, otherwise false
+   */
+  public boolean violatesFourFour(int row, int col) {
+
+    // Stores the color on the board
+    int color = getPiece(row, col);
+
+    /* GomokuSample starts counting one square past each neighbor, so the neighbors are skipped here too
+     * Both directions of a line give the same count, so each line is only checked once */
+    for (int orientation = ROW; orientation <= ANTI_DIAGONAL; orientation++) {
+      if (countInLine(row, col, orientation, 1, color) >= 4)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Checks if the Three-Three rule is violated
+   * Uses the same counting as GomokuSample so that both boards agree on every move
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if violated, otherwise false
+   */
+  public boolean violatesThreeThree(int row, int col) {
+
+    // Stores the color on the board
+    int color = getPiece(row, col);
+
+    /* GomokuSample counts a group of three once from each direction of its line,
+     * so a single line of three is already two groups */
+    for (int orientation = ROW; orientation <= ANTI_DIAGONAL; orientation++) {
+      if (countInLine(row, col, orientation, 1, color) == 3)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Counts the pieces in a line through a square, including the square itself
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param orientation the orientation of the line
+   * @param skip the number of squares next to this square on each side that are not counted
+   * @param color the color of the pieces to count
+   * @return one plus the number of pieces of the color in a row on both sides
+   */
+  private int countInLine(int row, int col, int orientation, int skip, int color) {
+    int dx = DX[orientation];
+    int dy = DY[orientation];
+    if (color != 1 && color != 2) {
+      return 1 + numberInLine(row + skip * dx, col + skip * dy, dx, dy, color)
+        + numberInLine(row - skip * dx, col - skip * dy, -dx, -dy, color);
+    }
+    long[] bits = color == 1 ? black : white;
+    int index = bitIndex(orientation, row, col);
+
+    // Stores the count, which only needs to check the skipped squares are on the board since the lines are separated
+    int count = 1;
+    if (skip == 0 || isValid(row + dx, col + dy))
+      count += runForward(bits, index + 1 + skip);
+    if (skip == 0 || isValid(row - dx, col - dy))
+      count += runBackward(bits, index - 1 - skip);
+    return count;
+  }
+
+  /**
+   * Finds the orientation of a step of one square
+   * @param dx the change in the row
+   * @param dy the change in the column
+   * @return the orientation, or -1 if the step is not one square in a line
+   */
+  private static int orientation(int dx, int dy) {
+    if (dx == 0 && (dy == 1 || dy == -1))
+      return ROW;
+    if (dy == 0 && (dx == 1 || dx == -1))
+      return COLUMN;
+    if ((dx == 1 && dy == 1) || (dx == -1 && dy == -1))
+      return DIAGONAL;
+    if ((dx == 1 && dy == -1) || (dx == -1 && dy == 1))
+      return ANTI_DIAGONAL;
+    return -1;
+  }
+
+  /**
+   * Finds the bit that stores a square in one orientation
+   * @param orientation the orientation of the line
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the index of the bit
+   */
+  private int bitIndex(int orientation, int row, int col) {
+    switch (orientation) {
+      case ROW:
+        return base[ROW] + row * stride[ROW] + col;
+      case COLUMN:
+        return base[COLUMN] + col * stride[COLUMN] + row;
+      case DIAGONAL:
+        return base[DIAGONAL] + (col - row + rows - 1) * stride[DIAGONAL] + Math.min(row, col);
+      default:
+        return base[ANTI_DIAGONAL] + (row + col) * stride[ANTI_DIAGONAL] + Math.min(row, cols - 1 - col);
+    }
+  }
+
+  /**
+   * Counts the set bits in a row starting at a bit and moving towards higher bits
+   * Always stops at the empty bit at the end of the line
+   * @param bits the bits of one color
+   * @param index the first bit to count
+   * @return the number of set bits in a row
+   */
+  private static int runForward(long[] bits, int index) {
+    int count = 0;
+    int word = index >>> 6;
+    int shift = index & 63;
+    while (true) {
+
+      // The bits past the end of the word shift in as zeros, so the run can never go past the word
+      int run = Long.numberOfTrailingZeros(~(bits[word] >>> shift));
+      count += run;
+      if (run < 64 - shift)
+        return count;
+      word++;
+      shift = 0;
+    }
+  }
+
+  /**
+   * Counts the set bits in a row starting at a bit and moving towards lower bits
+   * Always stops at the empty bit at the start of the line
+   * @param bits the bits of one color
+   * @param index the first bit to count
+   * @return the number of set bits in a row
+   */
+  private static int runBackward(long[] bits, int index) {
+    if (index < 0)
+      return 0;
+    int count = 0;
+    int word = index >>> 6;
+    int shift = 63 - (index & 63);
+    while (word >= 0) {
+      int run = Long.numberOfLeadingZeros(~(bits[word] << shift));
+      count += run;
+      if (run < 64 - shift)
+        return count;
+      word--;
+      shift = 0;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the pieces of a color in a row one square at a time
+   * Used for steps longer than one square and for counting empty squares
+   * @param row the row position of the first square to count
+   * @param col the column position of the first square to count
+   * @param dx the change in the row
+   * @param dy the change in the column
+   * @param color the color to count
+   * @return the number of squares in a row with the color
+   */
+  private int scanInLine(int row, int col, int dx, int dy, int color) {
+    int count = 0;
+    int x = row;
+    int y = col;
+    while (isValid(x, y) && getPiece(x, y) == color) {
+      count++;
+      if (dx == 0 && dy == 0)
+        return count;
+      x += dx;
+      y += dy;
+    }
+    return count;
+  }
+
+}
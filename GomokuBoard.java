@@ -0,0 +1,328 @@
+import java.util.Arrays;
+
+/**
+ * A class to represent the board of the Gomoku GUI without any JavaFX components
+ * The Gomoku class keeps this board in sync with its buttons and checks all of its rules here
+ * "Empty" is assigned to "0", "black" is assigned to "1" and "white" is assigned to "2"
+ * @author Noah Leibowitz
+ */
+public class GomokuBoard {
+
+  /** Stores a two dimensional array of ints to model a board */
+  private int[][] board;
+
+  /** Stores the number of rows on the board */
+  private int rows;
+
+  /** Stores the number of columns on the board */
+  private int cols;
+
+  /** Stores the exact length needed in a row to win */
+  private int lengthToWin;
+
+  /** Stores the table used to classify the shape of a line of pieces */
+  private GomokuPatterns patterns;
+
+  /** Stores the squares that have pieces, each as row * cols + col, so that clear only visits them */
+  private int[] stones = new int[64];
+
+  /** Stores the number of squares that have pieces */
+  private int stoneCount;
+
+  /**
+   * Constructor that initializes the fields
+   * @param lengthToWin the exact length needed in a row to win
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   */
+  public GomokuBoard(int lengthToWin, int rows, int cols) {
+    board = new int[rows][cols];
+    this.rows = rows;
+    this.cols = cols;
+    this.lengthToWin = lengthToWin;
+    patterns = GomokuPatterns.forLength(lengthToWin);
+  }
+
+  /**
+   * Getter method for rows
+   * @return the amount of rows on the board
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Getter method for cols
+   * @return the amount of cols on the board
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Getter method for lengthToWin
+   * @return the exact length needed in a row to win
+   */
+  public int getLengthToWin() {
+    return lengthToWin;
+  }
+
+  /**
+   * Places a piece on the board
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param color the color of the piece (1 for black or 2 for white)
+   */
+  public void setPiece(int row, int col, int color) {
+    if (board[row][col] == 0) {
+      if (stoneCount == stones.length)
+        stones = Arrays.copyOf(stones, stoneCount * 2);
+      stones[stoneCount++] = row * cols + col;
+    }
+    board[row][col] = color;
+  }
+
+  /**
+   * Removes the piece from a square
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   */
+  public void removePiece(int row, int col) {
+    if (board[row][col] == 0)
+      return;
+    board[row][col] = 0;
+
+    // The piece taken back is nearly always the last one placed, so the search from the end is short
+    int square = row * cols + col;
+    int i = stoneCount - 1;
+    while (stones[i] != square) {
+      i--;
+    }
+    stones[i] = stones[--stoneCount];
+  }
+
+  /**
+   * Gets the number of pieces on the board
+   * @return the number of squares that are not empty
+   */
+  public int getStoneCount() {
+    return stoneCount;
+  }
+
+  /**
+   * Gets the row of a square that has a piece
+   * @param i the number of the piece, from 0 to getStoneCount() - 1, in no particular order
+   * @return the row position of the piece
+   */
+  public int getStoneRow(int i) {
+    return stones[i] / cols;
+  }
+
+  /**
+   * Gets the column of a square that has a piece
+   * @param i the number of the piece, from 0 to getStoneCount() - 1, in no particular order
+   * @return the column position of the piece
+   */
+  public int getStoneCol(int i) {
+    return stones[i] % cols;
+  }
+
+  /**
+   * Gets the color of the piece on a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return 1 for black, 2 for white, or 0 if empty
+   */
+  public int getPiece(int row, int col) {
+    return board[row][col];
+  }
+
+  /**
+   * Checks if a square is empty
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return true if empty, otherwise false
+   */
+  public boolean isEmpty(int row, int col) {
+    return board[row][col] == 0;
+  }
+
+  /**
+   * Checks whether a square is on the board
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return true if the square is on the board, otherwise false
+   */
+  public boolean isValid(int row, int col) {
+    return row >= 0 && row < rows && col >= 0 && col < cols;
+  }
+
+  /** Removes every piece from the board, visiting only the squares that have pieces */
+  public void clear() {
+    for (int i = 0; i < stoneCount; i++) {
+      board[stones[i] / cols][stones[i] % cols] = 0;
+    }
+    stoneCount = 0;
+  }
+
+  /**
+   * Counts the contiguous pieces of a color starting next to a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param dx the change in the row
+   * @param dy the change in the column
+   * @param color the color of the pieces to count
+   * @return the number of pieces in a row
+   */
+  public int numberInLine(int row, int col, int dx, int dy, int color) {
+
+    // stores the number of contiguous pieces in a given direction
+    int count = 0;
+    int x = row + dx;
+    int y = col + dy;
+    while (isValid(x, y) && board[x][y] == color) {
+      count++;
+      x += dx;
+      y += dy;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the length of the line of pieces through a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param dx the change in the row along the line
+   * @param dy the change in the column along the line
+   * @return the number of pieces in the line including this square
+   */
+  public int lineLength(int row, int col, int dx, int dy) {
+    int color = board[row][col];
+    return numberInLine(row, col, dx, dy, color) + numberInLine(row, col, -dx, -dy, color) + 1;
+  }
+
+  /**
+   * Checks if the piece on a square is part of exactly lengthToWin pieces in a row
+   * More than lengthToWin is not a win
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the piece makes exactly lengthToWin in a row, otherwise false
+   */
+  public boolean hasFiveInLine(int row, int col) {
+    if (!GomokuMetrics.ENABLED)
+      return findFiveInLine(row, col);
+    long start = System.nanoTime();
+    boolean result = findFiveInLine(row, col);
+    GomokuMetrics.HAS_FIVE_IN_LINE.record(start);
+    return result;
+  }
+
+  /**
+   * Checks for exactly lengthToWin in a row through a piece, without recording the time it took
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the piece makes exactly lengthToWin in a row, otherwise false
+   */
+  private boolean findFiveInLine(int row, int col) {
+    return lineLength(row, col, 1, 0) == lengthToWin || lineLength(row, col, 0, 1) == lengthToWin
+      || lineLength(row, col, 1, 1) == lengthToWin || lineLength(row, col, 1, -1) == lengthToWin;
+  }
+
+  /**
+   * Counts the lines through a piece that are one short of lengthToWin
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return the number of lines (0 to 4) of length lengthToWin - 1
+   */
+  public int countFours(int row, int col) {
+    if (!GomokuMetrics.ENABLED)
+      return findFours(row, col);
+    long start = System.nanoTime();
+    int result = findFours(row, col);
+    GomokuMetrics.VIOLATES_FOUR_FOUR.record(start);
+    return result;
+  }
+
+  /**
+   * Counts the lines through a piece that are one short of lengthToWin, without recording the time it took
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return the number of lines (0 to 4) of length lengthToWin - 1
+   */
+  private int findFours(int row, int col) {
+    int count = 0;
+    if (lineLength(row, col, 1, 0) == lengthToWin - 1)
+      count++;
+    if (lineLength(row, col, 0, 1) == lengthToWin - 1)
+      count++;
+    if (lineLength(row, col, 1, 1) == lengthToWin - 1)
+      count++;
+    if (lineLength(row, col, 1, -1) == lengthToWin - 1)
+      count++;
+    return count;
+  }
+
+  /**
+   * Counts the lines through a piece that are open threes
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return the number of lines (0 to 4) that are open threes
+   */
+  public int countOpenThrees(int row, int col) {
+    if (!GomokuMetrics.ENABLED)
+      return findOpenThrees(row, col);
+    long start = System.nanoTime();
+    int result = findOpenThrees(row, col);
+    GomokuMetrics.VIOLATES_THREE_THREE.record(start);
+    return result;
+  }
+
+  /**
+   * Counts the lines through a piece that are open threes, without recording the time it took
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return the number of lines (0 to 4) that are open threes
+   */
+  private int findOpenThrees(int row, int col) {
+    int color = board[row][col];
+    int count = 0;
+    if (isOpenThree(row, col, 1, 0, color))
+      count++;
+    if (isOpenThree(row, col, 0, 1, color))
+      count++;
+    if (isOpenThree(row, col, 1, 1, color))
+      count++;
+    if (isOpenThree(row, col, 1, -1, color))
+      count++;
+    return count;
+  }
+
+  /**
+   * Determines if the line through a piece is an open three, where one more move makes an open four
+   * Broken threes such as X_XX count as open threes
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param dx the change in the row along the line
+   * @param dy the change in the column along the line
+   * @param color the color of the piece
+   * @return true if the line is an open three, otherwise false
+   */
+  public boolean isOpenThree(int row, int col, int dx, int dy, int color) {
+    if (board[row][col] != color)
+      return false;
+    return GomokuPatterns.isLiveThree(getShape(row, col, dx, dy));
+  }
+
+  /**
+   * Classifies the shape of the line through a piece
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param dx the change in the row along the line
+   * @param dy the change in the column along the line
+   * @return the shape, one of the constants of GomokuPatterns
+   */
+  public int getShape(int row, int col, int dx, int dy) {
+    return patterns.classify(board, row, col, dx, dy);
+  }
+
+}
@@ -0,0 +1,366 @@
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import java.util.Arrays;
+
+/**
+ * A class to draw a Gomoku board on one Canvas instead of one Button for each square
+ * The canvas is only as big as the part of the board that can be seen, so a board of any size opens at once
+ * Squares are drawn with the same look as the buttons: a green square with round corners and a circle for a piece
+ * A move only marks its own square as dirty, and the dirty squares are drawn on the next frame; scrolling or zooming
+ * draws the whole view again
+ * Scroll with the mouse wheel (hold shift to scroll sideways), the arrow keys, or by dragging the board
+ * Zoom with ctrl and the mouse wheel or with the + and - keys
+ * @author Noah Leibowitz
+ */
+public class GomokuCanvasView extends Pane {
+
+  /** The size of a square on the button board, which the look of every square is scaled from */
+  private static final double BUTTON_SIZE = 50;
+
+  /** The radius of a piece on the button board */
+  private static final double PIECE_RADIUS = 16;
+
+  /** The radius of the corners of a square on the button board */
+  private static final double CORNER_RADIUS = 5;
+
+  /** The smallest size of a square in pixels */
+  public static final double MIN_CELL_SIZE = 2;
+
+  /** The largest size of a square in pixels */
+  public static final double MAX_CELL_SIZE = 100;
+
+  /** The number of pixels the mouse must move while pressed before the press is a drag instead of a click */
+  private static final double DRAG_DISTANCE = 4;
+
+  /** The most dirty squares kept before the whole view is drawn again instead */
+  private static final int MAX_DIRTY = 4096;
+
+  /** An interface for the code that plays a move when a square is clicked */
+  public interface CellListener {
+
+    /**
+     * Called when a square is clicked
+     * @param row the row position of the square
+     * @param col the column position of the square
+     */
+    void cellClicked(int row, int col);
+  }
+
+  /** Stores the board that is drawn */
+  private GomokuBoard board;
+
+  /** Stores the canvas the board is drawn on */
+  private Canvas canvas = new Canvas();
+
+  /** Stores the code told about clicks */
+  private CellListener listener;
+
+  /** Stores the size of a square in pixels */
+  private double cellSize;
+
+  /** Stores the number of pixels of the board to the left of the view */
+  private double scrollX;
+
+  /** Stores the number of pixels of the board above the view */
+  private double scrollY;
+
+  /** Stores the rows of the squares to draw on the next frame */
+  private int[] dirtyRows = new int[64];
+
+  /** Stores the columns of the squares to draw on the next frame */
+  private int[] dirtyCols = new int[64];
+
+  /** Stores the number of dirty squares */
+  private int dirtyCount;
+
+  /** Stores whether the whole view must be drawn on the next frame */
+  private boolean repaintAll = true;
+
+  /** Stores where the mouse was pressed, or where it was last dragged to */
+  private double pressX;
+
+  /** Stores where the mouse was pressed, or where it was last dragged to */
+  private double pressY;
+
+  /** Stores whether the mouse has been dragged since it was pressed */
+  private boolean dragged;
+
+  /**
+   * Constructor that shows the top left corner of the board
+   * @param board the board to draw
+   * @param listener the code told when a square is clicked
+   */
+  public GomokuCanvasView(GomokuBoard board, CellListener listener) {
+    this.board = board;
+    this.listener = listener;
+    cellSize = initialCellSize(board.getRows(), board.getCols());
+    getChildren().add(canvas);
+    setFocusTraversable(true);
+    setPrefSize(Math.min(board.getCols() * cellSize, 1000), Math.min(board.getRows() * cellSize, 800));
+    setOnMousePressed(this::mousePressed);
+    setOnMouseDragged(this::mouseDragged);
+    setOnMouseReleased(this::mouseReleased);
+    setOnScroll(this::scrolled);
+    setOnKeyPressed(this::keyPressed);
+
+    // Draws whatever changed once a frame
+    new AnimationTimer() {
+      public void handle(long now) {
+        paint();
+      }
+    }.start();
+  }
+
+  /**
+   * Chooses the size of a square so that a board fits in about 800 pixels, but no bigger than a button
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @return the size of a square in pixels
+   */
+  public static double initialCellSize(int rows, int cols) {
+    return Math.max(8, Math.min(BUTTON_SIZE, Math.floor(800.0 / Math.max(rows, cols))));
+  }
+
+  /**
+   * Getter method for the size of a square
+   * @return the size of a square in pixels
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Marks a square to be drawn again on the next frame, after a piece is placed or removed
+   * @param row the row position of the square
+   * @param col the column position of the square
+   */
+  public void markDirty(int row, int col) {
+    if (repaintAll)
+      return;
+    if (dirtyCount == MAX_DIRTY) {
+      repaintAll();
+      return;
+    }
+    if (dirtyCount == dirtyRows.length) {
+      dirtyRows = Arrays.copyOf(dirtyRows, dirtyCount * 2);
+      dirtyCols = Arrays.copyOf(dirtyCols, dirtyCount * 2);
+    }
+    dirtyRows[dirtyCount] = row;
+    dirtyCols[dirtyCount] = col;
+    dirtyCount++;
+  }
+
+  /** Marks the whole view to be drawn again on the next frame */
+  public void repaintAll() {
+    repaintAll = true;
+    dirtyCount = 0;
+  }
+
+  /**
+   * Finds the row of the square under a point of the view
+   * @param y the vertical position of the point in the view
+   * @return the row, which may be off the board
+   */
+  public int rowAt(double y) {
+    return (int) Math.floor((y + scrollY) / cellSize);
+  }
+
+  /**
+   * Finds the column of the square under a point of the view
+   * @param x the horizontal position of the point in the view
+   * @return the column, which may be off the board
+   */
+  public int colAt(double x) {
+    return (int) Math.floor((x + scrollX) / cellSize);
+  }
+
+  /**
+   * Moves the view across the board
+   * @param dx the number of pixels to move right
+   * @param dy the number of pixels to move down
+   */
+  public void scrollBy(double dx, double dy) {
+    scrollX += dx;
+    scrollY += dy;
+    clampScroll();
+    repaintAll();
+  }
+
+  /**
+   * Zooms the view in or out, keeping the square under a point of the view in the same place
+   * @param factor how many times bigger to make the squares
+   * @param x the horizontal position of the point in the view
+   * @param y the vertical position of the point in the view
+   */
+  public void zoom(double factor, double x, double y) {
+    double size = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, cellSize * factor));
+    scrollX = (scrollX + x) * size / cellSize - x;
+    scrollY = (scrollY + y) * size / cellSize - y;
+    cellSize = size;
+    clampScroll();
+    repaintAll();
+  }
+
+  /** Keeps the view on the board */
+  private void clampScroll() {
+    scrollX = Math.max(0, Math.min(scrollX, board.getCols() * cellSize - getWidth()));
+    scrollY = Math.max(0, Math.min(scrollY, board.getRows() * cellSize - getHeight()));
+  }
+
+  /** Makes the canvas the size of the view when the window is resized */
+  protected void layoutChildren() {
+    if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+      canvas.setWidth(getWidth());
+      canvas.setHeight(getHeight());
+      clampScroll();
+      repaintAll();
+    }
+  }
+
+  /** Draws the whole view if it has changed, otherwise only the dirty squares */
+  private void paint() {
+    GraphicsContext g = canvas.getGraphicsContext2D();
+    if (repaintAll) {
+      repaintAll = false;
+      g.setFill(Color.WHITE);
+      g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+      int lastRow = Math.min(board.getRows() - 1, rowAt(canvas.getHeight()));
+      int lastCol = Math.min(board.getCols() - 1, colAt(canvas.getWidth()));
+      for (int row = Math.max(0, rowAt(0)); row <= lastRow; row++) {
+        for (int col = Math.max(0, colAt(0)); col <= lastCol; col++) {
+          paintCell(g, row, col);
+        }
+      }
+    }
+    else {
+      for (int i = 0; i < dirtyCount; i++) {
+        paintCell(g, dirtyRows[i], dirtyCols[i]);
+      }
+    }
+    dirtyCount = 0;
+  }
+
+  /**
+   * Draws one square and its piece
+   * @param g the graphics of the canvas
+   * @param row the row position of the square
+   * @param col the column position of the square
+   */
+  private void paintCell(GraphicsContext g, int row, int col) {
+    double x = col * cellSize - scrollX;
+    double y = row * cellSize - scrollY;
+    if (x + cellSize <= 0 || y + cellSize <= 0 || x >= canvas.getWidth() || y >= canvas.getHeight())
+      return;
+    double scale = cellSize / BUTTON_SIZE;
+    g.setFill(Color.WHITE);
+    g.fillRect(x, y, cellSize, cellSize);
+    g.setFill(Color.GREEN);
+
+    // Small squares are drawn without the gap and round corners, which would not show anyway
+    if (cellSize >= 8) {
+      double arc = 2 * CORNER_RADIUS * scale;
+      g.fillRoundRect(x + 1, y + 1, cellSize - 2, cellSize - 2, arc, arc);
+    }
+    else
+      g.fillRect(x, y, cellSize, cellSize);
+    int color = board.getPiece(row, col);
+    if (color != 0) {
+      double radius = PIECE_RADIUS * scale;
+      g.setFill(color == 1 ? Color.BLACK : Color.WHITE);
+      g.fillOval(x + cellSize / 2 - radius, y + cellSize / 2 - radius, 2 * radius, 2 * radius);
+    }
+  }
+
+  /**
+   * Remembers where the mouse was pressed
+   * @param e the mouse event
+   */
+  private void mousePressed(MouseEvent e) {
+    requestFocus();
+    pressX = e.getX();
+    pressY = e.getY();
+    dragged = false;
+  }
+
+  /**
+   * Drags the board once the mouse has moved far enough
+   * @param e the mouse event
+   */
+  private void mouseDragged(MouseEvent e) {
+    if (!dragged && Math.abs(e.getX() - pressX) < DRAG_DISTANCE && Math.abs(e.getY() - pressY) < DRAG_DISTANCE)
+      return;
+    dragged = true;
+    scrollBy(pressX - e.getX(), pressY - e.getY());
+    pressX = e.getX();
+    pressY = e.getY();
+  }
+
+  /**
+   * Tells the listener about a click that was not a drag
+   * @param e the mouse event
+   */
+  private void mouseReleased(MouseEvent e) {
+    if (dragged || e.getButton() != MouseButton.PRIMARY)
+      return;
+    int row = rowAt(e.getY());
+    int col = colAt(e.getX());
+    if (board.isValid(row, col))
+      listener.cellClicked(row, col);
+  }
+
+  /**
+   * Scrolls the view, or zooms it if ctrl is held
+   * @param e the scroll event
+   */
+  private void scrolled(ScrollEvent e) {
+    if (e.isControlDown())
+      zoom(Math.pow(1.1, e.getDeltaY() / 40), e.getX(), e.getY());
+    else if (e.isShiftDown() && e.getDeltaX() == 0)
+      scrollBy(-e.getDeltaY(), 0);
+    else
+      scrollBy(-e.getDeltaX(), -e.getDeltaY());
+    e.consume();
+  }
+
+  /**
+   * Scrolls the view with the arrow keys and zooms it with + and -
+   * @param e the key event
+   */
+  private void keyPressed(KeyEvent e) {
+    double step = 3 * cellSize;
+    switch (e.getCode()) {
+      case LEFT:
+        scrollBy(-step, 0);
+        break;
+      case RIGHT:
+        scrollBy(step, 0);
+        break;
+      case UP:
+        scrollBy(0, -step);
+        break;
+      case DOWN:
+        scrollBy(0, step);
+        break;
+      case PLUS:
+      case EQUALS:
+      case ADD:
+        zoom(1.25, getWidth() / 2, getHeight() / 2);
+        break;
+      case MINUS:
+      case SUBTRACT:
+        zoom(0.8, getWidth() / 2, getHeight() / 2);
+        break;
+      default:
+        return;
+    }
+    e.consume();
+  }
+
+}
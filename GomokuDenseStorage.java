@@ -0,0 +1,146 @@
+/**
+ * A class to store every square of a Gomoku board in an array, the fastest choice for boards that fit in memory
+ * @author Noah Leibowitz
+ */
+public class GomokuDenseStorage implements GomokuStorage {
+
+  /** Stores a two dimensional array of ints to model a board */
+  private int[][] board;
+
+  /** Stores the packed run lengths of every square, at row * cols + col */
+  private long[] runs;
+
+  /** Stores the number of columns, so that the run lengths can be found without reading a row of the board */
+  private int cols;
+
+  /** Stores the number of pieces on the board */
+  private int pieces;
+
+  /**
+   * Constructor that initializes the fields
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   */
+  public GomokuDenseStorage(int rows, int cols) {
+    board = new int[rows][cols];
+    runs = new long[rows * cols];
+    this.cols = cols;
+  }
+
+  /**
+   * Copy constructor that makes an independent copy of another board
+   * @param other the board to copy
+   */
+  public GomokuDenseStorage(GomokuDenseStorage other) {
+    board = new int[other.board.length][];
+    for (int row = 0; row < board.length; row++) {
+      board[row] = other.board[row].clone();
+    }
+    runs = other.runs.clone();
+    cols = other.cols;
+    pieces = other.pieces;
+  }
+
+  /**
+   * Gets the board
+   * @return the array of the board, which must not be changed directly
+   */
+  public int[][] getBoard() {
+    return board;
+  }
+
+  /**
+   * Gets the first row of the board
+   * @return 0, because the rows start at 0
+   */
+  public int getFirstRow() {
+    return 0;
+  }
+
+  /**
+   * Gets the first column of the board
+   * @return 0, because the columns start at 0
+   */
+  public int getFirstCol() {
+    return 0;
+  }
+
+  /**
+   * Getter method for the rows
+   * @return the number of rows on the board
+   */
+  public int getRows() {
+    return board.length;
+  }
+
+  /**
+   * Getter method for the columns
+   * @return the number of columns on the board
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Gets the color of a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return 0 for empty, 1 for black, or 2 for white
+   */
+  public int getPiece(int row, int col) {
+    return board[row][col];
+  }
+
+  /**
+   * Sets the color of a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param color 0 for empty, 1 for black, or 2 for white
+   */
+  public void setPiece(int row, int col, int color) {
+    if (board[row][col] == 0 && color != 0)
+      pieces++;
+    else if (board[row][col] != 0 && color == 0) {
+      pieces--;
+      runs[row * cols + col] = 0;
+    }
+    board[row][col] = color;
+  }
+
+  /**
+   * Gets the packed run lengths of the piece on a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the run lengths
+   */
+  public long getRuns(int row, int col) {
+    return runs[row * cols + col];
+  }
+
+  /**
+   * Sets the packed run lengths of the piece on a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param runs the run lengths
+   */
+  public void setRuns(int row, int col, long runs) {
+    this.runs[row * cols + col] = runs;
+  }
+
+  /**
+   * Gets the number of pieces on the board
+   * @return the number of squares that are not empty
+   */
+  public int getPieceCount() {
+    return pieces;
+  }
+
+  /**
+   * Makes an independent copy of the squares
+   * @return the copy
+   */
+  public GomokuStorage copy() {
+    return new GomokuDenseStorage(this);
+  }
+
+}
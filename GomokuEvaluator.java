@@ -0,0 +1,325 @@
+/**
+ * A class to keep a static score of a Gomoku position for both players, updated each time a piece is placed or removed
+ * The score adds up every window of lengthToWin squares in a row along the four lines that has pieces of only one
+ * color, with more points for more pieces, so that the threats show up as windows:
+ * a five fills a window, a four that can be blocked has one window one piece short of it and an open four has two,
+ * an open three has two or three windows two pieces short, and a two has windows three pieces short
+ * A window only counts if the squares just before and after it do not have pieces of its color, so that filling it
+ * makes exactly lengthToWin in a row, and a window that goes off the board never counts
+ * When a piece is placed or removed, only the windows on the four lines through its square that it is in or next to
+ * change, so an update reads at most 4 * (2 * lengthToWin + 3) squares and never scans the board
+ * GomokuSample keeps the evaluator up to date once trackEvaluation has been called
+ * @author Noah Leibowitz
+ */
+public class GomokuEvaluator {
+
+  /** The points of a window that is filled, which is a win */
+  public static final int FIVE_SCORE = 100000;
+
+  /** The points of a window one piece short of a five */
+  public static final int FOUR_SCORE = 1000;
+
+  /** The points of a window two pieces short of a five */
+  public static final int THREE_SCORE = 100;
+
+  /** The points of a window three pieces short of a five */
+  public static final int TWO_SCORE = 10;
+
+  /** The points of a window with fewer pieces, which only matters on long lines */
+  public static final int ONE_SCORE = 1;
+
+  /** The color given to a square off the board, which blocks every window it is in */
+  private static final int BLOCKED = 3;
+
+  /** Stores the change in the row along each of the four lines */
+  private static final int[] LINE_DX = {0, 1, 1, 1};
+
+  /** Stores the change in the column along each of the four lines */
+  private static final int[] LINE_DY = {1, 0, 1, -1};
+
+  /** Stores the squares of the board that is scored */
+  private GomokuStorage storage;
+
+  /** Stores the first row of the board */
+  private int firstRow;
+
+  /** Stores the first column of the board */
+  private int firstCol;
+
+  /** Stores the number of rows on the board */
+  private int rows;
+
+  /** Stores the number of columns on the board */
+  private int cols;
+
+  /** Stores the exact length needed in a row to win, which is the length of every window */
+  private int length;
+
+  /** Stores the points of a window by the number of pieces in it */
+  private int[] weights;
+
+  /** Stores the total points of the windows of each color, indexed by the color */
+  private int[] scores = new int[3];
+
+  /** Stores the number of windows one piece short of a five of each color */
+  private int[] fours = new int[3];
+
+  /** Stores the number of filled windows of each color */
+  private int[] fives = new int[3];
+
+  /** Stores the squares of the line through the square being updated, reused by every update */
+  private int[] cells;
+
+  /** Stores the number of empty, black, white, and blocked squares in the window being scored */
+  private int[] counts = new int[4];
+
+  /**
+   * Constructor that scores a board by visiting only the windows that have pieces in them
+   * @param game the board
+   */
+  public GomokuEvaluator(GomokuSample game) {
+    setBoard(game);
+    length = game.getLengthToWin();
+    cells = new int[2 * length + 3];
+    weights = new int[length + 1];
+    for (int k = 1; k <= length; k++) {
+      if (k == length)
+        weights[k] = FIVE_SCORE;
+      else if (k == length - 1)
+        weights[k] = FOUR_SCORE;
+      else if (k == length - 2)
+        weights[k] = THREE_SCORE;
+      else if (k == length - 3)
+        weights[k] = TWO_SCORE;
+      else
+        weights[k] = ONE_SCORE;
+    }
+
+    // Each window is counted from the first piece in it, so that no window is counted twice
+    int[] window = new int[length + 2];
+    for (int i = 0; i < game.getStoneCount(); i++) {
+      int row = game.getStoneRow(i);
+      int col = game.getStoneCol(i);
+      for (int line = 0; line < 4; line++) {
+        int dx = LINE_DX[line];
+        int dy = LINE_DY[line];
+        for (int start = -(length - 1); start <= 0; start++) {
+          boolean first = true;
+          for (int j = start; j < 0; j++) {
+            if (pieceAt(row + j * dx, col + j * dy) != 0) {
+              first = false;
+              break;
+            }
+          }
+          if (!first)
+            continue;
+          for (int j = 0; j < window.length; j++) {
+            window[j] = pieceAt(row + (start - 1 + j) * dx, col + (start - 1 + j) * dy);
+          }
+          add(window, 0, 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Copy constructor that scores a copy of a board with the same totals as another evaluator
+   * @param game the copy of the board
+   * @param other the evaluator of the board that was copied
+   */
+  public GomokuEvaluator(GomokuSample game, GomokuEvaluator other) {
+    setBoard(game);
+    length = other.length;
+    weights = other.weights;
+    scores = other.scores.clone();
+    fours = other.fours.clone();
+    fives = other.fives.clone();
+    cells = new int[other.cells.length];
+  }
+
+  /**
+   * Remembers the squares and the size of the board
+   * @param game the board
+   */
+  private void setBoard(GomokuSample game) {
+    storage = game.getStorage();
+    firstRow = game.getFirstRow();
+    firstCol = game.getFirstCol();
+    rows = game.getRows();
+    cols = game.getCols();
+  }
+
+  /**
+   * Updates the score after the color of a square changed
+   * Only the other squares are read from the board, so the square itself may be changed before or after
+   * Every window on the four lines through the square that has the square in it or just before or after it is taken
+   * away with the old color and added back with the new one
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param before the color of the square before (0, 1, or 2)
+   * @param after the color of the square now (0, 1, or 2)
+   */
+  public void update(int row, int col, int before, int after) {
+    int middle = length + 1;
+    for (int line = 0; line < 4; line++) {
+      int dx = LINE_DX[line];
+      int dy = LINE_DY[line];
+      for (int j = 0; j < cells.length; j++) {
+        cells[j] = pieceAt(row + (j - middle) * dx, col + (j - middle) * dy);
+      }
+      cells[middle] = before;
+      addLine(-1);
+      cells[middle] = after;
+      addLine(1);
+    }
+  }
+
+  /**
+   * Adds or takes away the points of every window of the line in cells, sliding one window along to the next
+   * A window starting at cells[start + 1] has its guard squares at cells[start] and cells[start + length + 1]
+   * @param sign 1 to add the windows or -1 to take them away
+   */
+  private void addLine(int sign) {
+    counts[0] = 0;
+    counts[1] = 0;
+    counts[2] = 0;
+    counts[BLOCKED] = 0;
+    for (int j = 1; j <= length; j++) {
+      counts[cells[j]]++;
+    }
+    for (int start = 0; ; start++) {
+      if (counts[BLOCKED] == 0 && (counts[1] == 0 || counts[2] == 0) && counts[1] + counts[2] > 0) {
+        int color = counts[1] > 0 ? 1 : 2;
+        if (cells[start] != color && cells[start + length + 1] != color)
+          count(color, counts[color], sign);
+      }
+      if (start == length + 1)
+        return;
+      counts[cells[start + 1]]--;
+      counts[cells[start + length + 1]]++;
+    }
+  }
+
+  /**
+   * Finds how much placing a piece would change the score of its player, without placing it
+   * The change counts both the windows the piece adds to and the windows of the other player it blocks, so it
+   * ranks moves that make threats and moves that stop them together
+   * @param row the row position of an empty square
+   * @param col the column position of the square
+   * @param color the color of the piece (1 or 2)
+   * @return the change of evaluate(color)
+   */
+  public int gain(int row, int col, int color) {
+    int own = scores[color];
+    int other = scores[3 - color];
+    int ownFours = fours[color];
+    int otherFours = fours[3 - color];
+    int ownFives = fives[color];
+    int otherFives = fives[3 - color];
+    update(row, col, 0, color);
+    int change = (scores[color] - own) - (scores[3 - color] - other);
+    scores[color] = own;
+    scores[3 - color] = other;
+    fours[color] = ownFours;
+    fours[3 - color] = otherFours;
+    fives[color] = ownFives;
+    fives[3 - color] = otherFives;
+    return change;
+  }
+
+  /** Forgets every window, for a board that has had every piece removed */
+  public void clear() {
+    for (int color = 0; color < 3; color++) {
+      scores[color] = 0;
+      fours[color] = 0;
+      fives[color] = 0;
+    }
+  }
+
+  /**
+   * Adds or takes away the points of one window
+   * @param cells the squares of a line
+   * @param start the place of the guard square before the window, with the window and the guard after it following
+   * @param sign 1 to add the window or -1 to take it away
+   */
+  private void add(int[] cells, int start, int sign) {
+    int color = 0;
+    int count = 0;
+    for (int j = start + 1; j <= start + length; j++) {
+      int piece = cells[j];
+      if (piece == 0)
+        continue;
+      if (piece == BLOCKED || (color != 0 && piece != color))
+        return;
+      color = piece;
+      count++;
+    }
+    if (count == 0 || cells[start] == color || cells[start + length + 1] == color)
+      return;
+    count(color, count, sign);
+  }
+
+  /**
+   * Adds or takes away the points of a window that counts
+   * @param color the color of the pieces in the window
+   * @param count the number of pieces in the window
+   * @param sign 1 to add the window or -1 to take it away
+   */
+  private void count(int color, int count, int sign) {
+    scores[color] += sign * weights[count];
+    if (count == length - 1)
+      fours[color] += sign;
+    else if (count == length)
+      fives[color] += sign;
+  }
+
+  /**
+   * Gets the color of a square, or BLOCKED if it is off the board
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return 0, 1, 2, or BLOCKED
+   */
+  private int pieceAt(int row, int col) {
+    if (row < firstRow || row - firstRow >= rows || col < firstCol || col - firstCol >= cols)
+      return BLOCKED;
+    return storage.getPiece(row, col);
+  }
+
+  /**
+   * Gets the total points of the windows of a color
+   * @param color the color (1 for black or 2 for white)
+   * @return the points
+   */
+  public int getScore(int color) {
+    return scores[color];
+  }
+
+  /**
+   * Gets the score of the position for one player
+   * @param color the color of the player (1 for black or 2 for white)
+   * @return the points of the player minus the points of the other player
+   */
+  public int evaluate(int color) {
+    return scores[color] - scores[3 - color];
+  }
+
+  /**
+   * Gets the number of windows of a color that one more piece would fill
+   * Each is a square that wins, though two windows may share the same square
+   * @param color the color (1 for black or 2 for white)
+   * @return the number of windows
+   */
+  public int getFours(int color) {
+    return fours[color];
+  }
+
+  /**
+   * Gets the number of windows of a color that are filled
+   * @param color the color (1 for black or 2 for white)
+   * @return the number of fives
+   */
+  public int getFives(int color) {
+    return fives[color];
+  }
+
+}
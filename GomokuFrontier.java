@@ -0,0 +1,491 @@
+import java.util.Arrays;
+
+/**
+ * A class to keep the frontier of a Gomoku board: the empty squares within RADIUS squares of a piece in any direction
+ * These are the only squares an engine needs to look at, and on a big board they are a small part of it
+ * GomokuSample tells the frontier each time a piece is placed or removed, and only the squares near the piece change
+ * Each square keeps the number of pieces near it, and the frontier is kept as a list in one array, so going through
+ * it reads memory in order and never scans the board
+ * When pieces are removed in the opposite order they were placed, as undo does, the list goes back to exactly the
+ * order it had, so a search sees the same moves in the same order after it takes moves back
+ * The changes are only written down when they happen, and are made the next time the frontier is read
+ * A piece that is removed before the frontier is read again cancels its own change, so random playouts and rule
+ * checks that place and take back pieces without reading the frontier cost almost nothing extra
+ * On a GomokuDenseStorage the counts are arrays with a slot for every square, and on any other board they are kept in
+ * a hash table that only has the squares near pieces, so the frontier scales to huge sparse and unbounded boards
+ * @author Noah Leibowitz
+ */
+public class GomokuFrontier {
+
+  /** The greatest distance from a piece, in rows or columns, of a square on the frontier */
+  public static final int RADIUS = 2;
+
+  /** The number of slots the hash table starts with */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** The most changes written down before they are made, which keeps the memory of the list of changes fixed */
+  private static final int MAX_PENDING = 256;
+
+  /** The key of a slot that has no square, which no square of a board can have */
+  private static final long FREE = Long.MIN_VALUE;
+
+  /** Stores the change in the row to each square within RADIUS of a square, going row by row */
+  private static final int[] NEAR_DX = new int[(2 * RADIUS + 1) * (2 * RADIUS + 1) - 1];
+
+  /** Stores the change in the column to each square within RADIUS of a square, in the same order */
+  private static final int[] NEAR_DY = new int[NEAR_DX.length];
+
+  static {
+    int i = 0;
+    for (int dx = -RADIUS; dx <= RADIUS; dx++) {
+      for (int dy = -RADIUS; dy <= RADIUS; dy++) {
+        if (dx != 0 || dy != 0) {
+          NEAR_DX[i] = dx;
+          NEAR_DY[i] = dy;
+          i++;
+        }
+      }
+    }
+  }
+
+  /** Stores the first row of the board */
+  private int firstRow;
+
+  /** Stores the first column of the board */
+  private int firstCol;
+
+  /** Stores the last row of the board */
+  private int lastRow;
+
+  /** Stores the last column of the board */
+  private int lastCol;
+
+  /** Stores whether every square has a slot of its own, which is true for a GomokuDenseStorage */
+  private boolean direct;
+
+  /**
+   * Stores the number of slots in each row when every square has a slot
+   * The board is padded with RADIUS slots on every side, so the squares near any square have slots and need no checks
+   */
+  private int width;
+
+  /** Stores how far the slot of each square within RADIUS of a square is from its slot, in the order of NEAR_DX */
+  private int[] offsets;
+
+  /** Stores the square in each slot of the hash table, or FREE, or null when every square has a slot */
+  private long[] keys;
+
+  /** Stores the number of slots minus one, used to wrap an index around the hash table */
+  private int mask;
+
+  /** Stores the number of squares in the hash table, which are the pieces and the squares near them */
+  private int used;
+
+  /** Stores the number of pieces within RADIUS of the square in each slot */
+  private int[] counts;
+
+  /** Stores whether the square in each slot has a piece, or is off the board in the padding around it */
+  private boolean[] filled;
+
+  /**
+   * Stores the place in the list of the square in each slot while it is on the frontier, or the place it left when a
+   * piece was placed on it, so that removing the piece can put the square back where it was
+   * A square with a piece that was never on the list has Integer.MAX_VALUE
+   */
+  private int[] places;
+
+  /** Stores the squares on the frontier, each as its row in the high 32 bits and its column in the low 32 bits */
+  private long[] squares = new long[64];
+
+  /** Stores the number of squares on the frontier */
+  private int size;
+
+  /** Stores the squares of the changes that have not been made yet, in the order they happened */
+  private long[] pending = new long[MAX_PENDING];
+
+  /** Stores whether each change that has not been made yet placed a piece or removed one */
+  private boolean[] pendingAdds = new boolean[MAX_PENDING];
+
+  /** Stores the number of changes that have not been made yet */
+  private int pendingCount;
+
+  /**
+   * Constructor that makes the frontier of a board with no pieces
+   * @param storage the squares of the board, used for its size and to choose how the counts are kept
+   */
+  public GomokuFrontier(GomokuStorage storage) {
+    firstRow = storage.getFirstRow();
+    firstCol = storage.getFirstCol();
+    lastRow = firstRow + (storage.getRows() - 1);
+    lastCol = firstCol + (storage.getCols() - 1);
+    direct = storage instanceof GomokuDenseStorage;
+    if (!direct) {
+      allocate(INITIAL_CAPACITY);
+      return;
+    }
+    width = storage.getCols() + 2 * RADIUS;
+    counts = new int[(storage.getRows() + 2 * RADIUS) * width];
+    places = new int[counts.length];
+    filled = new boolean[counts.length];
+    Arrays.fill(filled, true);
+    for (int row = firstRow; row <= lastRow; row++) {
+      Arrays.fill(filled, find(row, firstCol), find(row, lastCol) + 1, false);
+    }
+    offsets = new int[NEAR_DX.length];
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = NEAR_DX[i] * width + NEAR_DY[i];
+    }
+  }
+
+  /**
+   * Copy constructor that makes an independent copy of another frontier, for a copy of its board
+   * @param other the frontier to copy
+   */
+  public GomokuFrontier(GomokuFrontier other) {
+    firstRow = other.firstRow;
+    firstCol = other.firstCol;
+    lastRow = other.lastRow;
+    lastCol = other.lastCol;
+    direct = other.direct;
+    width = other.width;
+    offsets = other.offsets;
+    keys = other.keys == null ? null : other.keys.clone();
+    mask = other.mask;
+    used = other.used;
+    counts = other.counts.clone();
+    filled = other.filled.clone();
+    places = other.places.clone();
+    squares = other.squares.clone();
+    size = other.size;
+    pending = other.pending.clone();
+    pendingAdds = other.pendingAdds.clone();
+    pendingCount = other.pendingCount;
+  }
+
+  /**
+   * Writes down that a piece was placed
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   */
+  public void add(int row, int col) {
+    if (pendingCount == MAX_PENDING)
+      flush();
+    pending[pendingCount] = key(row, col);
+    pendingAdds[pendingCount++] = true;
+  }
+
+  /**
+   * Writes down that a piece was removed, or forgets the placing of the piece if it has not been made yet
+   * @param row the row position of the square the piece was on
+   * @param col the column position of the square
+   */
+  public void remove(int row, int col) {
+    long key = key(row, col);
+    if (pendingCount > 0 && pendingAdds[pendingCount - 1] && pending[pendingCount - 1] == key) {
+      pendingCount--;
+      return;
+    }
+    if (pendingCount == MAX_PENDING)
+      flush();
+    pending[pendingCount] = key;
+    pendingAdds[pendingCount++] = false;
+  }
+
+  /**
+   * Gets the number of squares on the frontier
+   * @return the number of squares
+   */
+  public int size() {
+    flush();
+    return size;
+  }
+
+  /**
+   * Gets the row of a square on the frontier
+   * @param i the place of the square in the list, from 0 to size() - 1
+   * @return the row position of the square
+   */
+  public int getRow(int i) {
+    flush();
+    return (int) (squares[i] >> 32);
+  }
+
+  /**
+   * Gets the column of a square on the frontier
+   * @param i the place of the square in the list, from 0 to size() - 1
+   * @return the column position of the square
+   */
+  public int getCol(int i) {
+    flush();
+    return (int) squares[i];
+  }
+
+  /**
+   * Checks if a square is on the frontier
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return true if the square is empty and has a piece within RADIUS of it, otherwise false
+   */
+  public boolean contains(int row, int col) {
+    flush();
+    if (row < firstRow || row > lastRow || col < firstCol || col > lastCol)
+      return false;
+    int slot = find(row, col);
+    return slot >= 0 && counts[slot] > 0 && !filled[slot];
+  }
+
+  /**
+   * Copies the squares on the frontier, in the order of the list
+   * @return the squares, each as its row in the high 32 bits and its column in the low 32 bits
+   */
+  public long[] toArray() {
+    flush();
+    return Arrays.copyOf(squares, size);
+  }
+
+  /** Makes the changes that have been written down, in the order they happened */
+  private void flush() {
+    for (int i = 0; i < pendingCount; i++) {
+      int row = (int) (pending[i] >> 32);
+      int col = (int) pending[i];
+      if (pendingAdds[i])
+        place(row, col);
+      else
+        clear(row, col);
+    }
+    pendingCount = 0;
+  }
+
+  /**
+   * Updates the frontier for a piece that was placed
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   */
+  private void place(int row, int col) {
+
+    // The square of the piece leaves the list, and remembers where it was
+    int slot = direct ? find(row, col) : findOrAdd(row, col);
+    if (counts[slot] > 0)
+      leave(slot, places[slot]);
+    else
+      places[slot] = Integer.MAX_VALUE;
+    filled[slot] = true;
+
+    // Every empty square near the piece that had no piece near it joins the end of the list
+    for (int i = 0; i < NEAR_DX.length; i++) {
+      int near;
+      if (direct)
+        near = slot + offsets[i];
+      else {
+        int x = row + NEAR_DX[i];
+        int y = col + NEAR_DY[i];
+        if (x < firstRow || x > lastRow || y < firstCol || y > lastCol)
+          continue;
+        near = findOrAdd(x, y);
+      }
+      if (counts[near]++ > 0)
+        continue;
+      if (!filled[near])
+        join(near, key(row + NEAR_DX[i], col + NEAR_DY[i]));
+      else
+        places[near] = Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Updates the frontier for a piece that was removed
+   * @param row the row position of the square the piece was on
+   * @param col the column position of the square
+   */
+  private void clear(int row, int col) {
+
+    // The squares near the piece are taken off in the opposite order they were added, so each one is last in the list
+    for (int i = NEAR_DX.length - 1; i >= 0; i--) {
+      int x = row + NEAR_DX[i];
+      int y = col + NEAR_DY[i];
+      if (!direct && (x < firstRow || x > lastRow || y < firstCol || y > lastCol))
+        continue;
+      int near = find(x, y);
+      if (--counts[near] > 0 || filled[near])
+        continue;
+      leave(near, places[near]);
+      if (!direct)
+        forget(near);
+    }
+
+    // The square of the piece goes back to the place it left, and the square that took its place moves to the end
+    // A square that was never on the list, or whose place is gone because pieces were removed out of order, joins the
+    // end instead
+    int slot = find(row, col);
+    filled[slot] = false;
+    if (counts[slot] == 0) {
+      if (!direct)
+        forget(slot);
+      return;
+    }
+    int place = places[slot];
+    if (place >= size) {
+      join(slot, key(row, col));
+      return;
+    }
+    long moved = squares[place];
+    join(find((int) (moved >> 32), (int) moved), moved);
+    squares[place] = key(row, col);
+    places[slot] = place;
+  }
+
+  /**
+   * Adds a square to the end of the list
+   * @param slot the slot of the square
+   * @param key the square
+   */
+  private void join(int slot, long key) {
+    if (size == squares.length)
+      squares = Arrays.copyOf(squares, size * 2);
+    places[slot] = size;
+    squares[size++] = key;
+  }
+
+  /**
+   * Takes a square out of the list by moving the last square into its place
+   * The slot keeps the place the square left
+   * @param slot the slot of the square
+   * @param place the place of the square in the list
+   */
+  private void leave(int slot, int place) {
+    long last = squares[--size];
+    if (place != size) {
+      squares[place] = last;
+      places[find((int) (last >> 32), (int) last)] = place;
+    }
+    places[slot] = place;
+  }
+
+  /**
+   * Packs a square into a key
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the key
+   */
+  private static long key(int row, int col) {
+    return (long) row << 32 | (col & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Finds the first slot of the hash table to look in for a key
+   * @param key the key
+   * @return the slot
+   */
+  private int slotOf(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  /**
+   * Finds the slot of a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the slot, or -1 if the square has no slot in the hash table
+   */
+  private int find(int row, int col) {
+    if (direct)
+      return (row - firstRow + RADIUS) * width + (col - firstCol + RADIUS);
+    long key = key(row, col);
+    int slot = slotOf(key);
+    while (true) {
+      long found = keys[slot];
+      if (found == key)
+        return slot;
+      if (found == FREE)
+        return -1;
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Finds the slot of a square in the hash table, giving it an empty one if it has none
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the slot
+   */
+  private int findOrAdd(int row, int col) {
+    int slot = find(row, col);
+    if (slot >= 0)
+      return slot;
+
+    // Keeps the table at most half full, so that a search passes few slots before it finds an empty one
+    if (2 * (used + 1) > keys.length)
+      allocate(keys.length * 2);
+    long key = key(row, col);
+    slot = slotOf(key);
+    while (keys[slot] != FREE) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    counts[slot] = 0;
+    filled[slot] = false;
+    places[slot] = Integer.MAX_VALUE;
+    used++;
+    return slot;
+  }
+
+  /**
+   * Lets go of the slot of a square in the hash table that has no piece on it or near it
+   * Later slots of the same search are moved back into the gap, so that no search stops too early
+   * @param slot the slot
+   */
+  private void forget(int slot) {
+    int gap = slot;
+    int next = (gap + 1) & mask;
+    while (keys[next] != FREE) {
+      int home = slotOf(keys[next]);
+
+      // A key may fill the gap only if its search would pass the gap before reaching the key's slot
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        keys[gap] = keys[next];
+        counts[gap] = counts[next];
+        filled[gap] = filled[next];
+        places[gap] = places[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    keys[gap] = FREE;
+    counts[gap] = 0;
+    filled[gap] = false;
+    places[gap] = 0;
+    used--;
+  }
+
+  /**
+   * Makes a new hash table and puts every square of the old table into it
+   * @param capacity the number of slots, a power of 2
+   */
+  private void allocate(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldCounts = counts;
+    boolean[] oldFilled = filled;
+    int[] oldPlaces = places;
+    keys = new long[capacity];
+    Arrays.fill(keys, FREE);
+    counts = new int[capacity];
+    filled = new boolean[capacity];
+    places = new int[capacity];
+    mask = capacity - 1;
+    if (oldKeys == null)
+      return;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == FREE)
+        continue;
+      int slot = slotOf(oldKeys[i]);
+      while (keys[slot] != FREE) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = oldKeys[i];
+      counts[slot] = oldCounts[i];
+      filled[slot] = oldFilled[i];
+      places[slot] = oldPlaces[i];
+    }
+  }
+
+}
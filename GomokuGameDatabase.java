@@ -0,0 +1,375 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class to store many games of Gomoku in one file that is only ever added to
+ * The data file starts with MAGIC and then holds GomokuGameRecords one after another
+ * A second file, the data file's name with ".idx" added, holds the offset of every record as an 8 byte number,
+ * so any game can be found without reading the ones before it
+ * The games are read through memory mapped buffers, so a scan decodes straight from the file without copying it
+ * If the program stops partway through adding a game, opening the database again drops the torn record and
+ * rebuilds the index from the data file
+ * Run with: java GomokuGameDatabase file [filter=black|white|none] [minMoves=n] to scan and replay a database
+ * @author Noah Leibowitz
+ */
+public class GomokuGameDatabase implements AutoCloseable {
+
+  /** The 8 bytes at the start of every data file */
+  public static final long MAGIC = 0x474D4B47414D4531L;
+
+  /** The largest a single record may be, which is also how far each mapped segment runs past the next one */
+  public static final int MAX_RECORD = 1 << 20;
+
+  /** The number of bytes each mapped segment starts after the one before it */
+  private static final long SEGMENT = 1L << 30;
+
+  /** An interface for code that looks at each game of a scan */
+  public interface Visitor {
+
+    /**
+     * Looks at one game
+     * @param index the number of the game in the database, starting at 0
+     * @param record the game, which is reused for the next game and so must not be kept
+     */
+    void visit(int index, GomokuGameRecord record);
+  }
+
+  /** Stores the path of the data file */
+  private Path path;
+
+  /** Stores the open data file */
+  private FileChannel data;
+
+  /** Stores the open index file */
+  private FileChannel index;
+
+  /** Stores the offset of every record in the data file */
+  private long[] offsets = new long[1024];
+
+  /** Stores the number of records */
+  private int count;
+
+  /** Stores the length of the data file */
+  private long size;
+
+  /** Stores the mapped segments of the data file, made again when the file has grown past them */
+  private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /** Stores how much of the data file the segments cover */
+  private long mapped;
+
+  /** Stores a buffer for writing one record */
+  private ByteBuffer writeBuffer = ByteBuffer.allocate(4096);
+
+  /**
+   * Constructor that opens a database, making it if the file does not exist
+   * @param path the path of the data file
+   * @throws IOException if the files cannot be opened or the data file is not a database
+   */
+  public GomokuGameDatabase(Path path) throws IOException {
+    this.path = path;
+    data = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    index = FileChannel.open(Paths.get(path + ".idx"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                             StandardOpenOption.WRITE);
+    try {
+      open();
+    }
+    catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the header and the index, and repairs them if the program stopped while adding a game
+   * @throws IOException if the files cannot be read or the data file is not a database
+   */
+  private void open() throws IOException {
+    size = data.size();
+    if (size == 0) {
+      ByteBuffer header = ByteBuffer.allocate(8);
+      header.putLong(MAGIC).flip();
+      writeFully(data, header, 0);
+      size = 8;
+      index.truncate(0);
+    }
+    ByteBuffer header = ByteBuffer.allocate(8);
+    data.read(header, 0);
+    header.flip();
+    if (header.remaining() < 8 || header.getLong() != MAGIC)
+      throw new IOException(path + " is not a game database");
+
+    // Reads the offsets, keeping only those of records that are wholly in the data file
+    int indexed = (int) (index.size() / 8);
+    ByteBuffer buffer = ByteBuffer.allocate(indexed * 8).order(ByteOrder.LITTLE_ENDIAN);
+    int read = 0;
+    while (buffer.hasRemaining() && read >= 0) {
+      read = index.read(buffer, buffer.position());
+    }
+    buffer.flip();
+    long next = 8;
+    while (buffer.remaining() >= 8) {
+      long offset = buffer.getLong();
+      if (offset != next)
+        break;
+      long end = recordEnd(offset);
+      if (end < 0)
+        break;
+      addOffset(offset);
+      next = end;
+    }
+
+    // Finds the records after the last one in the index, and cuts off a record that was only partly written
+    long end;
+    while (next < size && (end = recordEnd(next)) >= 0) {
+      addOffset(next);
+      next = end;
+    }
+    if (next < size) {
+      data.truncate(next);
+      size = next;
+    }
+    if (index.size() != count * 8L) {
+      index.truncate(0);
+      ByteBuffer all = ByteBuffer.allocate(count * 8).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0; i < count; i++) {
+        all.putLong(offsets[i]);
+      }
+      all.flip();
+      writeFully(index, all, 0);
+    }
+  }
+
+  /**
+   * Finds where a record ends by reading its length
+   * @param offset the offset of the record in the data file
+   * @return the offset just after the record, or -1 if it goes past the end of the file
+   * @throws IOException if the file cannot be read
+   */
+  private long recordEnd(long offset) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(GomokuGameRecord.MAX_VARINT_BYTES);
+    data.read(buffer, offset);
+    buffer.flip();
+    try {
+      long length = GomokuGameRecord.readVarint(buffer);
+      long end = offset + buffer.position() + length;
+      return length <= MAX_RECORD && end <= size ? end : -1;
+    }
+    catch (RuntimeException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Adds an offset to the list in memory
+   * @param offset the offset of a record
+   */
+  private void addOffset(long offset) {
+    if (count == offsets.length)
+      offsets = Arrays.copyOf(offsets, count * 2);
+    offsets[count++] = offset;
+  }
+
+  /**
+   * Writes all of a buffer at a place in a file
+   * @param channel the file
+   * @param buffer the bytes to write
+   * @param position where to write them
+   * @throws IOException if the file cannot be written
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /**
+   * Adds a game to the end of the database
+   * The record is written before its offset, so a crash between the two only loses the offset, which is found again
+   * @param record the game
+   * @return the number of the game in the database
+   * @throws IOException if the files cannot be written
+   * @throws IllegalArgumentException if the record is larger than MAX_RECORD
+   */
+  public synchronized int append(GomokuGameRecord record) throws IOException {
+    int length = record.getEncodedSize();
+    if (length > MAX_RECORD)
+      throw new IllegalArgumentException("A record of " + length + " bytes is larger than " + MAX_RECORD);
+    int total = length + GomokuGameRecord.varintSize(length);
+    if (writeBuffer.capacity() < total)
+      writeBuffer = ByteBuffer.allocate(Math.max(total, writeBuffer.capacity() * 2));
+    writeBuffer.clear();
+    record.writeTo(writeBuffer);
+    writeBuffer.flip();
+    long offset = size;
+    writeFully(data, writeBuffer, offset);
+    ByteBuffer entry = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    entry.putLong(offset).flip();
+    writeFully(index, entry, count * 8L);
+    size = offset + total;
+    addOffset(offset);
+    return count - 1;
+  }
+
+  /**
+   * Gets the number of games
+   * @return the number of games in the database
+   */
+  public synchronized int size() {
+    return count;
+  }
+
+  /**
+   * Reads one game
+   * @param i the number of the game, starting at 0
+   * @return the game
+   * @throws IOException if the file cannot be mapped
+   */
+  public synchronized GomokuGameRecord get(int i) throws IOException {
+    if (i < 0 || i >= count)
+      throw new IndexOutOfBoundsException("There is no game " + i);
+    return GomokuGameRecord.read(bufferAt(offsets[i]));
+  }
+
+  /**
+   * Reads every game in order, decoding each one straight from the mapped file into one reused record
+   * @param visitor the code that looks at each game
+   * @throws IOException if the file cannot be mapped
+   */
+  public void scan(Visitor visitor) throws IOException {
+    int games;
+    synchronized (this) {
+      games = count;
+      remap();
+    }
+    GomokuGameRecord record = new GomokuGameRecord();
+    for (int i = 0; i < games; i++) {
+      ByteBuffer buffer;
+      synchronized (this) {
+        buffer = bufferAt(offsets[i]);
+      }
+      record.readFrom(buffer);
+      visitor.visit(i, record);
+    }
+  }
+
+  /**
+   * Gets a view of the mapped file that starts at a record
+   * @param offset the offset of the record
+   * @return a buffer whose position is at the record
+   * @throws IOException if the file cannot be mapped
+   */
+  private ByteBuffer bufferAt(long offset) throws IOException {
+    if (offset >= mapped)
+      remap();
+    int segment = (int) (offset / SEGMENT);
+    ByteBuffer buffer = segments[segment].duplicate();
+    buffer.position((int) (offset - segment * SEGMENT));
+    return buffer;
+  }
+
+  /**
+   * Maps the whole data file again after it has grown
+   * Each segment runs MAX_RECORD and the longest length before a record past the start of the next one, so any record
+   * lies wholly in the segment it starts in
+   * @throws IOException if the file cannot be mapped
+   */
+  private void remap() throws IOException {
+    if (mapped == size)
+      return;
+    List<MappedByteBuffer> list = new ArrayList<MappedByteBuffer>();
+    for (long start = 0; start < size; start += SEGMENT) {
+      long length = Math.min(size - start, SEGMENT + GomokuGameRecord.MAX_VARINT_BYTES + MAX_RECORD);
+      list.add(data.map(FileChannel.MapMode.READ_ONLY, start, length));
+    }
+    segments = list.toArray(new MappedByteBuffer[list.size()]);
+    mapped = size;
+  }
+
+  /**
+   * Writes everything added so far to the disk
+   * @throws IOException if the files cannot be written
+   */
+  public synchronized void force() throws IOException {
+    data.force(false);
+    index.force(false);
+  }
+
+  /**
+   * Closes the files
+   * @throws IOException if the files cannot be closed
+   */
+  public synchronized void close() throws IOException {
+    segments = new MappedByteBuffer[0];
+    mapped = 0;
+    if (data.isOpen())
+      data.close();
+    if (index.isOpen())
+      index.close();
+  }
+
+  /**
+   * Scans a database, counts the results of the games that pass a filter, and replays them to check them
+   * @param args the data file, then options written as name=value
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.out.println("Usage: java GomokuGameDatabase file [filter=black|white|none] [minMoves=n]");
+      return;
+    }
+    int wanted = -1;
+    int minMoves = 0;
+    for (int i = 1; i < args.length; i++) {
+      String[] pair = args[i].split("=", 2);
+      String value = pair.length > 1 ? pair[1] : "";
+      if (pair[0].equals("filter"))
+        wanted = value.equals("black") ? GomokuGameRecord.BLACK_WON
+            : value.equals("white") ? GomokuGameRecord.WHITE_WON : GomokuGameRecord.NO_WINNER;
+      else if (pair[0].equals("minMoves"))
+        minMoves = Integer.parseInt(value);
+      else {
+        System.out.println("Unknown option " + args[i]);
+        return;
+      }
+    }
+    final int result = wanted;
+    final int moves = minMoves;
+    final long[] totals = new long[5];
+    try (GomokuGameDatabase database = new GomokuGameDatabase(Paths.get(args[0]))) {
+      long start = System.nanoTime();
+      database.scan((i, record) -> {
+        if (record.getMoveCount() < moves || (result >= 0 && record.getResult() != result))
+          return;
+        totals[record.getResult()]++;
+        totals[3] += record.getMoveCount();
+      });
+      double scanSeconds = (System.nanoTime() - start) / 1e9;
+      start = System.nanoTime();
+      database.scan((i, record) -> {
+        if (record.getMoveCount() >= moves && (result < 0 || record.getResult() == result))
+          totals[4] += record.replay().getPieceCount();
+      });
+      double replaySeconds = (System.nanoTime() - start) / 1e9;
+      long games = totals[0] + totals[1] + totals[2];
+      System.out.println(database.size() + " games, " + games + " passed the filter");
+      System.out.println("Black won " + totals[1] + ", white won " + totals[2] + ", no winner " + totals[0]);
+      System.out.println(String.format("%.1f moves per game", games == 0 ? 0.0 : (double) totals[3] / games));
+      System.out.println(String.format("Scanned %.0f games/second, replayed %.0f games/second (%d pieces)",
+                                       database.size() / Math.max(scanSeconds, 1e-9),
+                                       games / Math.max(replaySeconds, 1e-9), totals[4]));
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+}
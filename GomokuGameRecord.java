@@ -0,0 +1,307 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A class to record one game of Gomoku in a compact binary form
+ * A record is written as a header (rows, columns, length to win, and result) and then the moves, each as the index
+ * row * cols + col of its square
+ * Every number is a varint: 7 bits to a byte, lowest bits first, with the top bit set on every byte but the last,
+ * so the moves of a 15x15 or 19x19 board take one or two bytes each
+ * The moves alternate colors, starting with black
+ * @author Noah Leibowitz
+ */
+public class GomokuGameRecord {
+
+  /** The result of a game that has no winner, either a draw or a game that is not finished */
+  public static final int NO_WINNER = 0;
+
+  /** The result of a game won by black */
+  public static final int BLACK_WON = 1;
+
+  /** The result of a game won by white */
+  public static final int WHITE_WON = 2;
+
+  /** The most bytes a varint of a long can take */
+  public static final int MAX_VARINT_BYTES = 10;
+
+  /** Stores the number of rows on the board */
+  private int rows;
+
+  /** Stores the number of columns on the board */
+  private int cols;
+
+  /** Stores the exact length needed in a row to win */
+  private int lengthToWin;
+
+  /** Stores the result of the game, NO_WINNER, BLACK_WON, or WHITE_WON */
+  private int result;
+
+  /** Stores the index of every move, with room for more */
+  private long[] moves;
+
+  /** Stores the number of moves */
+  private int moveCount;
+
+  /**
+   * Constructor that initializes the fields for a game with no moves yet
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @param lengthToWin the exact length needed in a row to win
+   */
+  public GomokuGameRecord(int rows, int cols, int lengthToWin) {
+    this.rows = rows;
+    this.cols = cols;
+    this.lengthToWin = lengthToWin;
+    moves = new long[16];
+  }
+
+  /** Default constructor for a record that will be filled by readFrom */
+  public GomokuGameRecord() {
+    this(0, 0, 0);
+  }
+
+  /**
+   * Adds the next move of the game
+   * @param row the row position of the move
+   * @param col the column position of the move
+   * @throws IllegalArgumentException if the move is not on the board
+   */
+  public void addMove(int row, int col) {
+    if (row < 0 || row >= rows || col < 0 || col >= cols)
+      throw new IllegalArgumentException("Move " + row + "," + col + " is not on the board");
+    if (moveCount == moves.length)
+      moves = Arrays.copyOf(moves, moveCount * 2);
+    moves[moveCount++] = (long) row * cols + col;
+  }
+
+  /**
+   * Removes the last move of the game
+   * @throws IllegalStateException if the game has no moves
+   */
+  public void removeMove() {
+    if (moveCount == 0)
+      throw new IllegalStateException("The game has no moves");
+    moveCount--;
+  }
+
+  /**
+   * Getter method for the rows
+   * @return the number of rows on the board
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Getter method for the columns
+   * @return the number of columns on the board
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Getter method for lengthToWin
+   * @return the exact length needed in a row to win
+   */
+  public int getLengthToWin() {
+    return lengthToWin;
+  }
+
+  /**
+   * Getter method for the result
+   * @return NO_WINNER, BLACK_WON, or WHITE_WON
+   */
+  public int getResult() {
+    return result;
+  }
+
+  /**
+   * Setter method for the result
+   * @param result NO_WINNER, BLACK_WON, or WHITE_WON
+   */
+  public void setResult(int result) {
+    if (result < NO_WINNER || result > WHITE_WON)
+      throw new IllegalArgumentException("Unknown result " + result);
+    this.result = result;
+  }
+
+  /**
+   * Gets the number of moves
+   * @return the number of moves in the game
+   */
+  public int getMoveCount() {
+    return moveCount;
+  }
+
+  /**
+   * Gets the row of a move
+   * @param i the number of the move, starting at 0
+   * @return the row position of the move
+   */
+  public int getMoveRow(int i) {
+    return (int) (moves[i] / cols);
+  }
+
+  /**
+   * Gets the column of a move
+   * @param i the number of the move, starting at 0
+   * @return the column position of the move
+   */
+  public int getMoveCol(int i) {
+    return (int) (moves[i] % cols);
+  }
+
+  /**
+   * Plays the game from the start on a new board
+   * @param count the number of moves to play
+   * @return the board after the moves, with the turn of the player who would move next and the moves ready to undo
+   * @throws IllegalArgumentException if a move is on a square that already has a piece
+   */
+  public GomokuSample replay(int count) {
+    GomokuSample game = new GomokuSample(lengthToWin, rows, cols);
+    for (int i = 0; i < count; i++) {
+      if (!game.makeMove(getMoveRow(i), getMoveCol(i)))
+        throw new IllegalArgumentException("Move " + (i + 1) + " is on a square that already has a piece");
+    }
+    return game;
+  }
+
+  /**
+   * Plays the whole game from the start on a new board
+   * @return the board after the last move
+   */
+  public GomokuSample replay() {
+    return replay(moveCount);
+  }
+
+  /**
+   * Gets the number of bytes the record takes when written, not counting its length in front of it
+   * @return the number of bytes
+   */
+  public int getEncodedSize() {
+    int size = varintSize(rows) + varintSize(cols) + varintSize(lengthToWin) + 1 + varintSize(moveCount);
+    for (int i = 0; i < moveCount; i++) {
+      size += varintSize(moves[i]);
+    }
+    return size;
+  }
+
+  /**
+   * Writes the record, with its length in front so that a reader can skip it
+   * @param buffer the buffer to write to, which must have room for the record
+   */
+  public void writeTo(ByteBuffer buffer) {
+    writeVarint(buffer, getEncodedSize());
+    writeVarint(buffer, rows);
+    writeVarint(buffer, cols);
+    writeVarint(buffer, lengthToWin);
+    buffer.put((byte) result);
+    writeVarint(buffer, moveCount);
+    for (int i = 0; i < moveCount; i++) {
+      writeVarint(buffer, moves[i]);
+    }
+  }
+
+  /**
+   * Reads a record written by writeTo into this record, reusing its array of moves
+   * The whole record is checked before anything is changed, so a record that is not valid leaves this one as it was
+   * The buffer is left just after the record, or somewhere inside it if it is not valid
+   * @param buffer the buffer to read from
+   * @throws IllegalArgumentException if the bytes are not a valid record
+   */
+  public void readFrom(ByteBuffer buffer) {
+    long length = readVarint(buffer);
+    if (length < 0 || length > buffer.remaining())
+      throw new IllegalArgumentException("The record is longer than the bytes left");
+    int end = buffer.position() + (int) length;
+    long newRows = readVarint(buffer);
+    long newCols = readVarint(buffer);
+    long newLengthToWin = readVarint(buffer);
+    int newResult = buffer.get();
+    if (newResult < NO_WINNER || newResult > WHITE_WON || newRows <= 0 || newRows > Integer.MAX_VALUE || newCols <= 0
+          || newCols > Integer.MAX_VALUE || newLengthToWin < 0 || newLengthToWin > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("The record has a bad header");
+    long count = readVarint(buffer);
+    if (count < 0 || count > end - buffer.position())
+      throw new IllegalArgumentException("The record has more moves than bytes");
+
+    // The moves are checked before they are read into the array, which may hold the moves of this record
+    int start = buffer.position();
+    long squares = newRows * newCols;
+    for (int i = 0; i < count; i++) {
+      long move = readVarint(buffer);
+      if (move < 0 || move >= squares)
+        throw new IllegalArgumentException("Move " + (i + 1) + " is not on the board");
+    }
+    if (buffer.position() != end)
+      throw new IllegalArgumentException("The record does not end where its length says");
+    buffer.position(start);
+    if (moves.length < count)
+      moves = new long[(int) Math.max(count, moves.length * 2)];
+    for (int i = 0; i < count; i++) {
+      moves[i] = readVarint(buffer);
+    }
+    rows = (int) newRows;
+    cols = (int) newCols;
+    lengthToWin = (int) newLengthToWin;
+    result = newResult;
+    moveCount = (int) count;
+  }
+
+  /**
+   * Reads a record written by writeTo
+   * @param buffer the buffer to read from
+   * @return the record
+   * @throws IllegalArgumentException if the bytes are not a valid record
+   */
+  public static GomokuGameRecord read(ByteBuffer buffer) {
+    GomokuGameRecord record = new GomokuGameRecord();
+    record.readFrom(buffer);
+    return record;
+  }
+
+  /**
+   * Gets the number of bytes a varint takes
+   * @param value the number, which must not be negative
+   * @return the number of bytes, from 1 to MAX_VARINT_BYTES
+   */
+  public static int varintSize(long value) {
+    int size = 1;
+    while ((value >>>= 7) != 0) {
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Writes a varint
+   * @param buffer the buffer to write to
+   * @param value the number, which must not be negative
+   */
+  public static void writeVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  /**
+   * Reads a varint
+   * @param buffer the buffer to read from
+   * @return the number
+   * @throws IllegalArgumentException if the varint is longer than MAX_VARINT_BYTES
+   */
+  public static long readVarint(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0)
+        return value;
+    }
+    throw new IllegalArgumentException("A varint is too long");
+  }
+
+}
@@ -0,0 +1,714 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A class to keep the games of a server on disk so that they survive the program stopping
+ * Every change to a game (a new game, a move that stays on the board, or the end of a game) is added to the end of
+ * a log file as a record of RECORD_SIZE bytes:
+ *   type (int)   game (long)   rows or row (int)   cols or col (int)   lengthToWin or winner (int)   MAGIC (int)
+ *   CRC32 of the first 28 bytes (int)
+ * Records are kept in memory until commit is called or a batch fills up, and then written and forced to the disk
+ * with one fsync, so the cost of the fsync is shared by every move of the batch
+ * When the log has grown by compactRecords records, the games still going are written to a snapshot and a new,
+ * empty log is started; generation N is snapshot-N.bin, the games at the start of journal-N.log
+ * Opening a journal reads the newest snapshot and plays its log on top of it, stopping at the first record that
+ * was only partly written before the program stopped, so every game that was not ended is back the way it was at
+ * its last commit
+ * A game that is won, or that is released and not taken up again for a whole generation, is left out of the next
+ * snapshot, so games that nobody plays do not stay on the disk forever; every game read back when the journal is
+ * opened starts out released
+ * If records cannot be written, the changes they made to the games in memory are taken back and the journal takes
+ * no more changes, so the games in memory never get ahead of the disk
+ * A journal is safe to share between threads
+ * Run with: java GomokuJournal [dir=journal] [moves=1000000] [batch=4096] [games=1000] to measure its speed
+ * @author Noah Leibowitz
+ */
+public class GomokuJournal implements AutoCloseable {
+
+  /** The number of bytes of each record */
+  public static final int RECORD_SIZE = 32;
+
+  /** The most records kept in memory before they are written if the batch is not given */
+  public static final int DEFAULT_BATCH = 4096;
+
+  /** The number of records after which the log is compacted if the number is not given */
+  public static final long DEFAULT_COMPACT_RECORDS = 1 << 22;
+
+  /** The type of the record of a new game */
+  private static final int NEW_GAME = 1;
+
+  /** The type of the record of a move */
+  private static final int MOVE = 2;
+
+  /** The type of the record of the end of a game */
+  private static final int END_GAME = 3;
+
+  /** The number that every record and snapshot has, to tell them from bytes that were never written */
+  private static final int MAGIC = 0x474D4A31;
+
+  /** Stores the folder of the log and snapshot files */
+  private Path dir;
+
+  /** Stores the log being added to */
+  private FileChannel log;
+
+  /** Stores the records not yet written */
+  private ByteBuffer buffer;
+
+  /** Stores the record being made */
+  private ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+  /** Stores the checksum of the record being made */
+  private CRC32 crc = new CRC32();
+
+  /** Stores the most records kept in memory before they are written */
+  private int batch;
+
+  /** Stores the number of records after which the log is compacted */
+  private long compactRecords;
+
+  /** Stores the generation of the log being added to */
+  private long generation;
+
+  /** Stores the number of records in the log being added to, counting those not yet written */
+  private long logRecords;
+
+  /** Stores the id of the next new game */
+  private long nextGame = 1;
+
+  /** Stores every game that has not ended, by its id */
+  private Map<Long, GomokuGameRecord> games = new HashMap<Long, GomokuGameRecord>();
+
+  /** Stores the generation in which each game that nobody is playing was released, by its id */
+  private Map<Long, Long> released = new HashMap<Long, Long>();
+
+  /** Stores the result each move record of the batch replaced, to take the move back if the batch is lost */
+  private int[] results;
+
+  /** Stores the game each end record of the batch removed, to put it back if the batch is lost */
+  private GomokuGameRecord[] ended;
+
+  /** Stores whether records could not be written, after which the journal takes no more changes */
+  private boolean failed;
+
+  /** Stores the number of records added since the journal was opened */
+  private long records;
+
+  /** Stores the number of times records were forced to the disk since the journal was opened */
+  private long commits;
+
+  /** Stores the number of records read back when the journal was opened */
+  private long recovered;
+
+  /**
+   * Constructor that opens the journal in a folder with the default batch and compaction, rebuilding its games
+   * @param dir the folder, which is made if it does not exist
+   * @throws IOException if the files cannot be read or written
+   */
+  public GomokuJournal(Path dir) throws IOException {
+    this(dir, DEFAULT_BATCH, DEFAULT_COMPACT_RECORDS);
+  }
+
+  /**
+   * Constructor that opens the journal in a folder, rebuilding its games from the newest snapshot and log
+   * @param dir the folder, which is made if it does not exist
+   * @param batch the most records kept in memory before they are written
+   * @param compactRecords the number of records after which the log is compacted into a snapshot
+   * @throws IOException if the files cannot be read or written
+   * @throws IllegalArgumentException if the batch or the number of records is less than 1
+   */
+  public GomokuJournal(Path dir, int batch, long compactRecords) throws IOException {
+    if (batch < 1 || compactRecords < 1)
+      throw new IllegalArgumentException("The batch and the records between compactions must be at least 1");
+    this.dir = dir;
+    this.batch = batch;
+    this.compactRecords = compactRecords;
+    buffer = ByteBuffer.allocateDirect(batch * RECORD_SIZE);
+    results = new int[batch];
+    ended = new GomokuGameRecord[batch];
+    Files.createDirectories(dir);
+    recover();
+    for (Long game : games.keySet()) {
+      released.put(game, generation);
+    }
+  }
+
+  /**
+   * Reads the newest snapshot and its log, and deletes the files of older generations
+   * @throws IOException if the files cannot be read or written
+   */
+  private void recover() throws IOException {
+    generation = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-*.bin")) {
+      for (Path file : files) {
+        generation = Math.max(generation, generationOf(file));
+      }
+    }
+    if (generation > 0)
+      readSnapshot(snapshotFile(generation));
+    log = FileChannel.open(logFile(generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                           StandardOpenOption.WRITE);
+
+    // Plays the log until the end or a record that was not written whole, which is cut off
+    ByteBuffer read = ByteBuffer.allocate(batch * RECORD_SIZE);
+    long position = 0;
+    boolean valid = true;
+    while (valid && log.read(read, position + read.position()) > 0) {
+      read.flip();
+      while (valid && read.remaining() >= RECORD_SIZE) {
+        valid = apply(read);
+        if (valid)
+          position += RECORD_SIZE;
+      }
+      read.compact();
+    }
+    logRecords = position / RECORD_SIZE;
+    recovered = logRecords;
+    if (log.size() > position) {
+      log.truncate(position);
+      log.force(true);
+    }
+    log.position(position);
+
+    // Removes what is left of older generations and of a compaction that did not finish
+    String pattern = "{snapshot-*.bin,snapshot-*.tmp,journal-*.log}";
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, pattern)) {
+      for (Path file : files) {
+        if (generationOf(file) != generation || file.toString().endsWith(".tmp"))
+          Files.delete(file);
+      }
+    }
+  }
+
+  /**
+   * Reads one record and changes the games by it
+   * @param read the buffer, positioned at the record
+   * @return true if the record was whole and valid, otherwise false with the buffer left where it was
+   */
+  private boolean apply(ByteBuffer read) {
+    int start = read.position();
+    crc.reset();
+    crc.update(read.array(), read.arrayOffset() + start, RECORD_SIZE - 4);
+    int type = read.getInt(start);
+    long game = read.getLong(start + 4);
+    int a = read.getInt(start + 12);
+    int b = read.getInt(start + 16);
+    int c = read.getInt(start + 20);
+    if (read.getInt(start + 24) != MAGIC || read.getInt(start + 28) != (int) crc.getValue())
+      return false;
+    try {
+      if (type == NEW_GAME)
+        startGame(game, a, b, c);
+      else if (type == MOVE)
+        playMove(game, a, b, c);
+      else if (type == END_GAME)
+        games.remove(game);
+      else
+        return false;
+    }
+    catch (IllegalArgumentException e) {
+      return false;
+    }
+    read.position(start + RECORD_SIZE);
+    return true;
+  }
+
+  /**
+   * Reads the games of a snapshot
+   * @param file the snapshot
+   * @throws IOException if the snapshot cannot be read or is not valid
+   */
+  private void readSnapshot(Path file) throws IOException {
+    ByteBuffer read = ByteBuffer.wrap(Files.readAllBytes(file));
+    crc.reset();
+    crc.update(read.array(), 0, Math.max(0, read.limit() - 4));
+    if (read.limit() < 20 || read.getInt() != MAGIC || read.getInt(read.limit() - 4) != (int) crc.getValue())
+      throw new IOException("The snapshot " + file + " is not valid");
+    nextGame = read.getLong();
+    int count = read.getInt();
+    try {
+      for (int i = 0; i < count; i++) {
+        long game = read.getLong();
+        games.put(game, GomokuGameRecord.read(read));
+      }
+    }
+    catch (RuntimeException e) {
+      throw new IOException("The snapshot " + file + " is not valid: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Adds a new game to the journal
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @param lengthToWin the exact length needed in a row to win
+   * @return the id of the game, which is never used for another game of the journal
+   * @throws IOException if a full batch cannot be written
+   */
+  public synchronized long newGame(int rows, int cols, int lengthToWin) throws IOException {
+    checkFailed();
+    long game = nextGame;
+    startGame(game, rows, cols, lengthToWin);
+    append(NEW_GAME, game, rows, cols, lengthToWin);
+    return game;
+  }
+
+  /**
+   * Adds a move that stays on the board to the journal
+   * A move taken back for breaking a rule changes nothing, so it is not added
+   * @param game the id of the game
+   * @param row the row position of the move
+   * @param col the column position of the move
+   * @param winner the color that won with the move (1 or 2), or 0 if the game goes on
+   * @throws IOException if a full batch cannot be written
+   * @throws IllegalArgumentException if the game is not in the journal or the move is not on its board
+   */
+  public synchronized void move(long game, int row, int col, int winner) throws IOException {
+    checkFailed();
+    GomokuGameRecord moves = games.get(game);
+    results[buffer.position() / RECORD_SIZE] = moves == null ? GomokuGameRecord.NO_WINNER : moves.getResult();
+    playMove(game, row, col, winner);
+    append(MOVE, game, row, col, winner);
+  }
+
+  /**
+   * Removes a game from the journal
+   * @param game the id of the game
+   * @throws IOException if a full batch cannot be written
+   */
+  public synchronized void endGame(long game) throws IOException {
+    checkFailed();
+    GomokuGameRecord moves = games.remove(game);
+    released.remove(game);
+    if (moves != null) {
+      ended[buffer.position() / RECORD_SIZE] = moves;
+      append(END_GAME, game, 0, 0, 0);
+    }
+  }
+
+  /**
+   * Marks a game as no longer played, so that it is left out of the snapshot of the next compaction after a whole
+   * generation unless it is taken up again
+   * Nothing is written, since a game read back from the disk starts out released anyway
+   * @param game the id of the game
+   */
+  public synchronized void release(long game) {
+    if (games.containsKey(game))
+      released.put(game, generation);
+  }
+
+  /**
+   * Takes up a game again, so that it is kept until it is won, ended, or released again
+   * @param game the id of the game
+   * @return a copy of the moves of the game, or null if the game is not in the journal
+   */
+  public synchronized GomokuGameRecord resume(long game) {
+    released.remove(game);
+    return getGame(game);
+  }
+
+  /**
+   * Stops a change from being made once records could not be written
+   * @throws IOException if the journal has failed
+   */
+  private void checkFailed() throws IOException {
+    if (failed)
+      throw new IOException("The journal failed to write and takes no more changes");
+  }
+
+  /**
+   * Adds a new game to the games in memory
+   * @param game the id of the game
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @param lengthToWin the exact length needed in a row to win
+   * @throws IllegalArgumentException if the size of the board is not valid
+   */
+  private void startGame(long game, int rows, int cols, int lengthToWin) {
+    if (rows < 1 || cols < 1 || lengthToWin < 1)
+      throw new IllegalArgumentException("Bad board size " + rows + "x" + cols);
+    games.put(game, new GomokuGameRecord(rows, cols, lengthToWin));
+    nextGame = Math.max(nextGame, game + 1);
+  }
+
+  /**
+   * Adds a move to a game in memory
+   * @param game the id of the game
+   * @param row the row position of the move
+   * @param col the column position of the move
+   * @param winner the color that won with the move, or 0
+   * @throws IllegalArgumentException if the game is not in the journal or the move is not on its board
+   */
+  private void playMove(long game, int row, int col, int winner) {
+    GomokuGameRecord moves = games.get(game);
+    if (moves == null)
+      throw new IllegalArgumentException("No game " + game);
+    moves.addMove(row, col);
+    if (winner != 0)
+      moves.setResult(winner);
+  }
+
+  /**
+   * Adds a record to the batch, writing the batch if it is full
+   * @param type the type of the record
+   * @param game the id of the game
+   * @param a the rows or row
+   * @param b the columns or column
+   * @param c the length to win or winner
+   * @throws IOException if a full batch cannot be written
+   */
+  private void append(int type, long game, int a, int b, int c) throws IOException {
+    record.clear();
+    record.putInt(type).putLong(game).putInt(a).putInt(b).putInt(c).putInt(MAGIC);
+    crc.reset();
+    crc.update(record.array(), 0, RECORD_SIZE - 4);
+    record.putInt((int) crc.getValue());
+    record.flip();
+    buffer.put(record);
+    records++;
+    logRecords++;
+    if (!buffer.hasRemaining())
+      commit();
+  }
+
+  /**
+   * Writes every record added so far and forces them to the disk, then compacts the log if it has grown enough
+   * Nothing is done if there are no new records
+   * @throws IOException if the records cannot be written
+   */
+  public synchronized void commit() throws IOException {
+    checkFailed();
+    if (buffer.position() == 0)
+      return;
+    flush();
+    if (logRecords >= compactRecords)
+      compact();
+  }
+
+  /**
+   * Writes and forces the records in the batch
+   * If they cannot be written, the log is cut back to where it was, the changes of the batch are taken back from
+   * the games in memory, and the journal is marked as failed
+   * @throws IOException if the records cannot be written
+   */
+  private void flush() throws IOException {
+    if (buffer.position() == 0)
+      return;
+    int count = buffer.position() / RECORD_SIZE;
+    long start = -1;
+    boolean written = false;
+    buffer.flip();
+    try {
+      start = log.position();
+      while (buffer.hasRemaining()) {
+        log.write(buffer);
+      }
+      log.force(false);
+      commits++;
+      written = true;
+    }
+    finally {
+      if (!written) {
+        failed = true;
+        rollBack(count);
+        try {
+          if (start >= 0)
+            log.truncate(start);
+        }
+        catch (IOException e) {
+          // A record left whole at the end is read back, the same as if the program had stopped after the write
+        }
+      }
+      Arrays.fill(ended, 0, count, null);
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Takes back the changes to the games in memory made by the records of the batch, newest first
+   * @param count the number of records in the batch
+   */
+  private void rollBack(int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      int type = buffer.getInt(i * RECORD_SIZE);
+      long game = buffer.getLong(i * RECORD_SIZE + 4);
+      if (type == NEW_GAME)
+        games.remove(game);
+      else if (type == MOVE) {
+        GomokuGameRecord moves = games.get(game);
+        moves.removeMove();
+        moves.setResult(results[i]);
+      }
+      else
+        games.put(game, ended[i]);
+    }
+    records -= count;
+    logRecords -= count;
+  }
+
+  /**
+   * Writes every game that has not ended to a new snapshot and starts a new, empty log
+   * Games that are won, and games released before the generation of the log began, are dropped
+   * The snapshot is written under another name and renamed once it is on the disk, so the old snapshot and log are
+   * used if the program stops before the compaction finishes
+   * If the compaction fails, the journal is marked as failed, since the files may no longer be of one generation
+   * @throws IOException if the files cannot be written
+   */
+  public synchronized void compact() throws IOException {
+    checkFailed();
+    flush();
+    Iterator<Map.Entry<Long, GomokuGameRecord>> entries = games.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<Long, GomokuGameRecord> entry = entries.next();
+      Long since = released.get(entry.getKey());
+      if (entry.getValue().getResult() != GomokuGameRecord.NO_WINNER || (since != null && since < generation)) {
+        entries.remove();
+        released.remove(entry.getKey());
+      }
+    }
+    boolean written = false;
+    try {
+      writeSnapshot();
+      written = true;
+    }
+    finally {
+      if (!written)
+        failed = true;
+    }
+  }
+
+  /**
+   * Writes the games to the snapshot of the next generation and moves on to its log
+   * @throws IOException if the files cannot be written
+   */
+  private void writeSnapshot() throws IOException {
+    int size = 20;
+    for (GomokuGameRecord moves : games.values()) {
+      int encoded = moves.getEncodedSize();
+      size += 8 + GomokuGameRecord.varintSize(encoded) + encoded;
+    }
+    ByteBuffer write = ByteBuffer.allocate(size + 4);
+    write.putInt(MAGIC).putLong(nextGame).putInt(games.size());
+    for (Map.Entry<Long, GomokuGameRecord> entry : games.entrySet()) {
+      write.putLong(entry.getKey());
+      entry.getValue().writeTo(write);
+    }
+    crc.reset();
+    crc.update(write.array(), 0, write.position());
+    write.putInt((int) crc.getValue());
+    write.flip();
+
+    long next = generation + 1;
+    Path temp = dir.resolve("snapshot-" + next + ".tmp");
+    try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (write.hasRemaining()) {
+        out.write(write);
+      }
+      out.force(true);
+    }
+    Files.move(temp, snapshotFile(next), StandardCopyOption.ATOMIC_MOVE);
+    FileChannel newLog = FileChannel.open(logFile(next), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                          StandardOpenOption.TRUNCATE_EXISTING);
+    syncDirectory();
+    log.close();
+    log = newLog;
+    Files.deleteIfExists(logFile(generation));
+    Files.deleteIfExists(snapshotFile(generation));
+    generation = next;
+    logRecords = 0;
+  }
+
+  /**
+   * Forces the names of the files in the folder to the disk, on systems that allow it
+   */
+  private void syncDirectory() {
+    try (FileChannel folder = FileChannel.open(dir, StandardOpenOption.READ)) {
+      folder.force(true);
+    }
+    catch (IOException e) {
+      // Some systems cannot open a folder, and the rename is still made in the end
+    }
+  }
+
+  /**
+   * Gets the moves of a game that has not ended
+   * @param game the id of the game
+   * @return a copy of the moves of the game, or null if the game is not in the journal
+   */
+  public synchronized GomokuGameRecord getGame(long game) {
+    GomokuGameRecord moves = games.get(game);
+    if (moves == null)
+      return null;
+    ByteBuffer copy = ByteBuffer.allocate(GomokuGameRecord.MAX_VARINT_BYTES + moves.getEncodedSize());
+    moves.writeTo(copy);
+    copy.flip();
+    return GomokuGameRecord.read(copy);
+  }
+
+  /**
+   * Gets the ids of every game that has not ended
+   * @return the ids, in no order
+   */
+  public synchronized List<Long> getGames() {
+    return new ArrayList<Long>(games.keySet());
+  }
+
+  /**
+   * Getter method for records
+   * @return the number of records added since the journal was opened
+   */
+  public synchronized long getRecords() {
+    return records;
+  }
+
+  /**
+   * Getter method for commits
+   * @return the number of times records were forced to the disk since the journal was opened
+   */
+  public synchronized long getCommits() {
+    return commits;
+  }
+
+  /**
+   * Getter method for recovered
+   * @return the number of log records read back when the journal was opened
+   */
+  public synchronized long getRecovered() {
+    return recovered;
+  }
+
+  /**
+   * Getter method for generation
+   * @return the number of compactions the folder has had, which names its files
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Writes the records not yet written and closes the log
+   * @throws IOException if the records cannot be written
+   */
+  public synchronized void close() throws IOException {
+    if (log.isOpen()) {
+      try {
+        flush();
+      }
+      finally {
+        log.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the name of the snapshot of a generation
+   * @param generation the generation
+   * @return the file
+   */
+  private Path snapshotFile(long generation) {
+    return dir.resolve("snapshot-" + generation + ".bin");
+  }
+
+  /**
+   * Gets the name of the log of a generation
+   * @param generation the generation
+   * @return the file
+   */
+  private Path logFile(long generation) {
+    return dir.resolve("journal-" + generation + ".log");
+  }
+
+  /**
+   * Gets the generation in the name of a snapshot or log
+   * @param file the file
+   * @return the generation, or -1 if the name has none
+   */
+  private static long generationOf(Path file) {
+    String name = file.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring(name.indexOf('-') + 1, name.indexOf('.')));
+    }
+    catch (RuntimeException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Measures how many moves a second the journal can keep, with games of random moves on 15x15 boards
+   * @param args options written as name=value
+   */
+  public static void main(String[] args) {
+    String dir = "journal";
+    long total = 1000000;
+    int batch = DEFAULT_BATCH;
+    int gameCount = 1000;
+    for (String arg : args) {
+      String[] pair = arg.split("=", 2);
+      String value = pair.length > 1 ? pair[1] : "";
+      if (pair[0].equals("dir"))
+        dir = value;
+      else if (pair[0].equals("moves"))
+        total = Long.parseLong(value);
+      else if (pair[0].equals("batch"))
+        batch = Integer.parseInt(value);
+      else if (pair[0].equals("games"))
+        gameCount = Integer.parseInt(value);
+      else {
+        System.out.println("Unknown option " + arg);
+        return;
+      }
+    }
+    try {
+      long start = System.nanoTime();
+      GomokuJournal journal = new GomokuJournal(Paths.get(dir), batch, DEFAULT_COMPACT_RECORDS);
+      System.out.println(String.format("Recovered %d games from %d records in %.1f ms", journal.getGames().size(),
+                                       journal.getRecovered(), (System.nanoTime() - start) / 1e6));
+
+      // Each game plays the squares of a 15x15 board in a shuffled order and starts again when it runs out
+      long[] ids = new long[gameCount];
+      int[] played = new int[gameCount];
+      int[] order = new int[225];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = (i * 97) % 225;
+      }
+      for (int g = 0; g < gameCount; g++) {
+        ids[g] = journal.newGame(15, 15, 5);
+      }
+      start = System.nanoTime();
+      for (long i = 0; i < total; i++) {
+        int g = (int) (i % gameCount);
+        if (played[g] == order.length) {
+          journal.endGame(ids[g]);
+          ids[g] = journal.newGame(15, 15, 5);
+          played[g] = 0;
+        }
+        int square = order[(played[g]++ + g) % order.length];
+        journal.move(ids[g], square / 15, square % 15, 0);
+      }
+      journal.commit();
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%d moves in %.2f s, %.0f moves/second, %d fsyncs, generation %d", total,
+                                       seconds, total / seconds, journal.getCommits(), journal.getGeneration()));
+      journal.close();
+    }
+    catch (IOException e) {
+      System.out.println("The journal failed: " + e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * A class to load test a GomokuServer with many simulated players on one non-blocking thread
+ * Each connection plays several games at once with random moves, keeping one command in flight for each game,
+ * and starts a new game whenever one ends
+ * The time from sending each move to reading its answer is counted in a histogram with one bucket for each power of 2
+ * Run with: java GomokuLoadTest [host=embedded] [port=7777] [connections=100] [games=4] [seconds=10] [size=15]
+ *           [moves=60] [threads=1] [journal=folder]
+ * With host=embedded a server with the given number of selector threads is started in the same program, saving its
+ * games to a GomokuJournal in the folder if one is given
+ * @author Noah Leibowitz
+ */
+public class GomokuLoadTest {
+
+  /** The number of buckets of the latency histogram, one for each power of 2 nanoseconds */
+  private static final int BUCKETS = 40;
+
+  /** Stores the number of moves answered */
+  private long moves;
+
+  /** Stores the number of ERR answers */
+  private long errors;
+
+  /** Stores the number of games started */
+  private long games;
+
+  /** Stores how many move answers took from 2^i up to 2^(i+1) nanoseconds */
+  private long[] histogram = new long[BUCKETS];
+
+  /** Stores the longest time a move answer took, in nanoseconds */
+  private long maxLatency;
+
+  /** Stores the number of rows and columns of the boards */
+  private int size;
+
+  /** Stores the most moves played in one game before it is ended */
+  private int movesPerGame;
+
+  /** Stores the random numbers used to choose moves */
+  private Random random = new Random(17);
+
+  /** A class for one game played by a connection */
+  private class Game {
+
+    /** Stores the id the server gave the game, or 0 while it is being started */
+    private int id;
+
+    /** Stores which squares have been played or refused */
+    private boolean[] tried = new boolean[size * size];
+
+    /** Stores the number of moves tried */
+    private int played;
+  }
+
+  /** A class for one connection to the server */
+  private class Client {
+
+    /** Stores the socket */
+    private SocketChannel channel;
+
+    /** Stores the bytes read that are not yet a whole line */
+    private ByteBuffer in = ByteBuffer.allocate(4096);
+
+    /** Stores the commands that have not been sent yet */
+    private ByteBuffer out = ByteBuffer.allocate(4096);
+
+    /** Stores the games whose commands are in flight, in the order they were sent */
+    private ArrayDeque<Game> waiting = new ArrayDeque<Game>();
+
+    /** Stores the time each command in flight was sent, in the same order */
+    private ArrayDeque<Long> sent = new ArrayDeque<Long>();
+
+    /**
+     * Constructor that initializes the fields
+     * @param channel the socket
+     */
+    private Client(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Queues a command for a game
+     * @param game the game the command is for
+     * @param text the command
+     */
+    private void send(Game game, String text) {
+      if (out.remaining() < text.length() + 1) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + text.length() + 1));
+        out.flip();
+        bigger.put(out);
+        out = bigger;
+      }
+      for (int i = 0; i < text.length(); i++) {
+        out.put((byte) text.charAt(i));
+      }
+      out.put((byte) '\n');
+      waiting.add(game);
+      sent.add(System.nanoTime());
+    }
+
+    /**
+     * Queues the next command of a game: a new move, or the end of the game when it has played enough
+     * @param game the game
+     */
+    private void next(Game game) {
+      if (game.played >= movesPerGame) {
+        send(game, "END " + game.id);
+        return;
+      }
+      int square = random.nextInt(game.tried.length);
+      while (game.tried[square]) {
+        square = (square + 1) % game.tried.length;
+      }
+      game.tried[square] = true;
+      game.played++;
+      send(game, "MOVE " + game.id + " " + square / size + " " + square % size);
+    }
+
+    /**
+     * Answers one line from the server
+     * @param line the line
+     */
+    private void receive(String line) {
+      Game game = waiting.poll();
+      long latency = System.nanoTime() - sent.poll();
+      if (line.startsWith("OK") || line.startsWith("FORBIDDEN") || line.startsWith("WIN")) {
+        moves++;
+        histogram[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, latency)))]++;
+        maxLatency = Math.max(maxLatency, latency);
+        if (line.startsWith("WIN"))
+          game.played = movesPerGame;
+        next(game);
+      }
+      else if (line.startsWith("GAME")) {
+        game.id = Integer.parseInt(line.split(" ")[1]);
+        games++;
+        next(game);
+      }
+      else if (line.startsWith("ENDED")) {
+        Game fresh = new Game();
+        send(fresh, "NEW " + size + " " + size);
+      }
+      else {
+        errors++;
+        game.played = movesPerGame;
+        next(game);
+      }
+    }
+
+    /**
+     * Reads answers and sends commands
+     * @param key the key of the socket
+     * @throws IOException if the socket fails
+     */
+    private void serve(SelectionKey key) throws IOException {
+      if (key.isConnectable()) {
+        channel.finishConnect();
+        key.interestOps(SelectionKey.OP_READ);
+      }
+      if (key.isReadable()) {
+        if (channel.read(in) < 0)
+          throw new IOException("The server closed a connection");
+        in.flip();
+        byte[] bytes = in.array();
+        int start = in.position();
+        for (int i = start; i < in.limit(); i++) {
+          if (bytes[i] == '\n') {
+            receive(new String(bytes, start, i - start, StandardCharsets.US_ASCII));
+            start = i + 1;
+          }
+        }
+        in.position(start);
+        in.compact();
+      }
+      if (channel.isConnected()) {
+        out.flip();
+        channel.write(out);
+        out.compact();
+        key.interestOps(SelectionKey.OP_READ | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+      }
+    }
+  }
+
+  /**
+   * Constructor that initializes the fields
+   * @param size the number of rows and columns of the boards
+   * @param movesPerGame the most moves played in one game before it is ended
+   */
+  public GomokuLoadTest(int size, int movesPerGame) {
+    this.size = size;
+    this.movesPerGame = Math.min(movesPerGame, size * size);
+  }
+
+  /**
+   * Runs the test
+   * @param host the host of the server
+   * @param port the port of the server
+   * @param connections the number of connections
+   * @param gamesPerConnection the number of games each connection plays at once
+   * @param seconds how long to run
+   * @throws IOException if a connection fails
+   */
+  public void run(String host, int port, int connections, int gamesPerConnection, double seconds)
+      throws IOException {
+    try (Selector selector = Selector.open()) {
+      for (int i = 0; i < connections; i++) {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.connect(new InetSocketAddress(host, port));
+        Client client = new Client(channel);
+        for (int j = 0; j < gamesPerConnection; j++) {
+          client.send(new Game(), "NEW " + size + " " + size);
+        }
+        channel.register(selector, SelectionKey.OP_CONNECT, client);
+      }
+      long end = System.nanoTime() + (long) (seconds * 1e9);
+      while (System.nanoTime() < end) {
+        selector.select(100);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          ((Client) key.attachment()).serve(key);
+        }
+      }
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+    }
+  }
+
+  /**
+   * Gets a percentile of the latency from the histogram
+   * @param fraction the fraction of the moves, such as 0.99
+   * @return the upper edge of the bucket the percentile falls in, in nanoseconds
+   */
+  public long percentile(double fraction) {
+    long target = (long) Math.ceil(moves * fraction);
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += histogram[i];
+      if (count >= target && count > 0)
+        return 1L << (i + 1);
+    }
+    return maxLatency;
+  }
+
+  /**
+   * Getter method for the number of moves answered
+   * @return the number of moves
+   */
+  public long getMoves() {
+    return moves;
+  }
+
+  /**
+   * Getter method for the number of errors
+   * @return the number of ERR answers
+   */
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   * Runs a load test and prints the speed and latency
+   * @param args options written as name=value
+   */
+  public static void main(String[] args) {
+    String host = "embedded";
+    int port = GomokuServer.DEFAULT_PORT;
+    int connections = 100;
+    int gamesPerConnection = 4;
+    double seconds = 10;
+    int size = 15;
+    int movesPerGame = 60;
+    int threads = 1;
+    String journalDir = null;
+    for (String arg : args) {
+      String[] pair = arg.split("=", 2);
+      String value = pair.length > 1 ? pair[1] : "";
+      if (pair[0].equals("host"))
+        host = value;
+      else if (pair[0].equals("port"))
+        port = Integer.parseInt(value);
+      else if (pair[0].equals("connections"))
+        connections = Integer.parseInt(value);
+      else if (pair[0].equals("games"))
+        gamesPerConnection = Integer.parseInt(value);
+      else if (pair[0].equals("seconds"))
+        seconds = Double.parseDouble(value);
+      else if (pair[0].equals("size"))
+        size = Integer.parseInt(value);
+      else if (pair[0].equals("moves"))
+        movesPerGame = Integer.parseInt(value);
+      else if (pair[0].equals("threads"))
+        threads = Integer.parseInt(value);
+      else if (pair[0].equals("journal"))
+        journalDir = value;
+      else {
+        System.out.println("Unknown option " + arg);
+        return;
+      }
+    }
+    GomokuServer server = null;
+    GomokuJournal journal = null;
+    try {
+      if (host.equals("embedded")) {
+        if (journalDir != null)
+          journal = new GomokuJournal(Paths.get(journalDir));
+        server = new GomokuServer(0, threads, journal);
+        server.start();
+        port = server.getPort();
+        host = "localhost";
+      }
+      GomokuLoadTest test = new GomokuLoadTest(size, movesPerGame);
+      test.run(host, port, connections, gamesPerConnection, seconds);
+      System.out.println(connections + " connections, " + connections * gamesPerConnection + " games in flight, "
+                         + test.games + " games started");
+      System.out.println(String.format("%d moves, %.0f moves/second, %d errors", test.moves, test.moves / seconds,
+                                       test.errors));
+      System.out.println(String.format("Latency p50 < %.3f ms, p99 < %.3f ms, p99.9 < %.3f ms, max %.3f ms",
+                                       test.percentile(0.5) / 1e6, test.percentile(0.99) / 1e6,
+                                       test.percentile(0.999) / 1e6, test.maxLatency / 1e6));
+    }
+    catch (IOException e) {
+      System.out.println("The load test failed: " + e.getMessage());
+    }
+    finally {
+      if (server != null) {
+        try {
+          server.close();
+        }
+        catch (IOException e) {
+          System.out.println("Could not close the server: " + e.getMessage());
+        }
+      }
+      if (journal != null) {
+        try {
+          journal.close();
+        }
+        catch (IOException e) {
+          System.out.println("Could not close the journal: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,472 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A class to represent a computer player for the game Gomoku that uses Monte Carlo tree search
+ * Each playout walks down a tree of moves, choosing the move with the best mix of results so far and a prior
+ * from the shapes the move makes (PUCT), then plays random moves near the pieces until someone wins
+ * The playouts run at the same time on a work-stealing pool and share one tree: a playout counts its visit
+ * on the way down before its result is known (a "virtual loss"), so the other threads spread out to other moves
+ * The tree stops growing at a set number of nodes, so the memory used is capped even on very large boards
+ * @author Noah Leibowitz
+ */
+public class GomokuMCTS implements GomokuPlayer {
+
+  /** Stores the score of each shape from GomokuPatterns, used for the prior of a move */
+  private static final int[] SHAPE_SCORES = {0, 10, 100, 800, 1000, 1000, 10000, 100000, 0};
+
+  /** Stores the change in the row along each of the four lines */
+  private static final int[] LINE_DX = {0, 1, 1, 1};
+
+  /** Stores the change in the column along each of the four lines */
+  private static final int[] LINE_DY = {1, 0, 1, -1};
+
+  /** The number of playouts through a node before its moves are added to the tree */
+  private static final int EXPAND_VISITS = 8;
+
+  /** The most random moves in one playout before it is counted as a draw */
+  private static final int PLAYOUT_LIMIT = 200;
+
+  /** Stores the longest time to think about one move, in milliseconds */
+  private long timeLimit;
+
+  /** Stores the most nodes the tree can have */
+  private int maxNodes;
+
+  /** Stores the number of threads that run playouts */
+  private int threads;
+
+  /** Stores how much the prior counts compared to the results of the playouts */
+  private double exploration = 1.5;
+
+  /** Stores the pool of threads that run the playouts */
+  private ForkJoinPool pool;
+
+  /** Stores the time when the playouts have to stop, from System.nanoTime() */
+  private long deadline;
+
+  /** Stores the number of nodes in the tree of the current move */
+  private AtomicInteger nodeCount = new AtomicInteger();
+
+  /** Stores the number of playouts for the current move */
+  private AtomicInteger playoutCount = new AtomicInteger();
+
+  /** Stores the number of playouts for the last move */
+  private long playouts;
+
+  /** Stores the number of nodes in the tree for the last move */
+  private int treeSize;
+
+  /** Stores the share of the playouts through the chosen move that the computer won, from 0 to 1 */
+  private double winRate;
+
+  /** Stores how long the last move took, in nanoseconds */
+  private long elapsed;
+
+  /**
+   * A class to represent one move in the tree
+   * Its counts are changed by many threads at once, so they are only changed through atomic updaters
+   */
+  private static class Node {
+
+    /** Updates the visits of a node atomically */
+    private static final AtomicIntegerFieldUpdater<Node> VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+
+    /** Updates the value of a node atomically */
+    private static final AtomicLongFieldUpdater<Node> VALUE = AtomicLongFieldUpdater.newUpdater(Node.class, "value");
+
+    /** Stores the move that leads to this node, with its row in the high 32 bits and its column in the low 32 bits */
+    private final long move;
+
+    /** Stores the color of the player who made the move (1 for black or 2 for white) */
+    private final int mover;
+
+    /** Stores the share of the prior of the parent that this move gets */
+    private final float prior;
+
+    /** Stores the color of the player who won by making this move, -1 for a draw, or 0 if the game goes on */
+    private int winner;
+
+    /** Stores the moves after this one, or null if the node has not been expanded */
+    private volatile Node[] children;
+
+    /** Stores the number of playouts that have gone through this node, including the ones still running */
+    private volatile int visits;
+
+    /** Stores two points for each playout that the mover won and one for each draw */
+    private volatile long value;
+
+    /**
+     * Constructor that initializes the fields
+     * @param move the move that leads to this node
+     * @param mover the color of the player who made the move
+     * @param prior the share of the prior of the parent that this move gets
+     */
+    private Node(long move, int mover, float prior) {
+      this.move = move;
+      this.mover = mover;
+      this.prior = prior;
+    }
+  }
+
+  /**
+   * Constructor that initializes the fields
+   * @param timeLimit the longest time to think about one move, in milliseconds
+   * @param maxNodes the most nodes the tree can have
+   * @param threads the number of threads that run playouts
+   */
+  public GomokuMCTS(long timeLimit, int maxNodes, int threads) {
+    this.timeLimit = timeLimit;
+    this.maxNodes = maxNodes;
+    this.threads = Math.max(1, threads);
+    pool = new ForkJoinPool(this.threads);
+  }
+
+  /**
+   * Constructor that uses every processor and a tree of up to a million nodes
+   * @param timeLimit the longest time to think about one move, in milliseconds
+   */
+  public GomokuMCTS(long timeLimit) {
+    this(timeLimit, 1000000, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Setter method for exploration
+   * @param exploration how much the prior counts compared to the results of the playouts
+   */
+  public void setExploration(double exploration) {
+    this.exploration = exploration;
+  }
+
+  /** Starts a new game, which needs nothing since a new tree is grown for every move */
+  public void newGame() {
+  }
+
+  /** Shuts down the pool of threads that run the playouts */
+  public void close() {
+    pool.shutdown();
+  }
+
+  /**
+   * Getter method for threads
+   * @return the number of threads that run playouts
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Getter method for playouts
+   * @return the number of playouts for the last move
+   */
+  public long getPlayouts() {
+    return playouts;
+  }
+
+  /**
+   * Gets the speed of the playouts
+   * @return the number of playouts per second for the last move
+   */
+  public long getPlayoutsPerSecond() {
+    return elapsed == 0 ? 0 : playouts * 1000000000L / elapsed;
+  }
+
+  /**
+   * Getter method for treeSize
+   * @return the number of nodes in the tree for the last move
+   */
+  public int getTreeSize() {
+    return treeSize;
+  }
+
+  /**
+   * Getter method for winRate
+   * @return the share of the playouts through the chosen move that the computer won, from 0 to 1
+   */
+  public double getWinRate() {
+    return winRate;
+  }
+
+  /**
+   * Gets the number of playouts for the last move
+   * @return the number of playouts
+   */
+  public long getNodes() {
+    return playouts;
+  }
+
+  /**
+   * Getter method for the time of the last move
+   * @return how long the last move took, in milliseconds
+   */
+  public long getElapsedMillis() {
+    return elapsed / 1000000;
+  }
+
+  /**
+   * Gets the speed of the last search
+   * @return the number of playouts per second
+   */
+  public long getNodesPerSecond() {
+    return getPlayoutsPerSecond();
+  }
+
+  /**
+   * Finds the move that the most playouts went through
+   * The board is not changed, since every thread plays out on its own copy
+   * @param game the board to play on
+   * @return the row and column of the move, or null if there is no legal move
+   */
+  public int[] findMove(GomokuSample game) {
+    long start = System.nanoTime();
+    deadline = start + timeLimit * 1000000;
+    nodeCount.set(1);
+    playoutCount.set(0);
+    final Node root = new Node(-1, game.isBlackTurn() ? 2 : 1, 1);
+    final GomokuSample first = new GomokuSample(game);
+    expand(root, first, true);
+    Node[] children = root.children;
+    Node best = null;
+    if (children.length > 0) {
+
+      // A move that wins right away needs no playouts
+      for (int i = 0; i < children.length && best == null; i++) {
+        if (children[i].winner > 0)
+          best = children[i];
+      }
+      if (best == null) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+        for (int i = 0; i < threads; i++) {
+          final GomokuSample copy = i == 0 ? first : new GomokuSample(game);
+          tasks[i] = pool.submit(new Runnable() {
+            public void run() {
+              runPlayouts(root, copy);
+            }
+          });
+        }
+        for (int i = 0; i < threads; i++) {
+          tasks[i].join();
+        }
+        best = children[0];
+        for (int i = 1; i < children.length; i++) {
+          if (children[i].visits > best.visits)
+            best = children[i];
+        }
+      }
+    }
+    playouts = playoutCount.get();
+    treeSize = nodeCount.get();
+    elapsed = System.nanoTime() - start;
+    if (GomokuMetrics.ENABLED)
+      GomokuMetrics.engine("GomokuMCTS").record(playouts, elapsed, 0, 0, 0);
+    if (best == null)
+      return null;
+    winRate = best.winner > 0 ? 1 : best.visits == 0 ? 0 : best.value / (2.0 * best.visits);
+    return new int[] {(int) (best.move >> 32), (int) best.move};
+  }
+
+  /**
+   * Runs playouts from the root until the time runs out
+   * Nothing here grows with the size of the board, so the playouts run the same on a huge or unbounded board
+   * @param root the root of the tree
+   * @param game this thread's copy of the board
+   */
+  private void runPlayouts(Node root, GomokuSample game) {
+    Node[] path = new Node[64];
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    while (System.nanoTime() < deadline) {
+
+      // Walks down the tree, counting a visit at each node before the result is known
+      Node node = root;
+      int length = 0;
+      Node.VISITS.incrementAndGet(node);
+      path[length++] = node;
+      while (node.winner == 0) {
+        if (node.children == null && node != root && node.visits > EXPAND_VISITS)
+          expand(node, game, false);
+        Node[] children = node.children;
+        if (children == null)
+          break;
+        if (children.length == 0) {
+          node.winner = -1;
+          break;
+        }
+        node = select(node, children);
+        Node.VISITS.incrementAndGet(node);
+        if (length == path.length)
+          path = Arrays.copyOf(path, length * 2);
+        path[length++] = node;
+        game.makeMove((int) (node.move >> 32), (int) node.move);
+      }
+
+      // Plays random moves from the end of the tree
+      int winner = node.winner;
+      if (winner == 0)
+        winner = playout(game, random);
+      for (int i = 1; i < length; i++) {
+        game.undo();
+      }
+
+      // Gives two points to each node of the winner and one to each node for a draw
+      for (int i = 0; i < length; i++) {
+        if (winner == path[i].mover)
+          Node.VALUE.addAndGet(path[i], 2);
+        else if (winner <= 0)
+          Node.VALUE.addAndGet(path[i], 1);
+      }
+      playoutCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Chooses the child with the best mix of results and prior
+   * @param parent the node
+   * @param children the children of the node
+   * @return the child to walk down to
+   */
+  private Node select(Node parent, Node[] children) {
+    double scale = exploration * Math.sqrt(parent.visits);
+    Node best = children[0];
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < children.length; i++) {
+      Node child = children[i];
+      if (child.winner > 0)
+        return child;
+      int visits = child.visits;
+
+      // A move that has not been played out yet is scored as a draw
+      double q = visits == 0 ? 0.5 : child.value / (2.0 * visits);
+      double score = q + scale * child.prior / (1 + visits);
+      if (score > bestScore) {
+        bestScore = score;
+        best = child;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Adds the legal moves near the pieces as children of a node, unless the tree is full
+   * Each move gets a prior from the shapes it makes for the player to move and blocks for the other player
+   * @param node the node
+   * @param game the board at the node
+   * @param force true to expand the node even if the tree is full, as for the root
+   */
+  private void expand(Node node, GomokuSample game, boolean force) {
+    synchronized (node) {
+      if (node.children != null)
+        return;
+      long[] moves = game.getCandidates(false);
+      if (nodeCount.addAndGet(moves.length) > maxNodes && !force) {
+        nodeCount.addAndGet(-moves.length);
+        return;
+      }
+      int mover = game.isBlackTurn() ? 1 : 2;
+      Node[] children = new Node[moves.length];
+      int[] scores = new int[moves.length];
+      int[] winners = new int[moves.length];
+      long total = 0;
+      int legalCount = 0;
+      for (int i = 0; i < moves.length; i++) {
+        int row = (int) (moves[i] >> 32);
+        int col = (int) moves[i];
+        game.setPiece(row, col);
+        boolean won = game.hasWon(row, col);
+        boolean legal = won || !(game.violatesFourFour(row, col) || game.violatesThreeThree(row, col));
+        int attack = bestShape(game, row, col);
+        game.removePiece(row, col);
+        if (!legal)
+          continue;
+        game.switchTurn();
+        game.setPiece(row, col);
+        int defend = bestShape(game, row, col);
+        game.removePiece(row, col);
+        game.switchTurn();
+        moves[legalCount] = moves[i];
+        winners[legalCount] = won ? mover : 0;
+        scores[legalCount] = SHAPE_SCORES[attack] + SHAPE_SCORES[defend] - SHAPE_SCORES[defend] / 10 + 1;
+        total += scores[legalCount];
+        legalCount++;
+      }
+      if (legalCount < moves.length) {
+        nodeCount.addAndGet(legalCount - moves.length);
+        children = new Node[legalCount];
+      }
+      for (int i = 0; i < legalCount; i++) {
+        children[i] = new Node(moves[i], mover, (float) scores[i] / total);
+        children[i].winner = winners[i];
+      }
+      node.children = children;
+    }
+  }
+
+  /**
+   * Finds the best shape a piece on a square makes for its color
+   * @param game the board with the piece on it
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return the strongest shape along the four lines
+   */
+  private static int bestShape(GomokuSample game, int row, int col) {
+    int best = GomokuPatterns.NONE;
+    for (int line = 0; line < 4; line++) {
+      best = Math.max(best, game.getShape(row, col, LINE_DX[line], LINE_DY[line]));
+    }
+    return best;
+  }
+
+  /**
+   * Plays random moves next to the pieces on the board until a player wins, then takes them back
+   * The Four-Four and Three-Three rules are not checked here, to keep the playouts fast
+   * A move is looked for next to a random piece from the list the board keeps, and only if a few tries miss is a
+   * random square taken from the frontier, so a playout never reads the whole board
+   * @param game the board
+   * @param random the random number generator of this thread
+   * @return the color of the winner, or -1 for a draw
+   */
+  private static int playout(GomokuSample game, ThreadLocalRandom random) {
+    int firstRow = game.getFirstRow();
+    int firstCol = game.getFirstCol();
+    int rows = game.getRows();
+    int cols = game.getCols();
+    int count = 0;
+    int winner = -1;
+    while (count < PLAYOUT_LIMIT && winner < 0) {
+      boolean found = false;
+      int row = 0;
+      int col = 0;
+
+      // Tries a few random squares near a random piece before looking at the frontier
+      for (int tries = 0; tries < 8 && !found; tries++) {
+        int stones = game.getStoneCount();
+        int near = stones == 0 ? -1 : random.nextInt(stones);
+        row = (near < 0 ? firstRow + rows / 2 : game.getStoneRow(near)) + random.nextInt(5) - 2;
+        col = (near < 0 ? firstCol + cols / 2 : game.getStoneCol(near)) + random.nextInt(5) - 2;
+        found = row >= firstRow && row - firstRow < rows && col >= firstCol && col - firstCol < cols
+            && game.isEmpty(row, col);
+      }
+      if (!found) {
+        long[] squares = game.getCandidates(false);
+        if (squares.length == 0)
+          break;
+        long square = squares[random.nextInt(squares.length)];
+        row = (int) (square >> 32);
+        col = (int) square;
+      }
+      game.makeMove(row, col);
+      count++;
+      if (game.hasWon(row, col))
+        winner = game.isBlackTurn() ? 2 : 1;
+    }
+    for (int i = 0; i < count; i++) {
+      game.undo();
+    }
+    return winner;
+  }
+
+}
@@ -0,0 +1,565 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A class to count and time the rule checks of the boards and the searches of the engines while a program runs
+ * Each operation (placing a piece, checking for a win, and the Four-Four and Three-Three checks) counts its calls and
+ * keeps a histogram of how long they took, with one bucket for each power of two nanoseconds, so recording a call is
+ * a few additions and never locks
+ * Each engine reports its searches, the positions it searched, how deep it got, and how often the transposition
+ * table had the position it looked for
+ * Everything can be read as MXBeans under the "gomoku" domain (with jconsole, for example), and can be written to a
+ * text file every few seconds
+ * Metrics are off unless the program is started with -Dgomoku.metrics=true; since ENABLED is a constant, a check of
+ * it is removed by the just-in-time compiler when it is false and the boards run as if there were no metrics
+ * @author Noah Leibowitz
+ */
+public class GomokuMetrics {
+
+  /** The name of the system property that turns the metrics on */
+  public static final String ENABLED_PROPERTY = "gomoku.metrics";
+
+  /** The name of the system property that sets the file the metrics are written to */
+  public static final String FILE_PROPERTY = "gomoku.metrics.file";
+
+  /** The name of the system property that sets how often the file is written, in seconds */
+  public static final String PERIOD_PROPERTY = "gomoku.metrics.period";
+
+  /** The number of seconds between writes of the file if the period is not set */
+  public static final int DEFAULT_PERIOD = 10;
+
+  /** Stores whether the metrics are on, read once when the class is loaded */
+  public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  /** The number of buckets of a histogram, enough for any time that fits in a long */
+  private static final int BUCKETS = 64;
+
+  /** An interface for reading an operation as an MXBean */
+  public interface OperationMXBean {
+
+    /**
+     * Gets the number of calls
+     * @return the number of calls
+     */
+    long getCount();
+
+    /**
+     * Gets the average time of a call
+     * @return the average time in nanoseconds
+     */
+    double getMeanNanos();
+
+    /**
+     * Gets the time that half of the calls were faster than
+     * @return the time in nanoseconds, rounded up to a power of two
+     */
+    long getMedianNanos();
+
+    /**
+     * Gets the time that 99 of every 100 calls were faster than
+     * @return the time in nanoseconds, rounded up to a power of two
+     */
+    long getP99Nanos();
+
+    /**
+     * Gets the time of the slowest call
+     * @return the time in nanoseconds
+     */
+    long getMaxNanos();
+
+    /** Sets every counter back to zero */
+    void reset();
+  }
+
+  /** An interface for reading an engine as an MXBean */
+  public interface EngineMXBean {
+
+    /**
+     * Gets the number of searches
+     * @return the number of moves or positions searched for
+     */
+    long getSearches();
+
+    /**
+     * Gets the number of positions searched in every search
+     * @return the number of positions
+     */
+    long getNodes();
+
+    /**
+     * Gets the speed of the searches
+     * @return the number of positions searched per second, over every search
+     */
+    long getNodesPerSecond();
+
+    /**
+     * Gets the speed of the last search
+     * @return the number of positions searched per second in the last search
+     */
+    long getLastNodesPerSecond();
+
+    /**
+     * Gets the depth of the last search
+     * @return the depth, or 0 if the engine does not search to a depth
+     */
+    int getLastDepth();
+
+    /**
+     * Gets the deepest search
+     * @return the depth, or 0 if the engine does not search to a depth
+     */
+    int getMaxDepth();
+
+    /**
+     * Gets the share of the probes of the transposition table that found their position, over every search
+     * @return the hit rate from 0 to 1, or 0 if the engine has no table
+     */
+    double getHitRate();
+
+    /**
+     * Gets the share of the probes of the transposition table that found their position in the last search
+     * @return the hit rate from 0 to 1, or 0 if the engine has no table
+     */
+    double getLastHitRate();
+
+    /** Sets every counter back to zero */
+    void reset();
+  }
+
+  /** A class to count and time the calls of one operation */
+  public static class Operation implements OperationMXBean {
+
+    /** Stores the name of the operation */
+    private String name;
+
+    /** Stores the number of calls */
+    private LongAdder count = new LongAdder();
+
+    /** Stores the total time of the calls in nanoseconds */
+    private LongAdder total = new LongAdder();
+
+    /** Stores the time of the slowest call */
+    private LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /** Stores the number of calls in each bucket, where bucket b holds the times from 2^(b-1) to 2^b - 1 */
+    private LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    /**
+     * Constructor that makes an operation with no calls
+     * @param name the name of the operation
+     */
+    public Operation(String name) {
+      this.name = name;
+      for (int b = 0; b < BUCKETS; b++) {
+        buckets[b] = new LongAdder();
+      }
+    }
+
+    /**
+     * Getter method for name
+     * @return the name of the operation
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Records a call that has just finished
+     * @param start the time the call started, from System.nanoTime()
+     */
+    public void record(long start) {
+      long nanos = Math.max(0, System.nanoTime() - start);
+      count.increment();
+      total.add(nanos);
+      max.accumulate(nanos);
+      buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    /**
+     * Gets the number of calls
+     * @return the number of calls
+     */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /**
+     * Gets the average time of a call
+     * @return the average time in nanoseconds
+     */
+    public double getMeanNanos() {
+      long calls = count.sum();
+      return calls == 0 ? 0 : (double) total.sum() / calls;
+    }
+
+    /**
+     * Gets the time that half of the calls were faster than
+     * @return the time in nanoseconds, rounded up to a power of two
+     */
+    public long getMedianNanos() {
+      return getPercentileNanos(0.5);
+    }
+
+    /**
+     * Gets the time that 99 of every 100 calls were faster than
+     * @return the time in nanoseconds, rounded up to a power of two
+     */
+    public long getP99Nanos() {
+      return getPercentileNanos(0.99);
+    }
+
+    /**
+     * Gets the time that a share of the calls were faster than, from the histogram
+     * @param share the share of the calls, from 0 to 1
+     * @return the upper end of the bucket that the share falls in, in nanoseconds, or 0 if there are no calls
+     */
+    public long getPercentileNanos(double share) {
+      long[] counts = new long[BUCKETS];
+      long calls = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+        counts[b] = buckets[b].sum();
+        calls += counts[b];
+      }
+      if (calls == 0)
+        return 0;
+      long target = Math.max(1, (long) Math.ceil(share * calls));
+      long seen = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+        seen += counts[b];
+        if (seen >= target)
+          return b == BUCKETS - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+      }
+      return Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets the time of the slowest call
+     * @return the time in nanoseconds
+     */
+    public long getMaxNanos() {
+      return max.get();
+    }
+
+    /** Sets every counter back to zero */
+    public void reset() {
+      count.reset();
+      total.reset();
+      max.reset();
+      for (int b = 0; b < BUCKETS; b++) {
+        buckets[b].reset();
+      }
+    }
+
+    /**
+     * Gets the counters as one line of text
+     * @return the name and counters of the operation
+     */
+    public String toString() {
+      return "operation " + name + " count=" + getCount() + " meanNanos=" + Math.round(getMeanNanos())
+          + " medianNanos=" + getMedianNanos() + " p99Nanos=" + getP99Nanos() + " maxNanos=" + getMaxNanos();
+    }
+  }
+
+  /** A class to keep the totals of the searches of one engine */
+  public static class Engine implements EngineMXBean {
+
+    /** Stores the name of the engine */
+    private String name;
+
+    /** Stores the number of searches */
+    private LongAdder searches = new LongAdder();
+
+    /** Stores the number of positions searched */
+    private LongAdder nodes = new LongAdder();
+
+    /** Stores the total time of the searches in nanoseconds */
+    private LongAdder nanos = new LongAdder();
+
+    /** Stores the number of probes of the transposition table that found their position */
+    private LongAdder hits = new LongAdder();
+
+    /** Stores the number of probes of the transposition table */
+    private LongAdder probes = new LongAdder();
+
+    /** Stores the deepest search */
+    private LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    /** Stores the speed of the last search */
+    private volatile long lastNodesPerSecond;
+
+    /** Stores the depth of the last search */
+    private volatile int lastDepth;
+
+    /** Stores the hit rate of the last search */
+    private volatile double lastHitRate;
+
+    /**
+     * Constructor that makes an engine with no searches
+     * @param name the name of the engine
+     */
+    public Engine(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Getter method for name
+     * @return the name of the engine
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Records a search that has just finished
+     * @param nodes the number of positions searched
+     * @param nanos how long the search took, in nanoseconds
+     * @param depth the depth the search finished, or 0 if the engine does not search to a depth
+     * @param hits the number of probes of the transposition table that found their position
+     * @param probes the number of probes of the transposition table, or 0 if the engine has no table
+     */
+    public void record(long nodes, long nanos, int depth, long hits, long probes) {
+      searches.increment();
+      this.nodes.add(nodes);
+      this.nanos.add(nanos);
+      this.hits.add(hits);
+      this.probes.add(probes);
+      maxDepth.accumulate(depth);
+      lastNodesPerSecond = nanos == 0 ? 0 : nodes * 1000000000L / nanos;
+      lastDepth = depth;
+      lastHitRate = probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    /**
+     * Gets the number of searches
+     * @return the number of moves or positions searched for
+     */
+    public long getSearches() {
+      return searches.sum();
+    }
+
+    /**
+     * Gets the number of positions searched in every search
+     * @return the number of positions
+     */
+    public long getNodes() {
+      return nodes.sum();
+    }
+
+    /**
+     * Gets the speed of the searches
+     * @return the number of positions searched per second, over every search
+     */
+    public long getNodesPerSecond() {
+      long time = nanos.sum();
+      return time == 0 ? 0 : (long) (nodes.sum() * 1e9 / time);
+    }
+
+    /**
+     * Getter method for lastNodesPerSecond
+     * @return the number of positions searched per second in the last search
+     */
+    public long getLastNodesPerSecond() {
+      return lastNodesPerSecond;
+    }
+
+    /**
+     * Getter method for lastDepth
+     * @return the depth, or 0 if the engine does not search to a depth
+     */
+    public int getLastDepth() {
+      return lastDepth;
+    }
+
+    /**
+     * Getter method for maxDepth
+     * @return the depth, or 0 if the engine does not search to a depth
+     */
+    public int getMaxDepth() {
+      return (int) maxDepth.get();
+    }
+
+    /**
+     * Gets the share of the probes of the transposition table that found their position, over every search
+     * @return the hit rate from 0 to 1, or 0 if the engine has no table
+     */
+    public double getHitRate() {
+      long total = probes.sum();
+      return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    /**
+     * Getter method for lastHitRate
+     * @return the hit rate from 0 to 1, or 0 if the engine has no table
+     */
+    public double getLastHitRate() {
+      return lastHitRate;
+    }
+
+    /** Sets every counter back to zero */
+    public void reset() {
+      searches.reset();
+      nodes.reset();
+      nanos.reset();
+      hits.reset();
+      probes.reset();
+      maxDepth.reset();
+      lastNodesPerSecond = 0;
+      lastDepth = 0;
+      lastHitRate = 0;
+    }
+
+    /**
+     * Gets the counters as one line of text
+     * @return the name and counters of the engine
+     */
+    public String toString() {
+      return "engine " + name + " searches=" + getSearches() + " nodes=" + getNodes() + " nodesPerSecond="
+          + getNodesPerSecond() + " lastDepth=" + getLastDepth() + " maxDepth=" + getMaxDepth()
+          + String.format(" hitRate=%.3f lastHitRate=%.3f", getHitRate(), getLastHitRate());
+    }
+  }
+
+  /** Stores the times of GomokuSample.setPiece */
+  public static final Operation SET_PIECE = new Operation("setPiece");
+
+  /** Stores the times of GomokuSample.hasWon */
+  public static final Operation HAS_WON = new Operation("hasWon");
+
+  /** Stores the times of GomokuBoard.hasFiveInLine */
+  public static final Operation HAS_FIVE_IN_LINE = new Operation("hasFiveInLine");
+
+  /** Stores the times of GomokuSample.violatesFourFour and GomokuBoard.countFours */
+  public static final Operation VIOLATES_FOUR_FOUR = new Operation("violatesFourFour");
+
+  /** Stores the times of GomokuSample.violatesThreeThree and GomokuBoard.countOpenThrees */
+  public static final Operation VIOLATES_THREE_THREE = new Operation("violatesThreeThree");
+
+  /** Stores every operation, in the order they are written out */
+  private static final Operation[] OPERATIONS =
+      {SET_PIECE, HAS_WON, HAS_FIVE_IN_LINE, VIOLATES_FOUR_FOUR, VIOLATES_THREE_THREE};
+
+  /** Stores the engines that have reported a search, by name */
+  private static final Map<String, Engine> engines = new ConcurrentHashMap<String, Engine>();
+
+  static {
+    if (ENABLED) {
+      for (Operation operation : OPERATIONS) {
+        register("Operation", operation.getName(), operation);
+      }
+      String file = System.getProperty(FILE_PROPERTY);
+      if (file != null)
+        startDumping(Paths.get(file), Math.max(1, Integer.getInteger(PERIOD_PROPERTY, DEFAULT_PERIOD)));
+    }
+  }
+
+  /**
+   * Gets the totals of an engine, making them the first time the engine reports a search
+   * @param name the name of the engine
+   * @return the totals of the engine
+   */
+  public static Engine engine(String name) {
+    return engines.computeIfAbsent(name, key -> {
+      Engine engine = new Engine(key);
+      if (ENABLED)
+        register("Engine", key, engine);
+      return engine;
+    });
+  }
+
+  /**
+   * Gets every engine that has reported a search
+   * @return the totals of the engines
+   */
+  public static List<Engine> getEngines() {
+    return new ArrayList<Engine>(engines.values());
+  }
+
+  /**
+   * Adds a bean to the platform MBean server, where jconsole and other JMX tools can find it
+   * A bean that cannot be added is left out and the program goes on
+   * @param type the type of the bean, Operation or Engine
+   * @param name the name of the bean
+   * @param bean the bean
+   */
+  private static void register(String type, String name, Object bean) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName("gomoku:type=" + type + ",name=" + ObjectName.quote(name));
+      if (!server.isRegistered(objectName))
+        server.registerMBean(bean, objectName);
+    }
+    catch (JMException e) {
+      System.err.println("Could not register metrics " + name + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Gets every counter as text, one operation or engine on each line
+   * @return the counters
+   */
+  public static String snapshot() {
+    StringBuilder text = new StringBuilder();
+    text.append("# Gomoku metrics at ").append(new Date()).append('\n');
+    for (Operation operation : OPERATIONS) {
+      text.append(operation).append('\n');
+    }
+    for (Engine engine : getEngines()) {
+      text.append(engine).append('\n');
+    }
+    return text.toString();
+  }
+
+  /**
+   * Writes every counter to a file, replacing it all at once so that a reader never sees half of it
+   * @param file the file
+   * @throws IOException if the file cannot be written
+   */
+  public static void dump(Path file) throws IOException {
+    Path absolute = file.toAbsolutePath();
+    Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+    Files.write(temp, snapshot().getBytes(StandardCharsets.UTF_8));
+    Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Starts a thread that writes every counter to a file every few seconds, until the program ends
+   * @param file the file
+   * @param seconds the number of seconds between writes
+   */
+  public static void startDumping(final Path file, final int seconds) {
+    Thread dumper = new Thread(new Runnable() {
+      public void run() {
+        while (true) {
+          try {
+            Thread.sleep(seconds * 1000L);
+            dump(file);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+          catch (IOException e) {
+            System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+          }
+        }
+      }
+    }, "gomoku-metrics");
+    dumper.setDaemon(true);
+    dumper.start();
+  }
+
+}
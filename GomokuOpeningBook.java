@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class for a book of opening moves, read from a file made from a database of games
+ * The file is a header and then a table of entries sorted by position hash, each giving how often a move was played
+ * from a position and how the games went for the player who played it
+ * The table is mapped into memory read-only and binary searched, so opening a book of any size is instant and a
+ * lookup reads only the entries of its own position; it is mapped in segments of SEGMENT_ENTRIES entries, since one
+ * mapping cannot be bigger than 2 gigabytes
+ * Positions are stored in a canonical orientation, the smallest hash of all the ways to rotate and reflect the board,
+ * so each opening is stored once instead of up to 8 times
+ * A board that keeps its own symmetry hashes (see GomokuSample.trackSymmetry) is looked up without reading its squares
+ * Run with: java GomokuOpeningBook games.gdb book.bin [plies=12] [minGames=2]
+ * @author Noah Leibowitz
+ */
+public class GomokuOpeningBook implements AutoCloseable {
+
+  /** The 8 bytes at the start of every book */
+  public static final long MAGIC = 0x474D4B424F4F4B32L;
+
+  /** The number of bytes of the header: the magic number, rows, columns, length to win, and number of entries */
+  private static final int HEADER = 8 + 4 + 4 + 4 + 8;
+
+  /** The number of bytes of each entry: the position hash, the move, and the games, wins, and draws */
+  private static final int ENTRY = 8 + 4 + 4 + 4 + 4;
+
+  /** The number of entries in each mapped segment of the table, 768 megabytes */
+  private static final int SEGMENT_ENTRIES = 1 << 25;
+
+  /** Stores the mapped table, in segments of SEGMENT_ENTRIES entries */
+  private MappedByteBuffer[] segments;
+
+  /** Stores the number of rows of the boards in the book */
+  private int rows;
+
+  /** Stores the number of columns of the boards in the book */
+  private int cols;
+
+  /** Stores the exact length needed in a row to win of the games in the book */
+  private int lengthToWin;
+
+  /** Stores the number of entries */
+  private long entries;
+
+  /** Stores the fewest games a move needs to be played from the book */
+  private int minGames = 1;
+
+  /**
+   * Constructor that opens a book
+   * @param path the path of the book
+   * The file is closed as soon as it is mapped, because the mapping stays valid without it
+   * @throws IOException if the file cannot be read or is not a book
+   */
+  public GomokuOpeningBook(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      if (size < HEADER || channel.read(header, 0) < HEADER || header.getLong(0) != MAGIC)
+        throw new IOException(path + " is not an opening book");
+      rows = header.getInt(8);
+      cols = header.getInt(12);
+      lengthToWin = header.getInt(16);
+      entries = header.getLong(20);
+      if (entries < 0 || entries > (size - HEADER) / ENTRY || HEADER + entries * ENTRY != size)
+        throw new IOException(path + " is not a whole opening book");
+      segments = new MappedByteBuffer[(int) ((entries + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES)];
+      for (int k = 0; k < segments.length; k++) {
+        long first = (long) k * SEGMENT_ENTRIES;
+        long count = Math.min(SEGMENT_ENTRIES, entries - first);
+        segments[k] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + first * ENTRY, count * ENTRY);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of entries
+   * @return the number of different moves from all of the positions in the book
+   */
+  public long getEntries() {
+    return entries;
+  }
+
+  /**
+   * Setter method for the fewest games a move needs
+   * @param minGames the fewest games a move must have been played in for findMove to choose it
+   */
+  public void setMinGames(int minGames) {
+    this.minGames = minGames;
+  }
+
+  /**
+   * Checks if the book was made for games like this one
+   * @param game the board
+   * @return true if the board has the size and length to win of the book
+   */
+  public boolean fits(GomokuSample game) {
+    return game.getRows() == rows && game.getCols() == cols && game.getLengthToWin() == lengthToWin
+        && game.getFirstRow() == 0 && game.getFirstCol() == 0;
+  }
+
+  /**
+   * Finds the move of the book for a position
+   * The move with the best score is chosen, counting a draw as half a win and adding one win and one loss to every
+   * move, so that a move that won its only game does not beat one that won 90 of 100
+   * @param game the board
+   * @return the row and column of the move, or null if the position is not in the book
+   */
+  public int[] findMove(GomokuSample game) {
+    if (!fits(game))
+      return null;
+    GomokuSymmetry symmetry = symmetryOf(game);
+    long hash = symmetry.getCanonicalHash();
+    long first = firstEntry(hash);
+    int bestMove = -1;
+    double bestScore = -1;
+    for (long i = first; i < entries && hashOf(i) == hash; i++) {
+      ByteBuffer segment = segmentOf(i);
+      int offset = offsetOf(i);
+      int games = segment.getInt(offset + 12);
+      if (games < minGames)
+        continue;
+      double score = (segment.getInt(offset + 16) + segment.getInt(offset + 20) / 2.0 + 1) / (games + 2);
+      if (score > bestScore) {
+        bestScore = score;
+        bestMove = segment.getInt(offset + 8);
+      }
+    }
+    if (bestMove < 0)
+      return null;
+    int[] move = symmetry.fromCanonical(bestMove / cols, bestMove % cols);
+    if (!game.isEmpty(move[0], move[1]) || game.isForbidden(move[0], move[1]))
+      return null;
+    return move;
+  }
+
+  /**
+   * Counts the games in the book that reached a position
+   * @param game the board
+   * @return the number of games
+   */
+  public long getGames(GomokuSample game) {
+    if (!fits(game))
+      return 0;
+    long hash = symmetryOf(game).getCanonicalHash();
+    long games = 0;
+    for (long i = firstEntry(hash); i < entries && hashOf(i) == hash; i++) {
+      games += segmentOf(i).getInt(offsetOf(i) + 12);
+    }
+    return games;
+  }
+
+  /**
+   * Finds the first entry of a position by binary search
+   * @param hash the canonical hash of the position
+   * @return the number of the first entry whose hash is not less than the hash
+   */
+  private long firstEntry(long hash) {
+    long low = 0;
+    long high = entries;
+    while (low < high) {
+      long middle = (low + high) >>> 1;
+      if (hashOf(middle) < hash)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  /**
+   * Gets the hash of the position of an entry
+   * @param i the number of the entry
+   * @return the canonical hash of the position
+   */
+  private long hashOf(long i) {
+    return segmentOf(i).getLong(offsetOf(i));
+  }
+
+  /**
+   * Finds the mapped segment of an entry
+   * @param i the number of the entry
+   * @return the segment
+   */
+  private ByteBuffer segmentOf(long i) {
+    return segments[(int) (i / SEGMENT_ENTRIES)];
+  }
+
+  /**
+   * Finds where an entry is in its segment
+   * @param i the number of the entry
+   * @return the offset of the entry in the segment
+   */
+  private static int offsetOf(long i) {
+    return (int) (i % SEGMENT_ENTRIES) * ENTRY;
+  }
+
+  /** Lets go of the mapped table, which is unmapped when it is garbage collected */
+  public void close() {
+    segments = null;
+  }
+
+  /**
+   * Gets the symmetry of a board, using the hashes the board keeps if it has them
+   * @param game the board
+   * @return the symmetry
+   */
+  private static GomokuSymmetry symmetryOf(GomokuSample game) {
+    return game.getSymmetry() != null ? game.getSymmetry() : new GomokuSymmetry(game);
+  }
+
+  /**
+   * Makes a book from the games of a database
+   * Only games with the same board size and length to win as the first game are used
+   * @param database the games
+   * @param path the path of the book to write
+   * @param plies the number of moves from the start of each game to put in the book
+   * @param minGames the fewest games a move needs to be written
+   * @return the number of entries written
+   * @throws IOException if the database cannot be read or the book cannot be written
+   */
+  public static long build(GomokuGameDatabase database, Path path, final int plies, int minGames) throws IOException {
+
+    // For every canonical position and move, the number of games, wins, and draws
+    final Map<Long, Map<Integer, int[]>> stats = new HashMap<Long, Map<Integer, int[]>>();
+    final int[] size = new int[3];
+
+    // Every game is replayed on the same board, cleared between games
+    final GomokuSample[] board = new GomokuSample[1];
+    database.scan((index, record) -> {
+      if (size[0] == 0) {
+        size[0] = record.getRows();
+        size[1] = record.getCols();
+        size[2] = record.getLengthToWin();
+      }
+      if (record.getRows() != size[0] || record.getCols() != size[1] || record.getLengthToWin() != size[2])
+        return;
+      if (board[0] == null)
+        board[0] = new GomokuSample(size[2], size[0], size[1]);
+      GomokuSample game = board[0];
+      game.clear();
+      GomokuSymmetry symmetry = game.trackSymmetry();
+      for (int ply = 0; ply < Math.min(plies, record.getMoveCount()); ply++) {
+        int row = record.getMoveRow(ply);
+        int col = record.getMoveCol(ply);
+        if (!game.isEmpty(row, col))
+          return;
+        long hash = symmetry.getCanonicalHash();
+        int[] square = symmetry.canonicalMove(row, col);
+        int move = square[0] * size[1] + square[1];
+        Map<Integer, int[]> moves = stats.get(hash);
+        if (moves == null) {
+          moves = new HashMap<Integer, int[]>();
+          stats.put(hash, moves);
+        }
+        int[] counts = moves.get(move);
+        if (counts == null) {
+          counts = new int[3];
+          moves.put(move, counts);
+        }
+        int mover = game.isBlackTurn() ? GomokuGameRecord.BLACK_WON : GomokuGameRecord.WHITE_WON;
+        counts[0]++;
+        if (record.getResult() == mover)
+          counts[1]++;
+        else if (record.getResult() == GomokuGameRecord.NO_WINNER)
+          counts[2]++;
+        game.setPiece(row, col);
+        game.switchTurn();
+      }
+    });
+
+    // Sorts the positions by hash, with the moves of each position from the most played
+    List<Long> hashes = new ArrayList<Long>(stats.keySet());
+    hashes.sort(null);
+    List<long[]> table = new ArrayList<long[]>();
+    for (long hash : hashes) {
+      List<Map.Entry<Integer, int[]>> moves = new ArrayList<Map.Entry<Integer, int[]>>(stats.get(hash).entrySet());
+      moves.sort((a, b) -> b.getValue()[0] != a.getValue()[0] ? b.getValue()[0] - a.getValue()[0]
+                 : a.getKey() - b.getKey());
+      for (Map.Entry<Integer, int[]> move : moves) {
+        int[] counts = move.getValue();
+        if (counts[0] >= minGames)
+          table.add(new long[] {hash, move.getKey(), counts[0], counts[1], counts[2]});
+      }
+    }
+
+    // Writes the header and the entries
+    try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+      buffer.putLong(MAGIC).putInt(size[0]).putInt(size[1]).putInt(size[2]).putLong(table.size());
+      for (long[] entry : table) {
+        if (buffer.remaining() < ENTRY) {
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+            out.write(buffer);
+          }
+          buffer.clear();
+        }
+        buffer.putLong(entry[0]).putInt((int) entry[1]).putInt((int) entry[2]).putInt((int) entry[3])
+            .putInt((int) entry[4]);
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+    }
+    return table.size();
+  }
+
+  /**
+   * Makes a book from a database of games and prints its size
+   * @param args the database, the book, and options written as name=value
+   */
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.out.println("Usage: java GomokuOpeningBook games.gdb book.bin [plies=12] [minGames=2]");
+      return;
+    }
+    int plies = 12;
+    int minGames = 2;
+    for (int i = 2; i < args.length; i++) {
+      String[] pair = args[i].split("=", 2);
+      String value = pair.length > 1 ? pair[1] : "";
+      if (pair[0].equals("plies"))
+        plies = Integer.parseInt(value);
+      else if (pair[0].equals("minGames"))
+        minGames = Integer.parseInt(value);
+      else {
+        System.out.println("Unknown option " + args[i]);
+        return;
+      }
+    }
+    try (GomokuGameDatabase database = new GomokuGameDatabase(Paths.get(args[0]))) {
+      long start = System.nanoTime();
+      long written = build(database, Paths.get(args[1]), plies, minGames);
+      System.out.println(String.format("Wrote %d entries from %d games in %.2f seconds", written, database.size(),
+                                       (System.nanoTime() - start) / 1e9));
+    }
+    catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,421 @@
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A class to classify the shape of the pieces in a line around one piece
+ * The window of squares within lengthToWin of the piece is encoded as a base 3 number
+ * (0 for empty, 1 for the same color, 2 for the other color or off the board) and looked up in a precomputed table
+ * Lengths above MAX_TABLE_LENGTH are too long for a table, so they are not table-driven
+ * Instead the window is kept as two bit masks, and its shape is worked out once and saved in a cache of windows
+ * Shapes are ranked from NONE up to OVERLINE, so a larger number is always a stronger shape
+ * @author Noah Leibowitz
+ */
+public class GomokuPatterns {
+
+  /** No threat */
+  public static final int NONE = 0;
+
+  /** One move away from any kind of three */
+  public static final int TWO = 1;
+
+  /** One move away from a four that can be blocked */
+  public static final int THREE = 2;
+
+  /** One move away from an open four, with a gap between the pieces (like X_XX) */
+  public static final int BROKEN_THREE = 3;
+
+  /** One move away from an open four, with the pieces next to each other (like _XXX_) */
+  public static final int OPEN_THREE = 4;
+
+  /** One move away from winning, with only one winning square */
+  public static final int FOUR = 5;
+
+  /** One move away from winning, with two or more winning squares */
+  public static final int OPEN_FOUR = 6;
+
+  /** Exactly lengthToWin in a row */
+  public static final int FIVE = 7;
+
+  /** More than lengthToWin in a row, which does not win */
+  public static final int OVERLINE = 8;
+
+  /** The longest lengthToWin that has a precomputed table, longer lengths use the cache of windows */
+  public static final int MAX_TABLE_LENGTH = 6;
+
+  /** The longest lengthToWin whose window fits in the bits of a long */
+  public static final int MAX_LENGTH = 31;
+
+  /** The number of bits of a window's hash that choose its entry in the cache of windows */
+  private static final int CACHE_BITS = 16;
+
+  /** Stores the patterns for each lengthToWin that has been used */
+  private static HashMap<Integer, GomokuPatterns> cache = new HashMap<>();
+
+  /** Stores the exact length needed in a row to win */
+  private int lengthToWin;
+
+  /** Stores the number of squares on each side of the piece in the window */
+  private int radius;
+
+  /** Stores the powers of 3 for each square of the window, not counting the piece in the middle */
+  private int[] powers;
+
+  /** Stores the shape of every window, or null if lengthToWin is too long for a table */
+  private byte[] table;
+
+  /**
+   * Stores the windows that have been classified when there is no table, each entry holding the window's bits
+   * followed by its 4 bit shape, or 0 if the entry is empty
+   * Each entry is read and written as one long, so threads sharing the patterns never see half of an entry
+   * The cache is null if the window and its shape do not fit in a long
+   */
+  private AtomicLongArray shapeCache;
+
+  /**
+   * Constructor that builds the table of shapes
+   * @param lengthToWin the exact length needed in a row to win
+   * @throws IllegalArgumentException if lengthToWin is more than MAX_LENGTH
+   */
+  public GomokuPatterns(int lengthToWin) {
+    if (lengthToWin > MAX_LENGTH)
+      throw new IllegalArgumentException("The length to win can be at most " + MAX_LENGTH);
+    this.lengthToWin = lengthToWin;
+    radius = lengthToWin;
+    if (lengthToWin <= MAX_TABLE_LENGTH) {
+      powers = new int[2 * radius];
+      int power = 1;
+      for (int i = 0; i < powers.length; i++) {
+        powers[i] = power;
+        power *= 3;
+      }
+      table = new byte[power];
+      buildTable();
+    }
+    else if (2 * (2 * radius + 1) + 4 <= Long.SIZE)
+      shapeCache = new AtomicLongArray(1 << CACHE_BITS);
+  }
+
+  /**
+   * Gets the patterns for a length to win, building the table the first time it is used
+   * @param lengthToWin the exact length needed in a row to win
+   * @return the patterns for the length to win
+   */
+  public static GomokuPatterns forLength(int lengthToWin) {
+    synchronized (cache) {
+      GomokuPatterns patterns = cache.get(lengthToWin);
+      if (patterns == null) {
+        patterns = new GomokuPatterns(lengthToWin);
+        cache.put(lengthToWin, patterns);
+      }
+      return patterns;
+    }
+  }
+
+  /**
+   * Getter method for lengthToWin
+   * @return the exact length needed in a row to win
+   */
+  public int getLengthToWin() {
+    return lengthToWin;
+  }
+
+  /**
+   * Classifies the shape of the line through a piece
+   * @param board the board, where 0 is empty and any other number is a color
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param dx the change in the row along the line
+   * @param dy the change in the column along the line
+   * @return the shape, from NONE to OVERLINE
+   */
+  public int classify(int[][] board, int row, int col, int dx, int dy) {
+    int color = board[row][col];
+    if (table != null) {
+      int index = 0;
+      for (int i = 1; i <= radius; i++) {
+        index += digit(board, row + i * dx, col + i * dy, color) * powers[radius - 1 + i];
+        index += digit(board, row - i * dx, col - i * dy, color) * powers[radius - i];
+      }
+      return table[index];
+    }
+    long own = 1L << radius;
+    long empty = 0;
+    for (int i = 1; i <= radius; i++) {
+      int ahead = digit(board, row + i * dx, col + i * dy, color);
+      int behind = digit(board, row - i * dx, col - i * dy, color);
+      if (ahead == 0)
+        empty |= 1L << (radius + i);
+      else if (ahead == 1)
+        own |= 1L << (radius + i);
+      if (behind == 0)
+        empty |= 1L << (radius - i);
+      else if (behind == 1)
+        own |= 1L << (radius - i);
+    }
+    return cachedShape(own, empty);
+  }
+
+  /**
+   * Classifies the shape of the line through a piece on a board that is not stored in an array
+   * @param storage the squares of the board
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param dx the change in the row along the line
+   * @param dy the change in the column along the line
+   * @return the shape, from NONE to OVERLINE
+   */
+  public int classify(GomokuStorage storage, int row, int col, int dx, int dy) {
+    int color = storage.getPiece(row, col);
+    if (table != null) {
+      int index = 0;
+      for (int i = 1; i <= radius; i++) {
+        index += digit(storage, row + i * dx, col + i * dy, color) * powers[radius - 1 + i];
+        index += digit(storage, row - i * dx, col - i * dy, color) * powers[radius - i];
+      }
+      return table[index];
+    }
+    long own = 1L << radius;
+    long empty = 0;
+    for (int i = 1; i <= radius; i++) {
+      int ahead = digit(storage, row + i * dx, col + i * dy, color);
+      int behind = digit(storage, row - i * dx, col - i * dy, color);
+      if (ahead == 0)
+        empty |= 1L << (radius + i);
+      else if (ahead == 1)
+        own |= 1L << (radius + i);
+      if (behind == 0)
+        empty |= 1L << (radius - i);
+      else if (behind == 1)
+        own |= 1L << (radius - i);
+    }
+    return cachedShape(own, empty);
+  }
+
+  /**
+   * Classifies a window that has already been encoded
+   * Only works when lengthToWin is at most MAX_TABLE_LENGTH
+   * @param index the base 3 number of the window, with the lowest digit furthest back along the line
+   * @return the shape, from NONE to OVERLINE
+   */
+  public int classify(int index) {
+    return table[index];
+  }
+
+  /**
+   * Getter method for the powers of 3 of the window
+   * @return the power of 3 of each square of the window, in order along the line and skipping the piece in the middle
+   */
+  public int[] getPowers() {
+    return powers;
+  }
+
+  /**
+   * Encodes one square of the window
+   * @param board the board, where 0 is empty and any other number is a color
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param color the color of the piece in the middle of the window
+   * @return 0 for empty, 1 for the same color, or 2 for the other color or off the board
+   */
+  public static int digit(int[][] board, int row, int col, int color) {
+    if (row < 0 || row >= board.length || col < 0 || col >= board[0].length)
+      return 2;
+    int value = board[row][col];
+    if (value == 0)
+      return 0;
+    return value == color ? 1 : 2;
+  }
+
+  /**
+   * Encodes one square of the window on a board that is not stored in an array
+   * @param storage the squares of the board
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param color the color of the piece in the middle of the window
+   * @return 0 for empty, 1 for the same color, or 2 for the other color or off the board
+   */
+  public static int digit(GomokuStorage storage, int row, int col, int color) {
+    int firstRow = storage.getFirstRow();
+    int firstCol = storage.getFirstCol();
+    if (row < firstRow || row > firstRow + (storage.getRows() - 1) || col < firstCol
+        || col > firstCol + (storage.getCols() - 1))
+      return 2;
+    int value = storage.getPiece(row, col);
+    if (value == 0)
+      return 0;
+    return value == color ? 1 : 2;
+  }
+
+  /**
+   * Checks if a shape is an open three or a broken three
+   * @param shape the shape
+   * @return true if one more move makes an open four
+   */
+  public static boolean isLiveThree(int shape) {
+    return shape == OPEN_THREE || shape == BROKEN_THREE;
+  }
+
+  /**
+   * Fills in the table from the windows with the most pieces down to the windows with the fewest
+   * Adding a piece to an empty square always makes the index bigger, so the shapes one move ahead are already known
+   */
+  private void buildTable() {
+    for (int index = table.length - 1; index >= 0; index--) {
+
+      // Decodes the index into the bits of the window, with the piece in the middle
+      long own = 1L << radius;
+      long empty = 0;
+      int rest = index;
+      for (int i = 0; i < 2 * radius + 1; i++) {
+        if (i == radius)
+          continue;
+        if (rest % 3 == 0)
+          empty |= 1L << i;
+        else if (rest % 3 == 1)
+          own |= 1L << i;
+        rest /= 3;
+      }
+      int shape = lineShape(own, empty);
+      if (shape == NONE) {
+        for (int i = 0; i < 2 * radius + 1; i++) {
+          if ((empty >>> i & 1) == 0)
+            continue;
+          int next = table[index + powers[i < radius ? i : i - 1]];
+          shape = Math.max(shape, oneMoveBefore(next));
+        }
+        shape = checkBroken(own, shape);
+      }
+      table[index] = (byte) shape;
+    }
+  }
+
+  /**
+   * Finds the shape of a window in the cache of windows, classifying it and saving it the first time it is seen
+   * @param own the bits of the window that hold the same color, including the piece in the middle
+   * @param empty the bits of the window that are empty
+   * @return the shape, from NONE to OVERLINE
+   */
+  private int cachedShape(long own, long empty) {
+    if (shapeCache == null)
+      return classifyWindow(own, empty, 2);
+    long key = own << (2 * radius + 1) | empty;
+    int slot = (int) (key * 0x9E3779B97F4A7C15L >>> (Long.SIZE - CACHE_BITS));
+    long entry = shapeCache.get(slot);
+    if (entry >>> 4 == key)
+      return (int) (entry & 0xF);
+    int shape = classifyWindow(own, empty, 2);
+    shapeCache.set(slot, key << 4 | shape);
+    return shape;
+  }
+
+  /**
+   * Classifies a window without the table
+   * @param own the bits of the window that hold the same color, including the piece in the middle
+   * @param empty the bits of the window that are empty
+   * @param depth how many moves ahead to look for threes and twos (2 finds every shape)
+   * @return the shape, from NONE to OVERLINE
+   */
+  private int classifyWindow(long own, long empty, int depth) {
+    int shape = lineShape(own, empty);
+    if (shape != NONE || depth == 0)
+      return shape;
+
+    // Tries each empty square in turn, taking the lowest bit that is left each time
+    for (long rest = empty; rest != 0; rest &= rest - 1) {
+      long square = rest & -rest;
+      int next = classifyWindow(own | square, empty & ~square, depth - 1);
+      shape = Math.max(shape, oneMoveBefore(next));
+    }
+    return checkBroken(own, shape);
+  }
+
+  /**
+   * Changes an open three to a broken three when its pieces are not all next to each other
+   * @param own the bits of the window that hold the same color, including the piece in the middle
+   * @param shape the shape found from the moves ahead
+   * @return the shape
+   */
+  private int checkBroken(long own, int shape) {
+    if (shape == OPEN_THREE && runThrough(own) != lengthToWin - 2)
+      return BROKEN_THREE;
+    return shape;
+  }
+
+  /**
+   * Finds the shape of a window that is one move away from another shape
+   * @param next the shape after one more move
+   * @return the shape before that move
+   */
+  private static int oneMoveBefore(int next) {
+    if (next == OPEN_FOUR)
+      return OPEN_THREE;
+    if (next == FOUR)
+      return THREE;
+    if (isLiveThree(next))
+      return TWO;
+    return NONE;
+  }
+
+  /**
+   * Finds the shapes that only depend on the pieces already in the window: fives, overlines, and fours
+   * Only the empty squares at the two ends of the run through the middle can make it longer
+   * @param own the bits of the window that hold the same color, including the piece in the middle
+   * @param empty the bits of the window that are empty
+   * @return the shape, or NONE if one more move cannot win
+   */
+  private int lineShape(long own, long empty) {
+    int length = runThrough(own);
+    if (length == lengthToWin)
+      return FIVE;
+    if (length > lengthToWin)
+      return OVERLINE;
+
+    // Counts the ends of the run that would make exactly lengthToWin in a row, if they are empty and in the window
+    int low = lowEnd(own);
+    int high = highEnd(own);
+    int wins = 0;
+    if (low > 0 && (empty >>> (low - 1) & 1) != 0 && runThrough(own | 1L << (low - 1)) == lengthToWin)
+      wins++;
+    if (high < 2 * radius && (empty >>> (high + 1) & 1) != 0 && runThrough(own | 1L << (high + 1)) == lengthToWin)
+      wins++;
+    if (wins >= 2)
+      return OPEN_FOUR;
+    if (wins == 1)
+      return FOUR;
+    return NONE;
+  }
+
+  /**
+   * Counts the pieces in a row through the middle of the window
+   * @param own the bits of the window that hold the same color, including the piece in the middle
+   * @return the number of pieces in a row
+   */
+  private int runThrough(long own) {
+    return highEnd(own) - lowEnd(own) + 1;
+  }
+
+  /**
+   * Finds the first square of the run of pieces through the middle of the window
+   * @param own the bits of the window that hold the same color, including the piece in the middle
+   * @return the lowest square of the run
+   */
+  private int lowEnd(long own) {
+    int low = radius;
+    while (low > 0 && (own >>> (low - 1) & 1) != 0)
+      low--;
+    return low;
+  }
+
+  /**
+   * Finds the last square of the run of pieces through the middle of the window
+   * @param own the bits of the window that hold the same color, including the piece in the middle
+   * @return the highest square of the run
+   */
+  private int highEnd(long own) {
+    int high = radius;
+    while (high < 2 * radius && (own >>> (high + 1) & 1) != 0)
+      high++;
+    return high;
+  }
+
+}
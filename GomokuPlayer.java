@@ -0,0 +1,39 @@
+/**
+ * An interface for a computer player for the game Gomoku
+ * @author Noah Leibowitz
+ */
+public interface GomokuPlayer extends AutoCloseable {
+
+  /**
+   * Finds a move for the player whose turn it is
+   * The board may be changed during the search but is always put back the way it was
+   * @param game the board to play on
+   * @return the row and column of the move, or null if there is no legal move
+   */
+  int[] findMove(GomokuSample game);
+
+  /** Forgets anything remembered from an earlier game, so that each game starts the same way */
+  void newGame();
+
+  /**
+   * Gets the amount of work done for the last move
+   * @return the number of positions searched or games played out for the last move
+   */
+  long getNodes();
+
+  /**
+   * Getter method for the time of the last move
+   * @return how long the last move took, in milliseconds
+   */
+  long getElapsedMillis();
+
+  /**
+   * Gets the speed of the last search
+   * @return the number of positions searched or games played out per second
+   */
+  long getNodesPerSecond();
+
+  /** Lets go of the threads the player keeps between moves, after which the player must not be used */
+  void close();
+
+}
@@ -1,11 +1,36 @@
+import java.util.Arrays;
+
 /**
  * A class to represent the logic of the game Gomoku
  * @author Noah Leibowitz
  */
 public class GomokuSample {
   
-  /** Stores a two dimensional array of ints to model a board */
-  private int[][] board;
+  /**
+   * Stores the squares of the board: the color of each square and, for every piece, its run lengths
+   * The run lengths of a piece are how many pieces of its color follow it in a row on each side of each line
+   * Each line uses 16 bits: the low 8 bits count forward (along LINE_DX, LINE_DY) and the high 8 bits count backward
+   * The table is updated by setPiece, so the squares must not be changed directly
+   */
+  private GomokuStorage storage;
+  
+  /** Stores the number of rows on the board */
+  private int rows;
+  
+  /** Stores the number of columns on the board */
+  private int cols;
+  
+  /** Stores the first row of the board, which is only below 0 on an unbounded board */
+  private int firstRow;
+  
+  /** Stores the first column of the board */
+  private int firstCol;
+  
+  /** Stores the last row of the board */
+  private int lastRow;
+  
+  /** Stores the last column of the board */
+  private int lastCol;
   
   /** Stores whether it is the black or white turn */
   private boolean blackTurn = true;
@@ -13,6 +38,57 @@ public class GomokuSample {
   /** Stores the exact length needed in a row to win */
   private int lengthToWin;
   
+  /** The longest run that fits in the run-length table, longer runs are counted one piece at a time */
+  private static final int MAX_RUN = 255;
+  
+  /** Stores the change in the row of one step along each of the four lines (horizontal, vertical, diagonal, anti-diagonal) */
+  private static final int[] LINE_DX = {0, 1, 1, -1};
+  
+  /** Stores the change in the column of one step along each of the four lines */
+  private static final int[] LINE_DY = {1, 0, 1, 1};
+  
+  /** Stores the steps in the row or the column used to search every direction around a piece */
+  private static final int[] DIRECTION = {-1, 0, 1};
+  
+  /** Stores the table used to classify the shape of a line of pieces, built the first time it is needed */
+  private GomokuPatterns patterns;
+  
+  /** The Zobrist key that is added to the hash when it is white's turn */
+  private static final long WHITE_TO_MOVE = 0x6A09E667F3BCC908L;
+  
+  /** Stores the Zobrist hash of the position: the keys of every piece XOR the key for white's turn */
+  private long hash;
+  
+  /** Stores the hashes of the turned and flipped board, or null if they are not being kept */
+  private GomokuSymmetry symmetry;
+  
+  /** Stores the empty squares near the pieces, which are the moves worth looking at */
+  private GomokuFrontier frontier;
+  
+  /** Stores the static score of the position, or null if it is not being kept */
+  private GomokuEvaluator evaluator;
+  
+  /**
+   * Stores the moves played with makeMove, followed by the moves that were taken back with undo and can be redone
+   * Each move is its row in the high 32 bits and its column in the low 32 bits, so any board fits
+   */
+  private long[] moves = new long[64];
+  
+  /** Stores the number of moves played with makeMove that have not been taken back */
+  private int moveCount;
+  
+  /** Stores the number of moves after moveCount that can be redone */
+  private int redoCount;
+  
+  /**
+   * Stores the squares that have pieces, each packed the same way as the moves, so that clear only visits them
+   * A removed piece is replaced by the last one, which is the piece itself when pieces are taken back in order
+   */
+  private long[] stones = new long[64];
+  
+  /** Stores the number of squares that have pieces */
+  private int stoneCount;
+  
   /**
    * Constructor that initializes the fields
    * @param lengthToWin the exact length needed in a row to win
@@ -20,8 +96,7 @@ public class GomokuSample {
    * @param cols the column locations of the board
    */
   public GomokuSample(int lengthToWin, int rows, int cols) {
-    board = new int[rows][cols];
-    this.lengthToWin = lengthToWin;
+    this(lengthToWin, new GomokuDenseStorage(rows, cols));
   }
   
   /**
@@ -31,8 +106,7 @@ public class GomokuSample {
    * @param cols the column locations of the board
    */
   public GomokuSample(int rows, int cols) {
-    board = new int[rows][cols];
-    lengthToWin = 5;
+    this(5, new GomokuDenseStorage(rows, cols));
   }
   
   /**
@@ -41,8 +115,7 @@ public class GomokuSample {
    * @param lengthToWin the exact length needed in a row to win
    */
   public GomokuSample(int lengthToWin) {
-    board = new int[19][19];
-    this.lengthToWin = lengthToWin;
+    this(lengthToWin, new GomokuDenseStorage(19, 19));
   }
   
   /** 
@@ -51,8 +124,54 @@ public class GomokuSample {
     * The length to win is set to 5
     */
   public GomokuSample() {
-    board = new int[19][19];
-    lengthToWin = 5;
+    this(5, new GomokuDenseStorage(19, 19));
+  }
+  
+  /**
+   * Constructor that plays on the given squares, which must be empty
+   * A GomokuSparseStorage lets the board be far larger than an array could be, such as 100000x100000,
+   * with memory that grows only with the number of pieces placed
+   * @param lengthToWin the exact length needed in a row to win
+   * @param storage the squares of the board
+   */
+  public GomokuSample(int lengthToWin, GomokuStorage storage) {
+    this.storage = storage;
+    rows = storage.getRows();
+    cols = storage.getCols();
+    firstRow = storage.getFirstRow();
+    firstCol = storage.getFirstCol();
+    lastRow = firstRow + (rows - 1);
+    lastCol = firstCol + (cols - 1);
+    this.lengthToWin = lengthToWin;
+    frontier = new GomokuFrontier(storage);
+  }
+  
+  /**
+   * Copy constructor that makes an independent copy of another game, such as for a search thread of its own
+   * @param other the game to copy
+   */
+  public GomokuSample(GomokuSample other) {
+    storage = other.storage.copy();
+    rows = other.rows;
+    cols = other.cols;
+    firstRow = other.firstRow;
+    firstCol = other.firstCol;
+    lastRow = other.lastRow;
+    lastCol = other.lastCol;
+    blackTurn = other.blackTurn;
+    lengthToWin = other.lengthToWin;
+    patterns = other.patterns;
+    hash = other.hash;
+    if (other.symmetry != null)
+      symmetry = new GomokuSymmetry(this, other.symmetry);
+    if (other.evaluator != null)
+      evaluator = new GomokuEvaluator(this, other.evaluator);
+    frontier = new GomokuFrontier(other.frontier);
+    moves = other.moves.clone();
+    moveCount = other.moveCount;
+    redoCount = other.redoCount;
+    stones = other.stones.clone();
+    stoneCount = other.stoneCount;
   }
   
   /**
@@ -63,15 +182,297 @@ public class GomokuSample {
    * @return true if the color (black or white) is placed, otherwise false if empty
    */
   public boolean setPiece(int row, int col) {
-    if (board[row][col] != 0)
+    if (!GomokuMetrics.ENABLED)
+      return placePiece(row, col);
+    long start = System.nanoTime();
+    boolean result = placePiece(row, col);
+    GomokuMetrics.SET_PIECE.record(start);
+    return result;
+  }
+
+  /**
+   * Places a piece of the player whose turn it is, without recording the time it took
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the piece is placed, otherwise false if the square is not empty
+   */
+  private boolean placePiece(int row, int col) {
+    if (storage.getPiece(row, col) != 0)
       return false;
+    int color = 0;
     if(blackTurn)
-      board[row][col] = 1;
+      color = 1;
     else if(!blackTurn)
-      board[row][col] = 2;
+      color = 2;
+    storage.setPiece(row, col, color);
+    frontier.add(row, col);
+    if (stoneCount == stones.length)
+      stones = Arrays.copyOf(stones, stoneCount * 2);
+    stones[stoneCount++] = (long) row << 32 | (col & 0xFFFFFFFFL);
+    addRuns(row, col);
+    hash ^= zobristKey(row, col, color);
+    if (symmetry != null)
+      symmetry.update(row, col, color);
+    if (evaluator != null)
+      evaluator.update(row, col, 0, color);
+    return true;
+  }
+  
+  /**
+   * Removes a piece from the board so that a move can be taken back
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if a piece was removed, otherwise false if the location was already empty
+   */
+  public boolean removePiece(int row, int col) {
+    int color = storage.getPiece(row, col);
+    if (color == 0)
+      return false;
+    removeRuns(row, col);
+    hash ^= zobristKey(row, col, color);
+    if (symmetry != null)
+      symmetry.update(row, col, color);
+    storage.setPiece(row, col, 0);
+    frontier.remove(row, col);
+    if (evaluator != null)
+      evaluator.update(row, col, color, 0);
+    long key = (long) row << 32 | (col & 0xFFFFFFFFL);
+    int i = stoneCount - 1;
+    while (stones[i] != key) {
+      i--;
+    }
+    stones[i] = stones[--stoneCount];
+    return true;
+  }
+  
+  /**
+   * Removes every piece, forgets the moves, and makes it black's turn, so that the board can be used for a new game
+   * Only the squares that have pieces are visited, so the time grows with the number of pieces and not the size of
+   * the board, and nothing is allocated
+   */
+  public void clear() {
+    for (int i = stoneCount - 1; i >= 0; i--) {
+      int row = (int) (stones[i] >> 32);
+      int col = (int) stones[i];
+      int color = storage.getPiece(row, col);
+      hash ^= zobristKey(row, col, color);
+      if (symmetry != null)
+        symmetry.update(row, col, color);
+      
+      // Emptying a square also forgets its run lengths, and every piece is removed, so no other runs need changing
+      storage.setPiece(row, col, 0);
+      frontier.remove(row, col);
+    }
+    stoneCount = 0;
+    moveCount = 0;
+    redoCount = 0;
+    if (evaluator != null)
+      evaluator.clear();
+    if (!blackTurn)
+      switchTurn();
+  }
+  
+  /**
+   * Places the current player's piece, switches the turn, and remembers the move so that undo can take it back
+   * Playing a move forgets the moves that could have been redone
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the piece is placed, otherwise false if the location already has a piece
+   */
+  public boolean makeMove(int row, int col) {
+    if (!setPiece(row, col))
+      return false;
+    switchTurn();
+    if (moveCount == moves.length)
+      moves = Arrays.copyOf(moves, moveCount * 2);
+    moves[moveCount++] = (long) row << 32 | (col & 0xFFFFFFFFL);
+    redoCount = 0;
     return true;
   }
   
+  /**
+   * Takes back the last move played with makeMove
+   * The piece, the turn, the hash, and the run lengths are put back as they were, in time that does not grow with
+   * the size of the board or the number of moves
+   * Pieces placed with setPiece are not on the list of moves and must be removed with removePiece
+   * @return true if a move was taken back, otherwise false if there is none
+   */
+  public boolean undo() {
+    if (moveCount == 0)
+      return false;
+    moveCount--;
+    redoCount++;
+    removePiece(getMoveRow(moveCount), getMoveCol(moveCount));
+    switchTurn();
+    return true;
+  }
+  
+  /**
+   * Plays again the last move taken back with undo
+   * @return true if a move was played, otherwise false if there is none or its location has a piece again
+   */
+  public boolean redo() {
+    if (redoCount == 0 || !setPiece(getMoveRow(moveCount), getMoveCol(moveCount)))
+      return false;
+    switchTurn();
+    moveCount++;
+    redoCount--;
+    return true;
+  }
+  
+  /**
+   * Gets the number of moves played with makeMove that have not been taken back
+   * @return the number of moves
+   */
+  public int getMoveCount() {
+    return moveCount;
+  }
+  
+  /**
+   * Gets the number of moves that redo can play again
+   * @return the number of moves
+   */
+  public int getRedoCount() {
+    return redoCount;
+  }
+  
+  /**
+   * Gets the row of a move played with makeMove
+   * @param i the number of the move, starting at 0
+   * @return the row position of the move
+   */
+  public int getMoveRow(int i) {
+    return (int) (moves[i] >> 32);
+  }
+  
+  /**
+   * Gets the column of a move played with makeMove
+   * @param i the number of the move, starting at 0
+   * @return the column position of the move
+   */
+  public int getMoveCol(int i) {
+    return (int) moves[i];
+  }
+  
+  /**
+   * Checks if placing the current player's piece on an empty location would break the Four-Four or Three-Three rule
+   * A piece that wins the game is always allowed
+   * @param row the row position of the location
+   * @param col the column position of the location
+   * @return true if the move is not allowed, otherwise false
+   */
+  public boolean isForbidden(int row, int col) {
+    if (!setPiece(row, col))
+      return false;
+    boolean forbidden = !hasWon(row, col) && (violatesFourFour(row, col) || violatesThreeThree(row, col));
+    removePiece(row, col);
+    return forbidden;
+  }
+  
+  /**
+   * Joins a newly placed piece to the runs of its color on each of the four lines
+   * Only the pieces in the joined runs are updated, and at most MAX_RUN of them on each side
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   */
+  private void addRuns(int row, int col) {
+    int color = storage.getPiece(row, col);
+    long packed = 0;
+    for (int line = 0; line < 4; line++) {
+      int dx = LINE_DX[line];
+      int dy = LINE_DY[line];
+      
+      // The number of pieces of this color on each side of the new piece
+      int backward = 0;
+      int forward = 0;
+      if (hasColor(row - dx, col - dy, color))
+        backward = Math.min(getRun(row - dx, col - dy, line, false) + 1, MAX_RUN);
+      if (hasColor(row + dx, col + dy, color))
+        forward = Math.min(getRun(row + dx, col + dy, line, true) + 1, MAX_RUN);
+      packed = withRun(withRun(packed, line, true, forward), line, false, backward);
+      
+      // Pieces further than MAX_RUN from the new piece already have a full count
+      for (int i = 1; i <= backward; i++) {
+        setRun(row - i * dx, col - i * dy, line, true, Math.min(i + forward, MAX_RUN));
+      }
+      for (int i = 1; i <= forward; i++) {
+        setRun(row + i * dx, col + i * dy, line, false, Math.min(i + backward, MAX_RUN));
+      }
+    }
+    storage.setRuns(row, col, packed);
+  }
+  
+  /**
+   * Splits the runs of a piece that is about to be removed on each of the four lines
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   */
+  private void removeRuns(int row, int col) {
+    for (int line = 0; line < 4; line++) {
+      int dx = LINE_DX[line];
+      int dy = LINE_DY[line];
+      int backward = getRun(row, col, line, false);
+      int forward = getRun(row, col, line, true);
+      for (int i = 1; i <= backward; i++) {
+        setRun(row - i * dx, col - i * dy, line, true, i - 1);
+      }
+      for (int i = 1; i <= forward; i++) {
+        setRun(row + i * dx, col + i * dy, line, false, i - 1);
+      }
+    }
+    storage.setRuns(row, col, 0);
+  }
+  
+  /**
+   * Gets how many pieces of the same color follow a piece on one side of a line
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param line the line (0 horizontal, 1 vertical, 2 diagonal, 3 anti-diagonal)
+   * @param forward true for the side along LINE_DX, LINE_DY, false for the other side
+   * @return the number of pieces, or MAX_RUN if there are at least that many
+   */
+  private int getRun(int row, int col, int line, boolean forward) {
+    int shift = line * 16 + (forward ? 0 : 8);
+    return (int) (storage.getRuns(row, col) >>> shift) & MAX_RUN;
+  }
+  
+  /**
+   * Sets how many pieces of the same color follow a piece on one side of a line
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param line the line (0 horizontal, 1 vertical, 2 diagonal, 3 anti-diagonal)
+   * @param forward true for the side along LINE_DX, LINE_DY, false for the other side
+   * @param count the number of pieces
+   */
+  private void setRun(int row, int col, int line, boolean forward, int count) {
+    storage.setRuns(row, col, withRun(storage.getRuns(row, col), line, forward, count));
+  }
+  
+  /**
+   * Replaces one count in the packed run lengths of a square
+   * @param packed the run lengths of the square
+   * @param line the line (0 horizontal, 1 vertical, 2 diagonal, 3 anti-diagonal)
+   * @param forward true for the side along LINE_DX, LINE_DY, false for the other side
+   * @param count the new count
+   * @return the run lengths with the count replaced
+   */
+  private static long withRun(long packed, int line, boolean forward, int count) {
+    int shift = line * 16 + (forward ? 0 : 8);
+    return (packed & ~((long) MAX_RUN << shift)) | ((long) count << shift);
+  }
+  
+  /**
+   * Checks that a location is on the board and has a piece of a color
+   * @param row the row position of the location
+   * @param col the column position of the location
+   * @param color the color of the piece
+   * @return true if the location has the color, otherwise false
+   */
+  private boolean hasColor(int row, int col, int color) {
+    return row >= firstRow && row <= lastRow && col >= firstCol && col <= lastCol
+        && storage.getPiece(row, col) == color;
+  }
+  
   /**
    * Counts the number of pieces of the same color (1 or 2) in a row
    * @param row the row position of the piece
@@ -83,6 +484,17 @@ public class GomokuSample {
    */
   public int numberInLine(int row, int col, int dx, int dy, int color) {
     
+    // A step of one square over pieces of one color is answered by the run-length table
+    if (color != 0 && dx >= -1 && dx <= 1 && dy >= -1 && dy <= 1 && (dx != 0 || dy != 0)) {
+      if (!hasColor(row + dx, col + dy, color))
+        return 0;
+      int line = lineOf(dx, dy);
+      boolean forward = dx == LINE_DX[line] && dy == LINE_DY[line];
+      int run = getRun(row + dx, col + dy, line, forward);
+      if (run < MAX_RUN)
+        return run + 1;
+    }
+    
     // Stores the number of pieces of the same color that appear in a row
     int count = 0;
     
@@ -91,7 +503,7 @@ public class GomokuSample {
     
     // Stores the change in vertical position of the player
     int y = col + dy;
-    while (x >= 0 && x < board.length && y >= 0 && y < board[0].length && board[x][y] == color) {
+    while (x >= firstRow && x <= lastRow && y >= firstCol && y <= lastCol && storage.getPiece(x, y) == color) {
       count++;
       x += dx;
       y += dy;
@@ -106,27 +518,297 @@ public class GomokuSample {
    * @return true if the player has won, otherwise false
    */
   public boolean hasWon(int row, int col) {
+    if (!GomokuMetrics.ENABLED)
+      return findWin(row, col);
+    long start = System.nanoTime();
+    boolean result = findWin(row, col);
+    GomokuMetrics.HAS_WON.record(start);
+    return result;
+  }
+
+  /**
+   * Checks for exactly lengthToWin in a row through a piece, without recording the time it took
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if the player has won, otherwise false
+   */
+  private boolean findWin(int row, int col) {
     
     /* Stores the color on the board of array of ints
      * Correctly assumes that the color has to be the same to win */
-    int color = board[row][col];
+    int color = storage.getPiece(row, col);
+    
+    // The length of each line through a piece is read from the run-length table
+    if (color != 0) {
+      boolean counted = true;
+      for (int line = 0; line < 4; line++) {
+        int forward = getRun(row, col, line, true);
+        int backward = getRun(row, col, line, false);
+        if (forward == MAX_RUN || backward == MAX_RUN)
+          counted = false;
+        else if (forward + backward + 1 == lengthToWin)
+          return true;
+      }
+      if (counted)
+        return false;
+    }
     return numberInLine(row, col, 1, 0, color) + numberInLine(row, col, -1, 0, color) + 1 == lengthToWin
         || numberInLine(row, col, 0, 1, color) + numberInLine(row, col, 0, -1, color) + 1 == lengthToWin
         || numberInLine(row, col, 1, 1, color) + numberInLine(row, col, -1, -1, color) + 1 == lengthToWin
         || numberInLine(row, col, 1, -1, color) + numberInLine(row, col, -1, 1, color) + 1 == lengthToWin;
   }
   
+  /**
+   * Finds which of the four lines a step of one square goes along
+   * @param dx the change in the row
+   * @param dy the change in the column
+   * @return 0 for horizontal, 1 for vertical, 2 for diagonal, or 3 for anti-diagonal
+   */
+  private static int lineOf(int dx, int dy) {
+    if (dx == 0)
+      return 0;
+    if (dy == 0)
+      return 1;
+    return dx == dy ? 2 : 3;
+  }
+  
   /** Switches the color of the piece to be placed */
   public void switchTurn() {
     blackTurn = !blackTurn;
+    hash ^= WHITE_TO_MOVE;
+  }
+  
+  /**
+   * Gets the Zobrist hash of the position, including whose turn it is
+   * Positions reached by different orders of the same moves have the same hash
+   * @return the hash
+   */
+  public long getHash() {
+    return hash;
+  }
+  
+  /**
+   * Starts keeping the hash of every turn and flip of the board, updated with each piece placed or removed
+   * @return the symmetry of the board
+   * @throws IllegalArgumentException if the board does not start at row 0 and column 0
+   */
+  public GomokuSymmetry trackSymmetry() {
+    if (symmetry == null)
+      symmetry = new GomokuSymmetry(this);
+    return symmetry;
+  }
+  
+  /**
+   * Getter method for symmetry
+   * @return the symmetry of the board, or null if trackSymmetry has not been called
+   */
+  public GomokuSymmetry getSymmetry() {
+    return symmetry;
+  }
+  
+  /**
+   * Starts keeping the static score of the position, updated with each piece placed or removed
+   * @return the evaluator of the board
+   */
+  public GomokuEvaluator trackEvaluation() {
+    if (evaluator == null)
+      evaluator = new GomokuEvaluator(this);
+    return evaluator;
+  }
+  
+  /**
+   * Getter method for the evaluator
+   * @return the evaluator of the board, or null if trackEvaluation has not been called
+   */
+  public GomokuEvaluator getEvaluator() {
+    return evaluator;
+  }
+  
+  /**
+   * Gets the number of pieces in the list of squares that have pieces
+   * @return the number of pieces
+   */
+  public int getStoneCount() {
+    return stoneCount;
+  }
+  
+  /**
+   * Gets the row of a square that has a piece
+   * @param i the number of the piece, from 0 to getStoneCount() - 1, in no particular order
+   * @return the row position of the piece
+   */
+  public int getStoneRow(int i) {
+    return (int) (stones[i] >> 32);
+  }
+  
+  /**
+   * Gets the column of a square that has a piece
+   * @param i the number of the piece, from 0 to getStoneCount() - 1, in no particular order
+   * @return the column position of the piece
+   */
+  public int getStoneCol(int i) {
+    return (int) stones[i];
+  }
+  
+  /**
+   * Getter method for the frontier
+   * @return the empty squares within GomokuFrontier.RADIUS of a piece, updated as pieces are placed and removed
+   */
+  public GomokuFrontier getFrontier() {
+    return frontier;
+  }
+  
+  /**
+   * Gets the moves worth looking at: the squares of the frontier, or the middle of the board if it has no pieces
+   * With threatsFirst, the moves are put in order of the strongest shape a piece there makes for either player, with
+   * the player to move ahead on a tie, so that fives, fours, and threes come first
+   * Moves that make no threat keep the order of the frontier, and so do moves that make the same threat
+   * @param threatsFirst true to put the moves that make or block threats first
+   * @return the moves, each as its row in the high 32 bits and its column in the low 32 bits
+   */
+  public long[] getCandidates(boolean threatsFirst) {
+    if (storage.getPieceCount() == 0) {
+      int row = firstRow + rows / 2;
+      int col = firstCol + cols / 2;
+      return new long[] {(long) row << 32 | (col & 0xFFFFFFFFL)};
+    }
+    long[] moves = frontier.toArray();
+    if (!threatsFirst)
+      return moves;
+    
+    // Sorts by threat with one pass to count the moves of each threat and one to place them, which keeps ties in order
+    int[] threats = new int[moves.length];
+    int[] starts = new int[2 * GomokuPatterns.FIVE + 2];
+    for (int i = 0; i < moves.length; i++) {
+      int row = (int) (moves[i] >> 32);
+      int col = (int) moves[i];
+      int attack = threatShape(row, col);
+      switchTurn();
+      int defend = threatShape(row, col);
+      switchTurn();
+      threats[i] = attack >= defend ? 2 * attack + 1 : 2 * defend;
+      starts[starts.length - 1 - threats[i]]++;
+    }
+    for (int i = 0, total = 0; i < starts.length; i++) {
+      int count = starts[i];
+      starts[i] = total;
+      total += count;
+    }
+    long[] sorted = new long[moves.length];
+    for (int i = 0; i < moves.length; i++) {
+      sorted[starts[starts.length - 1 - threats[i]]++] = moves[i];
+    }
+    return sorted;
+  }
+  
+  /**
+   * Finds the strongest threat a piece of the player to move would make on an empty square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the strongest shape along the four lines if it is at least a three, otherwise GomokuPatterns.NONE
+   */
+  private int threatShape(int row, int col) {
+    setPiece(row, col);
+    int best = GomokuPatterns.NONE;
+    for (int line = 0; line < 4; line++) {
+      int shape = getShape(row, col, LINE_DX[line], LINE_DY[line]);
+      if (shape != GomokuPatterns.OVERLINE)
+        best = Math.max(best, shape);
+    }
+    removePiece(row, col);
+    return best >= GomokuPatterns.THREE ? best : GomokuPatterns.NONE;
+  }
+  
+  /**
+   * Gets the Zobrist key of a piece
+   * The keys are mixed from the location and color instead of stored, so any size of board has them for free
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param color the color of the piece (1 or 2)
+   * @return the key
+   */
+  public static long zobristKey(int row, int col, int color) {
+    long key = ((long) row << 32 | (col & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L + color * 0xD1B54A32D192ED03L;
+    key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+    key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+    return key ^ (key >>> 31);
   }
   
   /** 
    * Gets the board
    * @return the board
+   * @throws UnsupportedOperationException if the squares are not stored in an array, use getPiece instead
    */
   public int[][] getBoard() {
-    return board;
+    if (!(storage instanceof GomokuDenseStorage))
+      throw new UnsupportedOperationException("This board is not stored in an array, use getPiece instead");
+    return ((GomokuDenseStorage) storage).getBoard();
+  }
+  
+  /**
+   * Getter method for the squares of the board
+   * @return the storage of the squares, which must not be changed directly
+   */
+  public GomokuStorage getStorage() {
+    return storage;
+  }
+  
+  /**
+   * Gets the color of a location
+   * @param row the row position of the location
+   * @param col the column position of the location
+   * @return 0 for empty, 1 for black, or 2 for white
+   */
+  public int getPiece(int row, int col) {
+    return storage.getPiece(row, col);
+  }
+  
+  /**
+   * Gets the number of pieces on the board
+   * @return the number of locations that are not empty
+   */
+  public int getPieceCount() {
+    return storage.getPieceCount();
+  }
+  
+  /**
+   * Gets the first row of the board
+   * @return 0, or the smallest row position of a board that also has negative rows
+   */
+  public int getFirstRow() {
+    return firstRow;
+  }
+  
+  /**
+   * Gets the first column of the board
+   * @return 0, or the smallest column position of a board that also has negative columns
+   */
+  public int getFirstCol() {
+    return firstCol;
+  }
+  
+  /**
+   * Getter method for the rows
+   * @return the number of rows on the board
+   */
+  public int getRows() {
+    return rows;
+  }
+  
+  /**
+   * Getter method for the columns
+   * @return the number of columns on the board
+   */
+  public int getCols() {
+    return cols;
+  }
+  
+  /**
+   * Getter method for lengthToWin
+   * @return the exact length needed in a row to win
+   */
+  public int getLengthToWin() {
+    return lengthToWin;
   }
   
   /** 
@@ -145,7 +827,21 @@ public class GomokuSample {
    * @return true if empty, otherwise false
    */
   public boolean isEmpty(int row, int col) {
-    return board[row][col] == 0;
+    return storage.getPiece(row, col) == 0;
+  }
+  
+  /**
+   * Classifies the shape of the line through a piece, such as an open three, a broken three, or a four
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param dx the change in the row along the line
+   * @param dy the change in the column along the line
+   * @return the shape, one of the constants of GomokuPatterns
+   */
+  public int getShape(int row, int col, int dx, int dy) {
+    if (patterns == null)
+      patterns = GomokuPatterns.forLength(lengthToWin);
+    return patterns.classify(storage, row, col, dx, dy);
   }
   
   /**
@@ -155,16 +851,28 @@ public class GomokuSample {
    * @return true if violated, otherwise false
    */
   public boolean violatesFourFour(int row, int col) {
+    if (!GomokuMetrics.ENABLED)
+      return findFourFour(row, col);
+    long start = System.nanoTime();
+    boolean result = findFourFour(row, col);
+    GomokuMetrics.VIOLATES_FOUR_FOUR.record(start);
+    return result;
+  }
+
+  /**
+   * Checks the Four-Four rule, without recording the time it took
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if violated, otherwise false
+   */
+  private boolean findFourFour(int row, int col) {
     
     // Stores the color on the board of array of ints
-    int color = board[row][col];
-    
-    // An array of ints to store the possible directions to move (horizontal, vertical, diagonal)
-    int[] direction = {-1, 0, 1};
+    int color = storage.getPiece(row, col);
     
     // For-each loop to search through every direction on the entire two-dimensional array
-    for (int dx : direction) {
-        for (int dy : direction) {
+    for (int dx : DIRECTION) {
+        for (int dy : DIRECTION) {
           if (dx == 0 && dy == 0) 
             continue;
           int count = 1;
@@ -189,19 +897,31 @@ public class GomokuSample {
    * @return true if violated, otherwise false
    */
   public boolean violatesThreeThree(int row, int col) {
+    if (!GomokuMetrics.ENABLED)
+      return findThreeThree(row, col);
+    long start = System.nanoTime();
+    boolean result = findThreeThree(row, col);
+    GomokuMetrics.VIOLATES_THREE_THREE.record(start);
+    return result;
+  }
+
+  /**
+   * Checks the Three-Three rule, without recording the time it took
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if violated, otherwise false
+   */
+  private boolean findThreeThree(int row, int col) {
     
     // Stores the color on the board of array of ints
-    int color = board[row][col];
+    int color = storage.getPiece(row, col);
     
     // Keeps track of how many distinct groups of three there are
     int count = 0;
     
-    // An array of ints to store the possible directions to move (horizontal, vertical, diagonal)
-    int[] direction = {-1, 0, 1};
-    
     // For-each loop to search through every direction on the entire two-dimensional array
-    for (int dx : direction) {
-      for (int dy : direction) {
+    for (int dx : DIRECTION) {
+      for (int dy : DIRECTION) {
         if (dx == 0 && dy == 0) 
           continue;
         int countThree = 1;
@@ -219,4 +939,4 @@ public class GomokuSample {
     return count >= 2;
   }
 
-}
\ No newline at end of file
+}
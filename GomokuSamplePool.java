@@ -0,0 +1,151 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class to keep boards that are done with so that new games can use them instead of making new ones
+ * A board given back is cleared with GomokuSample.clear, which only visits its pieces, so a loop that plays millions
+ * of games makes only as many boards as it has games going at once
+ * Boards of every size and length to win can be kept, and a board is only handed out for a game of its own size
+ * The boards are kept by their size, so finding one does not look through boards of other sizes, and the boards
+ * kept are limited both in number and in squares, so a pool never holds more memory than its limits allow
+ * Only array boards are kept, since a sparse or tiled board is cheap to make and may have grown large
+ * A pool is not safe to share between threads, so each thread that plays games keeps its own
+ * @author Noah Leibowitz
+ */
+public class GomokuSamplePool {
+
+  /** The most squares of the boards kept at once if the number is not given, about 90 megabytes */
+  public static final long DEFAULT_MAX_SQUARES = 1 << 22;
+
+  /** Stores the boards that are ready to be used by their rows and columns, with the most recently given back first */
+  private Map<Long, ArrayDeque<GomokuSample>> idle = new HashMap<Long, ArrayDeque<GomokuSample>>();
+
+  /** Stores the most boards kept at once, more are left for the garbage collector */
+  private int maxIdle;
+
+  /** Stores the most squares of the boards kept at once */
+  private long maxSquares;
+
+  /** Stores the number of boards kept */
+  private int idleCount;
+
+  /** Stores the number of squares of the boards kept */
+  private long idleSquares;
+
+  /** Stores the number of boards made because none could be used */
+  private long created;
+
+  /** Stores the number of boards used again */
+  private long reused;
+
+  /**
+   * Constructor that makes an empty pool that keeps up to DEFAULT_MAX_SQUARES squares
+   * @param maxIdle the most boards kept at once
+   */
+  public GomokuSamplePool(int maxIdle) {
+    this(maxIdle, DEFAULT_MAX_SQUARES);
+  }
+
+  /**
+   * Constructor that makes an empty pool
+   * @param maxIdle the most boards kept at once
+   * @param maxSquares the most squares of the boards kept at once, so a board bigger than this is never kept
+   */
+  public GomokuSamplePool(int maxIdle, long maxSquares) {
+    this.maxIdle = maxIdle;
+    this.maxSquares = maxSquares;
+  }
+
+  /**
+   * Gets an empty board for a new game, using one that was given back if there is one of the same size
+   * @param lengthToWin the exact length needed in a row to win
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @return an empty board with black to move
+   */
+  public GomokuSample acquire(int lengthToWin, int rows, int cols) {
+    ArrayDeque<GomokuSample> boards = idle.get(sizeKey(rows, cols));
+    if (boards != null) {
+
+      // Boards of one size nearly always have one length to win, so the first board nearly always fits
+      for (GomokuSample game : boards) {
+        if (game.getLengthToWin() == lengthToWin) {
+          boards.removeFirstOccurrence(game);
+          if (boards.isEmpty())
+            idle.remove(sizeKey(rows, cols));
+          idleCount--;
+          idleSquares -= (long) rows * cols;
+          reused++;
+          return game;
+        }
+      }
+    }
+    created++;
+    return new GomokuSample(lengthToWin, rows, cols);
+  }
+
+  /**
+   * Gives back a board that is no longer needed, which must not be used again by the code giving it back
+   * The board is left for the garbage collector if it is not an array board or the pool is full
+   * @param game the board
+   */
+  public void release(GomokuSample game) {
+    long size = (long) game.getRows() * game.getCols();
+    if (!(game.getStorage() instanceof GomokuDenseStorage) || idleCount >= maxIdle || idleSquares + size > maxSquares)
+      return;
+    game.clear();
+    long key = sizeKey(game.getRows(), game.getCols());
+    ArrayDeque<GomokuSample> boards = idle.get(key);
+    if (boards == null) {
+      boards = new ArrayDeque<GomokuSample>();
+      idle.put(key, boards);
+    }
+    boards.addFirst(game);
+    idleCount++;
+    idleSquares += size;
+  }
+
+  /**
+   * Gets the key of the boards of a size
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @return the rows and columns in one number
+   */
+  private static long sizeKey(int rows, int cols) {
+    return (long) rows << 32 | (cols & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Gets the number of boards waiting to be used again
+   * @return the number of boards
+   */
+  public int getIdle() {
+    return idleCount;
+  }
+
+  /**
+   * Gets the number of squares of the boards waiting to be used again
+   * @return the number of squares
+   */
+  public long getIdleSquares() {
+    return idleSquares;
+  }
+
+  /**
+   * Gets the number of boards made
+   * @return the number of times acquire had no board to use again
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  /**
+   * Gets the number of boards used again
+   * @return the number of times acquire used a board that was given back
+   */
+  public long getReused() {
+    return reused;
+  }
+
+}
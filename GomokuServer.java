@@ -0,0 +1,762 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class for a server that hosts many games of Gomoku at once over TCP, without the JavaFX window
+ * Each selector thread serves many connections with non-blocking sockets, and each connection can play many games
+ * The protocol is one command per line, and every command gets one line back:
+ *   NEW [rows cols [lengthToWin]]   starts a game (15x15, 5 in a row by default)    GAME id, or GAME id key
+ *                                                                                   with a journal
+ *   MOVE id row col                 plays for the player whose turn it is           OK id color, WIN id color,
+ *                                                                                   or FORBIDDEN id
+ *   END id                          forgets a game                                  ENDED id
+ *   RESUME key                      takes up a saved game under a new id            GAME id key
+ *   PING                                                                            PONG
+ *   QUIT                            closes the connection after the answers         BYE
+ * Any command that cannot be carried out gets ERR and a reason
+ * A move that breaks the Four-Four or Three-Three rule is taken back and the same player must move again,
+ * the same as in the window, unless it also wins
+ * With a GomokuJournal every game is saved under a key that outlives the connection and the server: a game that
+ * was not ended can be taken up again with RESUME, by any connection, after the connection closes or the server
+ * restarts; the moves read by each selector thread in one pass are committed to the journal together before any of
+ * their answers are sent, so an answer is only sent once its move is on the disk, and a connection whose moves
+ * could not be committed is closed without its answers; a game left alone for a whole generation of the journal is
+ * dropped from it
+ * A board of up to MAX_DENSE_SQUARES squares is an array, counted against a budget of squares for each connection
+ * and for the whole server, and a bigger board is sparse, so its memory follows its pieces; a connection that fails
+ * in an unexpected way is closed without touching the other connections of its selector thread
+ * Run with: java GomokuServer [port] [selector threads] [journal folder]
+ * @author Noah Leibowitz
+ */
+public class GomokuServer implements AutoCloseable {
+
+  /** The port the server listens on if none is given */
+  public static final int DEFAULT_PORT = 7777;
+
+  /** The longest line the server reads, longer lines close the connection */
+  public static final int MAX_LINE = 256;
+
+  /** The most games one connection may have at once */
+  public static final int MAX_GAMES = 4096;
+
+  /** The most squares a board may have */
+  public static final int MAX_SQUARES = 1 << 20;
+
+  /** The most squares of a board that is stored as an array, bigger boards are sparse */
+  public static final int MAX_DENSE_SQUARES = 1 << 16;
+
+  /** The most squares of array boards that one connection may have at once, about 90 megabytes */
+  public static final long MAX_CONNECTION_SQUARES = 1 << 22;
+
+  /** The most squares of array boards that the server may have at once, about 700 megabytes */
+  public static final long MAX_SERVER_SQUARES = 1 << 25;
+
+  /** The most ended games whose boards each selector thread keeps to use again */
+  private static final int MAX_IDLE_BOARDS = 1024;
+
+  /** The most squares of the boards of ended games that each selector thread keeps, about 22 megabytes */
+  private static final long MAX_IDLE_SQUARES = 1 << 20;
+
+  /** The most bytes of answers waiting to be sent before the server stops reading from a connection */
+  private static final int MAX_PENDING = 64 * 1024;
+
+  /** Stores the socket that connections arrive on */
+  private ServerSocketChannel server;
+
+  /** Stores the selector threads */
+  private Worker[] workers;
+
+  /** Stores the index of the worker that gets the next connection */
+  private int nextWorker;
+
+  /** Stores whether the server is running */
+  private volatile boolean running;
+
+  /** Stores the number of moves played on the server */
+  private LongAdder moves = new LongAdder();
+
+  /** Stores the number of commands answered by the server */
+  private LongAdder commands = new LongAdder();
+
+  /** Stores the number of connections accepted by the server */
+  private LongAdder connections = new LongAdder();
+
+  /** Stores the number of squares of the array boards of every game on the server */
+  private AtomicLong totalSquares = new AtomicLong();
+
+  /** Stores the journal the games are saved to, or null if they are not saved */
+  private GomokuJournal journal;
+
+  /** Stores the keys of the saved games that a connection is playing, so that no two connections play one game */
+  private Set<Long> attached = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Constructor that opens the socket and the selectors, but does not start serving
+   * @param port the port to listen on, or 0 for any free port
+   * @param threads the number of selector threads
+   * @throws IOException if the socket cannot be opened
+   */
+  public GomokuServer(int port, int threads) throws IOException {
+    this(port, threads, null);
+  }
+
+  /**
+   * Constructor that opens the socket and the selectors, saving every game to a journal
+   * @param port the port to listen on, or 0 for any free port
+   * @param threads the number of selector threads
+   * @param journal the journal the games are saved to and taken up from, or null to not save them
+   * @throws IOException if the socket cannot be opened
+   */
+  public GomokuServer(int port, int threads, GomokuJournal journal) throws IOException {
+    this.journal = journal;
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(port), 1024);
+    server.configureBlocking(false);
+    workers = new Worker[Math.max(1, threads)];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Worker(Selector.open());
+    }
+    server.register(workers[0].selector, SelectionKey.OP_ACCEPT);
+  }
+
+  /**
+   * Starts the selector threads
+   */
+  public void start() {
+    running = true;
+    for (int i = 0; i < workers.length; i++) {
+      Thread thread = new Thread(workers[i], "gomoku-selector-" + i);
+      thread.setDaemon(true);
+      workers[i].thread = thread;
+      thread.start();
+    }
+  }
+
+  /**
+   * Gets the port the server listens on
+   * @return the port
+   * @throws IOException if the socket is closed
+   */
+  public int getPort() throws IOException {
+    return ((InetSocketAddress) server.getLocalAddress()).getPort();
+  }
+
+  /**
+   * Gets the number of moves played
+   * @return the number of moves placed on any board, counting moves that were taken back for breaking a rule
+   */
+  public long getMoves() {
+    return moves.sum();
+  }
+
+  /**
+   * Gets the number of commands answered
+   * @return the number of lines answered
+   */
+  public long getCommands() {
+    return commands.sum();
+  }
+
+  /**
+   * Gets the number of connections accepted
+   * @return the number of connections
+   */
+  public long getConnections() {
+    return connections.sum();
+  }
+
+  /**
+   * Stops the selector threads and closes every connection
+   * @throws IOException if the socket cannot be closed
+   */
+  public void close() throws IOException {
+    running = false;
+    for (Worker worker : workers) {
+      worker.selector.wakeup();
+      if (worker.thread != null) {
+        try {
+          worker.thread.join(1000);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      for (SelectionKey key : worker.selector.keys()) {
+        key.channel().close();
+      }
+      worker.selector.close();
+    }
+    server.close();
+  }
+
+  /** A class for one selector thread and the connections it serves */
+  private class Worker implements Runnable {
+
+    /** Stores the selector of the thread */
+    private Selector selector;
+
+    /** Stores the thread */
+    private Thread thread;
+
+    /** Stores the connections handed to this thread that have not been registered yet */
+    private Queue<SocketChannel> arrived = new ConcurrentLinkedQueue<SocketChannel>();
+
+    /** Stores the boards of ended games, used again by new games of the connections of this thread */
+    private GomokuSamplePool pool = new GomokuSamplePool(MAX_IDLE_BOARDS, MAX_IDLE_SQUARES);
+
+    /** Stores the keys of the connections read in this pass, whose answers are sent at the end of the pass */
+    private List<SelectionKey> served = new ArrayList<SelectionKey>();
+
+    /**
+     * Constructor that initializes the fields
+     * @param selector the selector of the thread
+     */
+    private Worker(Selector selector) {
+      this.selector = selector;
+    }
+
+    /** Waits for sockets that are ready and serves them until the server is closed */
+    public void run() {
+      while (running) {
+        try {
+          selector.select();
+          served.clear();
+          SocketChannel channel;
+          while ((channel = arrived.poll()) != null) {
+            channel.register(selector, SelectionKey.OP_READ, new Connection(channel, pool));
+          }
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid())
+              continue;
+            if (key.isAcceptable())
+              accept();
+            else {
+              try {
+                if (((Connection) key.attachment()).read(key))
+                  served.add(key);
+              }
+              catch (RuntimeException | Error e) {
+                fail(key, e);
+              }
+            }
+          }
+
+          // Every move read in this pass is forced to the disk with one fsync before any answer goes out
+          boolean saved = true;
+          if (journal != null) {
+            try {
+              journal.commit();
+            }
+            catch (IOException e) {
+              System.out.println("Journal error: " + e.getMessage());
+              saved = false;
+            }
+          }
+          for (SelectionKey key : served) {
+            Connection connection = (Connection) key.attachment();
+            try {
+              // A connection whose changes were lost is closed without its answers, since its boards are ahead of
+              // the journal, which took the changes back; its games can be taken up as they were at the last commit
+              if (saved || !connection.saved)
+                connection.write(key);
+              else
+                connection.close(key);
+            }
+            catch (RuntimeException | Error e) {
+              fail(key, e);
+            }
+          }
+        }
+        catch (IOException e) {
+          if (running)
+            System.out.println("Selector error: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes a connection that failed in an unexpected way, such as running out of memory, so that the selector
+   * thread goes on serving its other connections
+   * @param key the key of the connection
+   * @param e what went wrong
+   */
+  private void fail(SelectionKey key, Throwable e) {
+    System.out.println("Closing a connection after an error: " + e);
+    try {
+      ((Connection) key.attachment()).close(key);
+    }
+    catch (RuntimeException | Error again) {
+      key.cancel();
+    }
+  }
+
+  /**
+   * Accepts every waiting connection and hands each to the next selector thread in turn
+   * @throws IOException if the socket fails
+   */
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = server.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      connections.increment();
+      Worker worker = workers[nextWorker];
+      nextWorker = (nextWorker + 1) % workers.length;
+      worker.arrived.add(channel);
+      worker.selector.wakeup();
+    }
+  }
+
+  /** A class for one game on the server */
+  private static class Session {
+
+    /** Stores the board */
+    private GomokuSample game;
+
+    /** Stores whether someone has won */
+    private boolean over;
+
+    /** Stores the number of squares counted against the budgets, 0 for a sparse board */
+    private long squares;
+
+    /** Stores the key of the game in the journal, or 0 if it is not saved */
+    private long key;
+
+    /**
+     * Constructor that initializes the fields
+     * @param game the board
+     * @param key the key of the game in the journal, or 0 if it is not saved
+     */
+    private Session(GomokuSample game, long key) {
+      this.game = game;
+      this.key = key;
+    }
+  }
+
+  /** A class for one connection and its games, used only by the thread of its selector */
+  private class Connection {
+
+    /** Stores the socket */
+    private SocketChannel channel;
+
+    /** Stores the bytes read that are not yet a whole line */
+    private ByteBuffer in = ByteBuffer.allocate(4 * MAX_LINE);
+
+    /** Stores the answers that have not been sent yet */
+    private ByteBuffer out = ByteBuffer.allocate(4096);
+
+    /** Stores the games of the connection by their ids */
+    private Map<Integer, Session> games = new HashMap<Integer, Session>();
+
+    /** Stores the id of the next game */
+    private int nextId = 1;
+
+    /** Stores whether the connection closes once its answers are sent */
+    private boolean closing;
+
+    /** Stores the boards of ended games of the selector thread of the connection */
+    private GomokuSamplePool pool;
+
+    /** Stores the number of squares of the array boards of the games of the connection */
+    private long squares;
+
+    /** Stores whether the connection changed the journal in the current pass of its selector thread */
+    private boolean saved;
+
+    /**
+     * Constructor that initializes the fields
+     * @param channel the socket
+     * @param pool the boards of ended games of the selector thread
+     */
+    private Connection(SocketChannel channel, GomokuSamplePool pool) {
+      this.channel = channel;
+      this.pool = pool;
+    }
+
+    /**
+     * Reads and answers commands, leaving the answers to be sent by write
+     * @param key the key of the socket
+     * @return true if the connection is still open, otherwise false
+     */
+    private boolean read(SelectionKey key) {
+      saved = false;
+      try {
+        if (key.isReadable()) {
+          if (channel.read(in) < 0) {
+            close(key);
+            return false;
+          }
+          readLines();
+        }
+        return true;
+      }
+      catch (IOException e) {
+        close(key);
+        return false;
+      }
+    }
+
+    /**
+     * Sends the answers that are waiting
+     * @param key the key of the socket
+     */
+    private void write(SelectionKey key) {
+      try {
+        out.flip();
+        channel.write(out);
+        out.compact();
+
+        // Waits to be able to write if answers are left over, and stops reading while too many are waiting
+        boolean waiting = out.position() > 0;
+        if (!waiting && closing) {
+          close(key);
+          return;
+        }
+        int interest = waiting ? SelectionKey.OP_WRITE : 0;
+        if (out.position() < MAX_PENDING && !closing)
+          interest |= SelectionKey.OP_READ;
+        if (key.interestOps() != interest)
+          key.interestOps(interest);
+      }
+      catch (IOException e) {
+        close(key);
+      }
+    }
+
+    /** Answers every whole line that has been read */
+    private void readLines() {
+      in.flip();
+      byte[] bytes = in.array();
+      int start = in.position();
+      for (int i = start; i < in.limit() && !closing; i++) {
+        if (bytes[i] == '\n') {
+          int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+          answer(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+          commands.increment();
+          start = i + 1;
+        }
+      }
+      in.position(start);
+      in.compact();
+      if (in.position() > MAX_LINE) {
+        reply("ERR line too long");
+        closing = true;
+      }
+    }
+
+    /**
+     * Carries out one command and writes its answer
+     * @param line the command
+     */
+    private void answer(String line) {
+      String[] words = line.trim().split(" +");
+      try {
+        String command = words[0].toUpperCase();
+        if (command.equals("MOVE") && words.length == 4)
+          move(Integer.parseInt(words[1]), Integer.parseInt(words[2]), Integer.parseInt(words[3]));
+        else if (command.equals("NEW") && (words.length == 1 || words.length == 3 || words.length == 4)) {
+          int rows = words.length > 1 ? Integer.parseInt(words[1]) : 15;
+          int cols = words.length > 1 ? Integer.parseInt(words[2]) : 15;
+          newGame(rows, cols, words.length > 3 ? Integer.parseInt(words[3]) : 5);
+        }
+        else if (command.equals("END") && words.length == 2) {
+          Session session = games.remove(Integer.parseInt(words[1]));
+          if (session == null)
+            reply("ERR no game " + words[1]);
+          else {
+            if (session.key != 0) {
+              saved = true;
+              journal.endGame(session.key);
+              attached.remove(session.key);
+            }
+            release(session);
+            reply("ENDED " + words[1]);
+          }
+        }
+        else if (command.equals("RESUME") && words.length == 2)
+          resume(Long.parseLong(words[1]));
+        else if (command.equals("PING"))
+          reply("PONG");
+        else if (command.equals("QUIT")) {
+          reply("BYE");
+          closing = true;
+        }
+        else
+          reply("ERR unknown command");
+      }
+      catch (NumberFormatException e) {
+        reply("ERR bad number");
+      }
+      catch (IOException e) {
+        reply("ERR journal failed");
+      }
+    }
+
+    /**
+     * Starts a game
+     * @param rows the number of rows on the board
+     * @param cols the number of columns on the board
+     * @param lengthToWin the exact length needed in a row to win
+     */
+    private void newGame(int rows, int cols, int lengthToWin) throws IOException {
+      if (rows < 1 || cols < 1 || (long) rows * cols > MAX_SQUARES || lengthToWin < 1)
+        reply("ERR bad board size");
+      else if (games.size() >= MAX_GAMES)
+        reply("ERR too many games");
+      else {
+        Session session = newSession(lengthToWin, rows, cols);
+        if (session == null)
+          return;
+        if (journal != null) {
+          try {
+            saved = true;
+            session.key = journal.newGame(rows, cols, lengthToWin);
+          }
+          catch (IOException e) {
+            release(session);
+            throw e;
+          }
+          attached.add(session.key);
+        }
+        int id = nextId++;
+        games.put(id, session);
+        reply(journal == null ? "GAME " + id : "GAME " + id + " " + session.key);
+      }
+    }
+
+    /**
+     * Makes a game with an empty board, as an array if it is small enough and fits in the budgets of squares,
+     * otherwise as a sparse board
+     * @param lengthToWin the exact length needed in a row to win
+     * @param rows the number of rows on the board
+     * @param cols the number of columns on the board
+     * @return the game, or null with an error sent if the board does not fit in the budgets
+     */
+    private Session newSession(int lengthToWin, int rows, int cols) {
+      long size = (long) rows * cols;
+      if (size > MAX_DENSE_SQUARES)
+        return new Session(new GomokuSample(lengthToWin, new GomokuSparseStorage(rows, cols)), 0);
+      if (squares + size > MAX_CONNECTION_SQUARES) {
+        reply("ERR too many squares");
+        return null;
+      }
+      if (totalSquares.addAndGet(size) > MAX_SERVER_SQUARES) {
+        totalSquares.addAndGet(-size);
+        reply("ERR server is full");
+        return null;
+      }
+      squares += size;
+      Session session = new Session(pool.acquire(lengthToWin, rows, cols), 0);
+      session.squares = size;
+      return session;
+    }
+
+    /**
+     * Gives back the board of a game that is over, and its squares to the budgets
+     * @param session the game
+     */
+    private void release(Session session) {
+      if (session.squares == 0)
+        return;
+      squares -= session.squares;
+      totalSquares.addAndGet(-session.squares);
+      pool.release(session.game);
+    }
+
+    /**
+     * Takes up a game saved in the journal, rebuilding its board from its moves
+     * @param key the key of the game in the journal
+     */
+    private void resume(long key) {
+      if (journal == null)
+        reply("ERR no journal");
+      else if (games.size() >= MAX_GAMES)
+        reply("ERR too many games");
+      else if (!attached.add(key))
+        reply("ERR game " + key + " is in use");
+      else {
+        GomokuGameRecord record = journal.resume(key);
+        if (record == null) {
+          attached.remove(key);
+          reply("ERR no saved game " + key);
+          return;
+        }
+        Session session = newSession(record.getLengthToWin(), record.getRows(), record.getCols());
+        if (session == null) {
+          attached.remove(key);
+          return;
+        }
+        for (int i = 0; i < record.getMoveCount(); i++) {
+          session.game.makeMove(record.getMoveRow(i), record.getMoveCol(i));
+        }
+        session.key = key;
+        session.over = record.getResult() != GomokuGameRecord.NO_WINNER;
+        int id = nextId++;
+        games.put(id, session);
+        reply("GAME " + id + " " + key);
+      }
+    }
+
+    /**
+     * Plays a move for the player whose turn it is
+     * @param id the id of the game
+     * @param row the row position of the move
+     * @param col the column position of the move
+     * @throws IOException if the move cannot be saved to the journal, in which case it is taken back
+     */
+    private void move(int id, int row, int col) throws IOException {
+      Session session = games.get(id);
+      if (session == null) {
+        reply("ERR no game " + id);
+        return;
+      }
+      GomokuSample game = session.game;
+      if (session.over)
+        reply("ERR game " + id + " is over");
+      else if (row < 0 || row >= game.getRows() || col < 0 || col >= game.getCols())
+        reply("ERR not on the board");
+      else if (!game.setPiece(row, col))
+        reply("ERR square is taken");
+      else {
+        moves.increment();
+        int color = game.isBlackTurn() ? 1 : 2;
+        if (game.hasWon(row, col)) {
+          save(session, row, col, color);
+          session.over = true;
+          reply("WIN " + id + " " + color);
+        }
+        else if (game.violatesFourFour(row, col) || game.violatesThreeThree(row, col)) {
+          game.removePiece(row, col);
+          reply("FORBIDDEN " + id);
+        }
+        else {
+          save(session, row, col, 0);
+          game.switchTurn();
+          reply("OK " + id + " " + color);
+        }
+      }
+    }
+
+    /**
+     * Saves a move that stays on the board to the journal, taking it back if it cannot be saved
+     * @param session the game
+     * @param row the row position of the move
+     * @param col the column position of the move
+     * @param winner the color that won with the move, or 0 if the game goes on
+     * @throws IOException if the move cannot be saved
+     */
+    private void save(Session session, int row, int col, int winner) throws IOException {
+      if (session.key == 0)
+        return;
+      try {
+        saved = true;
+        journal.move(session.key, row, col, winner);
+      }
+      catch (IOException e) {
+        session.game.removePiece(row, col);
+        throw e;
+      }
+    }
+
+    /**
+     * Writes one line of answer, making room for it if needed
+     * @param text the answer
+     */
+    private void reply(String text) {
+      int length = text.length() + 1;
+      if (out.remaining() < length) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + length));
+        out.flip();
+        bigger.put(out);
+        out = bigger;
+      }
+      for (int i = 0; i < text.length(); i++) {
+        out.put((byte) text.charAt(i));
+      }
+      out.put((byte) '\n');
+    }
+
+    /**
+     * Closes the connection and forgets its games
+     * @param key the key of the socket
+     */
+    private void close(SelectionKey key) {
+      key.cancel();
+
+      // Saved games stay in the journal, to be taken up again with RESUME before a whole generation passes
+      for (Session session : games.values()) {
+        if (session.key != 0) {
+          journal.release(session.key);
+          attached.remove(session.key);
+        }
+        release(session);
+      }
+      games.clear();
+      try {
+        channel.close();
+      }
+      catch (IOException e) {
+        // The connection is gone either way
+      }
+    }
+  }
+
+  /**
+   * Runs a server until the program is stopped, printing how busy it is every 10 seconds
+   * @param args the port and the number of selector threads
+   */
+  public static void main(String[] args) {
+    try {
+      int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+      int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+      GomokuJournal journal = null;
+      if (args.length > 2) {
+        journal = new GomokuJournal(Paths.get(args[2]));
+        System.out.println("Recovered " + journal.getGames().size() + " saved games from " + args[2]);
+      }
+      GomokuServer server = new GomokuServer(port, threads, journal);
+      server.start();
+      System.out.println("Listening on port " + server.getPort() + " with " + threads + " selector threads");
+      long lastMoves = 0;
+      while (true) {
+        Thread.sleep(10000);
+        long total = server.getMoves();
+        System.out.println(server.getConnections() + " connections, " + total + " moves, "
+                           + (total - lastMoves) / 10 + " moves/second");
+        lastMoves = total;
+      }
+    }
+    catch (NumberFormatException e) {
+      System.out.println("Usage: java GomokuServer [port] [selector threads] [journal folder]");
+    }
+    catch (IOException e) {
+      System.out.println("Could not start the server: " + e.getMessage());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
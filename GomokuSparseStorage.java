@@ -0,0 +1,292 @@
+import java.util.Arrays;
+
+/**
+ * A class to store only the squares of a Gomoku board that have a piece, for boards too large to hold in an array
+ * The squares are kept in a hash table with open addressing: the row and column are packed into one long key,
+ * and a square is looked for at the slot of its hash and then at each following slot until an empty one
+ * The memory used grows with the number of pieces, not with the size of the board
+ * @author Noah Leibowitz
+ */
+public class GomokuSparseStorage implements GomokuStorage {
+
+  /** The key of a slot that has no square */
+  private static final long FREE = -1;
+
+  /** The number of slots the table starts with */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Stores the number of rows on the board */
+  private int rows;
+
+  /** Stores the number of columns on the board */
+  private int cols;
+
+  /** Stores the key of the square in each slot, or FREE */
+  private long[] keys;
+
+  /** Stores the color of the piece in each slot */
+  private byte[] colors;
+
+  /** Stores the packed run lengths of the piece in each slot */
+  private long[] runs;
+
+  /** Stores the number of slots minus one, used to wrap an index around the table */
+  private int mask;
+
+  /** Stores the number of pieces on the board */
+  private int pieces;
+
+  /**
+   * Constructor that initializes the fields
+   * @param rows the number of rows on the board, up to Integer.MAX_VALUE
+   * @param cols the number of columns on the board, up to Integer.MAX_VALUE
+   */
+  public GomokuSparseStorage(int rows, int cols) {
+    this.rows = rows;
+    this.cols = cols;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Copy constructor that makes an independent copy of another board
+   * @param other the board to copy
+   */
+  public GomokuSparseStorage(GomokuSparseStorage other) {
+    rows = other.rows;
+    cols = other.cols;
+    keys = other.keys.clone();
+    colors = other.colors.clone();
+    runs = other.runs.clone();
+    mask = other.mask;
+    pieces = other.pieces;
+  }
+
+  /**
+   * Gets the first row of the board
+   * @return 0, because the rows start at 0
+   */
+  public int getFirstRow() {
+    return 0;
+  }
+
+  /**
+   * Gets the first column of the board
+   * @return 0, because the columns start at 0
+   */
+  public int getFirstCol() {
+    return 0;
+  }
+
+  /**
+   * Getter method for the rows
+   * @return the number of rows on the board
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Getter method for the columns
+   * @return the number of columns on the board
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Gets the color of a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return 0 for empty, 1 for black, or 2 for white
+   * @throws ArrayIndexOutOfBoundsException if the square is not on the board
+   */
+  public int getPiece(int row, int col) {
+    checkBounds(row, col);
+    int slot = find(key(row, col));
+    return slot < 0 ? 0 : colors[slot];
+  }
+
+  /**
+   * Sets the color of a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param color 0 for empty, 1 for black, or 2 for white
+   * @throws ArrayIndexOutOfBoundsException if the square is not on the board
+   */
+  public void setPiece(int row, int col, int color) {
+    checkBounds(row, col);
+    long key = key(row, col);
+    int slot = find(key);
+    if (color == 0) {
+      if (slot >= 0)
+        delete(slot);
+      return;
+    }
+    if (slot >= 0) {
+      colors[slot] = (byte) color;
+      return;
+    }
+
+    // Keeps the table at most half full, so that a search passes few slots before it finds an empty one
+    if (2 * (pieces + 1) > keys.length)
+      allocate(keys.length * 2);
+    slot = slotOf(key);
+    while (keys[slot] != FREE) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    colors[slot] = (byte) color;
+    runs[slot] = 0;
+    pieces++;
+  }
+
+  /**
+   * Gets the packed run lengths of the piece on a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the run lengths, or 0 if the square is empty
+   */
+  public long getRuns(int row, int col) {
+    int slot = find(key(row, col));
+    return slot < 0 ? 0 : runs[slot];
+  }
+
+  /**
+   * Sets the packed run lengths of the piece on a square, and does nothing if the square is empty
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param runs the run lengths
+   */
+  public void setRuns(int row, int col, long runs) {
+    int slot = find(key(row, col));
+    if (slot >= 0)
+      this.runs[slot] = runs;
+  }
+
+  /**
+   * Gets the number of pieces on the board
+   * @return the number of squares that are not empty
+   */
+  public int getPieceCount() {
+    return pieces;
+  }
+
+  /**
+   * Getter method for the size of the table
+   * @return the number of slots, which is at least twice the number of pieces
+   */
+  public int getCapacity() {
+    return keys.length;
+  }
+
+  /**
+   * Makes an independent copy of the squares
+   * @return the copy
+   */
+  public GomokuStorage copy() {
+    return new GomokuSparseStorage(this);
+  }
+
+  /**
+   * Checks that a square is on the board, the same way an array would
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @throws ArrayIndexOutOfBoundsException if the square is not on the board
+   */
+  private void checkBounds(int row, int col) {
+    if (row < 0 || row >= rows || col < 0 || col >= cols)
+      throw new ArrayIndexOutOfBoundsException("Square " + row + "," + col + " is not on the board");
+  }
+
+  /**
+   * Packs a square into a key
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the key, which is never FREE for a square on the board
+   */
+  private static long key(int row, int col) {
+    return (long) row << 32 | (col & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Finds the first slot to look in for a key
+   * The key is mixed so that the squares of one row or one column do not all land next to each other
+   * @param key the key
+   * @return the slot
+   */
+  private int slotOf(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  /**
+   * Finds the slot that holds a key
+   * @param key the key
+   * @return the slot, or -1 if the square is empty
+   */
+  private int find(long key) {
+    int slot = slotOf(key);
+    while (true) {
+      long found = keys[slot];
+      if (found == key)
+        return slot;
+      if (found == FREE)
+        return -1;
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Empties a slot and moves later slots of the same search back into the gap, so that no search stops too early
+   * @param slot the slot to empty
+   */
+  private void delete(int slot) {
+    int gap = slot;
+    int next = (gap + 1) & mask;
+    while (keys[next] != FREE) {
+      int home = slotOf(keys[next]);
+
+      // A key may fill the gap only if its search would pass the gap before reaching the key's slot
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        keys[gap] = keys[next];
+        colors[gap] = colors[next];
+        runs[gap] = runs[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    keys[gap] = FREE;
+    colors[gap] = 0;
+    runs[gap] = 0;
+    pieces--;
+  }
+
+  /**
+   * Makes a new table and puts every square of the old table into it
+   * @param capacity the number of slots, a power of 2
+   */
+  private void allocate(int capacity) {
+    long[] oldKeys = keys;
+    byte[] oldColors = colors;
+    long[] oldRuns = runs;
+    keys = new long[capacity];
+    Arrays.fill(keys, FREE);
+    colors = new byte[capacity];
+    runs = new long[capacity];
+    mask = capacity - 1;
+    if (oldKeys == null)
+      return;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == FREE)
+        continue;
+      int slot = slotOf(oldKeys[i]);
+      while (keys[slot] != FREE) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = oldKeys[i];
+      colors[slot] = oldColors[i];
+      runs[slot] = oldRuns[i];
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * A class to measure how much faster the computer player reaches a depth with more search threads
+ * Run with: java GomokuSpeedup [most threads] [depth] [repeats] [table megabytes]
+ * For each test position and each number of threads from 1 up to the most threads, the search runs to the depth
+ * with a new transposition table, and the median time to reach it is compared to the time of one thread
+ * @author Noah Leibowitz
+ */
+public class GomokuSpeedup {
+
+  /** Stores the names of the test positions */
+  private static final String[] NAMES = {"15x15 opening", "15x15 middle game", "19x19 middle game"};
+
+  /** Stores the board size of each test position */
+  private static final int[] SIZES = {15, 15, 19};
+
+  /** Stores the moves of each test position as row and column pairs, starting with black */
+  private static final int[][] POSITIONS = {
+    {7, 7, 7, 8, 8, 6, 6, 8},
+    {7, 7, 6, 8, 8, 8, 6, 6, 9, 6, 5, 9, 7, 10, 8, 4, 10, 9, 4, 7},
+    {9, 9, 8, 10, 10, 10, 8, 8, 11, 8, 7, 11, 9, 12, 10, 6, 12, 11, 6, 9, 13, 7, 7, 5}
+  };
+
+  /**
+   * Runs the measurement and prints one line for each number of threads
+   * @param args the most threads, the depth, the repeats of each measurement, and the size of the table in megabytes
+   */
+  public static void main(String[] args) {
+    int mostThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+    int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+    int megabytes = args.length > 3 ? Integer.parseInt(args[3]) : GomokuTranspositionTable.DEFAULT_MEGABYTES;
+    System.out.println("Time to depth " + depth + " on " + Runtime.getRuntime().availableProcessors() + " processors");
+
+    // Searches every position once first, so that the measurements are not slowed down by the JIT compiler
+    for (int p = 0; p < POSITIONS.length; p++) {
+      GomokuAI computer = new GomokuAI(3600000, depth - 1);
+      computer.setTable(new GomokuTranspositionTable(megabytes));
+      computer.findMove(position(p));
+    }
+    for (int p = 0; p < POSITIONS.length; p++) {
+      System.out.println();
+      System.out.println(NAMES[p]);
+      System.out.println("threads   time (ms)   speedup   positions   positions/second");
+      long oneThread = 0;
+      for (int threads = 1; threads <= mostThreads; threads = nextCount(threads, mostThreads)) {
+        long[] times = new long[repeats];
+        long nodes = 0;
+        long rate = 0;
+        for (int r = 0; r < repeats; r++) {
+          GomokuAI computer = new GomokuAI(3600000, depth);
+          computer.setTable(new GomokuTranspositionTable(megabytes));
+          computer.setThreads(threads);
+          computer.findMove(position(p));
+          times[r] = Math.max(1, computer.getElapsedMillis());
+          nodes = computer.getNodes();
+          rate = computer.getNodesPerSecond();
+        }
+        java.util.Arrays.sort(times);
+        long time = times[repeats / 2];
+        if (threads == 1)
+          oneThread = time;
+        System.out.println(String.format("%7d %11d %9.2f %11d %18d", threads, time, (double) oneThread / time, nodes, rate));
+      }
+    }
+  }
+
+  /**
+   * Finds the next number of threads to measure: every number up to 4, then doubling, and always the most threads
+   * @param threads the number of threads just measured
+   * @param mostThreads the most threads to measure
+   * @return the next number of threads
+   */
+  private static int nextCount(int threads, int mostThreads) {
+    if (threads < 4 || threads == mostThreads)
+      return threads + 1;
+    return Math.min(threads * 2, mostThreads);
+  }
+
+  /**
+   * Sets up a test position
+   * @param index the index of the position
+   * @return the board with the moves of the position played
+   */
+  private static GomokuSample position(int index) {
+    GomokuSample game = new GomokuSample(5, SIZES[index], SIZES[index]);
+    int[] moves = POSITIONS[index];
+    for (int i = 0; i < moves.length; i += 2) {
+      game.setPiece(moves[i], moves[i + 1]);
+      game.switchTurn();
+    }
+    return game;
+  }
+
+}
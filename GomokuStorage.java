@@ -0,0 +1,80 @@
+/**
+ * An interface for the squares of a Gomoku board: the color of each square and the run lengths of its piece
+ * GomokuSample keeps all of its rules on top of this, so a board can be stored as an array or only where pieces are
+ * @author Noah Leibowitz
+ */
+public interface GomokuStorage {
+
+  /**
+   * Gets the first row of the board, which is 0 except on a board that also has negative rows
+   * @return the smallest row position on the board
+   */
+  int getFirstRow();
+
+  /**
+   * Gets the first column of the board, which is 0 except on a board that also has negative columns
+   * @return the smallest column position on the board
+   */
+  int getFirstCol();
+
+  /**
+   * Getter method for the rows
+   * @return the number of rows on the board, starting at the first row
+   */
+  int getRows();
+
+  /**
+   * Getter method for the columns
+   * @return the number of columns on the board, starting at the first column
+   */
+  int getCols();
+
+  /**
+   * Gets the color of a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return 0 for empty, 1 for black, or 2 for white
+   * @throws ArrayIndexOutOfBoundsException if the square is not on the board
+   */
+  int getPiece(int row, int col);
+
+  /**
+   * Sets the color of a square
+   * Emptying a square also forgets its run lengths
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param color 0 for empty, 1 for black, or 2 for white
+   * @throws ArrayIndexOutOfBoundsException if the square is not on the board
+   */
+  void setPiece(int row, int col, int color);
+
+  /**
+   * Gets the packed run lengths of the piece on a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the run lengths, or 0 if the square is empty
+   */
+  long getRuns(int row, int col);
+
+  /**
+   * Sets the packed run lengths of the piece on a square
+   * Only squares with a piece keep their run lengths
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param runs the run lengths
+   */
+  void setRuns(int row, int col, long runs);
+
+  /**
+   * Gets the number of pieces on the board
+   * @return the number of squares that are not empty
+   */
+  int getPieceCount();
+
+  /**
+   * Makes an independent copy of the squares
+   * @return the copy
+   */
+  GomokuStorage copy();
+
+}
@@ -0,0 +1,217 @@
+/**
+ * A class to find the canonical form of a Gomoku position under the ways of turning and flipping the board
+ * A square board has 8 such transforms and any other board has 4, so up to 8 positions are really the same one
+ * The hash of the position after every transform is kept, and GomokuSample updates all of them each time a piece is
+ * placed or removed, so the canonical form is found without reading the board
+ * The canonical form is the transform with the smallest hash, and moves can be mapped into it and back out again
+ * @author Noah Leibowitz
+ */
+public class GomokuSymmetry {
+
+  /** Stores the board whose symmetry is tracked */
+  private GomokuSample game;
+
+  /** Stores the number of rows on the board */
+  private int rows;
+
+  /** Stores the number of columns on the board */
+  private int cols;
+
+  /** Stores the Zobrist hash of the pieces after each transform, not counting whose turn it is */
+  private long[] hashes;
+
+  /**
+   * Constructor that finds the hashes of every transform from the pieces on the board
+   * @param game the board
+   * @throws IllegalArgumentException if the board does not start at row 0 and column 0
+   */
+  public GomokuSymmetry(GomokuSample game) {
+    if (game.getFirstRow() != 0 || game.getFirstCol() != 0)
+      throw new IllegalArgumentException("Only a board that starts at 0,0 can be turned onto itself");
+    this.game = game;
+    rows = game.getRows();
+    cols = game.getCols();
+    hashes = new long[transforms(rows, cols)];
+    for (int i = 0; i < game.getStoneCount(); i++) {
+      int row = game.getStoneRow(i);
+      int col = game.getStoneCol(i);
+      update(row, col, game.getPiece(row, col));
+    }
+  }
+
+  /**
+   * Copy constructor that tracks a copy of a board with the same hashes as another
+   * @param game the copy of the board
+   * @param other the symmetry of the board that was copied
+   */
+  public GomokuSymmetry(GomokuSample game, GomokuSymmetry other) {
+    this.game = game;
+    rows = other.rows;
+    cols = other.cols;
+    hashes = other.hashes.clone();
+  }
+
+  /**
+   * Adds or removes a piece from the hash of every transform
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @param color the color of the piece (1 or 2)
+   */
+  public void update(int row, int col, int color) {
+    for (int t = 0; t < hashes.length; t++) {
+
+      // The same steps as transform, without making an array
+      int x = (t & 4) != 0 ? col : row;
+      int y = (t & 4) != 0 ? row : col;
+      if ((t & 1) != 0)
+        x = rows - 1 - x;
+      if ((t & 2) != 0)
+        y = cols - 1 - y;
+      hashes[t] ^= GomokuSample.zobristKey(x, y, color);
+    }
+  }
+
+  /**
+   * Gets the number of transforms of the board
+   * @return 8 for a square board, otherwise 4
+   */
+  public int getTransforms() {
+    return hashes.length;
+  }
+
+  /**
+   * Gets the hash of the position after a transform
+   * The hash of transform 0 is the same as the hash of the board
+   * @param transform the transform
+   * @return the hash, including whose turn it is
+   */
+  public long getHash(int transform) {
+    return hashes[transform] ^ turnKey();
+  }
+
+  /**
+   * Finds the transform that gives the canonical form, the one with the smallest hash
+   * @return the transform, the smallest one if more than one gives the same hash
+   */
+  public int getCanonicalTransform() {
+    int best = 0;
+    for (int t = 1; t < hashes.length; t++) {
+      if (hashes[t] < hashes[best])
+        best = t;
+    }
+    return best;
+  }
+
+  /**
+   * Gets the hash of the canonical form, which is the same for every position that is a turn or flip of this one
+   * @return the hash, including whose turn it is
+   */
+  public long getCanonicalHash() {
+    return hashes[getCanonicalTransform()] ^ turnKey();
+  }
+
+  /**
+   * Gets the part of the hash of the board that is for whose turn it is
+   * @return the key of the turn, which does not change with the transform
+   */
+  private long turnKey() {
+    return game.getHash() ^ hashes[0];
+  }
+
+  /**
+   * Moves a square of the board into the canonical form
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the row and column of the square in the canonical form
+   */
+  public int[] toCanonical(int row, int col) {
+    return transform(getCanonicalTransform(), row, col, rows, cols);
+  }
+
+  /**
+   * Moves a square of the canonical form back onto the board
+   * @param row the row position of the square in the canonical form
+   * @param col the column position of the square in the canonical form
+   * @return the row and column of the square on the board
+   */
+  public int[] fromCanonical(int row, int col) {
+    return untransform(getCanonicalTransform(), row, col, rows, cols);
+  }
+
+  /**
+   * Moves a move into the canonical form, choosing one square for all the moves that are the same by symmetry
+   * A position that looks the same after more than one transform, such as a single piece in the middle, has more
+   * than one canonical orientation, so the move is moved by each of them and the smallest square is used
+   * @param row the row position of the move
+   * @param col the column position of the move
+   * @return the row and column of the move in the canonical form
+   */
+  public int[] canonicalMove(int row, int col) {
+    long smallest = hashes[getCanonicalTransform()];
+    int[] best = null;
+    for (int t = 0; t < hashes.length; t++) {
+      if (hashes[t] != smallest)
+        continue;
+      int[] square = transform(t, row, col, rows, cols);
+      if (best == null || square[0] < best[0] || (square[0] == best[0] && square[1] < best[1]))
+        best = square;
+    }
+    return best;
+  }
+
+  /**
+   * Gets the number of ways a board can be turned or flipped onto itself
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @return 8 for a square board, or 4 for a board that cannot be turned a quarter turn
+   */
+  public static int transforms(int rows, int cols) {
+    return rows == cols ? 8 : 4;
+  }
+
+  /**
+   * Moves a square by one of the ways of turning or flipping the board
+   * The 4 bit of the transform swaps rows and columns, then the 1 bit flips the rows and the 2 bit flips the columns
+   * @param transform the transform, from 0 to transforms(rows, cols) - 1
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @return the row and column the square moves to
+   */
+  public static int[] transform(int transform, int row, int col, int rows, int cols) {
+    if ((transform & 4) != 0) {
+      int swap = row;
+      row = col;
+      col = swap;
+    }
+    if ((transform & 1) != 0)
+      row = rows - 1 - row;
+    if ((transform & 2) != 0)
+      col = cols - 1 - col;
+    return new int[] {row, col};
+  }
+
+  /**
+   * Moves a square back by the opposite of a transform
+   * @param transform the transform, from 0 to transforms(rows, cols) - 1
+   * @param row the row position of the square after the transform
+   * @param col the column position of the square after the transform
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @return the row and column the square came from
+   */
+  public static int[] untransform(int transform, int row, int col, int rows, int cols) {
+    if ((transform & 1) != 0)
+      row = rows - 1 - row;
+    if ((transform & 2) != 0)
+      col = cols - 1 - col;
+    if ((transform & 4) != 0) {
+      int swap = row;
+      row = col;
+      col = swap;
+    }
+    return new int[] {row, col};
+  }
+
+}
@@ -1,8 +1,27 @@
 import javafx.scene.control.Button;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 /**
@@ -176,4 +195,1531 @@ public class GomokuTester {
     assertEquals(true, s8.violatesThreeThree(0, 4));
   }
  
-}
\ No newline at end of file
+  /** Test that the bitboard version of the logic gives the same answers as GomokuSample */
+  @Test
+  public void testBitBoard() {
+    
+    // Test where the lengthToWin is exactly 5
+    GomokuBitBoard b = new GomokuBitBoard();
+    for (int i = 0; i < 5; i++) {
+      b.setPiece(0, i);
+    }
+    assertEquals(true, b.hasWon(0, 4));
+    assertEquals(false, b.setPiece(0, 4));
+    assertEquals(1, b.getPiece(0, 4));
+    
+    // Test the same diagonal, overline, and rule cases as the GomokuSample board
+    GomokuBitBoard b1 = new GomokuBitBoard();
+    for (int i = 0; i < 5; i++) {
+      b1.setPiece(i + 1, 5 - i);
+    }
+    assertEquals(true, b1.hasWon(3, 3));
+    b1.setPiece(6, 0); // 6 in a row is not a win
+    assertEquals(false, b1.hasWon(3, 3));
+    
+    // Compare every answer with GomokuSample on random boards that are wider than one long
+    Random random = new Random(132);
+    for (int game = 0; game < 20; game++) {
+      int rows = 5 + random.nextInt(80);
+      int cols = 5 + random.nextInt(80);
+      int lengthToWin = 5 + random.nextInt(3);
+      GomokuSample s = new GomokuSample(lengthToWin, rows, cols);
+      GomokuBitBoard b2 = new GomokuBitBoard(lengthToWin, rows, cols);
+      for (int move = 0; move < rows * cols / 2; move++) {
+        int row = random.nextInt(rows);
+        int col = random.nextInt(cols);
+        assertEquals(s.setPiece(row, col), b2.setPiece(row, col));
+        if (random.nextInt(3) == 0) {
+          s.switchTurn();
+          b2.switchTurn();
+        }
+      }
+      for (int row = 0; row < rows; row++) {
+        for (int col = 0; col < cols; col++) {
+          assertEquals(s.getBoard()[row][col], b2.getPiece(row, col));
+          assertEquals(s.hasWon(row, col), b2.hasWon(row, col));
+          assertEquals(s.violatesFourFour(row, col), b2.violatesFourFour(row, col));
+          assertEquals(s.violatesThreeThree(row, col), b2.violatesThreeThree(row, col));
+        }
+      }
+    }
+  }
+ 
+ 
+  /** Test the rules of the Gomoku GUI against its board of ints without a JavaFX toolkit */
+  @Test
+  public void testHeadlessRules() {
+    Gomoku g = new Gomoku();
+    GomokuBoard board = g.getBoard();
+    
+    // Test hasFiveInLine() for exactly five in a row
+    for (int i = 0; i < 5; i++) {
+      board.setPiece(3, i, 1);
+    }
+    assertEquals(true, g.hasFiveInLine(3, 2));
+    assertEquals(5, board.lineLength(3, 0, 0, 1));
+    
+    // Six in a row is not a win
+    board.setPiece(3, 5, 1);
+    assertEquals(false, g.hasFiveInLine(3, 2));
+    
+    // Test numberInLine() only counts pieces of the same color
+    board.setPiece(3, 6, 2);
+    assertEquals(0, g.numberInLine(3, 5, 0, 1, 1));
+    assertEquals(1, g.numberInLine(3, 5, 0, 1, 2));
+    
+    // Test countFours() on a row and a column of four through one piece
+    GomokuBoard b1 = new GomokuBoard(5, 19, 19);
+    for (int i = 0; i < 4; i++) {
+      b1.setPiece(10, 5 + i, 2);
+      b1.setPiece(7 + i, 5, 2);
+    }
+    assertEquals(2, b1.countFours(10, 5));
+    assertEquals(1, b1.countFours(10, 8));
+    
+    // Test isOpenThree() with both ends open and with both ends blocked
+    GomokuBoard b2 = new GomokuBoard(5, 19, 19);
+    b2.setPiece(5, 5, 1);
+    b2.setPiece(5, 6, 1);
+    b2.setPiece(5, 7, 1);
+    assertEquals(true, b2.isOpenThree(5, 6, 0, 1, 1));
+    b2.setPiece(5, 4, 2);
+    b2.setPiece(5, 8, 2);
+    assertEquals(false, b2.isOpenThree(5, 6, 0, 1, 1));
+    
+    // Test clear() removes every piece
+    b2.clear();
+    assertEquals(true, b2.isEmpty(5, 6));
+  }
+  
+ 
+  /** Test that the run-length table of GomokuSample stays correct when runs are joined and are very long */
+  @Test
+  public void testRunLengths() {
+    
+    // Join two runs of two with a piece in the middle
+    GomokuSample s = new GomokuSample();
+    s.setPiece(4, 0);
+    s.setPiece(4, 1);
+    s.setPiece(4, 3);
+    s.setPiece(4, 4);
+    assertEquals(false, s.hasWon(4, 0));
+    s.setPiece(4, 2);
+    assertEquals(true, s.hasWon(4, 0));
+    assertEquals(true, s.hasWon(4, 4));
+    assertEquals(4, s.numberInLine(4, 0, 0, 1, 1));
+    assertEquals(2, s.numberInLine(4, 2, 0, -1, 1));
+    assertEquals(0, s.numberInLine(4, 2, 0, -1, 2));
+    
+    // A run longer than the table can hold is still counted exactly
+    GomokuSample s1 = new GomokuSample(300, 3, 400);
+    for (int i = 0; i < 300; i += 2) {
+      s1.setPiece(1, i);
+    }
+    for (int i = 299; i > 0; i -= 2) {
+      s1.setPiece(1, i);
+    }
+    assertEquals(true, s1.hasWon(1, 150));
+    assertEquals(300, s1.numberInLine(1, -1, 0, 1, 1));
+    assertEquals(300, s1.numberInLine(1, 300, 0, -1, 1));
+    s1.setPiece(1, 300);
+    assertEquals(false, s1.hasWon(1, 0));
+  }
+  
+ 
+  /** Test the shapes found by the pattern table */
+  @Test
+  public void testPatterns() {
+    GomokuSample s = new GomokuSample();
+    
+    // An open three with both ends empty
+    s.setPiece(9, 5);
+    s.setPiece(9, 6);
+    s.setPiece(9, 7);
+    assertEquals(GomokuPatterns.OPEN_THREE, s.getShape(9, 6, 0, 1));
+    assertEquals(GomokuPatterns.NONE, s.getShape(9, 6, 1, 0));
+    
+    // A broken three (X_XX) is found even though the pieces are not next to each other
+    s.setPiece(3, 3);
+    s.setPiece(3, 5);
+    s.setPiece(3, 6);
+    assertEquals(GomokuPatterns.BROKEN_THREE, s.getShape(3, 3, 0, 1));
+    
+    // Blocking one end of the open three makes a three that can only become a closed four
+    s.switchTurn();
+    s.setPiece(9, 4);
+    assertEquals(GomokuPatterns.THREE, s.getShape(9, 6, 0, 1));
+    
+    // Adding a piece to the other end makes a four with one winning square
+    s.switchTurn();
+    s.setPiece(9, 8);
+    assertEquals(GomokuPatterns.FOUR, s.getShape(9, 8, 0, 1));
+    
+    // Five and six in a row
+    s.setPiece(9, 9);
+    assertEquals(GomokuPatterns.FIVE, s.getShape(9, 9, 0, 1));
+    s.setPiece(9, 10);
+    assertEquals(GomokuPatterns.OVERLINE, s.getShape(9, 9, 0, 1));
+    
+    // A three in the corner is blocked by the edge of the board
+    s.setPiece(0, 18);
+    s.setPiece(1, 17);
+    s.setPiece(2, 16);
+    assertEquals(GomokuPatterns.THREE, s.getShape(1, 17, 1, -1));
+    
+    // An open four on the diagonal, and two pieces that are one move from a three
+    s.setPiece(13, 13);
+    s.setPiece(14, 14);
+    s.setPiece(15, 15);
+    s.setPiece(16, 16);
+    assertEquals(GomokuPatterns.OPEN_FOUR, s.getShape(14, 14, 1, 1));
+    s.setPiece(6, 10);
+    s.setPiece(6, 11);
+    assertEquals(GomokuPatterns.TWO, s.getShape(6, 10, 0, 1));
+    
+    // Lengths without a precomputed table give the same shapes
+    GomokuSample s1 = new GomokuSample(8, 19, 19);
+    for (int i = 0; i < 6; i++) {
+      s1.setPiece(5, 3 + i);
+    }
+    assertEquals(GomokuPatterns.OPEN_THREE, s1.getShape(5, 5, 0, 1));
+  }
+  
+ 
+  /** Test that the computer player takes wins, blocks fours, and puts the board back */
+  @Test
+  public void testComputerPlayer() {
+    GomokuAI ai = new GomokuAI(200);
+    
+    // Black has four in a row with one open end and should win
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    for (int i = 0; i < 4; i++) {
+      s.setPiece(7, 3 + i);
+    }
+    s.switchTurn();
+    s.setPiece(7, 2);
+    s.setPiece(0, 0);
+    s.setPiece(0, 14);
+    s.switchTurn();
+    int[] move = ai.findMove(s);
+    assertEquals(7, move[0]);
+    assertEquals(7, move[1]);
+    assertEquals(GomokuAI.WIN, ai.getScore());
+    
+    // The board is the same as before the search
+    assertEquals(true, s.isEmpty(7, 7));
+    assertEquals(true, s.isBlackTurn());
+    assertEquals(4, s.numberInLine(7, 2, 0, 1, 1));
+    
+    // White has to block black's four
+    s.switchTurn();
+    move = ai.findMove(s);
+    assertEquals(7, move[0]);
+    assertEquals(7, move[1]);
+    
+    // Test removePiece() splits the run it was part of
+    s.switchTurn();
+    s.setPiece(7, 7);
+    assertEquals(true, s.hasWon(7, 3));
+    s.removePiece(7, 5);
+    assertEquals(2, s.numberInLine(7, 5, 0, -1, 1));
+    assertEquals(2, s.numberInLine(7, 5, 0, 1, 1));
+    assertEquals(false, s.hasWon(7, 3));
+    
+    // There is no legal move on a full board
+    GomokuSample full = new GomokuSample(5, 5, 5);
+    for (int i = 0; i < 25; i++) {
+      full.setPiece(i / 5, i % 5);
+      full.switchTurn();
+    }
+    assertEquals(null, ai.findMove(full));
+  }
+  
+  /** Test that the hash depends only on the position and that the transposition table keeps what it stores */
+  @Test
+  public void testTranspositionTable() {
+    
+    // The same position reached in a different order has the same hash
+    GomokuSample s1 = new GomokuSample(5, 15, 15);
+    GomokuSample s2 = new GomokuSample(5, 15, 15);
+    long empty = s1.getHash();
+    s1.setPiece(7, 7);
+    s1.switchTurn();
+    s1.setPiece(3, 4);
+    s1.switchTurn();
+    s1.setPiece(8, 8);
+    s1.switchTurn();
+    s2.setPiece(8, 8);
+    s2.switchTurn();
+    s2.setPiece(3, 4);
+    s2.switchTurn();
+    s2.setPiece(7, 7);
+    s2.switchTurn();
+    assertEquals(s1.getHash(), s2.getHash());
+    
+    // The side to move and the color of each piece are part of the hash
+    s2.switchTurn();
+    assertEquals(false, s1.getHash() == s2.getHash());
+    s2.switchTurn();
+    assertEquals(false, GomokuSample.zobristKey(3, 4, 1) == GomokuSample.zobristKey(3, 4, 2));
+    
+    // Removing every piece gives back the hash of the empty board
+    s1.removePiece(7, 7);
+    s1.removePiece(3, 4);
+    s1.removePiece(8, 8);
+    s1.switchTurn();
+    assertEquals(empty, s1.getHash());
+    
+    // Test store() and probe()
+    GomokuTranspositionTable table = new GomokuTranspositionTable(1);
+    assertEquals(65536, table.getSize());
+    long hash = s2.getHash();
+    assertEquals(0, table.probe(hash));
+    table.store(hash, 112, -GomokuAI.WIN + 3, 9, GomokuTranspositionTable.LOWER);
+    long entry = table.probe(hash);
+    assertEquals(112, GomokuTranspositionTable.moveOf(entry));
+    assertEquals(-GomokuAI.WIN + 3, GomokuTranspositionTable.scoreOf(entry));
+    assertEquals(9, GomokuTranspositionTable.depthOf(entry));
+    assertEquals(GomokuTranspositionTable.LOWER, GomokuTranspositionTable.flagOf(entry));
+    table.store(hash, -1, 42, 2, GomokuTranspositionTable.EXACT);
+    assertEquals(-1, GomokuTranspositionTable.moveOf(table.probe(hash)));
+    assertEquals(42, GomokuTranspositionTable.scoreOf(table.probe(hash)));
+    
+    // A different position in the same slot is a collision, and does not replace a deeper search
+    long other = hash + table.getSize();
+    table.store(hash, 5, 0, 6, GomokuTranspositionTable.EXACT);
+    assertEquals(0, table.probe(other));
+    assertEquals(1, table.getCollisions());
+    table.store(other, 6, 0, 3, GomokuTranspositionTable.EXACT);
+    assertEquals(5, GomokuTranspositionTable.moveOf(table.probe(hash)));
+    table.newSearch();
+    table.store(other, 6, 0, 3, GomokuTranspositionTable.EXACT);
+    assertEquals(6, GomokuTranspositionTable.moveOf(table.probe(other)));
+    assertEquals(0, table.probe(hash));
+    assertEquals(5, table.getHits());
+    assertEquals(3, table.getMisses());
+    table.clear();
+    assertEquals(0, table.probe(other));
+    assertEquals(0, table.getHits());
+    
+    // The search uses the table and still finds the win
+    GomokuAI ai = new GomokuAI(200);
+    ai.setTable(new GomokuTranspositionTable(1));
+    for (int i = 0; i < 4; i++) {
+      s2.setPiece(2, 2 + i);
+    }
+    int[] move = ai.findMove(s2);
+    assertEquals(true, move[0] == 2 && (move[1] == 1 || move[1] == 6));
+    s1.setPiece(7, 7);
+    s1.switchTurn();
+    ai.findMove(s1);
+    assertEquals(true, ai.getTable().getHits() > 0);
+  }
+  
+  /** Test that a copy of a game is independent and that a search with more than one thread still finds the best move */
+  @Test
+  public void testParallelSearch() {
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    for (int i = 0; i < 4; i++) {
+      s.setPiece(7, 3 + i);
+    }
+    s.switchTurn();
+    s.setPiece(7, 2);
+    s.setPiece(0, 0);
+    s.switchTurn();
+    
+    // Test the copy constructor
+    GomokuSample copy = new GomokuSample(s);
+    assertEquals(s.getHash(), copy.getHash());
+    assertEquals(4, copy.numberInLine(7, 2, 0, 1, 1));
+    copy.setPiece(7, 7);
+    assertEquals(true, copy.hasWon(7, 3));
+    assertEquals(true, s.isEmpty(7, 7));
+    assertEquals(false, s.getHash() == copy.getHash());
+    
+    // Four threads share one table and agree on the winning move
+    GomokuAI ai = new GomokuAI(500);
+    ai.setTable(new GomokuTranspositionTable(1));
+    ai.setThreads(4);
+    assertEquals(4, ai.getThreads());
+    int[] move = ai.findMove(s);
+    assertEquals(7, move[0]);
+    assertEquals(7, move[1]);
+    assertEquals(GomokuAI.WIN, ai.getScore());
+    assertEquals(true, s.isEmpty(7, 7));
+    assertEquals(true, s.isBlackTurn());
+    
+    // A quiet position is searched to a fixed depth by every thread
+    GomokuAI deep = new GomokuAI(60000, 3);
+    deep.setTable(new GomokuTranspositionTable(1));
+    deep.setThreads(3);
+    s.removePiece(7, 6);
+    move = deep.findMove(s);
+    assertEquals(3, deep.getDepth());
+    assertEquals(true, s.isEmpty(move[0], move[1]));
+    assertEquals(3, s.numberInLine(7, 2, 0, 1, 1));
+    
+    // There is no legal move on a full board with any number of threads
+    GomokuSample full = new GomokuSample(5, 5, 5);
+    for (int i = 0; i < 25; i++) {
+      full.setPiece(i / 5, i % 5);
+      full.switchTurn();
+    }
+    assertEquals(null, deep.findMove(full));
+  }
+  
+  /** Test that the Monte Carlo player takes wins, blocks fours, keeps its tree small, and does not change the board */
+  @Test
+  public void testMonteCarlo() {
+    GomokuMCTS mcts = new GomokuMCTS(200, 100000, 2);
+    assertEquals(2, mcts.getThreads());
+    
+    // Black has four in a row with one open end and should win without any playouts
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    for (int i = 0; i < 4; i++) {
+      s.setPiece(7, 3 + i);
+    }
+    s.switchTurn();
+    s.setPiece(7, 2);
+    s.setPiece(0, 0);
+    s.switchTurn();
+    int[] move = mcts.findMove(s);
+    assertEquals(7, move[0]);
+    assertEquals(7, move[1]);
+    assertEquals(0, mcts.getPlayouts());
+    
+    // White has to block black's four, and the board is the same after the playouts
+    s.switchTurn();
+    long hash = s.getHash();
+    move = mcts.findMove(s);
+    assertEquals(7, move[0]);
+    assertEquals(7, move[1]);
+    assertEquals(true, mcts.getPlayouts() > 0);
+    assertEquals(true, mcts.getPlayoutsPerSecond() > 0);
+    assertEquals(hash, s.getHash());
+    assertEquals(false, s.isBlackTurn());
+    assertEquals(4, s.numberInLine(7, 2, 0, 1, 1));
+    
+    // The tree does not grow past its limit
+    GomokuMCTS small = new GomokuMCTS(100, 50, 1);
+    move = small.findMove(new GomokuSample(5, 15, 15));
+    assertEquals(7, move[0]);
+    assertEquals(7, move[1]);
+    assertEquals(true, small.getTreeSize() <= 50);
+    
+    // There is no legal move on a full board
+    GomokuSample full = new GomokuSample(5, 5, 5);
+    for (int i = 0; i < 25; i++) {
+      full.setPiece(i / 5, i % 5);
+      full.switchTurn();
+    }
+    assertEquals(null, small.findMove(full));
+    mcts.close();
+    small.close();
+  }
+  
+  /** Test that the threat solver finds wins by fours and threes, returns the winning line, and puts the board back */
+  @Test
+  public void testThreatSolver() {
+    int[][] stones = {{9, 10}, {7, 5}, {7, 4}, {4, 6}, {10, 7}, {4, 7}, {10, 6}, {5, 10}, {5, 6}, {7, 6}, {10, 8}, {10, 9},
+      {8, 9}, {8, 7}, {9, 9}, {5, 9}, {7, 10}, {9, 5}, {8, 8}, {6, 6}, {6, 10}, {6, 9}, {4, 9}, {8, 5}};
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    for (int i = 0; i < stones.length; i++) {
+      s.setPiece(stones[i][0], stones[i][1]);
+      s.switchTurn();
+    }
+    long hash = s.getHash();
+    GomokuThreatSolver solver = new GomokuThreatSolver(10, 100000);
+    
+    // Black wins with fours, ending with an open four, and white's answers are forced
+    int[][] line = solver.solveVCF(s);
+    assertEquals(7, line.length);
+    assertEquals(true, solver.getNodes() > 0);
+    assertEquals(false, solver.isStopped());
+    assertEquals(hash, s.getHash());
+    assertEquals(true, s.isBlackTurn());
+    GomokuSample replay = new GomokuSample(s);
+    for (int i = 0; i < line.length; i++) {
+      assertEquals(true, replay.setPiece(line[i][0], line[i][1]));
+      if (i < line.length - 1)
+        replay.switchTurn();
+    }
+    assertEquals(true, replay.hasWon(line[6][0], line[6][1]));
+    
+    // Every win by fours is also a win by threats
+    assertEquals(true, solver.solveVCT(s) != null);
+    
+    // Fours do not help against an open four of the other player
+    GomokuSample s2 = new GomokuSample(5, 15, 15);
+    s2.setPiece(7, 7);
+    s2.setPiece(7, 8);
+    s2.setPiece(7, 9);
+    s2.switchTurn();
+    for (int i = 0; i < 4; i++) {
+      s2.setPiece(3, 2 + i);
+    }
+    s2.switchTurn();
+    assertNull(solver.solveVCF(s2));
+    
+    // A quiet position has no forced win
+    GomokuSample s3 = new GomokuSample(5, 15, 15);
+    s3.setPiece(7, 7);
+    s3.switchTurn();
+    s3.setPiece(8, 8);
+    s3.switchTurn();
+    assertNull(solver.solveVCF(s3));
+    assertNull(solver.solveVCT(s3));
+    
+    // Five in a row right away is a line of one move
+    s3.switchTurn();
+    for (int i = 0; i < 4; i++) {
+      s3.setPiece(2, 3 + i);
+    }
+    line = solver.solveVCF(s3);
+    assertEquals(1, line.length);
+    assertEquals(2, line[0][0]);
+    assertEquals(true, line[0][1] == 2 || line[0][1] == 7);
+  }
+  
+  /** Test that engines are read from their descriptions and that a small tournament plays every game */
+  @Test
+  public void testTournament() {
+    assertEquals(true, GomokuTournament.createPlayer("ab:time=50,depth=3,tt=1") instanceof GomokuAI);
+    assertEquals(true, GomokuTournament.createPlayer("mcts:time=50,nodes=1000,c=2") instanceof GomokuMCTS);
+    assertEquals(2, ((GomokuMCTS) GomokuTournament.createPlayer("mcts:threads=2")).getThreads());
+    
+    // Descriptions that cannot be read
+    String[] bad = {"minimax", "ab:time", "ab:speed=3", "mcts:nodes=many", "ab:book=no-such-book.bin"};
+    for (int i = 0; i < bad.length; i++) {
+      try {
+        GomokuTournament.createPlayer(bad[i]);
+        fail("Expected an IllegalArgumentException for " + bad[i]);
+      }
+      catch (IllegalArgumentException e) {
+      }
+      try {
+        GomokuTournament.checkPlayer(bad[i]);
+        fail("Expected an IllegalArgumentException when checking " + bad[i]);
+      }
+      catch (IllegalArgumentException e) {
+      }
+    }
+    GomokuTournament.checkPlayer("ab:time=50,tt=1024");
+    
+    // Test elo()
+    assertEquals(0, GomokuTournament.elo(0.5), 1e-9);
+    assertEquals(190.8, GomokuTournament.elo(0.75), 0.1);
+    assertEquals(-190.8, GomokuTournament.elo(0.25), 0.1);
+    assertEquals(Double.POSITIVE_INFINITY, GomokuTournament.elo(1), 0);
+    
+    // Test play()
+    GomokuTournament tournament = new GomokuTournament("ab:time=20,depth=2,tt=1", "mcts:time=10,nodes=2000", 4, 9, 9, 5);
+    tournament.play(2);
+    assertEquals(4, tournament.getWins() + tournament.getDraws() + tournament.getLosses());
+    assertEquals(true, tournament.getMoves() > 0);
+  }
+  
+
+  /**
+   * Tests the board that only stores the squares with a piece
+   */
+  @Test
+  public void testSparseBoard() {
+    
+    // The same random moves give the same answers on both kinds of board
+    Random random = new Random(12);
+    GomokuSample dense = new GomokuSample(5, 20, 20);
+    GomokuSample sparse = new GomokuSample(5, new GomokuSparseStorage(20, 20));
+    for (int i = 0; i < 300; i++) {
+      int row = random.nextInt(20);
+      int col = random.nextInt(20);
+      assertEquals(dense.setPiece(row, col), sparse.setPiece(row, col));
+      assertEquals(dense.hasWon(row, col), sparse.hasWon(row, col));
+      assertEquals(dense.violatesFourFour(row, col), sparse.violatesFourFour(row, col));
+      assertEquals(dense.violatesThreeThree(row, col), sparse.violatesThreeThree(row, col));
+      assertEquals(dense.getShape(row, col, 1, 1), sparse.getShape(row, col, 1, 1));
+      assertEquals(dense.getHash(), sparse.getHash());
+      
+      // Some moves are taken back, which moves other squares around in the hash table
+      if (i % 3 == 0) {
+        row = random.nextInt(20);
+        col = random.nextInt(20);
+        assertEquals(dense.removePiece(row, col), sparse.removePiece(row, col));
+      }
+      dense.switchTurn();
+      sparse.switchTurn();
+    }
+    for (int row = 0; row < 20; row++) {
+      for (int col = 0; col < 20; col++) {
+        assertEquals(dense.getPiece(row, col), sparse.getPiece(row, col));
+        assertEquals(dense.numberInLine(row, col, 0, 1, 1), sparse.numberInLine(row, col, 0, 1, 1));
+      }
+    }
+    assertEquals(dense.getPieceCount(), sparse.getPieceCount());
+    
+    // A board far too large for an array
+    GomokuStorage storage = new GomokuSparseStorage(100000, 100000);
+    GomokuSample s = new GomokuSample(5, storage);
+    assertEquals(100000, s.getRows());
+    assertEquals(true, s.isEmpty(99999, 99999));
+    for (int i = 0; i < 5; i++) {
+      s.setPiece(99999 - i, 99999 - i);
+      s.setPiece(50000, 50000 + i * 1000);
+    }
+    assertEquals(true, s.hasWon(99997, 99997));
+    assertEquals(5, s.numberInLine(100000, 100000, -1, -1, 1));
+    assertEquals(false, s.hasWon(50000, 52000));
+    assertEquals(true, s.violatesFourFour(99999, 99999));
+    assertEquals(10, s.getPieceCount());
+    assertEquals(true, ((GomokuSparseStorage) storage).getCapacity() < 1000);
+    s.removePiece(99997, 99997);
+    assertEquals(false, s.hasWon(99999, 99999));
+    assertEquals(2, s.numberInLine(100000, 100000, -1, -1, 1));
+    try {
+      s.getBoard();
+      fail("Expected an UnsupportedOperationException");
+    }
+    catch (UnsupportedOperationException e) {
+    }
+    try {
+      s.isEmpty(100000, 0);
+      fail("Expected an ArrayIndexOutOfBoundsException");
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+    }
+    
+    // The copy does not share its squares with the original
+    GomokuSample copy = new GomokuSample(s);
+    copy.setPiece(0, 0);
+    assertEquals(true, s.isEmpty(0, 0));
+    assertEquals(false, copy.isEmpty(0, 0));
+  }
+
+  /**
+   * Tests the unbounded board that is stored in tiles
+   */
+  @Test
+  public void testUnboundedBoard() {
+    
+    // The same random moves give the same answers as on a board with an array, with the squares shifted across tiles
+    Random random = new Random(13);
+    GomokuSample dense = new GomokuSample(5, 40, 40);
+    GomokuTileStorage storage = new GomokuTileStorage();
+    GomokuSample tiled = new GomokuSample(5, storage);
+    for (int i = 0; i < 250; i++) {
+      int row = 10 + random.nextInt(20);
+      int col = 10 + random.nextInt(20);
+      int x = row - 20;
+      int y = col + 44;
+      assertEquals(dense.setPiece(row, col), tiled.setPiece(x, y));
+      assertEquals(dense.hasWon(row, col), tiled.hasWon(x, y));
+      assertEquals(dense.violatesFourFour(row, col), tiled.violatesFourFour(x, y));
+      assertEquals(dense.violatesThreeThree(row, col), tiled.violatesThreeThree(x, y));
+      assertEquals(dense.getShape(row, col, 1, -1), tiled.getShape(x, y, 1, -1));
+      if (i % 4 == 0)
+        assertEquals(dense.removePiece(row, col), tiled.removePiece(x, y));
+      dense.switchTurn();
+      tiled.switchTurn();
+    }
+    for (int row = 10; row < 30; row++) {
+      for (int col = 10; col < 30; col++) {
+        assertEquals(dense.getPiece(row, col), tiled.getPiece(row - 20, col + 44));
+        assertEquals(dense.numberInLine(row, col, 1, 1, 2), tiled.numberInLine(row - 20, col + 44, 1, 1, 2));
+      }
+    }
+    assertEquals(dense.getPieceCount(), tiled.getPieceCount());
+    assertEquals(4, storage.getTileCount());
+    
+    // Pieces far apart in every direction, with a line that crosses from negative to positive positions
+    GomokuSample s = new GomokuSample(5, new GomokuTileStorage());
+    for (int i = -2; i <= 2; i++) {
+      s.setPiece(i, -i);
+      s.setPiece(-GomokuTileStorage.LIMIT, GomokuTileStorage.LIMIT - (i + 2) * 2);
+      s.setPiece(1000000000 + i, -1000000000);
+    }
+    assertEquals(true, s.hasWon(0, 0));
+    assertEquals(true, s.hasWon(1000000000, -1000000000));
+    assertEquals(false, s.hasWon(-GomokuTileStorage.LIMIT, GomokuTileStorage.LIMIT));
+    assertEquals(2, s.numberInLine(0, 0, -1, 1, 1));
+    assertEquals(15, s.getPieceCount());
+    assertEquals(true, s.isEmpty(-GomokuTileStorage.LIMIT, -GomokuTileStorage.LIMIT));
+    assertEquals(-GomokuTileStorage.LIMIT, s.getFirstRow());
+    try {
+      s.setPiece(GomokuTileStorage.LIMIT + 1, 0);
+      fail("Expected an ArrayIndexOutOfBoundsException");
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+    }
+  }
+
+  /**
+   * Tests the binary game record and the game database
+   */
+  @Test
+  public void testGameDatabase() throws IOException {
+    
+    // A record is written and read back the same, with one byte for each move on a small board
+    GomokuGameRecord record = new GomokuGameRecord(15, 15, 5);
+    for (int i = 0; i < 5; i++) {
+      record.addMove(7, 3 + i);
+      if (i < 4)
+        record.addMove(8, 3 + i);
+    }
+    record.setResult(GomokuGameRecord.BLACK_WON);
+    ByteBuffer buffer = ByteBuffer.allocate(100);
+    record.writeTo(buffer);
+    assertEquals(1 + 4 + 1 + 9, buffer.position());
+    buffer.flip();
+    GomokuGameRecord copy = GomokuGameRecord.read(buffer);
+    assertEquals(9, copy.getMoveCount());
+    assertEquals(7, copy.getMoveRow(8));
+    assertEquals(7, copy.getMoveCol(8));
+    assertEquals(true, copy.replay().hasWon(7, 7));
+    assertEquals(300, GomokuGameRecord.readVarint(varint(300)));
+    assertEquals(Long.MAX_VALUE, GomokuGameRecord.readVarint(varint(Long.MAX_VALUE)));
+    
+    // A record with a negative move is not valid and leaves the record read into as it was
+    buffer.clear();
+    GomokuGameRecord.writeVarint(buffer, 15);
+    buffer.put(new byte[] {15, 15, 5, 0, 1});
+    GomokuGameRecord.writeVarint(buffer, -1);
+    buffer.flip();
+    try {
+      copy.readFrom(buffer);
+      fail("A negative move was read");
+    }
+    catch (IllegalArgumentException e) {
+      assertEquals(9, copy.getMoveCount());
+      assertEquals(7, copy.getMoveCol(8));
+      assertEquals(GomokuGameRecord.BLACK_WON, copy.getResult());
+    }
+    
+    // Games added to the database are still there when it is opened again
+    Path path = Files.createTempFile("gomoku", ".gdb");
+    Path indexPath = Paths.get(path + ".idx");
+    Files.delete(path);
+    try {
+      GomokuGameDatabase database = new GomokuGameDatabase(path);
+      for (int i = 0; i < 50; i++) {
+        GomokuGameRecord game = new GomokuGameRecord(19, 19, 5);
+        for (int j = 0; j < i; j++) {
+          game.addMove(j / 19, j % 19);
+        }
+        game.setResult(i % 3);
+        assertEquals(i, database.append(game));
+      }
+      assertEquals(12, database.get(12).getMoveCount());
+      database.close();
+      
+      // A game that was only partly written is dropped, and a lost index is made again
+      Files.write(path, new byte[] {100, 1, 2}, StandardOpenOption.APPEND);
+      Files.delete(indexPath);
+      database = new GomokuGameDatabase(path);
+      assertEquals(50, database.size());
+      final int[] moves = new int[3];
+      database.scan((i, game) -> {
+        assertEquals(i, game.getMoveCount());
+        moves[game.getResult()] += game.getMoveCount();
+      });
+      assertEquals(0 + 3 + 6 + 9 + 12 + 15 + 18 + 21 + 24 + 27 + 30 + 33 + 36 + 39 + 42 + 45 + 48, moves[0]);
+      assertEquals(49 * 50 / 2, moves[0] + moves[1] + moves[2]);
+      assertEquals(50, database.append(new GomokuGameRecord(15, 15, 5)));
+      assertEquals(0, database.get(50).getMoveCount());
+      assertEquals(49, database.get(49).getMoveCount());
+      database.close();
+    }
+    finally {
+      Files.deleteIfExists(path);
+      Files.deleteIfExists(indexPath);
+    }
+  }
+  
+  /**
+   * Writes a varint into a new buffer
+   * @param value the number
+   * @return the buffer, ready to be read
+   */
+  private static ByteBuffer varint(long value) {
+    ByteBuffer buffer = ByteBuffer.allocate(GomokuGameRecord.MAX_VARINT_BYTES);
+    GomokuGameRecord.writeVarint(buffer, value);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Tests the opening book
+   */
+  @Test
+  public void testOpeningBook() throws IOException {
+    Path games = Files.createTempFile("gomoku", ".gdb");
+    Path book = Files.createTempFile("gomoku", ".book");
+    Files.delete(games);
+    try {
+      
+      // The same opening played in all 8 orientations, where black answers 6,6 with 7,8 and wins every time
+      GomokuGameDatabase database = new GomokuGameDatabase(games);
+      int[][] moves = {{7, 7}, {6, 6}, {7, 8}};
+      for (int t = 0; t < 8; t++) {
+        GomokuGameRecord record = new GomokuGameRecord(15, 15, 5);
+        for (int[] move : moves) {
+          int[] square = GomokuSymmetry.transform(t, move[0], move[1], 15, 15);
+          record.addMove(square[0], square[1]);
+        }
+        record.setResult(GomokuGameRecord.BLACK_WON);
+        database.append(record);
+      }
+      
+      // A game where black answers differently and loses
+      GomokuGameRecord record = new GomokuGameRecord(15, 15, 5);
+      record.addMove(7, 7);
+      record.addMove(6, 6);
+      record.addMove(5, 5);
+      record.setResult(GomokuGameRecord.WHITE_WON);
+      database.append(record);
+      
+      // Every orientation of the first three moves is one position, with two different answers
+      assertEquals(4, GomokuOpeningBook.build(database, book, 10, 1));
+      database.close();
+      
+      GomokuOpeningBook opening = new GomokuOpeningBook(book);
+      assertEquals(4, opening.getEntries());
+      GomokuSample s = new GomokuSample(5, 15, 15);
+      assertEquals(9, opening.getGames(s));
+      assertEquals(7, opening.findMove(s)[0]);
+      assertEquals(7, opening.findMove(s)[1]);
+      
+      // The position flipped left to right gets the answer flipped the same way, 7,8 or the same move 8,7
+      s.setPiece(7, 7);
+      s.switchTurn();
+      s.setPiece(6, 8);
+      s.switchTurn();
+      assertEquals(9, opening.getGames(s));
+      int[] move = opening.findMove(s);
+      assertEquals(true, (move[0] == 7 && move[1] == 6) || (move[0] == 8 && move[1] == 7));
+      s.setPiece(move[0], move[1]);
+      s.switchTurn();
+      assertEquals(0, opening.getGames(s));
+      assertEquals(null, opening.findMove(s));
+      assertEquals(null, opening.findMove(new GomokuSample(5, 19, 19)));
+      
+      // The computer player plays from the book without searching
+      GomokuAI ai = new GomokuAI(1000);
+      ai.setBook(opening);
+      s = new GomokuSample(5, 15, 15);
+      s.setPiece(7, 7);
+      s.switchTurn();
+      assertEquals(true, ai.findMove(s) != null);
+      assertEquals(0, ai.getNodes());
+    }
+    finally {
+      Files.deleteIfExists(games);
+      Files.deleteIfExists(Paths.get(games + ".idx"));
+      Files.deleteIfExists(book);
+    }
+  }
+
+  /**
+   * Tests the canonical form of positions under turns and flips of the board
+   */
+  @Test
+  public void testSymmetry() {
+    
+    // The kept hashes match hashes found from scratch after moves are placed and taken back
+    Random random = new Random(16);
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    GomokuSymmetry symmetry = s.trackSymmetry();
+    assertEquals(8, symmetry.getTransforms());
+    for (int i = 0; i < 60; i++) {
+      s.setPiece(random.nextInt(15), random.nextInt(15));
+      if (i % 5 == 0)
+        s.removePiece(random.nextInt(15), random.nextInt(15));
+      s.switchTurn();
+    }
+    GomokuSymmetry fresh = new GomokuSymmetry(s);
+    for (int t = 0; t < 8; t++) {
+      assertEquals(fresh.getHash(t), symmetry.getHash(t));
+    }
+    assertEquals(s.getHash(), symmetry.getHash(0));
+    
+    // Every turn and flip of the position has the same canonical hash, and a move maps there and back
+    for (int t = 0; t < 8; t++) {
+      GomokuSample turned = new GomokuSample(5, 15, 15);
+      if (!s.isBlackTurn())
+        turned.switchTurn();
+      for (int row = 0; row < 15; row++) {
+        for (int col = 0; col < 15; col++) {
+          if (s.getPiece(row, col) == 0)
+            continue;
+          int[] square = GomokuSymmetry.transform(t, row, col, 15, 15);
+          if (turned.isBlackTurn() != (s.getPiece(row, col) == 1))
+            turned.switchTurn();
+          turned.setPiece(square[0], square[1]);
+        }
+      }
+      if (turned.isBlackTurn() != s.isBlackTurn())
+        turned.switchTurn();
+      GomokuSymmetry other = turned.trackSymmetry();
+      assertEquals(symmetry.getCanonicalHash(), other.getCanonicalHash());
+      int[] square = GomokuSymmetry.transform(t, 3, 11, 15, 15);
+      int[] canonical = other.toCanonical(square[0], square[1]);
+      assertEquals(true, Arrays.equals(canonical, symmetry.toCanonical(3, 11)));
+      assertEquals(true, Arrays.equals(square, other.fromCanonical(canonical[0], canonical[1])));
+    }
+    
+    // A board that is not square only has 4 transforms, and a single piece in the middle makes moves the same
+    GomokuSample wide = new GomokuSample(5, 9, 15);
+    wide.setPiece(4, 7);
+    GomokuSymmetry four = wide.trackSymmetry();
+    assertEquals(4, four.getTransforms());
+    assertEquals(true, Arrays.equals(four.canonicalMove(3, 6), four.canonicalMove(5, 8)));
+    assertEquals(false, Arrays.equals(four.canonicalMove(3, 6), four.canonicalMove(3, 7)));
+    
+    // A copy of the board keeps its own hashes
+    GomokuSample copy = new GomokuSample(wide);
+    copy.setPiece(0, 0);
+    assertEquals(copy.getHash(), copy.getSymmetry().getHash(0));
+    assertEquals(wide.getHash(), four.getHash(0));
+  }
+
+  /**
+   * Tests the game server with a client that sends one command at a time
+   */
+  @Test
+  public void testServer() throws IOException {
+    GomokuServer server = new GomokuServer(0, 2);
+    server.start();
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.setSoTimeout(5000);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                                     "US-ASCII"));
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+      
+      // Several commands sent at once are answered in order
+      out.write("PING\nNEW 15 15 5\nNEW\nMOVE 1 7 3\nMOVE 1 7 3\nMOVE 1 0 0\n");
+      out.flush();
+      assertEquals("PONG", in.readLine());
+      assertEquals("GAME 1", in.readLine());
+      assertEquals("GAME 2", in.readLine());
+      assertEquals("OK 1 1", in.readLine());
+      assertEquals("ERR square is taken", in.readLine());
+      assertEquals("OK 1 2", in.readLine());
+      
+      // Black makes a four, which is taken back, and has to move again
+      out.write("MOVE 1 7 4\nMOVE 1 0 14\nMOVE 1 7 5\nMOVE 1 14 0\nMOVE 1 7 6\nMOVE 1 3 3\n");
+      out.flush();
+      assertEquals("OK 1 1", in.readLine());
+      assertEquals("OK 1 2", in.readLine());
+      assertEquals("OK 1 1", in.readLine());
+      assertEquals("OK 1 2", in.readLine());
+      assertEquals("FORBIDDEN 1", in.readLine());
+      assertEquals("OK 1 1", in.readLine());
+      
+      // Black fills a five from the middle and wins the second game
+      String[] moves = {"7 3", "0 0", "7 5", "0 14", "7 6", "14 0", "7 4", "14 14"};
+      for (String move : moves) {
+        out.write("MOVE 2 " + move + "\n");
+      }
+      out.write("MOVE 2 7 7\nMOVE 2 1 1\n");
+      out.flush();
+      for (int i = 0; i < moves.length; i++) {
+        assertEquals("OK 2 " + (i % 2 + 1), in.readLine());
+      }
+      assertEquals("WIN 2 1", in.readLine());
+      assertEquals("ERR game 2 is over", in.readLine());
+      
+      // A board too big for an array is sparse, and plays the same
+      out.write("NEW 1024 1024 5\nMOVE 3 1000 1000\nEND 3\n");
+      out.flush();
+      assertEquals("GAME 3", in.readLine());
+      assertEquals("OK 3 1", in.readLine());
+      assertEquals("ENDED 3", in.readLine());
+      
+      // Bad commands are refused without closing the connection
+      out.write("MOVE 3 0 0\nMOVE 1 99 0\nMOVE 1 x 0\nNEW 0 0\nJUMP\nEND 2\nEND 2\nQUIT\n");
+      out.flush();
+      assertEquals("ERR no game 3", in.readLine());
+      assertEquals("ERR not on the board", in.readLine());
+      assertEquals("ERR bad number", in.readLine());
+      assertEquals("ERR bad board size", in.readLine());
+      assertEquals("ERR unknown command", in.readLine());
+      assertEquals("ENDED 2", in.readLine());
+      assertEquals("ERR no game 2", in.readLine());
+      assertEquals("BYE", in.readLine());
+      assertEquals(null, in.readLine());
+    }
+    finally {
+      server.close();
+    }
+    assertEquals(18, server.getMoves());
+    
+    // The load test plays many games at once without errors
+    server = new GomokuServer(0, 1);
+    server.start();
+    try {
+      GomokuLoadTest test = new GomokuLoadTest(15, 40);
+      test.run("localhost", server.getPort(), 20, 3, 0.5);
+      assertEquals(true, test.getMoves() > 100);
+      assertEquals(0, test.getErrors());
+    }
+    finally {
+      server.close();
+    }
+  }
+
+  /**
+   * Tests taking back and playing again the moves of a game
+   */
+  @Test
+  public void testUndo() {
+    Random random = new Random(18);
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    GomokuSymmetry symmetry = s.trackSymmetry();
+    assertEquals(false, s.undo());
+    assertEquals(false, s.redo());
+    
+    // Remembers the hash, turn, and number of pieces after each move
+    long[] hashes = new long[41];
+    long[] canonical = new long[41];
+    boolean[] turns = new boolean[41];
+    hashes[0] = s.getHash();
+    canonical[0] = symmetry.getCanonicalHash();
+    turns[0] = s.isBlackTurn();
+    for (int i = 1; i <= 40; i++) {
+      int row = random.nextInt(15);
+      int col = random.nextInt(15);
+      while (!s.makeMove(row, col)) {
+        row = random.nextInt(15);
+        col = random.nextInt(15);
+      }
+      assertEquals(i, s.getMoveCount());
+      assertEquals(row, s.getMoveRow(i - 1));
+      assertEquals(col, s.getMoveCol(i - 1));
+      hashes[i] = s.getHash();
+      canonical[i] = symmetry.getCanonicalHash();
+      turns[i] = s.isBlackTurn();
+    }
+    GomokuSample copy = new GomokuSample(s);
+    
+    // Taking every move back gives the same board as before each move, including the runs found by the checks
+    for (int i = 39; i >= 0; i--) {
+      assertEquals(true, s.undo());
+      assertEquals(i, s.getMoveCount());
+      assertEquals(40 - i, s.getRedoCount());
+      assertEquals(hashes[i], s.getHash());
+      assertEquals(canonical[i], symmetry.getCanonicalHash());
+      assertEquals(turns[i], s.isBlackTurn());
+      assertEquals(i, s.getPieceCount());
+      assertEquals(0, s.getPiece(copy.getMoveRow(i), copy.getMoveCol(i)));
+      if (i == 20) {
+        GomokuSample replayed = new GomokuSample(5, 15, 15);
+        for (int j = 0; j < 20; j++) {
+          replayed.makeMove(copy.getMoveRow(j), copy.getMoveCol(j));
+        }
+        for (int row = 0; row < 15; row++) {
+          for (int col = 0; col < 15; col++) {
+            for (int[] d : new int[][] {{0, 1}, {1, 0}, {1, 1}, {1, -1}}) {
+              int color = replayed.getPiece(row, col);
+              if (color != 0)
+                assertEquals(replayed.numberInLine(row, col, d[0], d[1], color),
+                             s.numberInLine(row, col, d[0], d[1], color));
+            }
+          }
+        }
+      }
+    }
+    assertEquals(false, s.undo());
+    
+    // Redoing every move gives the same board as the copy
+    while (s.redo());
+    assertEquals(40, s.getMoveCount());
+    assertEquals(copy.getHash(), s.getHash());
+    assertEquals(copy.isBlackTurn(), s.isBlackTurn());
+    
+    // A new move forgets the moves that could have been redone
+    s.undo();
+    s.undo();
+    assertEquals(2, s.getRedoCount());
+    int row = copy.getMoveRow(38);
+    int col = copy.getMoveCol(38);
+    assertEquals(false, s.makeMove(copy.getMoveRow(0), copy.getMoveCol(0)));
+    assertEquals(true, s.makeMove(row, col));
+    assertEquals(0, s.getRedoCount());
+    assertEquals(false, s.redo());
+    
+    // An unbounded board takes back moves far from the middle
+    GomokuSample unbounded = new GomokuSample(5, new GomokuTileStorage());
+    unbounded.makeMove(-1000000, 1000000);
+    unbounded.makeMove(-1000000, 1000001);
+    assertEquals(-1000000, unbounded.getMoveRow(0));
+    assertEquals(1000001, unbounded.getMoveCol(1));
+    unbounded.undo();
+    unbounded.undo();
+    assertEquals(0, unbounded.getPieceCount());
+    assertEquals(0, unbounded.getHash());
+    assertEquals(true, unbounded.isBlackTurn());
+  }
+
+  /**
+   * Tests the frontier of empty squares near the pieces on each kind of board
+   */
+  @Test
+  public void testFrontier() {
+    GomokuStorage[] boards = {new GomokuDenseStorage(15, 15), new GomokuSparseStorage(15, 15), new GomokuTileStorage()};
+    for (GomokuStorage board : boards) {
+      Random random = new Random(19);
+      GomokuSample s = new GomokuSample(5, board);
+      long[] middle = s.getCandidates(false);
+      assertEquals(1, middle.length);
+      assertEquals(board.getFirstRow() + board.getRows() / 2, (int) (middle[0] >> 32));
+      
+      // After each move the frontier has exactly the empty squares within two squares of a piece
+      long[][] orders = new long[31][];
+      orders[0] = s.getFrontier().toArray();
+      for (int i = 1; i <= 30; i++) {
+        while (!s.makeMove(3 + random.nextInt(9), 3 + random.nextInt(9)));
+        orders[i] = s.getFrontier().toArray();
+        Set<Long> expected = new HashSet<Long>();
+        for (int row = 0; row < 15; row++) {
+          for (int col = 0; col < 15; col++) {
+            if (s.getPiece(row, col) == 0 && hasPieceNear(s, row, col))
+              expected.add((long) row << 32 | col);
+            assertEquals(expected.contains((long) row << 32 | col), s.getFrontier().contains(row, col));
+          }
+        }
+        assertEquals(expected.size(), orders[i].length);
+        for (long square : orders[i]) {
+          assertEquals(true, expected.contains(square));
+        }
+      }
+      
+      // Taking the moves back gives each earlier frontier in exactly the same order, even with checks in between
+      for (int i = 29; i >= 0; i--) {
+        s.isForbidden(7, 7);
+        s.undo();
+        if (i % 3 == 0)
+          assertEquals(true, Arrays.equals(orders[i], s.getFrontier().toArray()));
+      }
+      assertEquals(0, s.getFrontier().size());
+    }
+    
+    // Removing pieces out of order keeps the right squares, and a copy has a frontier of its own
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    s.makeMove(7, 7);
+    s.makeMove(7, 8);
+    s.makeMove(0, 0);
+    GomokuSample copy = new GomokuSample(s);
+    s.removePiece(7, 7);
+    assertEquals(true, s.getFrontier().contains(7, 7));
+    assertEquals(true, s.getFrontier().contains(7, 6));
+    assertEquals(false, s.getFrontier().contains(7, 5));
+    assertEquals(false, copy.getFrontier().contains(7, 7));
+    assertEquals(true, copy.getFrontier().contains(7, 5));
+    assertEquals(28 + 8, copy.getFrontier().size());
+    
+    // Threats come first: black's five, then white's five, then the rest in frontier order
+    s = new GomokuSample(5, 15, 15);
+    int[][] moves = {{7, 3}, {2, 3}, {7, 4}, {2, 4}, {7, 5}, {2, 5}, {7, 6}, {2, 6}};
+    for (int[] move : moves) {
+      s.setPiece(move[0], move[1]);
+      s.switchTurn();
+    }
+    long[] ordered = s.getCandidates(true);
+    assertEquals(s.getFrontier().size(), ordered.length);
+    assertEquals(true, ordered[0] == ((long) 7 << 32 | 2) || ordered[0] == ((long) 7 << 32 | 7));
+    assertEquals(true, ordered[1] == ((long) 7 << 32 | 2) || ordered[1] == ((long) 7 << 32 | 7));
+    assertEquals(true, ordered[2] == ((long) 2 << 32 | 2) || ordered[2] == ((long) 2 << 32 | 7));
+    assertEquals(true, ordered[3] == ((long) 2 << 32 | 2) || ordered[3] == ((long) 2 << 32 | 7));
+  }
+  
+  /**
+   * Checks if there is a piece within two squares of a square
+   * @param s the board
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return true if there is a piece nearby, otherwise false
+   */
+  private static boolean hasPieceNear(GomokuSample s, int row, int col) {
+    for (int x = Math.max(0, row - 2); x <= Math.min(14, row + 2); x++) {
+      for (int y = Math.max(0, col - 2); y <= Math.min(14, col + 2); y++) {
+        if (s.getPiece(x, y) != 0)
+          return true;
+      }
+    }
+    return false;
+  }
+  
+  /** Test that moves can be played in the window's game before either renderer is created */
+  @Test
+  public void testHeadlessPlayMove() {
+    Gomoku g = new Gomoku();
+    assertEquals(true, g.playMove(9, 9));
+    assertEquals(false, g.isBlackTurn());
+    assertEquals(1, g.getBoard().getPiece(9, 9));
+    assertEquals(false, g.playMove(9, 9));
+    assertEquals(true, g.playMove(9, 10));
+    assertEquals(2, g.getBoard().getPiece(9, 10));
+    assertNull(g.getGameButtons());
+    assertNull(g.getCanvasView());
+    
+    // Test the size of a square on the canvas for small and big boards
+    assertEquals(50.0, GomokuCanvasView.initialCellSize(15, 15), 0);
+    assertEquals(16.0, GomokuCanvasView.initialCellSize(50, 40), 0);
+    assertEquals(8.0, GomokuCanvasView.initialCellSize(500, 500), 0);
+  }
+  
+  /** Test that clearing a board only for its pieces leaves it the same as a new board, and that boards are reused */
+  @Test
+  public void testClearAndPool() {
+    GomokuSample fresh = new GomokuSample(5, 15, 15);
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    GomokuSymmetry symmetry = s.trackSymmetry();
+    int[][] moves = {{7, 7}, {7, 8}, {8, 8}, {6, 6}, {9, 9}, {5, 5}, {7, 9}};
+    for (int[] move : moves) {
+      s.makeMove(move[0], move[1]);
+    }
+    s.undo();
+    s.setPiece(0, 0);
+    s.removePiece(7, 8);
+    s.clear();
+    assertEquals(0, s.getPieceCount());
+    assertEquals(fresh.getHash(), s.getHash());
+    assertEquals(true, s.isBlackTurn());
+    assertEquals(0, s.getMoveCount());
+    assertEquals(0, s.getRedoCount());
+    assertEquals(0, s.getFrontier().size());
+    assertEquals(fresh.getHash(), symmetry.getCanonicalHash());
+    for (int row = 0; row < 15; row++) {
+      for (int col = 0; col < 15; col++) {
+        assertEquals(0, s.getPiece(row, col));
+      }
+    }
+    
+    // The cleared board plays the same as a new one
+    for (int[] move : moves) {
+      s.makeMove(move[0], move[1]);
+      fresh.makeMove(move[0], move[1]);
+    }
+    assertEquals(fresh.getHash(), s.getHash());
+    assertEquals(fresh.numberInLine(7, 7, 1, 1, 1), s.numberInLine(7, 7, 1, 1, 1));
+    assertEquals(fresh.getFrontier().size(), s.getFrontier().size());
+    
+    // Test the same for a sparse board
+    GomokuSample sparse = new GomokuSample(5, new GomokuSparseStorage(100000, 100000));
+    sparse.setPiece(50000, 300);
+    sparse.switchTurn();
+    sparse.setPiece(50001, 301);
+    sparse.clear();
+    assertEquals(0, sparse.getPieceCount());
+    assertEquals(0, sparse.getFrontier().size());
+    assertEquals(0, sparse.getHash());
+    
+    // Test the board of the window
+    GomokuBoard board = new GomokuBoard(5, 19, 19);
+    board.setPiece(3, 4, 1);
+    board.setPiece(5, 6, 2);
+    board.setPiece(5, 6, 1);
+    assertEquals(2, board.getStoneCount());
+    board.removePiece(3, 4);
+    assertEquals(1, board.getStoneCount());
+    assertEquals(5, board.getStoneRow(0));
+    assertEquals(6, board.getStoneCol(0));
+    board.clear();
+    assertEquals(0, board.getStoneCount());
+    assertEquals(0, board.getPiece(5, 6));
+    
+    // Test that the pool gives back boards of the right size only
+    GomokuSamplePool pool = new GomokuSamplePool(2);
+    GomokuSample a = pool.acquire(5, 15, 15);
+    a.makeMove(7, 7);
+    pool.release(a);
+    assertEquals(1, pool.getIdle());
+    assertEquals(true, pool.acquire(5, 19, 19) != a);
+    GomokuSample b = pool.acquire(5, 15, 15);
+    assertEquals(true, b == a);
+    assertEquals(0, b.getPieceCount());
+    assertEquals(2, pool.getCreated());
+    assertEquals(1, pool.getReused());
+    
+    // Test that the pool keeps only array boards, and no more squares than it is allowed
+    pool = new GomokuSamplePool(4, 15 * 15 + 9 * 9);
+    pool.release(new GomokuSample(5, new GomokuSparseStorage(15, 15)));
+    pool.release(new GomokuSample(5, 15, 15));
+    pool.release(new GomokuSample(5, 19, 19));
+    pool.release(new GomokuSample(5, 9, 9));
+    pool.release(new GomokuSample(5, 9, 9));
+    assertEquals(2, pool.getIdle());
+    assertEquals(15 * 15 + 9 * 9, pool.getIdleSquares());
+    pool.acquire(5, 9, 9);
+    assertEquals(15 * 15, pool.getIdleSquares());
+    assertEquals(0, pool.getCreated());
+  }
+  
+  /** Test that the evaluator kept up to date move by move matches one made from scratch */
+  @Test
+  public void testEvaluator() {
+    
+    // Test the windows of a few shapes with 5 to win
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    GomokuEvaluator e = s.trackEvaluation();
+    s.setPiece(7, 7);
+    assertEquals(20 * GomokuEvaluator.ONE_SCORE, e.getScore(1));
+    for (int col = 8; col < 11; col++) {
+      s.setPiece(7, col);
+    }
+    assertEquals(2, e.getFours(1));
+    s.setPiece(7, 11);
+    assertEquals(1, e.getFives(1));
+    
+    // A six in a row is not a five, and its windows do not count
+    s.setPiece(7, 12);
+    assertEquals(0, e.getFives(1));
+    assertEquals(0, e.getFours(1));
+    s.removePiece(7, 12);
+    s.switchTurn();
+    s.setPiece(7, 6);
+    assertEquals(1, e.getFives(1));
+    assertEquals(0, e.getFours(1));
+    
+    // Random games with moves taken back on boards of different shapes and lengths to win
+    Random random = new Random(22);
+    int[][] shapes = {{15, 15, 5}, {9, 21, 6}, {20, 8, 7}, {12, 12, 9}};
+    for (int[] shape : shapes) {
+      GomokuSample game = new GomokuSample(shape[2], shape[0], shape[1]);
+      GomokuEvaluator evaluator = game.trackEvaluation();
+      for (int step = 0; step < 300; step++) {
+        if (game.getMoveCount() > 0 && random.nextInt(3) == 0)
+          game.undo();
+        else
+          game.makeMove(random.nextInt(shape[0]), random.nextInt(shape[1]));
+        if (step % 10 == 0) {
+          GomokuEvaluator fresh = new GomokuEvaluator(game);
+          for (int color = 1; color <= 2; color++) {
+            assertEquals(fresh.getScore(color), evaluator.getScore(color));
+            assertEquals(fresh.getFours(color), evaluator.getFours(color));
+            assertEquals(fresh.getFives(color), evaluator.getFives(color));
+          }
+        }
+      }
+      GomokuSample copy = new GomokuSample(game);
+      assertEquals(evaluator.evaluate(1), copy.getEvaluator().evaluate(1));
+      game.clear();
+      assertEquals(0, evaluator.getScore(1) + evaluator.getScore(2));
+    }
+    
+    // Test a piece on the edge of a huge sparse board, where only the windows along the edge fit
+    GomokuSample sparse = new GomokuSample(5, new GomokuSparseStorage(100000, 100000));
+    GomokuEvaluator big = sparse.trackEvaluation();
+    sparse.setPiece(0, 50000);
+    assertEquals(5 + 1 + 1 + 1, big.getScore(1));
+  }
+  
+  /** Test the results of the position checker and that they come out in the order of the input */
+  @Test
+  public void testAnalyzer() throws IOException {
+    GomokuSamplePool pool = new GomokuSamplePool(2);
+    assertEquals("WIN black", GomokuAnalyzer.analyze("15x15 5 7,3 0,0 7,4 0,2 7,5 0,4 7,6 0,6 7,7", pool));
+    assertEquals("NONE", GomokuAnalyzer.analyze("15x15 5 7,3 0,0 7,4", pool));
+    assertEquals("NONE", GomokuAnalyzer.analyze("19x19 5", pool));
+    assertEquals("ERROR move 2 is on a piece", GomokuAnalyzer.analyze("15x15 5 7,3 7,3", pool));
+    assertEquals("ERROR move 1 is not on the board", GomokuAnalyzer.analyze("15x15 5 15,0", pool));
+    assertEquals("ERROR size must be written as rowsxcols", GomokuAnalyzer.analyze("15 5 1,1", pool));
+    assertEquals("# comment", GomokuAnalyzer.analyze("# comment", pool));
+    
+    // The same answer as the board gives for a forbidden move, on a board bigger than an array is used for
+    GomokuSample s = new GomokuSample(5, 15, 15);
+    int[][] moves = {{0, 1}, {14, 0}, {0, 2}, {14, 2}, {1, 0}, {14, 4}, {2, 0}, {14, 6}, {0, 0}};
+    StringBuilder line = new StringBuilder("2000x2000 5");
+    for (int[] move : moves) {
+      s.makeMove(move[0], move[1]);
+      line.append(' ').append(move[0]).append(',').append(move[1]);
+    }
+    String expected = s.hasWon(0, 0) ? "WIN black" : s.violatesFourFour(0, 0) ? "FOUR_FOUR black"
+        : s.violatesThreeThree(0, 0) ? "THREE_THREE black" : "NONE";
+    assertEquals(expected, GomokuAnalyzer.analyze(line.toString(), pool));
+    
+    // Many positions on several threads with small batches still come out in order
+    StringBuilder input = new StringBuilder();
+    StringBuilder output = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      String position = i % 3 == 0 ? "15x15 5 7,3 0,0 7,4 0,2 7,5 0,4 7,6 0,6 7," + (7 + i % 2 * 100)
+          : "9x9 5 " + i % 9 + ",4";
+      input.append(position).append('\n');
+      output.append(GomokuAnalyzer.analyze(position, pool)).append(System.lineSeparator());
+    }
+    GomokuAnalyzer analyzer = new GomokuAnalyzer(3, 7, 2, 0);
+    StringWriter out = new StringWriter();
+    analyzer.run(new StringReader(input.toString()), out);
+    assertEquals(output.toString(), out.toString());
+    assertEquals(500, analyzer.getPositions());
+    assertEquals(84, analyzer.getCount("WIN"));
+    assertEquals(83, analyzer.getCount("ERROR"));
+  }
+  
+  /** Test the histograms and engine totals of the metrics, which are read the same way with metrics on or off */
+  @Test
+  public void testMetrics() throws IOException {
+    GomokuMetrics.Operation operation = new GomokuMetrics.Operation("test");
+    assertEquals(0, operation.getMedianNanos());
+    long now = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      operation.record(now);
+    }
+    operation.record(now - 1000000000L);
+    assertEquals(101, operation.getCount());
+    assertEquals(true, operation.getMaxNanos() >= 1000000000L);
+    assertEquals(true, operation.getMedianNanos() < 1000000000L);
+    assertEquals(true, operation.getPercentileNanos(1) >= operation.getMaxNanos());
+    
+    // Every time is at most the upper end of its bucket, which is one less than a power of two
+    long median = operation.getMedianNanos();
+    assertEquals(0, median & (median + 1));
+    operation.reset();
+    assertEquals(0, operation.getCount());
+    
+    GomokuMetrics.Engine engine = new GomokuMetrics.Engine("test");
+    engine.record(1000, 1000000, 4, 30, 100);
+    engine.record(3000, 1000000, 6, 0, 100);
+    assertEquals(2, engine.getSearches());
+    assertEquals(2000000, engine.getNodesPerSecond());
+    assertEquals(3000000, engine.getLastNodesPerSecond());
+    assertEquals(6, engine.getMaxDepth());
+    assertEquals(0.15, engine.getHitRate(), 1e-9);
+    assertEquals(0.0, engine.getLastHitRate(), 1e-9);
+    
+    // The file has a line for every operation
+    Path file = Files.createTempFile("gomoku", ".metrics");
+    GomokuMetrics.dump(file);
+    String text = new String(Files.readAllBytes(file), "UTF-8");
+    assertEquals(true, text.contains("operation setPiece count="));
+    assertEquals(true, text.contains("operation violatesThreeThree count="));
+    Files.delete(file);
+  }
+  
+  /** Test that the journal rebuilds the games that were not ended, through a torn record and compactions */
+  @Test
+  public void testJournal() throws IOException {
+    Path dir = Files.createTempDirectory("gomoku-journal");
+    GomokuJournal journal = new GomokuJournal(dir, 4, 1000);
+    long first = journal.newGame(15, 15, 5);
+    long second = journal.newGame(9, 9, 5);
+    long third = journal.newGame(19, 19, 5);
+    for (int i = 0; i < 10; i++) {
+      journal.move(first, i, i % 3, 0);
+    }
+    journal.move(second, 4, 4, 1);
+    journal.endGame(third);
+    journal.close();
+    
+    // Half of a record written when the program stopped is cut off
+    Path log = dir.resolve("journal-0.log");
+    Files.write(log, new byte[GomokuJournal.RECORD_SIZE / 2], StandardOpenOption.APPEND);
+    journal = new GomokuJournal(dir, 4, 10);
+    assertEquals(15, journal.getRecovered());
+    assertEquals(15L * GomokuJournal.RECORD_SIZE, Files.size(log));
+    assertEquals(2, journal.getGames().size());
+    assertEquals(null, journal.getGame(third));
+    GomokuGameRecord moves = journal.getGame(first);
+    assertEquals(10, moves.getMoveCount());
+    assertEquals(9, moves.getMoveRow(9));
+    assertEquals(0, moves.getMoveCol(9));
+    assertEquals(GomokuGameRecord.BLACK_WON, journal.getGame(second).getResult());
+    
+    // Enough records start a snapshot, and a new game never gets the id of an old one
+    long fourth = journal.newGame(15, 15, 5);
+    assertEquals(third + 1, fourth);
+    for (int i = 0; i < 12; i++) {
+      journal.move(fourth, 0, i, 0);
+    }
+    journal.commit();
+    assertEquals(true, journal.getGeneration() > 0);
+    journal.move(fourth, 1, 0, 0);
+    journal.close();
+    journal = new GomokuJournal(dir, 4, 1000);
+    
+    // The won game was left out of the snapshot
+    assertEquals(2, journal.getGames().size());
+    assertEquals(null, journal.getGame(second));
+    assertEquals(13, journal.getGame(fourth).getMoveCount());
+    assertEquals(10, journal.getGame(first).getMoveCount());
+    assertEquals(fourth + 1, journal.newGame(15, 15, 5));
+    
+    // A server started on the journal takes up a saved game with its moves
+    GomokuServer server = new GomokuServer(0, 1, journal);
+    server.start();
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.setSoTimeout(5000);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                                     "US-ASCII"));
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+      out.write("RESUME " + first + "\nRESUME " + first + "\nMOVE 1 9 0\nMOVE 1 14 14\nRESUME 999\nNEW\n");
+      out.flush();
+      assertEquals("GAME 1 " + first, in.readLine());
+      assertEquals("ERR game " + first + " is in use", in.readLine());
+      assertEquals("ERR square is taken", in.readLine());
+      assertEquals("OK 1 1", in.readLine());
+      assertEquals("ERR no saved game 999", in.readLine());
+      assertEquals("GAME 2 " + (fourth + 2), in.readLine());
+    }
+    finally {
+      server.close();
+      journal.close();
+    }
+    journal = new GomokuJournal(dir, 4, 1000);
+    assertEquals(11, journal.getGame(first).getMoveCount());
+    
+    // A game read back or released is dropped once a whole generation passes without it being taken up
+    long generation = journal.getGeneration();
+    journal.resume(first);
+    journal.compact();
+    journal.compact();
+    assertEquals(generation + 2, journal.getGeneration());
+    assertEquals(11, journal.getGame(first).getMoveCount());
+    assertEquals(null, journal.getGame(fourth));
+    journal.release(first);
+    journal.compact();
+    assertEquals(11, journal.getGame(first).getMoveCount());
+    journal.compact();
+    assertEquals(0, journal.getGames().size());
+    journal.close();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(dir);
+  }
+  
+  /** Test that the engines and the solver play next to the pieces on boards too big for a move to fit in an int */
+  @Test
+  public void testEnginesOnHugeBoards() {
+    GomokuStorage[] boards = {new GomokuSparseStorage(100000, 100000), new GomokuTileStorage()};
+    for (GomokuStorage storage : boards) {
+      GomokuSample game = new GomokuSample(5, storage);
+      game.makeMove(50000, 50000);
+      game.makeMove(50001, 50001);
+      game.makeMove(50000, 50001);
+      int[] move = new GomokuAI(200).findMove(game);
+      assertEquals(true, Math.abs(move[0] - 50000) <= 2 && Math.abs(move[1] - 50000) <= 3);
+      GomokuMCTS mcts = new GomokuMCTS(200, 100000, 1);
+      move = mcts.findMove(game);
+      mcts.close();
+      assertEquals(true, Math.abs(move[0] - 50000) <= 2 && Math.abs(move[1] - 50000) <= 3);
+    }
+    
+    // The solver finds the five of a four far from 0,0, and on the tiles at negative rows and columns
+    GomokuSample[] fours = {new GomokuSample(5, new GomokuSparseStorage(100000, 100000)),
+                            new GomokuSample(5, new GomokuTileStorage())};
+    int[] starts = {60000, -10};
+    for (int k = 0; k < fours.length; k++) {
+      int start = starts[k];
+      for (int i = 0; i < 4; i++) {
+        fours[k].makeMove(start, start + i);
+        fours[k].makeMove(start + 5, start + 2 * i);
+      }
+      int[][] line = new GomokuThreatSolver(4, 10000).solveVCF(fours[k]);
+      assertEquals(1, line.length);
+      assertEquals(start, line[0][0]);
+      assertEquals(true, line[0][1] == start - 1 || line[0][1] == start + 4);
+    }
+  }
+}
@@ -0,0 +1,522 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A class to find forced wins in the game Gomoku by threat-space search
+ * Only moves that make a threat are searched, so a forced win is proved or refuted much faster than by a full search:
+ * a victory by continuous fours (VCF) only uses fours, which the other player has exactly one way to answer,
+ * and a victory by continuous threats (VCT) also uses live threes, which are answered by every square that stops them
+ * and every four the other player can make in return
+ * Moves of both players follow the same Four-Four and Three-Three rules as GomokuSample
+ * A winning line ends with five in a row, or with a threat that the other player cannot answer without breaking a rule
+ * @author Noah Leibowitz
+ */
+public class GomokuThreatSolver {
+
+  /** Stores the change in the row along each of the four lines */
+  private static final int[] LINE_DX = {0, 1, 1, 1};
+
+  /** Stores the change in the column along each of the four lines */
+  private static final int[] LINE_DY = {1, 0, 1, -1};
+
+  /** The square that stands for no square, which is off every board since no row can be Integer.MIN_VALUE */
+  private static final long NO_SQUARE = Long.MIN_VALUE;
+
+  /** Stores the most moves of the attacker in a winning line */
+  private int maxDepth;
+
+  /** Stores the most positions to search before giving up */
+  private long maxNodes;
+
+  /** Stores the board being searched */
+  private GomokuSample game;
+
+  /** Stores whether live threes are searched as well as fours */
+  private boolean threes;
+
+  /** Stores the number of positions searched by the last solve */
+  private long nodes;
+
+  /** Stores whether the last solve gave up before it finished */
+  private boolean stopped;
+
+  /** Stores the positions that have no forced win, with the depth they were searched to */
+  private HashMap<Long, Integer> refuted = new HashMap<Long, Integer>();
+
+  /**
+   * Constructor that initializes the fields
+   * @param maxDepth the most moves of the attacker in a winning line
+   * @param maxNodes the most positions to search before giving up
+   */
+  public GomokuThreatSolver(int maxDepth, long maxNodes) {
+    this.maxDepth = maxDepth;
+    this.maxNodes = maxNodes;
+  }
+
+  /**
+   * Getter method for nodes
+   * @return the number of positions searched by the last solve
+   */
+  public long getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Getter method for stopped
+   * @return true if the last solve searched the most positions allowed, so a win may have been missed
+   */
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * Looks for a victory by continuous fours for the player whose turn it is
+   * The board is changed during the search but is always put back the way it was
+   * @param game the board to play on
+   * @return the moves of the winning line as row and column pairs, starting with the player to move, or null if there is none
+   */
+  public int[][] solveVCF(GomokuSample game) {
+    return solve(game, false);
+  }
+
+  /**
+   * Looks for a victory by continuous fours and threes for the player whose turn it is
+   * The line returned follows the first answer to each three, since every answer loses
+   * @param game the board to play on
+   * @return the moves of the winning line as row and column pairs, starting with the player to move, or null if there is none
+   */
+  public int[][] solveVCT(GomokuSample game) {
+    return solve(game, true);
+  }
+
+  /**
+   * Looks for a forced win for the player whose turn it is
+   * @param game the board to play on
+   * @param threes true to search live threes as well as fours
+   * @return the moves of the winning line as row and column pairs, or null if there is none
+   */
+  private int[][] solve(GomokuSample game, boolean threes) {
+    if (!GomokuMetrics.ENABLED)
+      return findLine(game, threes);
+    long start = System.nanoTime();
+    int[][] line = findLine(game, threes);
+    int depth = line == null ? 0 : (line.length + 1) / 2;
+    GomokuMetrics.engine(threes ? "GomokuThreatSolver VCT" : "GomokuThreatSolver VCF")
+        .record(nodes, System.nanoTime() - start, depth, 0, 0);
+    return line;
+  }
+
+  /**
+   * Looks for a forced win for the player whose turn it is, without reporting the search to GomokuMetrics
+   * @param game the board to play on
+   * @param threes true to search live threes as well as fours
+   * @return the moves of the winning line as row and column pairs, or null if there is none
+   */
+  private int[][] findLine(GomokuSample game, boolean threes) {
+    this.game = game;
+    this.threes = threes;
+    nodes = 0;
+    stopped = false;
+    refuted.clear();
+
+    // A player who can already make five wins right away
+    long[] squares = nearSquares(ownColor(), game.getLengthToWin() - 1);
+    for (int i = 0; i < squares.length; i++) {
+      if (makesFive(squares[i]))
+        return new int[][] {{rowOf(squares[i]), colOf(squares[i])}};
+    }
+
+    // Finds the squares where the other player already has five, which the first move has to block
+    game.switchTurn();
+    long[] fives = new long[0];
+    squares = nearSquares(ownColor(), game.getLengthToWin() - 1);
+    for (int i = 0; i < squares.length; i++) {
+      if (makesFive(squares[i]))
+        fives = append(fives, squares[i]);
+    }
+    game.switchTurn();
+    long[] line = attack(maxDepth, fives);
+    if (line == null)
+      return null;
+    int[][] moves = new int[line.length][];
+    for (int i = 0; i < line.length; i++) {
+      moves[i] = new int[] {rowOf(line[i]), colOf(line[i])};
+    }
+    return moves;
+  }
+
+  /**
+   * Searches the threats of the attacker, whose turn it is
+   * @param depth the most moves of the attacker left
+   * @param fives the squares where the defender can make five, which the attacker has to block
+   * @return the winning line as squares made by square, or null if no win was found
+   */
+  private long[] attack(int depth, long[] fives) {
+    nodes++;
+    if (nodes > maxNodes) {
+      stopped = true;
+      return null;
+    }
+    if (depth == 0 || fives.length > 1)
+      return null;
+    Integer searched = refuted.get(game.getHash());
+    if (searched != null && searched >= depth)
+      return null;
+    long[] moves = fives.length == 1 ? fives : nearSquares(ownColor(), game.getLengthToWin() - 1);
+
+    // Sorts the legal moves into fours and threes, so that the fours are searched first
+    long[] fours = new long[moves.length];
+    long[] threeMoves = new long[moves.length];
+    int fourCount = 0;
+    int threeCount = 0;
+    for (int i = 0; i < moves.length; i++) {
+      int row = rowOf(moves[i]);
+      int col = colOf(moves[i]);
+      game.setPiece(row, col);
+      if (game.hasWon(row, col)) {
+        game.removePiece(row, col);
+        return new long[] {moves[i]};
+      }
+      if (!game.violatesFourFour(row, col) && !game.violatesThreeThree(row, col)) {
+        int shape = bestShape(row, col);
+        if (shape == GomokuPatterns.FOUR || shape == GomokuPatterns.OPEN_FOUR)
+          fours[fourCount++] = moves[i];
+        else if (threes && fives.length == 0 && hasLiveThree(row, col))
+          threeMoves[threeCount++] = moves[i];
+      }
+      game.removePiece(row, col);
+    }
+    for (int i = 0; i < fourCount + threeCount && !stopped; i++) {
+      long move = i < fourCount ? fours[i] : threeMoves[i - fourCount];
+      int row = rowOf(move);
+      int col = colOf(move);
+      game.setPiece(row, col);
+      long[] line = i < fourCount ? afterFour(move, completions(row, col), depth) : afterThree(move, depth);
+      game.removePiece(row, col);
+      if (line != null)
+        return line;
+    }
+    if (!stopped)
+      refuted.put(game.getHash(), depth);
+    return null;
+  }
+
+  /**
+   * Lets the defender answer a four, which has to be blocked on its one winning square
+   * @param move the four that was played
+   * @param wins the squares where the attacker can make five
+   * @param depth the most moves of the attacker left, including the four
+   * @return the winning line starting with the four, or null if no win was found
+   */
+  private long[] afterFour(long move, long[] wins, int depth) {
+
+    // Two winning squares cannot both be blocked, and a block that breaks a rule cannot be played
+    if (wins.length > 1)
+      return new long[] {move, wins[0], wins[1]};
+    if (breaksRule(wins[0]))
+      return new long[] {move};
+    long[] line = defend(wins[0], depth);
+    return line == null ? null : prepend(move, line);
+  }
+
+  /**
+   * Lets the defender answer a live three with every square that stops it and every four of the defender
+   * A three is only a threat if the attacker could then make an open four without breaking a rule
+   * @param move the three that was played
+   * @param depth the most moves of the attacker left, including the three
+   * @return the winning line starting with the three and the first answer, or null if some answer holds
+   */
+  private long[] afterThree(long move, int depth) {
+    int row = rowOf(move);
+    int col = colOf(move);
+    long[] answers = new long[0];
+    long openFour = NO_SQUARE;
+
+    // The squares that would turn the three into a four
+    for (int line = 0; line < 4; line++) {
+      if (!GomokuPatterns.isLiveThree(game.getShape(row, col, LINE_DX[line], LINE_DY[line])))
+        continue;
+      for (int i = -game.getLengthToWin(); i <= game.getLengthToWin(); i++) {
+        int x = row + i * LINE_DX[line];
+        int y = col + i * LINE_DY[line];
+        if (i == 0 || !onBoard(x, y) || !game.isEmpty(x, y))
+          continue;
+        game.setPiece(x, y);
+        if (game.getShape(row, col, LINE_DX[line], LINE_DY[line]) >= GomokuPatterns.FOUR) {
+          answers = addSquare(answers, square(x, y));
+          if (openFour == NO_SQUARE && !game.hasWon(x, y) && !game.violatesFourFour(x, y)
+                && !game.violatesThreeThree(x, y) && completions(x, y).length > 1)
+            openFour = square(x, y);
+        }
+        game.removePiece(x, y);
+      }
+    }
+    if (openFour == NO_SQUARE)
+      return null;
+
+    // The fours of the defender, which the attacker has to answer first
+    game.switchTurn();
+    long[] near = nearSquares(ownColor(), game.getLengthToWin() - 1);
+    for (int i = 0; i < near.length; i++) {
+      game.setPiece(rowOf(near[i]), colOf(near[i]));
+      int shape = bestShape(rowOf(near[i]), colOf(near[i]));
+      if (shape == GomokuPatterns.FOUR || shape == GomokuPatterns.OPEN_FOUR)
+        answers = addSquare(answers, near[i]);
+      game.removePiece(rowOf(near[i]), colOf(near[i]));
+    }
+    game.switchTurn();
+
+    // Every answer that can be played has to lose, otherwise the attacker makes the open four
+    long[] first = null;
+    for (int i = 0; i < answers.length; i++) {
+      if (breaksRule(answers[i]))
+        continue;
+      long[] line = defend(answers[i], depth);
+      if (line == null)
+        return null;
+      if (first == null)
+        first = line;
+    }
+    if (first == null)
+      first = new long[] {openFour};
+    return prepend(move, first);
+  }
+
+  /**
+   * Plays an answer of the defender and searches the attacker's threats after it
+   * @param square the square of the answer, which must not break a rule
+   * @param depth the most moves of the attacker left, including the threat being answered
+   * @return the winning line starting with the answer, or null if no win was found
+   */
+  private long[] defend(long square, int depth) {
+    int row = rowOf(square);
+    int col = colOf(square);
+    game.switchTurn();
+    game.setPiece(row, col);
+    long[] line = null;
+
+    // An answer that makes five wins for the defender
+    if (!game.hasWon(row, col)) {
+      long[] fives = completions(row, col);
+      game.switchTurn();
+      line = attack(depth - 1, fives);
+      game.switchTurn();
+      if (line != null)
+        line = prepend(square, line);
+    }
+    game.removePiece(row, col);
+    game.switchTurn();
+    return line;
+  }
+
+  /**
+   * Checks if the defender would break the Four-Four or Three-Three rule by playing on a square
+   * A move that makes five never breaks a rule
+   * @param square the square made by square
+   * @return true if the defender cannot play there, otherwise false
+   */
+  private boolean breaksRule(long square) {
+    int row = rowOf(square);
+    int col = colOf(square);
+    game.switchTurn();
+    game.setPiece(row, col);
+    boolean breaks = !game.hasWon(row, col) && (game.violatesFourFour(row, col) || game.violatesThreeThree(row, col));
+    game.removePiece(row, col);
+    game.switchTurn();
+    return breaks;
+  }
+
+  /**
+   * Finds the squares where one more piece makes five with a piece, along the four lines through it
+   * It has to be the turn of the color of the piece
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return the squares made by square
+   */
+  private long[] completions(int row, int col) {
+    long[] wins = new long[0];
+    int length = game.getLengthToWin();
+    for (int line = 0; line < 4; line++) {
+      for (int i = -length + 1; i < length; i++) {
+        int x = row + i * LINE_DX[line];
+        int y = col + i * LINE_DY[line];
+        if (i != 0 && onBoard(x, y) && game.isEmpty(x, y) && makesFive(square(x, y)))
+          wins = addSquare(wins, square(x, y));
+      }
+    }
+    return wins;
+  }
+
+  /**
+   * Checks if a piece of the player to move on an empty square makes exactly five in a row
+   * @param square the square made by square
+   * @return true if the piece wins, otherwise false
+   */
+  private boolean makesFive(long square) {
+    int row = rowOf(square);
+    int col = colOf(square);
+    game.setPiece(row, col);
+    boolean won = game.hasWon(row, col);
+    game.removePiece(row, col);
+    return won;
+  }
+
+  /**
+   * Finds the strongest shape of a piece along the four lines through it
+   * A FOUR or OPEN_FOUR along a line means that one more piece there makes five
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return the strongest shape, from GomokuPatterns
+   */
+  private int bestShape(int row, int col) {
+    int best = GomokuPatterns.NONE;
+    for (int line = 0; line < 4; line++) {
+      best = Math.max(best, game.getShape(row, col, LINE_DX[line], LINE_DY[line]));
+    }
+    return best;
+  }
+
+  /**
+   * Checks if a piece makes a live three along any of the four lines through it
+   * @param row the row position of the piece
+   * @param col the column position of the piece
+   * @return true if there is a live three, otherwise false
+   */
+  private boolean hasLiveThree(int row, int col) {
+    for (int line = 0; line < 4; line++) {
+      if (GomokuPatterns.isLiveThree(game.getShape(row, col, LINE_DX[line], LINE_DY[line])))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Finds the empty squares on the four lines through the pieces of a color, close enough to make a threat with them
+   * Only the squares of the frontier of the board are looked at, since a five, a four, or a live three always has a
+   * piece of its color within two squares of the new piece
+   * @param color the color of the pieces
+   * @param distance the most squares away from a piece
+   * @return the squares made by square
+   */
+  private long[] nearSquares(int color, int distance) {
+    GomokuFrontier frontier = game.getFrontier();
+    int reach = Math.min(distance, GomokuFrontier.RADIUS);
+    long[] found = new long[frontier.size()];
+    int count = 0;
+    for (int i = 0; i < frontier.size(); i++) {
+      int row = frontier.getRow(i);
+      int col = frontier.getCol(i);
+      if (hasNear(row, col, color, reach))
+        found[count++] = square(row, col);
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  /**
+   * Checks if a piece of a color is on one of the four lines through a square, close to it
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param color the color of the piece
+   * @param reach the most squares away from the square
+   * @return true if such a piece is found, otherwise false
+   */
+  private boolean hasNear(int row, int col, int color, int reach) {
+    for (int line = 0; line < 4; line++) {
+      for (int i = -reach; i <= reach; i++) {
+        int x = row + i * LINE_DX[line];
+        int y = col + i * LINE_DY[line];
+        if (i != 0 && onBoard(x, y) && game.getPiece(x, y) == color)
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks if a square is on the board, which may not start at row 0 and column 0
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return true if the square is on the board, otherwise false
+   */
+  private boolean onBoard(int row, int col) {
+    return row >= game.getFirstRow() && row - game.getFirstRow() < game.getRows() && col >= game.getFirstCol()
+        && col - game.getFirstCol() < game.getCols();
+  }
+
+  /**
+   * Makes one number of a square, with its row in the high 32 bits and its column in the low 32 bits, so that a
+   * square of any board fits
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the square
+   */
+  private static long square(int row, int col) {
+    return (long) row << 32 | (col & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Gets the row of a square made by square
+   * @param square the square
+   * @return the row position
+   */
+  private static int rowOf(long square) {
+    return (int) (square >> 32);
+  }
+
+  /**
+   * Gets the column of a square made by square
+   * @param square the square
+   * @return the column position
+   */
+  private static int colOf(long square) {
+    return (int) square;
+  }
+
+  /**
+   * Gets the color of the player to move
+   * @return 1 for black or 2 for white
+   */
+  private int ownColor() {
+    return game.isBlackTurn() ? 1 : 2;
+  }
+
+  /**
+   * Adds a square to a list if it is not in the list already
+   * @param squares the list
+   * @param square the square
+   * @return the list with the square
+   */
+  private static long[] addSquare(long[] squares, long square) {
+    for (int i = 0; i < squares.length; i++) {
+      if (squares[i] == square)
+        return squares;
+    }
+    return append(squares, square);
+  }
+
+  /**
+   * Adds a number to the end of an array
+   * @param array the array
+   * @param value the number
+   * @return a new array with the number at the end
+   */
+  private static long[] append(long[] array, long value) {
+    long[] longer = Arrays.copyOf(array, array.length + 1);
+    longer[array.length] = value;
+    return longer;
+  }
+
+  /**
+   * Adds a move to the start of a line
+   * @param move the move
+   * @param line the line
+   * @return a new line starting with the move
+   */
+  private static long[] prepend(long move, long[] line) {
+    long[] longer = new long[line.length + 1];
+    longer[0] = move;
+    System.arraycopy(line, 0, longer, 1, line.length);
+    return longer;
+  }
+
+}
@@ -0,0 +1,329 @@
+import java.util.Arrays;
+
+/**
+ * A class to store an unbounded Gomoku board in square tiles of 64x64 squares, each made the first time a piece is
+ * placed in it
+ * Rows and columns are signed ints from -LIMIT to LIMIT, so play can start at 0,0 and drift in any direction
+ * The tiles are found through a hash table, but the last tile used is kept, so a scan along a line only looks up a
+ * tile when it crosses into the next one
+ * The memory used grows with the number of tiles that have had a piece, not with how far apart the pieces are
+ * @author Noah Leibowitz
+ */
+public class GomokuTileStorage implements GomokuStorage {
+
+  /**
+   * The largest row or column distance from 0 that a piece may be placed at
+   * Leaving 2^30 free on each side lets the rules look past the edge without the ints overflowing
+   */
+  public static final int LIMIT = (1 << 30) - 1;
+
+  /** The number of bits of a row or column that give its place inside a tile */
+  private static final int TILE_BITS = 6;
+
+  /** The number of squares along the side of a tile */
+  public static final int TILE_SIZE = 1 << TILE_BITS;
+
+  /** The number of slots the table of tiles starts with */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The key of a slot that has no tile, which no tile of the board can have */
+  private static final long FREE = Long.MIN_VALUE;
+
+  /** A class for one tile of the board */
+  private static class Tile {
+
+    /** Stores the color of every square of the tile, at row * TILE_SIZE + col within the tile */
+    private byte[] colors = new byte[TILE_SIZE * TILE_SIZE];
+
+    /** Stores the packed run lengths of every square of the tile */
+    private long[] runs = new long[TILE_SIZE * TILE_SIZE];
+
+    /** Stores the number of pieces in the tile */
+    private int pieces;
+
+    /**
+     * Makes an independent copy of the tile
+     * @return the copy
+     */
+    private Tile copy() {
+      Tile tile = new Tile();
+      tile.colors = colors.clone();
+      tile.runs = runs.clone();
+      tile.pieces = pieces;
+      return tile;
+    }
+  }
+
+  /** Stores the key of the tile in each slot of the table, or FREE */
+  private long[] keys;
+
+  /** Stores the tile in each slot of the table */
+  private Tile[] tiles;
+
+  /** Stores the number of slots minus one, used to wrap an index around the table */
+  private int mask;
+
+  /** Stores the number of tiles that have been made */
+  private int tileCount;
+
+  /** Stores the number of pieces on the board */
+  private int pieces;
+
+  /** Stores the key of the last tile looked up */
+  private long lastKey = FREE;
+
+  /** Stores the last tile looked up, or null if that part of the board has no tile */
+  private Tile lastTile;
+
+  /** Constructor that makes an empty board with no tiles */
+  public GomokuTileStorage() {
+    keys = new long[INITIAL_CAPACITY];
+    Arrays.fill(keys, FREE);
+    tiles = new Tile[INITIAL_CAPACITY];
+    mask = INITIAL_CAPACITY - 1;
+  }
+
+  /**
+   * Copy constructor that makes an independent copy of another board
+   * @param other the board to copy
+   */
+  public GomokuTileStorage(GomokuTileStorage other) {
+    keys = other.keys.clone();
+    tiles = new Tile[other.tiles.length];
+    for (int i = 0; i < tiles.length; i++) {
+      if (other.tiles[i] != null)
+        tiles[i] = other.tiles[i].copy();
+    }
+    mask = other.mask;
+    tileCount = other.tileCount;
+    pieces = other.pieces;
+  }
+
+  /**
+   * Gets the first row of the board
+   * @return -LIMIT
+   */
+  public int getFirstRow() {
+    return -LIMIT;
+  }
+
+  /**
+   * Gets the first column of the board
+   * @return -LIMIT
+   */
+  public int getFirstCol() {
+    return -LIMIT;
+  }
+
+  /**
+   * Getter method for the rows
+   * @return the number of rows from -LIMIT to LIMIT
+   */
+  public int getRows() {
+    return 2 * LIMIT + 1;
+  }
+
+  /**
+   * Getter method for the columns
+   * @return the number of columns from -LIMIT to LIMIT
+   */
+  public int getCols() {
+    return 2 * LIMIT + 1;
+  }
+
+  /**
+   * Gets the color of a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return 0 for empty, 1 for black, or 2 for white
+   * @throws ArrayIndexOutOfBoundsException if the square is further than LIMIT from 0
+   */
+  public int getPiece(int row, int col) {
+    checkBounds(row, col);
+    Tile tile = tileAt(row, col);
+    return tile == null ? 0 : tile.colors[indexOf(row, col)];
+  }
+
+  /**
+   * Sets the color of a square, making its tile if it has none
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param color 0 for empty, 1 for black, or 2 for white
+   * @throws ArrayIndexOutOfBoundsException if the square is further than LIMIT from 0
+   */
+  public void setPiece(int row, int col, int color) {
+    checkBounds(row, col);
+    Tile tile = tileAt(row, col);
+    if (tile == null) {
+      if (color == 0)
+        return;
+      tile = addTile(row, col);
+    }
+    int index = indexOf(row, col);
+    if (tile.colors[index] == 0 && color != 0) {
+      tile.pieces++;
+      pieces++;
+    }
+    else if (tile.colors[index] != 0 && color == 0) {
+      tile.pieces--;
+      pieces--;
+      tile.runs[index] = 0;
+    }
+    tile.colors[index] = (byte) color;
+  }
+
+  /**
+   * Gets the packed run lengths of the piece on a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the run lengths, or 0 if the square is empty
+   */
+  public long getRuns(int row, int col) {
+    Tile tile = tileAt(row, col);
+    return tile == null ? 0 : tile.runs[indexOf(row, col)];
+  }
+
+  /**
+   * Sets the packed run lengths of the piece on a square, and does nothing if the square has no tile
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @param runs the run lengths
+   */
+  public void setRuns(int row, int col, long runs) {
+    Tile tile = tileAt(row, col);
+    if (tile != null)
+      tile.runs[indexOf(row, col)] = runs;
+  }
+
+  /**
+   * Gets the number of pieces on the board
+   * @return the number of squares that are not empty
+   */
+  public int getPieceCount() {
+    return pieces;
+  }
+
+  /**
+   * Gets the number of tiles that have been made
+   * A tile is kept once made, even if its pieces are removed, so that a piece played back and forth costs nothing
+   * @return the number of tiles
+   */
+  public int getTileCount() {
+    return tileCount;
+  }
+
+  /**
+   * Makes an independent copy of the squares
+   * @return the copy
+   */
+  public GomokuStorage copy() {
+    return new GomokuTileStorage(this);
+  }
+
+  /**
+   * Checks that a square is on the board, the same way an array would
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @throws ArrayIndexOutOfBoundsException if the square is further than LIMIT from 0
+   */
+  private static void checkBounds(int row, int col) {
+    if (row < -LIMIT || row > LIMIT || col < -LIMIT || col > LIMIT)
+      throw new ArrayIndexOutOfBoundsException("Square " + row + "," + col + " is not on the board");
+  }
+
+  /**
+   * Finds the place of a square inside its tile
+   * The low bits of a negative number count up from the start of its tile the same way as those of a positive one
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the index of the square in the arrays of the tile
+   */
+  private static int indexOf(int row, int col) {
+    return (row & (TILE_SIZE - 1)) << TILE_BITS | (col & (TILE_SIZE - 1));
+  }
+
+  /**
+   * Gets the key of the tile that holds a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the key, made from the row and column of the tile
+   */
+  private static long keyOf(int row, int col) {
+    return (long) (row >> TILE_BITS) << 32 | ((col >> TILE_BITS) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Finds the tile that holds a square, using the last tile looked up if the square is in it
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the tile, or null if that part of the board has no tile
+   */
+  private Tile tileAt(int row, int col) {
+    long key = keyOf(row, col);
+    if (key == lastKey)
+      return lastTile;
+    int slot = slotOf(key);
+    while (keys[slot] != key && keys[slot] != FREE) {
+      slot = (slot + 1) & mask;
+    }
+    lastKey = key;
+    lastTile = tiles[slot];
+    return lastTile;
+  }
+
+  /**
+   * Makes the tile that holds a square
+   * @param row the row position of the square
+   * @param col the column position of the square
+   * @return the new tile
+   */
+  private Tile addTile(int row, int col) {
+
+    // Keeps the table at most half full
+    if (2 * (tileCount + 1) > keys.length)
+      grow();
+    long key = keyOf(row, col);
+    int slot = slotOf(key);
+    while (keys[slot] != FREE) {
+      slot = (slot + 1) & mask;
+    }
+    Tile tile = new Tile();
+    keys[slot] = key;
+    tiles[slot] = tile;
+    tileCount++;
+    lastKey = key;
+    lastTile = tile;
+    return tile;
+  }
+
+  /**
+   * Finds the first slot to look in for a key
+   * @param key the key
+   * @return the slot
+   */
+  private int slotOf(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  /** Doubles the size of the table of tiles */
+  private void grow() {
+    long[] oldKeys = keys;
+    Tile[] oldTiles = tiles;
+    keys = new long[oldKeys.length * 2];
+    Arrays.fill(keys, FREE);
+    tiles = new Tile[keys.length];
+    mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == FREE)
+        continue;
+      int slot = slotOf(oldKeys[i]);
+      while (keys[slot] != FREE) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = oldKeys[i];
+      tiles[slot] = oldTiles[i];
+    }
+  }
+
+}
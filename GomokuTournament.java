@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class to play two computer players against each other without the JavaFX window
+ * Run with: java GomokuTournament engineA engineB [games] [rows] [cols] [lengthToWin] [threads] [database]
+ * An engine is written as a type with options, such as "ab:time=100,depth=8,branch=15,threads=1,tt=16,book=file"
+ * for the alpha-beta player or "mcts:time=100,nodes=200000,threads=1,c=1.5" for the Monte Carlo player
+ * The games are played at the same time on several threads. Each opening is played twice with the colors swapped,
+ * and the results are reported from engine A's point of view with an Elo difference and its 95% error bars
+ * If a database file is given, every game is added to it as a GomokuGameRecord
+ * @author Noah Leibowitz
+ */
+public class GomokuTournament {
+
+  /** Stores the description of the first engine */
+  private String engineA;
+
+  /** Stores the description of the second engine */
+  private String engineB;
+
+  /** Stores the number of games to play */
+  private int games;
+
+  /** Stores the number of rows on the board */
+  private int rows;
+
+  /** Stores the number of columns on the board */
+  private int cols;
+
+  /** Stores the exact length needed in a row to win */
+  private int lengthToWin;
+
+  /** Stores the seed used to make the openings */
+  private long seed = 1;
+
+  /** Stores the index of the next game to play */
+  private AtomicInteger nextGame = new AtomicInteger();
+
+  /** Stores the number of games won by engine A */
+  private AtomicInteger wins = new AtomicInteger();
+
+  /** Stores the number of drawn games */
+  private AtomicInteger draws = new AtomicInteger();
+
+  /** Stores the number of games lost by engine A */
+  private AtomicInteger losses = new AtomicInteger();
+
+  /** Stores the number of moves played by the engines in all of the games */
+  private AtomicLong moves = new AtomicLong();
+
+  /** Stores the database the games are added to, or null to not keep them */
+  private GomokuGameDatabase database;
+
+  /** Stores whether the score is printed after every tenth of the games, which only the command line turns on */
+  private boolean showProgress;
+
+  /**
+   * Constructor that initializes the fields
+   * @param engineA the description of the first engine
+   * @param engineB the description of the second engine
+   * @param games the number of games to play
+   * @param rows the number of rows on the board
+   * @param cols the number of columns on the board
+   * @param lengthToWin the exact length needed in a row to win
+   */
+  public GomokuTournament(String engineA, String engineB, int games, int rows, int cols, int lengthToWin) {
+    this.engineA = engineA;
+    this.engineB = engineB;
+    this.games = games;
+    this.rows = rows;
+    this.cols = cols;
+    this.lengthToWin = lengthToWin;
+
+    // Makes sure both descriptions can be read before any game starts, without making the engines
+    checkPlayer(engineA);
+    checkPlayer(engineB);
+  }
+
+  /**
+   * Runs a tournament and prints the results
+   * @param args engine A, engine B, the number of games, rows, columns, length to win, threads, and a database file
+   */
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.out.println("Usage: java GomokuTournament engineA engineB [games] [rows] [cols] [lengthToWin] [threads]"
+                         + " [database]");
+      System.out.println("Engines: ab:time=ms,depth=n,branch=n,threads=n,tt=mb,book=file"
+                         + " or mcts:time=ms,nodes=n,threads=n,c=x");
+      return;
+    }
+    try {
+      int games = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+      int rows = args.length > 3 ? Integer.parseInt(args[3]) : 15;
+      int cols = args.length > 4 ? Integer.parseInt(args[4]) : rows;
+      int lengthToWin = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+      int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+      GomokuTournament tournament = new GomokuTournament(args[0], args[1], games, rows, cols, lengthToWin);
+      tournament.setShowProgress(true);
+      if (args.length > 7)
+        tournament.setDatabase(new GomokuGameDatabase(Paths.get(args[7])));
+      long start = System.nanoTime();
+      tournament.play(threads);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      tournament.printResults(seconds);
+      if (tournament.database != null)
+        tournament.database.close();
+    }
+    catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+    }
+    catch (IOException e) {
+      System.out.println("Could not use the database: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Plays all of the games, each thread taking the next game until none are left
+   * @param threads the number of games to play at the same time
+   */
+  public void play(int threads) {
+    Thread[] workers = new Thread[Math.max(1, threads)];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread(new Runnable() {
+        public void run() {
+          try (GomokuPlayer a = createPlayer(engineA); GomokuPlayer b = createPlayer(engineB)) {
+
+            // Each thread plays all of its games on one board, cleared between games
+            GomokuSample board = new GomokuSample(lengthToWin, rows, cols);
+            for (int game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+              playGame(game, a, b, board);
+            }
+          }
+        }
+      });
+      workers[i].start();
+    }
+    for (int i = 0; i < workers.length; i++) {
+      try {
+        workers[i].join();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Plays one game and counts its result
+   * Game 2k and game 2k + 1 share an opening, with engine A playing black in the first and white in the second
+   * @param index the number of the game
+   * @param a the player of engine A
+   * @param b the player of engine B
+   * @param game the board to play on, which is cleared first
+   */
+  private void playGame(int index, GomokuPlayer a, GomokuPlayer b, GomokuSample game) {
+    boolean aBlack = index % 2 == 0;
+    GomokuGameRecord record = new GomokuGameRecord(rows, cols, lengthToWin);
+    opening(index / 2, record, game);
+    a.newGame();
+    b.newGame();
+    int winner = 0;
+    int played = 0;
+    while (winner == 0 && played < rows * cols) {
+      boolean aToMove = game.isBlackTurn() == aBlack;
+      int[] move = (aToMove ? a : b).findMove(game);
+      if (move == null)
+        break;
+      int row = move[0];
+      int col = move[1];
+      int color = game.isBlackTurn() ? 1 : 2;
+      played++;
+      if (row >= 0 && row < rows && col >= 0 && col < cols && game.isEmpty(row, col))
+        record.addMove(row, col);
+
+      // A move that is off the board, on a piece, or breaks a rule loses the game
+      if (row < 0 || row >= rows || col < 0 || col >= cols || !game.setPiece(row, col))
+        winner = 3 - color;
+      else if (game.hasWon(row, col))
+        winner = color;
+      else if (game.violatesFourFour(row, col) || game.violatesThreeThree(row, col))
+        winner = 3 - color;
+      game.switchTurn();
+    }
+    moves.addAndGet(played);
+    if (database != null) {
+      record.setResult(winner);
+      try {
+        database.append(record);
+      }
+      catch (IOException e) {
+        System.out.println("Could not add game " + index + " to the database: " + e.getMessage());
+      }
+    }
+    int aColor = aBlack ? 1 : 2;
+    if (winner == 0)
+      draws.incrementAndGet();
+    else if (winner == aColor)
+      wins.incrementAndGet();
+    else
+      losses.incrementAndGet();
+    int finished = wins.get() + draws.get() + losses.get();
+    if (showProgress && finished % Math.max(1, games / 10) == 0)
+      System.out.println("After " + finished + " games: +" + wins.get() + " =" + draws.get() + " -" + losses.get());
+  }
+
+  /**
+   * Makes an opening: two to four pieces placed at random near the middle of the board, starting with black
+   * The same index always gives the same opening
+   * @param index the number of the opening
+   * @param record the record to add the moves of the opening to
+   * @param game the board, which is cleared and then has the opening played on it
+   */
+  private void opening(int index, GomokuGameRecord record, GomokuSample game) {
+    Random random = new Random(seed * 1000003 + index);
+    game.clear();
+    int pieces = 2 + random.nextInt(3);
+    for (int i = 0; i < pieces; i++) {
+      int row = rows / 2 + random.nextInt(5) - 2;
+      int col = cols / 2 + random.nextInt(5) - 2;
+      if (row >= 0 && row < rows && col >= 0 && col < cols && game.setPiece(row, col)) {
+        record.addMove(row, col);
+        game.switchTurn();
+      }
+    }
+  }
+
+  /**
+   * Prints the results of the tournament
+   * @param seconds how long the tournament took, in seconds
+   */
+  public void printResults(double seconds) {
+    int w = wins.get();
+    int d = draws.get();
+    int l = losses.get();
+    int n = w + d + l;
+    if (n == 0)
+      return;
+    double score = (w + d / 2.0) / n;
+
+    // The error of the score comes from the spread of the results of single games
+    double variance = (w * (1 - score) * (1 - score) + d * (0.5 - score) * (0.5 - score) + l * score * score) / n;
+    double error = 1.96 * Math.sqrt(variance / n);
+    System.out.println();
+    System.out.println("A: " + engineA);
+    System.out.println("B: " + engineB);
+    System.out.println("Board " + rows + "x" + cols + ", " + lengthToWin + " in a row to win");
+    System.out.println("Games " + n + ": A wins " + w + ", draws " + d + ", A losses " + l);
+    System.out.println(String.format("Score %.1f%% +/- %.1f%%", score * 100, error * 100));
+    System.out.println(String.format("Elo %s (95%%: %s to %s)", formatElo(elo(score)), formatElo(elo(score - error)),
+                                     formatElo(elo(score + error))));
+    System.out.println(String.format("%.2f games/second, %.1f moves/second", n / seconds, moves.get() / seconds));
+  }
+
+  /**
+   * Changes a score into a difference in Elo rating
+   * @param score the share of points won, from 0 to 1
+   * @return the Elo difference, which is infinite for a score of 0 or 1
+   */
+  public static double elo(double score) {
+    if (score <= 0)
+      return Double.NEGATIVE_INFINITY;
+    if (score >= 1)
+      return Double.POSITIVE_INFINITY;
+    return -400 * Math.log10(1 / score - 1);
+  }
+
+  /**
+   * Formats an Elo difference with its sign
+   * @param elo the Elo difference
+   * @return the formatted difference
+   */
+  private static String formatElo(double elo) {
+    if (Double.isInfinite(elo))
+      return elo > 0 ? "+inf" : "-inf";
+    return String.format("%+.0f", elo);
+  }
+
+  /**
+   * Setter method for the database
+   * @param database the database every game is added to, or null to not keep the games
+   */
+  public void setDatabase(GomokuGameDatabase database) {
+    this.database = database;
+  }
+
+  /**
+   * Setter method for showProgress
+   * @param showProgress true to print the score after every tenth of the games, false to print nothing while playing
+   */
+  public void setShowProgress(boolean showProgress) {
+    this.showProgress = showProgress;
+  }
+
+  /**
+   * Getter method for the number of games won by engine A
+   * @return the number of wins
+   */
+  public int getWins() {
+    return wins.get();
+  }
+
+  /**
+   * Getter method for the number of drawn games
+   * @return the number of draws
+   */
+  public int getDraws() {
+    return draws.get();
+  }
+
+  /**
+   * Getter method for the number of games lost by engine A
+   * @return the number of losses
+   */
+  public int getLosses() {
+    return losses.get();
+  }
+
+  /**
+   * Getter method for the number of moves played
+   * @return the number of moves played by the engines in all of the games
+   */
+  public long getMoves() {
+    return moves.get();
+  }
+
+  /**
+   * Creates a player from a description such as "ab:time=100,depth=8" or "mcts:time=100,nodes=200000"
+   * @param description the type of the engine, followed by a colon and options written as name=value
+   * @return the player
+   * @throws IllegalArgumentException if the description cannot be read
+   */
+  public static GomokuPlayer createPlayer(String description) {
+    return readPlayer(description, true);
+  }
+
+  /**
+   * Checks that a player can be created from a description, without making the player or its tables
+   * @param description the type of the engine, followed by a colon and options written as name=value
+   * @throws IllegalArgumentException if the description cannot be read
+   */
+  public static void checkPlayer(String description) {
+    readPlayer(description, false);
+  }
+
+  /**
+   * Reads the description of a player and creates the player
+   * @param description the type of the engine, followed by a colon and options written as name=value
+   * @param create true to create the player, or false to only check the description
+   * @return the player, or null if it is not created
+   * @throws IllegalArgumentException if the description cannot be read
+   */
+  private static GomokuPlayer readPlayer(String description, boolean create) {
+    String[] parts = description.split(":", 2);
+    String type = parts[0].trim().toLowerCase();
+    long time = 100;
+    int depth = 32;
+    int branch = 15;
+    int threads = 1;
+    int tableSize = GomokuTranspositionTable.DEFAULT_MEGABYTES;
+    int nodes = 200000;
+    double exploration = -1;
+    String book = null;
+    if (parts.length > 1 && parts[1].trim().length() > 0) {
+      for (String option : parts[1].split(",")) {
+        String[] pair = option.split("=", 2);
+        if (pair.length != 2)
+          throw new IllegalArgumentException("Option \"" + option + "\" should be written as name=value.");
+        String name = pair[0].trim();
+        String value = pair[1].trim();
+        try {
+          if (name.equals("book"))
+            book = value;
+          else if (name.equals("time"))
+            time = Long.parseLong(value);
+          else if (name.equals("depth"))
+            depth = Integer.parseInt(value);
+          else if (name.equals("branch"))
+            branch = Integer.parseInt(value);
+          else if (name.equals("threads"))
+            threads = Integer.parseInt(value);
+          else if (name.equals("tt"))
+            tableSize = Integer.parseInt(value);
+          else if (name.equals("nodes"))
+            nodes = Integer.parseInt(value);
+          else if (name.equals("c"))
+            exploration = Double.parseDouble(value);
+          else
+            throw new IllegalArgumentException("Unknown option \"" + name + "\" in \"" + description + "\".");
+        }
+        catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Option \"" + name + "\" needs a number, not \"" + value + "\".");
+        }
+      }
+    }
+    if (!type.equals("ab") && !type.equals("alphabeta") && !type.equals("mcts"))
+      throw new IllegalArgumentException("Unknown engine \"" + type + "\", use ab or mcts.");
+    if (book != null && !Files.isReadable(Paths.get(book)))
+      throw new IllegalArgumentException("Could not open the book \"" + book + "\": the file cannot be read");
+    if (!create)
+      return null;
+    if (type.equals("ab") || type.equals("alphabeta")) {
+      GomokuAI player = new GomokuAI(time, depth);
+      player.setBranchLimit(branch);
+      player.setThreads(threads);
+      player.setTable(new GomokuTranspositionTable(tableSize));
+      if (book != null) {
+        try {
+          player.setBook(new GomokuOpeningBook(Paths.get(book)));
+        }
+        catch (IOException e) {
+          throw new IllegalArgumentException("Could not open the book \"" + book + "\": " + e.getMessage());
+        }
+      }
+      return player;
+    }
+    GomokuMCTS player = new GomokuMCTS(time, nodes, threads);
+    if (exploration >= 0)
+      player.setExploration(exploration);
+    return player;
+  }
+
+}
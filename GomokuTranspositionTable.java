@@ -0,0 +1,219 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class to represent a transposition table, which remembers the results of searching positions by their hash
+ * The table is allocated once, and each slot holds one position as two longs: the data, and the hash XOR the data
+ * A reader only trusts a slot when the XOR of the two longs gives back its hash, so threads can read and write
+ * the table at the same time without locks (a slot written by two threads at once just reads as a miss)
+ * A slot is replaced by a deeper search, or by any search once the slot is left over from an earlier move
+ * @author Noah Leibowitz
+ */
+public class GomokuTranspositionTable {
+
+  /** The score stored is the exact score of the position */
+  public static final int EXACT = 0;
+
+  /** The score stored is at least the score of the position (the search failed high) */
+  public static final int LOWER = 1;
+
+  /** The score stored is at most the score of the position (the search failed low) */
+  public static final int UPPER = 2;
+
+  /** The name of the system property that sets the size of the table in megabytes */
+  public static final String SIZE_PROPERTY = "gomoku.tt.mb";
+
+  /** The size of the table in megabytes when the system property is not set */
+  public static final int DEFAULT_MEGABYTES = 16;
+
+  /** The bit of the data that marks a slot as in use */
+  private static final long IN_USE = 1L << 15;
+
+  /** The offset added to a score so that it is stored as a positive number */
+  private static final int SCORE_OFFSET = 1 << 21;
+
+  /** Stores the hash XOR the data of each slot */
+  private AtomicLongArray checks;
+
+  /** Stores the data of each slot: flag, depth, age, a bit for "in use", score, and move */
+  private AtomicLongArray data;
+
+  /** Stores the number of slots minus one, used to find the slot of a hash */
+  private int mask;
+
+  /** Stores the age of the current search, so slots left over from older searches can be replaced */
+  private volatile int age;
+
+  /** Stores the number of probes that found their position */
+  private LongAdder hits = new LongAdder();
+
+  /** Stores the number of probes that did not find their position */
+  private LongAdder misses = new LongAdder();
+
+  /** Stores the number of probes that found a different position in the slot */
+  private LongAdder collisions = new LongAdder();
+
+  /**
+   * Constructor that allocates the table
+   * @param megabytes the size of the table in megabytes, rounded down to a power of two number of slots
+   */
+  public GomokuTranspositionTable(int megabytes) {
+    long slots = Math.max(1, (long) megabytes * 1024 * 1024 / 16);
+    int size = Integer.highestOneBit((int) Math.min(slots, 1 << 30));
+    checks = new AtomicLongArray(size);
+    data = new AtomicLongArray(size);
+    mask = size - 1;
+  }
+
+  /**
+   * Creates a table with the size from the gomoku.tt.mb system property
+   * @return the table
+   */
+  public static GomokuTranspositionTable fromConfig() {
+    return new GomokuTranspositionTable(Integer.getInteger(SIZE_PROPERTY, DEFAULT_MEGABYTES));
+  }
+
+  /** Starts a new search, so that slots from older searches can be replaced */
+  public void newSearch() {
+    age = (age + 1) & 63;
+  }
+
+  /** Removes every position from the table and resets the counters */
+  public void clear() {
+    for (int i = 0; i <= mask; i++) {
+      data.set(i, 0);
+      checks.set(i, 0);
+    }
+    hits.reset();
+    misses.reset();
+    collisions.reset();
+  }
+
+  /**
+   * Looks up a position
+   * @param hash the hash of the position
+   * @return the data of the position, or 0 if it is not in the table
+   */
+  public long probe(long hash) {
+    int slot = (int) hash & mask;
+    long stored = data.get(slot);
+    long check = checks.get(slot);
+    if ((stored & IN_USE) != 0 && (check ^ stored) == hash) {
+      hits.increment();
+      return stored;
+    }
+    misses.increment();
+    if ((stored & IN_USE) != 0)
+      collisions.increment();
+    return 0;
+  }
+
+  /**
+   * Stores the result of searching a position
+   * @param hash the hash of the position
+   * @param move the best move found (any number up to 2^26 - 2 that stands for it), or -1 if there is none
+   * @param score the score of the position
+   * @param depth the depth that was searched (0 to 127)
+   * @param flag EXACT, LOWER, or UPPER
+   */
+  public void store(long hash, int move, int score, int depth, int flag) {
+    int slot = (int) hash & mask;
+    long stored = data.get(slot);
+    boolean samePosition = (checks.get(slot) ^ stored) == hash;
+
+    // Keeps a deeper search of a different position from this search
+    if ((stored & IN_USE) != 0 && !samePosition && ageOf(stored) == age && depthOf(stored) > depth)
+      return;
+    long packed = flag | (long) Math.min(depth, 127) << 2 | (long) age << 9 | IN_USE
+      | (long) (score + SCORE_OFFSET) << 16 | (long) (move + 1) << 38;
+    data.set(slot, packed);
+    checks.set(slot, hash ^ packed);
+  }
+
+  /**
+   * Gets the best move from the data of a slot
+   * @param stored the data returned by probe
+   * @return the move, or -1 if there is none
+   */
+  public static int moveOf(long stored) {
+    return (int) (stored >>> 38) - 1;
+  }
+
+  /**
+   * Gets the score from the data of a slot
+   * @param stored the data returned by probe
+   * @return the score
+   */
+  public static int scoreOf(long stored) {
+    return (int) ((stored >>> 16) & ((1L << 22) - 1)) - SCORE_OFFSET;
+  }
+
+  /**
+   * Gets the depth from the data of a slot
+   * @param stored the data returned by probe
+   * @return the depth that was searched
+   */
+  public static int depthOf(long stored) {
+    return (int) (stored >>> 2) & 127;
+  }
+
+  /**
+   * Gets the flag from the data of a slot
+   * @param stored the data returned by probe
+   * @return EXACT, LOWER, or UPPER
+   */
+  public static int flagOf(long stored) {
+    return (int) stored & 3;
+  }
+
+  /**
+   * Gets the age from the data of a slot
+   * @param stored the data of a slot
+   * @return the age of the search that stored it
+   */
+  private static int ageOf(long stored) {
+    return (int) (stored >>> 9) & 63;
+  }
+
+  /**
+   * Getter method for the number of slots
+   * @return the number of positions the table can hold
+   */
+  public int getSize() {
+    return mask + 1;
+  }
+
+  /**
+   * Getter method for hits
+   * @return the number of probes that found their position
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Getter method for misses
+   * @return the number of probes that did not find their position
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Getter method for collisions
+   * @return the number of probes that found a different position in the slot (also counted as misses)
+   */
+  public long getCollisions() {
+    return collisions.sum();
+  }
+
+  /**
+   * Gets the share of probes that found their position
+   * @return the hit rate from 0 to 1
+   */
+  public double getHitRate() {
+    long probes = getHits() + getMisses();
+    return probes == 0 ? 0 : (double) getHits() / probes;
+  }
+
+}